@@ -0,0 +1,339 @@
+package de.undercouch.bson4jackson;
+
+import tools.jackson.core.exc.JacksonIOException;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.ObjectReader;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * <p>Deserializes a sequence of BSON documents using multiple threads.
+ * A dedicated I/O thread reads the input stream and splits it into
+ * documents using their length prefixes. The documents are deserialized
+ * in parallel by tasks on a {@link ForkJoinPool}. The results are
+ * returned by an iterator either in the order of the input or in the
+ * order in which they have been deserialized.</p>
+ * <p>Only a limited number of documents are read ahead. If the consumer
+ * of the iterator is slower than the I/O thread and the pool, the I/O
+ * thread waits until the consumer catches up.</p>
+ * <p>Instances of this class are thread-safe if the object mapper is.
+ * The iterators they return are not.</p>
+ */
+public class BsonBatchReader {
+    /**
+     * The default maximum number of documents that have been read but
+     * not consumed yet
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * Marks the end of the input in the result queue
+     */
+    private static final CompletableFuture<Object> END =
+            CompletableFuture.completedFuture(null);
+
+    /**
+     * The object mapper used to deserialize values
+     */
+    protected final ObjectMapper _mapper;
+
+    /**
+     * The pool that runs the deserialization tasks
+     */
+    protected final ForkJoinPool _pool;
+
+    /**
+     * The maximum number of documents that have been read but not
+     * consumed yet
+     */
+    protected final int _capacity;
+
+    /**
+     * True if values should be returned in the order of the input
+     */
+    protected final boolean _ordered;
+
+    /**
+     * Creates a new batch reader that uses the common pool and the
+     * default capacity and returns values in the order of the input
+     * @param mapper the object mapper used to deserialize values. It must
+     * have been created with a {@link BsonFactory}.
+     * @throws IllegalArgumentException if the object mapper does not
+     * use a {@link BsonFactory}
+     */
+    public BsonBatchReader(ObjectMapper mapper) {
+        this(mapper, ForkJoinPool.commonPool(), DEFAULT_CAPACITY, true);
+    }
+
+    /**
+     * Creates a new batch reader
+     * @param mapper the object mapper used to deserialize values. It must
+     * have been created with a {@link BsonFactory}.
+     * @param pool the pool that runs the deserialization tasks
+     * @param capacity the maximum number of documents that have been
+     * read but not consumed yet
+     * @param ordered true if values should be returned in the order of
+     * the input, false if they should be returned as soon as they have
+     * been deserialized
+     * @throws IllegalArgumentException if the object mapper does not
+     * use a {@link BsonFactory} or if the capacity is not positive
+     */
+    public BsonBatchReader(ObjectMapper mapper, ForkJoinPool pool,
+            int capacity, boolean ordered) {
+        if (!(mapper.tokenStreamFactory() instanceof BsonFactory)) {
+            throw new IllegalArgumentException("Object mapper must use a BsonFactory");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be larger than 0");
+        }
+        _mapper = mapper;
+        _pool = pool;
+        _capacity = capacity;
+        _ordered = ordered;
+    }
+
+    /**
+     * Starts reading documents from the given input stream. The input
+     * stream will be closed when all documents have been read, when an
+     * error occurs, or after the returned iterator has been closed.
+     * @param <T> the type of the values
+     * @param in the input stream to read from
+     * @param valueType the type of the values
+     * @return an iterator over the deserialized values. Errors are
+     * reported by its {@link Iterator#hasNext()} method. It should be
+     * closed if it is not consumed completely.
+     */
+    public <T> ValueIterator<T> readValues(InputStream in, Class<T> valueType) {
+        return readValues(in, _mapper.readerFor(valueType));
+    }
+
+    /**
+     * Starts reading documents from the given input stream. The input
+     * stream will be closed when all documents have been read, when an
+     * error occurs, or after the returned iterator has been closed.
+     * @param <T> the type of the values
+     * @param in the input stream to read from
+     * @param reader the object reader used to deserialize documents
+     * @return an iterator over the deserialized values
+     */
+    public <T> ValueIterator<T> readValues(InputStream in, ObjectReader reader) {
+        ValueIterator<T> r = new ValueIterator<>(in, reader);
+        r.start();
+        return r;
+    }
+
+    /**
+     * Reads the next document from the input stream
+     * @param in the input stream
+     * @return the document including its length prefix or
+     * <code>null</code> if the end of the stream has been reached
+     * @throws IOException if the document could not be read or if the
+     * stream ends within a document
+     */
+    protected byte[] readDocument(InputStream in) throws IOException {
+        byte[] header = new byte[4];
+        int n = in.readNBytes(header, 0, 4);
+        if (n == 0) {
+            return null;
+        }
+        if (n < 4) {
+            throw new EOFException("Unexpected end of input in document length");
+        }
+
+        int len = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        if (len < 5) {
+            throw new IOException("Invalid document length: " + len);
+        }
+        byte[] buf = new byte[len];
+        System.arraycopy(header, 0, buf, 0, 4);
+        if (in.readNBytes(buf, 4, len - 4) < len - 4) {
+            throw new EOFException("Unexpected end of input in document");
+        }
+        return buf;
+    }
+
+    /**
+     * Iterates over values deserialized by a {@link BsonBatchReader}.
+     * Calls to {@link #hasNext()} block until the next value is available.
+     * @param <T> the type of the values
+     */
+    public class ValueIterator<T> implements Iterator<T>, Closeable {
+        /**
+         * The input stream to read from
+         */
+        protected final InputStream _in;
+
+        /**
+         * The object reader used to deserialize documents
+         */
+        protected final ObjectReader _reader;
+
+        /**
+         * Limits the number of documents that have been read but not
+         * consumed yet
+         */
+        protected final Semaphore _permits = new Semaphore(_capacity);
+
+        /**
+         * Deserialization results either in the order of the input or in
+         * the order of their completion
+         */
+        protected final BlockingQueue<CompletableFuture<Object>> _results =
+                new LinkedBlockingQueue<>();
+
+        /**
+         * The thread reading the input stream
+         */
+        protected final Thread _ioThread;
+
+        /**
+         * The result {@link #hasNext()} has taken from the queue but
+         * {@link #next()} has not returned yet
+         */
+        protected CompletableFuture<Object> _next;
+
+        /**
+         * True if the end of the input has been reached, an error has
+         * occurred, or the iterator has been closed
+         */
+        protected boolean _done;
+
+        /**
+         * Creates a new iterator
+         * @param in the input stream to read from
+         * @param reader the object reader used to deserialize documents
+         */
+        protected ValueIterator(InputStream in, ObjectReader reader) {
+            _in = in;
+            _reader = reader;
+            _ioThread = new Thread(this::readAll, "bson4jackson-batch-reader");
+            _ioThread.setDaemon(true);
+        }
+
+        /**
+         * Starts the I/O thread
+         */
+        protected void start() {
+            _ioThread.start();
+        }
+
+        /**
+         * Reads documents and submits them to the pool. Runs on the I/O
+         * thread.
+         */
+        protected void readAll() {
+            try (InputStream in = new BufferedInputStream(_in)) {
+                byte[] doc;
+                while ((doc = readDocument(in)) != null) {
+                    _permits.acquire();
+                    byte[] d = doc;
+                    CompletableFuture<Object> f = CompletableFuture.supplyAsync(
+                            () -> _reader.readValue(d), _pool);
+                    if (_ordered) {
+                        _results.add(f);
+                    } else {
+                        f.whenComplete((v, e) -> _results.add(f));
+                    }
+                }
+
+                if (!_ordered) {
+                    // wait until all results have been consumed
+                    _permits.acquire(_capacity);
+                }
+                _results.add(END);
+            } catch (InterruptedException e) {
+                // the iterator has been closed
+            } catch (IOException e) {
+                _results.add(CompletableFuture.failedFuture(
+                        JacksonIOException.construct(e)));
+            } catch (RuntimeException e) {
+                _results.add(CompletableFuture.failedFuture(e));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (_next != null) {
+                return true;
+            }
+            if (_done) {
+                return false;
+            }
+
+            CompletableFuture<Object> f;
+            try {
+                f = _results.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                throw JacksonIOException.construct(new InterruptedIOException(
+                        "Interrupted while waiting for the next value"));
+            }
+            if (f == END) {
+                _done = true;
+                return false;
+            }
+            _permits.release();
+
+            try {
+                f.join();
+            } catch (CompletionException e) {
+                close();
+                if (e.getCause() instanceof RuntimeException re) {
+                    throw re;
+                }
+                if (e.getCause() instanceof Error err) {
+                    throw err;
+                }
+                throw e;
+            }
+            _next = f;
+            return true;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            T r = (T)_next.join();
+            _next = null;
+            return r;
+        }
+
+        /**
+         * Stops reading documents and discards all values that have not
+         * been consumed yet. Documents that are currently being
+         * deserialized will still be completed in the background.
+         */
+        @Override
+        public void close() {
+            if (_done) {
+                return;
+            }
+            _done = true;
+            _next = null;
+            _ioThread.interrupt();
+            CompletableFuture<Object> f;
+            while ((f = _results.poll()) != null) {
+                f.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package de.undercouch.bson4jackson;
+
+import de.undercouch.bson4jackson.io.DynamicOutputBuffer;
+import de.undercouch.bson4jackson.io.StaticBuffers;
+import de.undercouch.bson4jackson.io.StaticBuffersPools;
+import tools.jackson.core.ObjectWriteContext;
+import tools.jackson.core.exc.JacksonIOException;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * <p>Serializes a large list of values into a single BSON stream using
+ * multiple threads. The list is split into chunks of consecutive values.
+ * Each chunk is serialized by a task on a {@link ForkJoinPool} into its
+ * own {@link DynamicOutputBuffer}. The buffers are written to the output
+ * in the original order, so the result is exactly the same as if the
+ * values had been written one after the other by a single generator.</p>
+ * <p>Only a limited number of chunks (twice the pool's parallelism) are
+ * serialized at the same time. Buffers of chunks that have been written
+ * are re-used for the following chunks, so memory consumption does not
+ * depend on the size of the list. If the output is a
+ * {@link GatheringByteChannel} (e.g. a {@link java.nio.channels.FileChannel}),
+ * the buffers of all chunks that are ready are written with a single
+ * vectored write call.</p>
+ * <p>Instances of this class are thread-safe if the object mapper is.</p>
+ */
+public class BsonBatchWriter {
+    /**
+     * The default number of values per chunk
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    /**
+     * The object mapper used to serialize values
+     */
+    protected final ObjectMapper _mapper;
+
+    /**
+     * The factory of {@link #_mapper}
+     */
+    protected final BsonFactory _factory;
+
+    /**
+     * The pool that runs the serialization tasks
+     */
+    protected final ForkJoinPool _pool;
+
+    /**
+     * The number of values per chunk
+     */
+    protected final int _chunkSize;
+
+    /**
+     * The maximum number of chunks that are serialized or waiting to be
+     * written at the same time
+     */
+    protected final int _maxChunksInFlight;
+
+    /**
+     * Creates a new batch writer that uses the common pool and the
+     * default chunk size
+     * @param mapper the object mapper used to serialize values. It must
+     * have been created with a {@link BsonFactory}.
+     * @throws IllegalArgumentException if the object mapper does not
+     * use a {@link BsonFactory}
+     */
+    public BsonBatchWriter(ObjectMapper mapper) {
+        this(mapper, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a new batch writer
+     * @param mapper the object mapper used to serialize values. It must
+     * have been created with a {@link BsonFactory}.
+     * @param pool the pool that runs the serialization tasks
+     * @param chunkSize the number of values serialized by one task
+     * @throws IllegalArgumentException if the object mapper does not
+     * use a {@link BsonFactory} or if the chunk size is not positive
+     */
+    public BsonBatchWriter(ObjectMapper mapper, ForkJoinPool pool, int chunkSize) {
+        if (!(mapper.tokenStreamFactory() instanceof BsonFactory)) {
+            throw new IllegalArgumentException("Object mapper must use a BsonFactory");
+        }
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be larger than 0");
+        }
+        _mapper = mapper;
+        _factory = (BsonFactory)mapper.tokenStreamFactory();
+        _pool = pool;
+        _chunkSize = chunkSize;
+        _maxChunksInFlight = Math.max(2, pool.getParallelism() * 2);
+    }
+
+    /**
+     * Serializes all values and writes them to the given output stream.
+     * The output stream will neither be flushed nor closed.
+     * @param values the values to serialize (must not be modified until
+     * this method returns)
+     * @param out the output stream to write to
+     */
+    public void writeAll(List<?> values, OutputStream out) {
+        writeAll(values, Channels.newChannel(out));
+    }
+
+    /**
+     * Serializes all values and writes them to the given channel. The
+     * channel will not be closed.
+     * @param values the values to serialize (must not be modified until
+     * this method returns)
+     * @param out the channel to write to
+     */
+    public void writeAll(List<?> values, WritableByteChannel out) {
+        int chunkCount = (values.size() + _chunkSize - 1) / _chunkSize;
+        ArrayDeque<ForkJoinTask<DynamicOutputBuffer>> inFlight = new ArrayDeque<>();
+        ArrayDeque<DynamicOutputBuffer> freeBuffers = new ArrayDeque<>();
+        List<DynamicOutputBuffer> ready = new ArrayList<>();
+        int nextChunk = 0;
+        try {
+            while (nextChunk < chunkCount || !inFlight.isEmpty()) {
+                while (nextChunk < chunkCount && inFlight.size() < _maxChunksInFlight) {
+                    int start = nextChunk * _chunkSize;
+                    int end = Math.min(start + _chunkSize, values.size());
+                    List<?> chunk = values.subList(start, end);
+                    DynamicOutputBuffer buffer = freeBuffers.isEmpty() ?
+                            createBuffer() : freeBuffers.poll();
+                    inFlight.add(_pool.submit(() -> writeChunk(chunk, buffer)));
+                    ++nextChunk;
+                }
+
+                // wait for the oldest chunk and take all following ones
+                // that are already done, so they can be written together
+                ready.add(inFlight.poll().join());
+                while (!inFlight.isEmpty() && inFlight.peek().isDone()) {
+                    ready.add(inFlight.poll().join());
+                }
+
+                writeBuffers(ready, out);
+                for (DynamicOutputBuffer b : ready) {
+                    b.clear();
+                    freeBuffers.add(b);
+                }
+                ready.clear();
+            }
+        } catch (IOException e) {
+            throw JacksonIOException.construct(e);
+        } finally {
+            for (ForkJoinTask<DynamicOutputBuffer> t : inFlight) {
+                t.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Serializes a chunk of values. Called by the pool's worker threads.
+     * @param values the values to serialize
+     * @param buffer the buffer to write into
+     * @return the buffer
+     */
+    protected DynamicOutputBuffer writeChunk(List<?> values, DynamicOutputBuffer buffer) {
+        try (BsonGenerator g = _factory.createGenerator(ObjectWriteContext.empty(), buffer)) {
+            for (Object v : values) {
+                _mapper.writeValue(g, v);
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Writes the contents of buffers to a channel in the given order
+     * @param buffers the buffers to write
+     * @param out the channel to write to
+     * @throws IOException if the buffers could not be written
+     */
+    protected void writeBuffers(List<DynamicOutputBuffer> buffers,
+            WritableByteChannel out) throws IOException {
+        if (!(out instanceof GatheringByteChannel gout)) {
+            for (DynamicOutputBuffer b : buffers) {
+                b.writeTo(out);
+            }
+            return;
+        }
+
+        List<ByteBuffer> bbl = new ArrayList<>();
+        for (DynamicOutputBuffer b : buffers) {
+            for (ByteBuffer bb : b.toReadOnlyByteBuffers()) {
+                if (bb.hasRemaining()) {
+                    bbl.add(bb);
+                }
+            }
+        }
+        DynamicOutputBuffer.writeFully(gout, bbl.toArray(new ByteBuffer[0]));
+    }
+
+    /**
+     * Creates a buffer for a chunk. The buffer gets its own
+     * {@link StaticBuffers} instance instead of a thread-local one because
+     * it is filled and cleared on different threads.
+     * @return the buffer
+     */
+    protected DynamicOutputBuffer createBuffer() {
+        return new DynamicOutputBuffer(ByteOrder.LITTLE_ENDIAN,
+                DynamicOutputBuffer.DEFAULT_BUFFER_SIZE, StaticBuffers.MAX_RETAINED_SIZE,
+                StaticBuffersPools.nonRecyclingPool().acquire());
+    }
+}
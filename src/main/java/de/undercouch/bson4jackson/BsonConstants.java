@@ -47,6 +47,15 @@ public final class BsonConstants {
     public static final byte SUBTYPE_FUNCTION = 0x01;
     public static final byte SUBTYPE_BINARY_OLD = 0x02;
     public static final byte SUBTYPE_UUID = 0x03;
+    public static final byte SUBTYPE_UUID_STANDARD = 0x04;
     public static final byte SUBTYPE_MD5 = 0x05;
+    public static final byte SUBTYPE_VECTOR = 0x09;
     public static final byte SUBTYPE_USER_DEFINED = (byte)0x80;
+
+    /**
+     * Data types of binary vectors
+     */
+    public static final byte VECTOR_DTYPE_INT8 = 0x03;
+    public static final byte VECTOR_DTYPE_FLOAT32 = 0x27;
+    public static final byte VECTOR_DTYPE_PACKED_BIT = 0x10;
 }
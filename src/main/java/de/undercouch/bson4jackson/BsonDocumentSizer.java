@@ -0,0 +1,93 @@
+package de.undercouch.bson4jackson;
+
+import tools.jackson.core.ObjectWriteContext;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.OutputStream;
+
+/**
+ * <p>Serializes values in two passes. The first pass runs the object
+ * mapper's serializers against a {@link BsonSizingGenerator} to calculate
+ * the exact sizes of all documents without producing any bytes. The
+ * second pass streams the documents directly to the output stream. Since
+ * the document sizes are already known, the generator does not have to
+ * buffer whole documents to write their headers.</p>
+ * <p>This is useful for large documents or many concurrent writers where
+ * buffering every document in memory would be too expensive. The value
+ * must serialize to exactly the same tokens in both passes.</p>
+ * <p>Instances of this class are thread-safe if the object mapper is.</p>
+ */
+public class BsonDocumentSizer {
+    /**
+     * The object mapper used to serialize values
+     */
+    protected final ObjectMapper _mapper;
+
+    /**
+     * The factory of {@link #_mapper}
+     */
+    protected final BsonFactory _factory;
+
+    /**
+     * Creates a new document sizer
+     * @param mapper the object mapper used to serialize values. It must
+     * have been created with a {@link BsonFactory}.
+     * @throws IllegalArgumentException if the object mapper does not
+     * use a {@link BsonFactory}
+     */
+    public BsonDocumentSizer(ObjectMapper mapper) {
+        if (!(mapper.tokenStreamFactory() instanceof BsonFactory)) {
+            throw new IllegalArgumentException("Object mapper must use a BsonFactory");
+        }
+        _mapper = mapper;
+        _factory = (BsonFactory)mapper.tokenStreamFactory();
+    }
+
+    /**
+     * Calculates the exact number of bytes the given value would be
+     * serialized to. The value is passed to the same serializers as
+     * during normal serialization, but nothing is encoded or written.
+     * This can be used to split values into batches that do not exceed
+     * a given message size before actually serializing them.
+     * @param value the value to serialize
+     * @return the number of bytes
+     */
+    public int sizeOf(Object value) {
+        try (BsonSizingGenerator g = _factory.createSizingGenerator(
+                ObjectWriteContext.empty())) {
+            _mapper.writeValue(g, value);
+            return g.getSize();
+        }
+    }
+
+    /**
+     * Calculates the sizes of all documents the given value would be
+     * serialized to without producing any bytes
+     * @param value the value to serialize
+     * @return the document sizes in the order in which the documents are
+     * started (see {@link BsonGenerator#setDocumentSizes(int[])})
+     */
+    public int[] computeDocumentSizes(Object value) {
+        try (BsonSizingGenerator g = _factory.createSizingGenerator(
+                ObjectWriteContext.empty())) {
+            _mapper.writeValue(g, value);
+            return g.getDocumentSizes();
+        }
+    }
+
+    /**
+     * Serializes the given value to the given output stream without
+     * buffering whole documents. The output stream will be closed
+     * afterwards if {@link tools.jackson.core.StreamWriteFeature#AUTO_CLOSE_TARGET}
+     * is enabled.
+     * @param out the output stream to write to
+     * @param value the value to serialize
+     */
+    public void writeValue(OutputStream out, Object value) {
+        int[] sizes = computeDocumentSizes(value);
+        try (BsonGenerator g = _factory.createGenerator(
+                ObjectWriteContext.empty(), out, sizes)) {
+            _mapper.writeValue(g, value);
+        }
+    }
+}
@@ -1,9 +1,13 @@
 package de.undercouch.bson4jackson;
 
+import de.undercouch.bson4jackson.io.DynamicOutputBuffer;
+import de.undercouch.bson4jackson.io.StaticBuffersPool;
+import de.undercouch.bson4jackson.io.StaticBuffersPools;
 import de.undercouch.bson4jackson.io.UnsafeByteArrayInputStream;
 import tools.jackson.core.ObjectReadContext;
 import tools.jackson.core.ObjectWriteContext;
 import tools.jackson.core.io.CharacterEscapes;
+import tools.jackson.core.io.ContentReference;
 import tools.jackson.core.io.IOContext;
 import tools.jackson.core.json.JsonFactory;
 
@@ -12,6 +16,10 @@ import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Serial;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 /**
  * Factory for {@link BsonGenerator} and {@link BsonParser}
@@ -30,6 +38,13 @@ public class BsonFactory extends JsonFactory {
      */
     protected static final int DEFAULT_BSON_PARSER_FEATURE_FLAGS = 0;
 
+    /**
+     * The maximum number of idle generators and parsers kept by
+     * {@link #releaseGenerator(BsonGenerator)} and
+     * {@link #releaseParser(BsonParser)}
+     */
+    public static final int REUSABLE_POOL_SIZE = 16;
+
     /**
      * Custom character escapes to use for generators created by this factory
      */
@@ -47,6 +62,54 @@ public class BsonFactory extends JsonFactory {
      */
     protected int _bsonParserFeatures = DEFAULT_BSON_PARSER_FEATURE_FLAGS;
 
+    /**
+     * The pool generators and parsers created by this factory obtain
+     * their re-usable buffers from (null means
+     * {@link StaticBuffersPools#defaultPool()})
+     */
+    protected transient StaticBuffersPool _staticBuffersPool;
+
+    /**
+     * The low flush watermark of streaming generators created by this
+     * factory (-1 for the default behavior)
+     * @see BsonGenerator#setFlushWatermarks(int, int)
+     */
+    protected int _streamingFlushLowWatermark = -1;
+
+    /**
+     * The high flush watermark of streaming generators created by this
+     * factory (-1 for the default behavior)
+     * @see BsonGenerator#setFlushWatermarks(int, int)
+     */
+    protected int _streamingFlushHighWatermark = -1;
+
+    /**
+     * The number of internal buffers streaming generators created by this
+     * factory keep for re-use (-1 for the default)
+     */
+    protected int _streamingReuseBuffersCount = -1;
+
+    /**
+     * The names of properties parsers created by this factory report
+     * before all other properties of a document (may be null)
+     * @see BsonParser#setTypePropertyNames(String...)
+     */
+    protected String[] _typePropertyNames;
+
+    /**
+     * Idle generators that can be re-used (may be null after deserialization)
+     * @see #acquireGenerator(OutputStream)
+     */
+    protected transient BlockingQueue<BsonGenerator> _generatorPool =
+            new ArrayBlockingQueue<>(REUSABLE_POOL_SIZE);
+
+    /**
+     * Idle parsers that can be re-used (may be null after deserialization)
+     * @see #acquireParser(InputStream)
+     */
+    protected transient BlockingQueue<BsonParser> _parserPool =
+            new ArrayBlockingQueue<>(REUSABLE_POOL_SIZE);
+
     /**
      * @see JsonFactory#JsonFactory()
      */
@@ -64,6 +127,11 @@ public class BsonFactory extends JsonFactory {
         _bsonGeneratorFeatures = src._bsonGeneratorFeatures;
         _bsonParserFeatures = src._bsonParserFeatures;
         _bsonCharacterEscapes = src._bsonCharacterEscapes;
+        _staticBuffersPool = src._staticBuffersPool;
+        _streamingFlushLowWatermark = src._streamingFlushLowWatermark;
+        _streamingFlushHighWatermark = src._streamingFlushHighWatermark;
+        _streamingReuseBuffersCount = src._streamingReuseBuffersCount;
+        _typePropertyNames = src._typePropertyNames;
     }
 
     /**
@@ -176,9 +244,319 @@ public class BsonFactory extends JsonFactory {
         _bsonCharacterEscapes = esc;
     }
 
+    /**
+     * Sets the pool generators and parsers created by this factory obtain
+     * their re-usable buffers from. Use
+     * {@link StaticBuffersPools#newBoundedPool()} if documents are
+     * processed by virtual threads or short-lived threads.
+     * @param pool the pool (may be null to use
+     * {@link StaticBuffersPools#defaultPool()})
+     */
+    public void setStaticBuffersPool(StaticBuffersPool pool) {
+        _staticBuffersPool = pool;
+    }
+
+    /**
+     * @return the pool generators and parsers created by this factory
+     * obtain their re-usable buffers from
+     */
+    public StaticBuffersPool getStaticBuffersPool() {
+        if (_staticBuffersPool == null) {
+            return StaticBuffersPools.defaultPool();
+        }
+        return _staticBuffersPool;
+    }
+
+    /**
+     * Configures when streaming generators created by this factory flush
+     * their output buffer. See {@link BsonGenerator#setFlushWatermarks(int, int)}.
+     * @param low the number of bytes that may remain in the buffer
+     * after flushing
+     * @param high the number of unflushed bytes that triggers flushing
+     * @throws IllegalArgumentException if the watermarks are invalid
+     */
+    public void setStreamingFlushWatermarks(int low, int high) {
+        if (low != -1 || high != -1) {
+            if (high <= 0 || low < 0 || low > high) {
+                throw new IllegalArgumentException("Invalid flush watermarks: " +
+                        "low=" + low + ", high=" + high);
+            }
+        }
+        _streamingFlushLowWatermark = low;
+        _streamingFlushHighWatermark = high;
+    }
+
+    /**
+     * Sets the number of internal buffers streaming generators created by
+     * this factory keep for re-use after they have been flushed
+     * @param count the number of buffers to keep (-1 for the default)
+     * @see BsonGenerator#setReuseBuffersCount(int)
+     */
+    public void setStreamingReuseBuffersCount(int count) {
+        _streamingReuseBuffersCount = count;
+    }
+
+    /**
+     * Sets the names of properties that parsers created by this factory
+     * should report before all other properties of a document. Use this
+     * to avoid buffering objects during polymorphic deserialization if the
+     * type property is not written first. See
+     * {@link BsonParser#setTypePropertyNames(String...)}.
+     * @param names the property names (e.g. the <code>property</code>
+     * attribute of your <code>@JsonTypeInfo</code> annotations)
+     */
+    public void setTypePropertyNames(String... names) {
+        _typePropertyNames = (names == null || names.length == 0) ? null : names.clone();
+    }
+
+    /**
+     * Applies this factory's configuration to the given parser
+     * @param p the parser
+     * @return the parser
+     */
+    protected BsonParser _configureParser(BsonParser p) {
+        if (_typePropertyNames != null) {
+            p.setTypePropertyNames(_typePropertyNames);
+        }
+        return p;
+    }
+
+    /**
+     * Applies this factory's streaming configuration to the given generator
+     * @param g the generator
+     */
+    protected void _configureStreaming(BsonGenerator g) {
+        if (_streamingFlushHighWatermark != -1) {
+            g.setFlushWatermarks(_streamingFlushLowWatermark, _streamingFlushHighWatermark);
+        }
+        if (_streamingReuseBuffersCount != -1 && g.isEnabled(BsonGenerator.Feature.ENABLE_STREAMING)) {
+            g.setReuseBuffersCount(_streamingReuseBuffersCount);
+        }
+    }
+
+    /**
+     * Creates a generator that writes directly into the remaining space of
+     * the given buffer without intermediate copies. Document headers are
+     * patched in place. The generator throws a
+     * {@link java.nio.BufferOverflowException} if the buffer is too small.
+     * When the generator is flushed or closed, the buffer's position is moved
+     * behind the last complete top-level document.
+     * @param writeCtxt the object write context
+     * @param out the buffer to write into
+     * @return the generator
+     */
+    public BsonGenerator createGenerator(ObjectWriteContext writeCtxt, ByteBuffer out) {
+        IOContext ctxt = _createContext(_createContentReference(out), false);
+        BsonGenerator g = new BsonGenerator(writeCtxt, ctxt, _streamWriteFeatures,
+                _bsonGeneratorFeatures, out);
+        if (_bsonCharacterEscapes != null) {
+            g.setCharacterEscapes(_bsonCharacterEscapes);
+        }
+        return g;
+    }
+
+    /**
+     * Creates a generator that writes directly into the remaining space of
+     * the given buffer. See {@link #createGenerator(ObjectWriteContext, ByteBuffer)}.
+     * @param out the buffer to write into
+     * @return the generator
+     */
+    public BsonGenerator createGenerator(ByteBuffer out) {
+        return createGenerator(ObjectWriteContext.empty(), out);
+    }
+
+    /**
+     * Creates a generator that streams to the given seekable channel (for
+     * example a {@link java.nio.channels.FileChannel}). The output buffer
+     * is flushed to the channel from time to time, and the headers of
+     * documents that have already been partially written are patched by
+     * seeking back on the channel. In contrast to
+     * {@link BsonGenerator.Feature#ENABLE_STREAMING} on an output stream,
+     * the generated documents are compatible to the BSON specification.
+     * @param writeCtxt the object write context
+     * @param out the channel to write to
+     * @return the generator
+     */
+    public BsonGenerator createGenerator(ObjectWriteContext writeCtxt, SeekableByteChannel out) {
+        IOContext ctxt = _createContext(_createContentReference(out), false);
+        BsonGenerator g = new BsonGenerator(writeCtxt, ctxt, _streamWriteFeatures,
+                _bsonGeneratorFeatures, out, getStaticBuffersPool());
+        if (_bsonCharacterEscapes != null) {
+            g.setCharacterEscapes(_bsonCharacterEscapes);
+        }
+        _configureStreaming(g);
+        return g;
+    }
+
+    /**
+     * Creates a generator that writes into the given buffer. The buffer is
+     * owned by the caller: flushing the generator has no effect, and
+     * closing it does not clear the buffer. This allows multiple threads
+     * to serialize documents into separate buffers that are written to a
+     * common output later (see {@link BsonBatchWriter}).
+     * {@link BsonGenerator.Feature#ENABLE_STREAMING} is ignored.
+     * @param writeCtxt the object write context
+     * @param out the buffer to write into (must use little endian byte
+     * order)
+     * @return the generator
+     */
+    public BsonGenerator createGenerator(ObjectWriteContext writeCtxt, DynamicOutputBuffer out) {
+        IOContext ctxt = _createContext(ContentReference.unknown(), false);
+        BsonGenerator g = new BsonGenerator(writeCtxt, ctxt, _streamWriteFeatures,
+                _bsonGeneratorFeatures, out);
+        if (_bsonCharacterEscapes != null) {
+            g.setCharacterEscapes(_bsonCharacterEscapes);
+        }
+        return g;
+    }
+
+    /**
+     * Creates a generator that does not write anything but calculates the
+     * sizes of the documents a generator created by this factory would
+     * write
+     * @param writeCtxt the object write context
+     * @return the sizing generator
+     * @see BsonDocumentSizer
+     */
+    public BsonSizingGenerator createSizingGenerator(ObjectWriteContext writeCtxt) {
+        IOContext ctxt = _createContext(ContentReference.unknown(), false);
+        BsonSizingGenerator g = new BsonSizingGenerator(writeCtxt, ctxt,
+                _streamWriteFeatures, _bsonGeneratorFeatures);
+        if (_bsonCharacterEscapes != null) {
+            g.setCharacterEscapes(_bsonCharacterEscapes);
+        }
+        return g;
+    }
+
+    /**
+     * Creates a generator that streams documents whose sizes have been
+     * precomputed by a {@link BsonSizingGenerator} directly to the given
+     * output stream. {@link BsonGenerator.Feature#ENABLE_STREAMING} is
+     * always enabled, but since the document sizes are known in advance,
+     * the generated documents are compatible to the specification.
+     * @param writeCtxt the object write context
+     * @param out the output stream to write to
+     * @param documentSizes the precomputed document sizes
+     * @return the generator
+     * @see BsonGenerator#setDocumentSizes(int[])
+     */
+    public BsonGenerator createGenerator(ObjectWriteContext writeCtxt, OutputStream out,
+            int[] documentSizes) {
+        IOContext ctxt = _createContext(_createContentReference(out), false);
+        BsonGenerator g = new BsonGenerator(writeCtxt, ctxt, _streamWriteFeatures,
+                _bsonGeneratorFeatures | BsonGenerator.Feature.ENABLE_STREAMING.getMask(),
+                out, getStaticBuffersPool());
+        if (_bsonCharacterEscapes != null) {
+            g.setCharacterEscapes(_bsonCharacterEscapes);
+        }
+        g.setDocumentSizes(documentSizes);
+        _configureStreaming(g);
+        return g;
+    }
+
+    /**
+     * <p>Gets an idle generator from this factory's pool and resets it to
+     * the given output stream, or creates a new one if the pool is empty.
+     * The generator should be returned with
+     * {@link #releaseGenerator(BsonGenerator)} after the document has been
+     * written and flushed.</p>
+     * <p>Pooled generators do not use this factory's
+     * {@link #getStaticBuffersPool() static buffers pool}. Each of them owns
+     * its buffers, so it can safely be used by any thread (but only by one
+     * at a time).</p>
+     * <p>Pooled generators are created with an empty
+     * {@link ObjectWriteContext}, because they outlive the context of a
+     * single write operation. They can write tokens and values of the types
+     * BSON supports natively, but {@link BsonGenerator#writePOJO(Object)}
+     * and {@link BsonGenerator#writeTree(tools.jackson.core.TreeNode)} are
+     * not supported. Pass the generator to an object mapper instead (e.g.
+     * <code>mapper.writeValue(generator, value)</code>).</p>
+     * @param out the output stream to write to
+     * @return the generator
+     * @see BsonGenerator#reset(OutputStream)
+     */
+    public BsonGenerator acquireGenerator(OutputStream out) {
+        BsonGenerator g = (_generatorPool != null ? _generatorPool.poll() : null);
+        if (g != null) {
+            g.reset(out);
+            return g;
+        }
+
+        IOContext ctxt = _createContext(_createContentReference(out), false);
+        g = new BsonGenerator(ObjectWriteContext.empty(), ctxt, _streamWriteFeatures,
+                _bsonGeneratorFeatures, out, StaticBuffersPools.nonRecyclingPool());
+        if (_bsonCharacterEscapes != null) {
+            g.setCharacterEscapes(_bsonCharacterEscapes);
+        }
+        _configureStreaming(g);
+        return g;
+    }
+
+    /**
+     * Returns a generator obtained from {@link #acquireGenerator(OutputStream)}
+     * to this factory's pool. The generator's output stream is neither
+     * flushed nor closed. The generator must not be used anymore after
+     * this call. Closed generators and generators that do not fit into
+     * the pool are discarded.
+     * @param g the generator to return
+     */
+    public void releaseGenerator(BsonGenerator g) {
+        if (_generatorPool != null && !g.isClosed()) {
+            _generatorPool.offer(g);
+        }
+    }
+
+    /**
+     * <p>Gets an idle parser from this factory's pool and resets it to the
+     * given input stream, or creates a new one if the pool is empty. The
+     * parser should be returned with {@link #releaseParser(BsonParser)}
+     * after the document has been read.</p>
+     * <p>Pooled parsers do not use this factory's
+     * {@link #getStaticBuffersPool() static buffers pool}. Each of them owns
+     * its buffers, so it can safely be used by any thread (but only by one
+     * at a time).</p>
+     * <p>Pooled parsers are created with an empty {@link ObjectReadContext},
+     * because they outlive the context of a single read operation. They can
+     * read tokens and values of the types BSON supports natively, but
+     * {@link BsonParser#readValueAs(Class)} and
+     * {@link BsonParser#readValueAsTree()} are not supported. Pass the parser
+     * to an object mapper instead (e.g.
+     * <code>mapper.readValue(parser, type)</code>).</p>
+     * @param in the input stream to read from
+     * @return the parser
+     * @see BsonParser#reset(InputStream, ContentReference)
+     */
+    public BsonParser acquireParser(InputStream in) {
+        ContentReference contentReference = _createContentReference(in);
+        BsonParser p = (_parserPool != null ? _parserPool.poll() : null);
+        if (p != null) {
+            p.reset(in, contentReference);
+            return p;
+        }
+
+        IOContext ctxt = _createContext(contentReference, false);
+        return _configureParser(new BsonParser(ObjectReadContext.empty(), ctxt,
+                _streamReadFeatures, _bsonParserFeatures, in,
+                StaticBuffersPools.nonRecyclingPool()));
+    }
+
+    /**
+     * Returns a parser obtained from {@link #acquireParser(InputStream)} to
+     * this factory's pool. The parser's input stream is not closed. The
+     * parser must not be used anymore after this call. Closed parsers and
+     * parsers that do not fit into the pool are discarded.
+     * @param p the parser to return
+     */
+    public void releaseParser(BsonParser p) {
+        if (_parserPool != null && !p.isClosed()) {
+            _parserPool.offer(p);
+        }
+    }
+
     @Override
     protected BsonParser _createParser(ObjectReadContext readCtxt, IOContext ctxt, InputStream in) {
-        return new BsonParser(readCtxt, ctxt, _streamReadFeatures, _bsonParserFeatures, in);
+        return _configureParser(new BsonParser(readCtxt, ctxt, _streamReadFeatures,
+                _bsonParserFeatures, in, getStaticBuffersPool()));
     }
 
     @Override
@@ -193,10 +571,12 @@ public class BsonFactory extends JsonFactory {
 
     @Override
     protected BsonGenerator _createUTF8Generator(ObjectWriteContext writeCtxt, IOContext ctxt, OutputStream out) {
-        BsonGenerator g = new BsonGenerator(writeCtxt, ctxt, _streamWriteFeatures, _bsonGeneratorFeatures, out);
+        BsonGenerator g = new BsonGenerator(writeCtxt, ctxt, _streamWriteFeatures,
+                _bsonGeneratorFeatures, out, getStaticBuffersPool());
         if (_bsonCharacterEscapes != null) {
             g.setCharacterEscapes(_bsonCharacterEscapes);
         }
+        _configureStreaming(g);
         return g;
     }
 
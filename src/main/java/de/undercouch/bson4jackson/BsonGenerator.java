@@ -2,6 +2,11 @@ package de.undercouch.bson4jackson;
 
 import de.undercouch.bson4jackson.io.ByteOrderUtil;
 import de.undercouch.bson4jackson.io.DynamicOutputBuffer;
+import de.undercouch.bson4jackson.io.StaticBuffers;
+import de.undercouch.bson4jackson.io.StaticBuffersPool;
+import de.undercouch.bson4jackson.io.StaticBuffersPools;
+import de.undercouch.bson4jackson.raw.BsonBytes;
+import de.undercouch.bson4jackson.types.BinaryVector;
 import de.undercouch.bson4jackson.types.Decimal128;
 import de.undercouch.bson4jackson.types.JavaScript;
 import de.undercouch.bson4jackson.types.ObjectId;
@@ -26,9 +31,14 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.CharBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.UUID;
 import java.util.regex.Pattern;
 
 /**
@@ -52,6 +62,10 @@ public class BsonGenerator extends GeneratorBase {
          * ignores the total number of bytes anyway (like {@link BsonParser}
          * or <code>org.bson.BSONDecoder</code> from the MongoDB Java Driver
          * do) then this feature will be very useful.</p>
+         * <p>If the generator writes to a {@link SeekableByteChannel}, the
+         * headers of documents whose beginning has already been flushed
+         * will be patched on the channel, so the generated documents
+         * remain compatible to the specification.</p>
          * <p>This feature is disabled by default.</p>
          */
         ENABLE_STREAMING,
@@ -70,7 +84,16 @@ public class BsonGenerator extends GeneratorBase {
          * (since BSON specification 1.1).</p>
          * <p>This feature is disabled by default.</p>
          */
-        WRITE_BIGDECIMALS_AS_DECIMAL128;
+        WRITE_BIGDECIMALS_AS_DECIMAL128,
+
+        /**
+         * <p>Forces {@link UUID}s to be written in the standard binary
+         * representation (subtype 4, see {@link UuidRepresentation#STANDARD})
+         * instead of the legacy representation of the MongoDB Java driver
+         * (subtype 3).</p>
+         * <p>This feature is disabled by default.</p>
+         */
+        WRITE_UUIDS_AS_STANDARD;
 
         /**
          * @return the bit mask that identifies this feature
@@ -81,40 +104,11 @@ public class BsonGenerator extends GeneratorBase {
     }
 
     /**
-     * A structure describing the document currently being generated
+     * The number of bytes a generator writing to a {@link SeekableByteChannel}
+     * may flush before it starts over with a new output buffer at the end
+     * of the next top-level document
      */
-    protected static class DocumentInfo {
-        /**
-         * Information about the parent document (may be null if this
-         * document is the top-level one)
-         */
-        final DocumentInfo parent;
-
-        /**
-         * The position of the document's header in the output buffer
-         */
-        final int headerPos;
-
-        /**
-         * The current position in the array or -1 if the
-         * document is no array
-         */
-        int currentArrayPos;
-
-        /**
-         * Creates a new DocumentInfo object
-         * @param parent information about the parent document (may be
-         * null if this document is the top-level one)
-         * @param headerPos the position of the document's header
-         * in the output buffer
-         * @param array true if the document is an array
-         */
-        public DocumentInfo(DocumentInfo parent, int headerPos, boolean array) {
-            this.parent = parent;
-            this.headerPos = headerPos;
-            this.currentArrayPos = array ? 0 : -1;
-        }
-    }
+    protected static final int CHANNEL_REBASE_THRESHOLD = 1 << 30;
 
     /**
      * Bit flag composed of bits that indicate which
@@ -123,16 +117,60 @@ public class BsonGenerator extends GeneratorBase {
     protected final int _bsonFeatures;
 
     /**
-     * The output stream to write to
+     * The output stream to write to (null if the generator writes
+     * into {@link #_target} or {@link #_channel})
+     */
+    protected OutputStream _out;
+
+    /**
+     * A seekable channel to write to (null if the generator writes
+     * to {@link #_out} or into {@link #_target})
+     */
+    protected SeekableByteChannel _channel;
+
+    /**
+     * The position of {@link #_channel} that corresponds to the
+     * beginning of the output buffer
      */
-    protected final OutputStream _out;
+    protected long _channelBase;
+
+    /**
+     * A small buffer used to patch document headers that have
+     * already been written to {@link #_channel}
+     */
+    protected ByteBuffer _headerPatchBuffer;
+
+    /**
+     * A caller-supplied buffer the generator writes into directly
+     * (null if the generator writes to {@link #_out})
+     */
+    protected final ByteBuffer _target;
+
+    /**
+     * The position of {@link #_target} when the generator was created
+     */
+    protected final int _targetStart;
 
     /**
      * Since a BSON document's header must include the size of the whole document
      * in bytes, we have to buffer the whole document first, before we can
      * write it to the output stream. BSON specifies LITTLE_ENDIAN for all tokens.
+     * If streaming is disabled, the buffer starts small and grows with
+     * the document. Otherwise, it uses large internal buffers of uniform
+     * size that can be flushed to the output stream.
+     */
+    protected final DynamicOutputBuffer _buffer;
+
+    /**
+     * The pool {@link #_staticBuffers} has been acquired from
+     */
+    protected final StaticBuffersPool _staticBuffersPool;
+
+    /**
+     * Re-usable buffers acquired from {@link #_staticBuffersPool}. Will be
+     * released when the generator is closed.
      */
-    protected final DynamicOutputBuffer _buffer = new DynamicOutputBuffer(ByteOrder.LITTLE_ENDIAN);
+    protected StaticBuffers _staticBuffers;
 
     /**
      * Saves the position of the type marker for the object currently begin written
@@ -140,9 +178,26 @@ public class BsonGenerator extends GeneratorBase {
     protected int _typeMarker = 0;
 
     /**
-     * Saves information about documents (the main document and embedded ones)
+     * The positions of the headers of all documents currently being
+     * generated (the main document and embedded ones) indexed by their
+     * nesting depth. The array grows as needed and is kept when the
+     * generator is reset.
      */
-    protected DocumentInfo _currentDocument;
+    protected int[] _headerPositions = new int[8];
+
+    /**
+     * The current positions in the arrays currently being generated
+     * indexed by their nesting depth. An entry is -1 if the respective
+     * document is no array.
+     */
+    protected int[] _arrayPositions = new int[8];
+
+    /**
+     * The number of documents currently being generated (i.e. the nesting
+     * depth). 0 if no document has been started or if all documents have
+     * been finished.
+     */
+    protected int _depth;
 
     /**
      * Indicates that the next object to be encountered is actually embedded inside a value, and not a complete value
@@ -155,6 +210,18 @@ public class BsonGenerator extends GeneratorBase {
      */
     protected JsonWriteContext _writeContext;
 
+    /**
+     * Precomputed sizes of the documents to write in the order in which
+     * they are started (null if the sizes are unknown)
+     * @see #setDocumentSizes(int[])
+     */
+    protected int[] _documentSizes;
+
+    /**
+     * The index of the next size to take from {@link #_documentSizes}
+     */
+    protected int _documentSizeIndex;
+
     /**
      * Custom character escapes to use when writing strings (field names and string values)
      */
@@ -166,6 +233,29 @@ public class BsonGenerator extends GeneratorBase {
      */
     protected int[] _outputEscapes = null;
 
+    /**
+     * UTF-8 encoded escape sequences for ASCII characters. Filled lazily
+     * when a character has to be escaped for the first time (only valid
+     * if {@link #_characterEscapes} is not null).
+     */
+    protected byte[][] _escapeBytes = null;
+
+    /**
+     * The number of bytes that may remain in the output buffer after it
+     * has been flushed while streaming (-1 if internal buffers are only
+     * flushed as a whole)
+     * @see #setFlushWatermarks(int, int)
+     */
+    protected int _flushLowWatermark = -1;
+
+    /**
+     * The number of unflushed bytes that triggers flushing the output
+     * buffer while streaming (-1 if internal buffers are only flushed
+     * as a whole)
+     * @see #setFlushWatermarks(int, int)
+     */
+    protected int _flushHighWatermark = -1;
+
     /**
      * Creates a new generator
      * @param writeCtxt the object write context
@@ -177,26 +267,210 @@ public class BsonGenerator extends GeneratorBase {
      * @param out the output stream to write to
      */
     public BsonGenerator(ObjectWriteContext writeCtxt, IOContext ctxt, int jsonFeatures, int bsonFeatures, OutputStream out) {
+        this(writeCtxt, ctxt, jsonFeatures, bsonFeatures, out, StaticBuffersPools.defaultPool());
+    }
+
+    /**
+     * Creates a new generator that obtains its re-usable buffers from
+     * the given pool
+     * @param writeCtxt the object write context
+     * @param ctxt the IO context
+     * @param jsonFeatures bit flag composed of bits that indicate which
+     * {@link StreamWriteFeature}s are enabled.
+     * @param bsonFeatures bit flag composed of bits that indicate which
+     * {@link Feature}s are enabled.
+     * @param out the output stream to write to
+     * @param staticBuffersPool the pool providing re-usable buffers
+     */
+    public BsonGenerator(ObjectWriteContext writeCtxt, IOContext ctxt, int jsonFeatures,
+            int bsonFeatures, OutputStream out, StaticBuffersPool staticBuffersPool) {
         super(writeCtxt, ctxt, jsonFeatures);
         _bsonFeatures = bsonFeatures;
         _out = out;
+        _target = null;
+        _targetStart = 0;
         _writeContext = JsonWriteContext.createRootContext(null);
+        _staticBuffersPool = staticBuffersPool;
+        _staticBuffers = staticBuffersPool.acquire();
 
         if (isEnabled(Feature.ENABLE_STREAMING)) {
+            _buffer = new DynamicOutputBuffer(ByteOrder.LITTLE_ENDIAN,
+                    DynamicOutputBuffer.DEFAULT_BUFFER_SIZE,
+                    DynamicOutputBuffer.DEFAULT_BUFFER_SIZE, _staticBuffers);
+
             // if streaming is enabled, try to reuse some buffers
             // this will save garbage collector cycles if the tokens
             // written to the buffer are not too large
             _buffer.setReuseBuffersCount(2);
+        } else {
+            _buffer = new DynamicOutputBuffer(ByteOrder.LITTLE_ENDIAN,
+                    DynamicOutputBuffer.DEFAULT_ADAPTIVE_INITIAL_SIZE,
+                    DynamicOutputBuffer.DEFAULT_BUFFER_SIZE, _staticBuffers);
+        }
+    }
+
+    /**
+     * Creates a new generator that writes directly into the remaining space
+     * of the given buffer. Document headers are patched in place, so there
+     * are no intermediate copies. If the buffer is too small, a
+     * {@link BufferOverflowException} will be thrown. Whenever a top-level
+     * document is complete, the position of the buffer is moved behind it
+     * on {@link #flush()} and {@link #close()}. Streaming is not supported
+     * in this mode, so {@link Feature#ENABLE_STREAMING} will be ignored.
+     * @param writeCtxt the object write context
+     * @param ctxt the IO context
+     * @param jsonFeatures bit flag composed of bits that indicate which
+     * {@link StreamWriteFeature}s are enabled.
+     * @param bsonFeatures bit flag composed of bits that indicate which
+     * {@link Feature}s are enabled.
+     * @param target the buffer to write into
+     */
+    public BsonGenerator(ObjectWriteContext writeCtxt, IOContext ctxt, int jsonFeatures,
+            int bsonFeatures, ByteBuffer target) {
+        super(writeCtxt, ctxt, jsonFeatures);
+        _bsonFeatures = bsonFeatures & ~Feature.ENABLE_STREAMING.getMask();
+        _out = null;
+        _target = target;
+        _targetStart = target.position();
+        _writeContext = JsonWriteContext.createRootContext(null);
+        _staticBuffersPool = null;
+        _staticBuffers = null;
+        _buffer = new DynamicOutputBuffer(ByteOrder.LITTLE_ENDIAN, target);
+    }
+
+    /**
+     * Creates a new generator that writes into the given buffer. The
+     * generator does not write to any output stream, so streaming is not
+     * supported and {@link Feature#ENABLE_STREAMING} will be ignored.
+     * Flushing the generator has no effect, and closing it does not clear
+     * the buffer. Subclasses can use this constructor to pass specialized
+     * buffers such as a {@link de.undercouch.bson4jackson.io.CountingOutputBuffer}.
+     * @param writeCtxt the object write context
+     * @param ctxt the IO context
+     * @param jsonFeatures bit flag composed of bits that indicate which
+     * {@link StreamWriteFeature}s are enabled.
+     * @param bsonFeatures bit flag composed of bits that indicate which
+     * {@link Feature}s are enabled.
+     * @param buffer the buffer to write into
+     */
+    protected BsonGenerator(ObjectWriteContext writeCtxt, IOContext ctxt, int jsonFeatures,
+            int bsonFeatures, DynamicOutputBuffer buffer) {
+        super(writeCtxt, ctxt, jsonFeatures);
+        _bsonFeatures = bsonFeatures & ~Feature.ENABLE_STREAMING.getMask();
+        _out = null;
+        _target = null;
+        _targetStart = 0;
+        _writeContext = JsonWriteContext.createRootContext(null);
+        _staticBuffersPool = null;
+        _staticBuffers = null;
+        _buffer = buffer;
+    }
+
+    /**
+     * <p>Creates a new generator that writes to a seekable channel.
+     * Streaming is always enabled in this mode, so the output buffer is
+     * flushed to the channel from time to time. The headers of documents
+     * that have already been partially written will be patched by seeking
+     * back on the channel when the documents end, so the generated BSON
+     * remains compatible to the specification.</p>
+     * <p>The generator writes at the channel's current position. It
+     * temporarily changes the position while patching headers but always
+     * restores it afterwards.</p>
+     * @param writeCtxt the object write context
+     * @param ctxt the IO context
+     * @param jsonFeatures bit flag composed of bits that indicate which
+     * {@link StreamWriteFeature}s are enabled.
+     * @param bsonFeatures bit flag composed of bits that indicate which
+     * {@link Feature}s are enabled.
+     * @param channel the channel to write to
+     * @param staticBuffersPool the pool providing re-usable buffers
+     */
+    public BsonGenerator(ObjectWriteContext writeCtxt, IOContext ctxt, int jsonFeatures,
+            int bsonFeatures, SeekableByteChannel channel, StaticBuffersPool staticBuffersPool) {
+        this(writeCtxt, ctxt, jsonFeatures, bsonFeatures | Feature.ENABLE_STREAMING.getMask(),
+                (OutputStream)null, staticBuffersPool);
+        _channel = channel;
+        try {
+            _channelBase = channel.position();
+        } catch (IOException e) {
+            throw _wrapIOFailure(e);
         }
     }
 
+    /**
+     * <p>Resets this generator so it can be re-used to write to another
+     * output stream. This avoids allocating a new generator and its buffers
+     * for each document. Content that has not been flushed yet (see
+     * {@link #flush()}) and documents that have not been finished are
+     * discarded. The previous output stream is neither flushed nor closed.</p>
+     * <p>A generator must only be reset if it has not been closed and if
+     * it writes to an output stream. It must not be used by more than one
+     * thread at a time. If it has been created with the thread-local
+     * {@link StaticBuffersPool} (the default), it should only be reset and
+     * used on the thread that created it. Use
+     * {@link BsonFactory#acquireGenerator(OutputStream)} to get generators
+     * that can be shared between threads.</p>
+     * <p>The generator keeps the {@link ObjectWriteContext} and the
+     * {@link IOContext} it has been created with. Its
+     * {@link #streamWriteOutputTarget()} refers to the new output stream.</p>
+     * @param out the output stream to write to
+     * @throws IllegalStateException if the generator has already been closed
+     * or if it writes into a caller-supplied buffer or channel
+     */
+    public void reset(OutputStream out) {
+        if (isClosed()) {
+            throw new IllegalStateException("Generator has already been closed");
+        }
+        if (_target != null || _channel != null) {
+            throw new IllegalStateException("Generator writes into a " +
+                    "caller-supplied buffer or channel and cannot be reset");
+        }
+
+        _buffer.clear();
+        _out = out;
+        _typeMarker = 0;
+        _depth = 0;
+        nextObjectIsEmbeddedInValue = false;
+        _writeContext = JsonWriteContext.createRootContext(null);
+        _documentSizes = null;
+        _documentSizeIndex = 0;
+    }
+
+    /**
+     * <p>Provides the sizes of the documents this generator is about to
+     * write. The sizes must have been calculated by a
+     * {@link BsonSizingGenerator} that received exactly the same tokens
+     * (see {@link BsonSizingGenerator#getDocumentSizes()}). The generator
+     * writes the sizes into the document headers as soon as the documents
+     * are started, so it does not have to buffer whole documents anymore.
+     * In combination with {@link Feature#ENABLE_STREAMING}, the output
+     * buffer can be flushed at any time and the generated documents are
+     * still compatible to the specification.</p>
+     * <p>The sizes are consumed in order. Pass <code>null</code> to
+     * go back to calculating sizes at the end of each document.</p>
+     * @param sizes the precomputed document sizes (may be null)
+     * @throws IllegalStateException if a document has already been started
+     * but has not been finished yet
+     * @see BsonDocumentSizer
+     */
+    public void setDocumentSizes(int[] sizes) {
+        if (_depth > 0) {
+            throw new IllegalStateException("Document sizes cannot be " +
+                    "changed while a document is being written");
+        }
+        _documentSizes = sizes;
+        _documentSizeIndex = 0;
+    }
+
     @Override
     public JsonGenerator setCharacterEscapes(CharacterEscapes esc) {
         _characterEscapes = esc;
         if (esc == null) {
             _outputEscapes = null;
+            _escapeBytes = null;
         } else {
             _outputEscapes = esc.getEscapeCodesForAscii();
+            _escapeBytes = new byte[_outputEscapes.length][];
         }
         return this;
     }
@@ -219,7 +493,7 @@ public class BsonGenerator extends GeneratorBase {
      * @return true if the generator is currently processing an array
      */
     protected boolean isArray() {
-        return _currentDocument != null && _currentDocument.currentArrayPos >= 0;
+        return _depth > 0 && _arrayPositions[_depth - 1] >= 0;
     }
 
     /**
@@ -229,19 +503,52 @@ public class BsonGenerator extends GeneratorBase {
      * the current document is not an array
      */
     protected int getAndIncCurrentArrayPos() {
-        if (_currentDocument == null) {
+        if (_depth == 0) {
             return -1;
         }
-        int r = _currentDocument.currentArrayPos;
-        ++_currentDocument.currentArrayPos;
-        return r;
+        return _arrayPositions[_depth - 1]++;
+    }
+
+    /**
+     * Saves information about a new document being started
+     * @param headerPos the position of the document's header
+     * in the output buffer
+     * @param array true if the document is an array
+     */
+    protected void pushDocument(int headerPos, boolean array) {
+        if (_depth == _headerPositions.length) {
+            _headerPositions = Arrays.copyOf(_headerPositions, _depth * 2);
+            _arrayPositions = Arrays.copyOf(_arrayPositions, _depth * 2);
+        }
+        _headerPositions[_depth] = headerPos;
+        _arrayPositions[_depth] = array ? 0 : -1;
+        ++_depth;
+    }
+
+    /**
+     * Removes the information about the innermost document
+     * @return the position of the document's header in the output buffer
+     */
+    protected int popDocument() {
+        --_depth;
+        return _headerPositions[_depth];
     }
 
     /**
-     * Reserves bytes for the BSON document header
+     * Reserves bytes for the BSON document header. If the document sizes
+     * have been precomputed (see {@link #setDocumentSizes(int[])}), the
+     * next size will be written.
      */
     protected void reserveHeader() {
-        _buffer.putInt(0);
+        if (_documentSizes == null) {
+            _buffer.putInt(0);
+            return;
+        }
+        if (_documentSizeIndex >= _documentSizes.length) {
+            _reportError("More documents written than document sizes " +
+                    "have been precomputed");
+        }
+        _buffer.putInt(_documentSizes[_documentSizeIndex++]);
     }
 
     /**
@@ -250,46 +557,167 @@ public class BsonGenerator extends GeneratorBase {
      * @param pos the position where to write the header
      */
     protected void putHeader(int pos) {
-        _buffer.putInt(pos, _buffer.size() - pos);
+        int size = _buffer.size() - pos;
+        if (_channel != null && pos < _buffer.getFlushPosition()) {
+            try {
+                putHeaderToChannel(pos, size);
+            } catch (IOException e) {
+                throw _wrapIOFailure(e);
+            }
+        } else {
+            _buffer.putInt(pos, size);
+        }
     }
 
-    @Override
-    public void flush() {
+    /**
+     * Writes a document header whose first bytes have already been flushed
+     * to {@link #_channel}. Seeks back to the header's position, overwrites
+     * the flushed bytes and then restores the channel's position. Bytes of
+     * the header that are still in the output buffer are patched there.
+     * @param pos the position of the header in the output buffer
+     * @param size the document size to write into the header
+     * @throws IOException if the channel could not be written
+     */
+    protected void putHeaderToChannel(int pos, int size) throws IOException {
+        if (_headerPatchBuffer == null) {
+            _headerPatchBuffer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        int flushed = Math.min(4, _buffer.getFlushPosition() - pos);
+        ByteBuffer bb = _headerPatchBuffer;
+        bb.clear();
+        bb.putInt(0, size);
+        bb.limit(flushed);
+
+        long current = _channel.position();
+        _channel.position(_channelBase + pos);
+        while (bb.hasRemaining()) {
+            _channel.write(bb);
+        }
+        _channel.position(current);
+
+        for (int i = flushed; i < 4; ++i) {
+            _buffer.putByte(pos + i, (byte)(size >>> (8 * i)));
+        }
+    }
+
+    /**
+     * @return true if document headers can be written when a document ends.
+     * This is always possible unless the generator streams to an output
+     * stream where the header might not be available anymore.
+     */
+    protected boolean canPutHeaders() {
+        return !isEnabled(Feature.ENABLE_STREAMING) || _channel != null;
+    }
+
+    /**
+     * @return true if this generator neither writes to an output stream
+     * nor to a channel nor to a target buffer but only into its output
+     * buffer (see {@link #BsonGenerator(ObjectWriteContext, IOContext, int, int, DynamicOutputBuffer)})
+     */
+    protected boolean isWritingToBuffer() {
+        return _out == null && _channel == null && _target == null;
+    }
+
+    /**
+     * Writes the whole output buffer to the output stream or channel
+     * and clears it afterwards
+     * @throws IOException if the buffer could not be written
+     */
+    protected void writeBufferAndClear() throws IOException {
+        if (_channel != null) {
+            _buffer.writeTo(_channel);
+            _buffer.clear();
+            _channelBase = _channel.position();
+        } else {
+            _buffer.writeTo(_out);
+            _buffer.clear();
+        }
+    }
+
+    /**
+     * Writes the output buffer to the output stream or channel and clears
+     * it, but only if no document is currently being written. In contrast
+     * to {@link #flush()}, the output stream itself will not be flushed.
+     * If the generator writes into a target buffer, the buffer's position
+     * will be moved behind the last complete document instead.
+     */
+    protected void writeCompleteDocuments() {
+        // we must not write the buffer if we are currently writing a document
+        // otherwise we cannot write the document size to the header at the end
+        if (_depth > 0) {
+            return;
+        }
+        if (_target != null) {
+            _target.position(_targetStart + _buffer.size());
+            return;
+        }
+        if (isWritingToBuffer()) {
+            // the caller owns the buffer. there is nothing to write.
+            return;
+        }
+
         try {
-            // we must not flush the buffer if we are currently writing a document
-            // otherwise we cannot write the document size to the header at the end
-            if (_currentDocument == null) {
-                _buffer.writeTo(_out);
-                _buffer.clear();
-            }
-            _out.flush();
+            writeBufferAndClear();
         } catch (IOException e) {
             throw _wrapIOFailure(e);
         }
     }
 
+    @Override
+    public void flush() {
+        writeCompleteDocuments();
+        if (_out != null) {
+            try {
+                _out.flush();
+            } catch (IOException e) {
+                throw _wrapIOFailure(e);
+            }
+        }
+    }
+
     @Override
     protected void _releaseBuffers() {
-        _buffer.clear();
+        if (!isWritingToBuffer()) {
+            _buffer.clear();
+        }
+        if (_staticBuffers != null) {
+            _staticBuffersPool.release(_staticBuffers);
+            _staticBuffers = null;
+        }
     }
 
     @Override
     protected void _closeInput() throws IOException {
         // finish document
         if (isEnabled(StreamWriteFeature.AUTO_CLOSE_CONTENT)) {
-            while (_currentDocument != null) {
+            while (_depth > 0) {
                 writeEndObject();
             }
         }
 
+        if (_target != null) {
+            // the bytes are already in the target buffer. only
+            // move its position behind the last complete document.
+            flush();
+            return;
+        }
+        if (isWritingToBuffer()) {
+            return;
+        }
+
         // write buffer to output stream (if streaming is enabled,
         // this will write the rest of the buffer)
-        _buffer.writeTo(_out);
-        _buffer.clear();
-        _out.flush();
+        writeBufferAndClear();
+        if (_out != null) {
+            _out.flush();
+        }
 
         if (isEnabled(StreamWriteFeature.AUTO_CLOSE_TARGET)) {
-            _out.close();
+            if (_channel != null) {
+                _channel.close();
+            } else {
+                _out.close();
+            }
         }
     }
 
@@ -305,6 +733,12 @@ public class BsonGenerator extends GeneratorBase {
 
     @Override
     public Object streamWriteOutputTarget() {
+        if (_target != null) {
+            return _target;
+        }
+        if (_channel != null) {
+            return _channel;
+        }
         return _out;
     }
 
@@ -364,7 +798,7 @@ public class BsonGenerator extends GeneratorBase {
     public JsonGenerator writeStartObject() {
         if (nextObjectIsEmbeddedInValue) {
             _writeContext = _writeContext.createChildObjectContext(null);
-            _currentDocument = new DocumentInfo(_currentDocument, _buffer.size(), false);
+            pushDocument(_buffer.size(), false);
             reserveHeader();
 
             // We've skipped everything we need to skip, the next object may not be embedded in a value
@@ -383,12 +817,12 @@ public class BsonGenerator extends GeneratorBase {
      */
     protected void _writeStartObject(boolean array) {
         _writeArrayFieldNameIfNeeded();
-        if (_currentDocument != null) {
+        if (_depth > 0) {
             // embedded document/array
             _buffer.putByte(_typeMarker, array ? BsonConstants.TYPE_ARRAY :
                     BsonConstants.TYPE_DOCUMENT);
         }
-        _currentDocument = new DocumentInfo(_currentDocument, _buffer.size(), array);
+        pushDocument(_buffer.size(), array);
         reserveHeader();
     }
 
@@ -404,16 +838,28 @@ public class BsonGenerator extends GeneratorBase {
     }
 
     protected void writeEndObjectInternal() {
-        if (_currentDocument != null) {
+        if (_depth > 0) {
             _buffer.putByte(BsonConstants.TYPE_END);
-            DocumentInfo info = _currentDocument;
-            _currentDocument = _currentDocument.parent;
+            int headerPos = popDocument();
 
             // re-write header to update document size (only if
-            // streaming is not enabled since in this case the buffer
-            // containing the header might not be available anymore)
-            if (!isEnabled(Feature.ENABLE_STREAMING)) {
-                putHeader(info.headerPos);
+            // streaming is not enabled or if we can seek back on the
+            // channel since otherwise the buffer containing the header
+            // might not be available anymore)
+            if (canPutHeaders()) {
+                putHeader(headerPos);
+            }
+
+            // positions in the output buffer are ints, so start over
+            // when a top-level document has been written and the
+            // buffer has grown large
+            if (_channel != null && _depth == 0 &&
+                    _buffer.getFlushPosition() > CHANNEL_REBASE_THRESHOLD) {
+                try {
+                    writeBufferAndClear();
+                } catch (IOException e) {
+                    throw _wrapIOFailure(e);
+                }
             }
         }
     }
@@ -446,15 +892,12 @@ public class BsonGenerator extends GeneratorBase {
     }
 
     protected void _writeFieldName(String name) {
-        // escape characters if necessary
-        name = escapeCharacters(name);
-
         // reserve bytes for the type
         _typeMarker = _buffer.size();
         _buffer.putByte((byte)0);
 
-        // write field name
-        _buffer.putUTF8(name);
+        // write field name and escape characters if necessary
+        putEscapedUTF8(name);
         _buffer.putByte(BsonConstants.END_OF_STRING);
     }
 
@@ -466,14 +909,71 @@ public class BsonGenerator extends GeneratorBase {
         }
     }
 
+    /**
+     * <p>Configures when the output buffer is flushed if streaming is
+     * enabled. As soon as at least <code>high</code> bytes have not been
+     * flushed yet, the buffer is flushed until only <code>low</code>
+     * bytes remain. Small values reduce latency, large values reduce the
+     * number of write calls.</p>
+     * <p>By default, the buffer is only flushed whenever one of its
+     * internal buffers is full. Pass -1 for both values to restore this
+     * behavior.</p>
+     * @param low the number of bytes that may remain in the buffer
+     * after flushing
+     * @param high the number of unflushed bytes that triggers flushing
+     * @throws IllegalArgumentException if <code>high</code> is not
+     * positive or if <code>low</code> is negative or larger than
+     * <code>high</code>
+     */
+    public void setFlushWatermarks(int low, int high) {
+        if (low == -1 && high == -1) {
+            _flushLowWatermark = -1;
+            _flushHighWatermark = -1;
+            return;
+        }
+        if (high <= 0) {
+            throw new IllegalArgumentException("High watermark must be larger than 0");
+        }
+        if (low < 0 || low > high) {
+            throw new IllegalArgumentException("Low watermark must not be " +
+                    "negative or larger than the high watermark");
+        }
+        _flushLowWatermark = low;
+        _flushHighWatermark = high;
+    }
+
+    /**
+     * Sets the number of internal buffers the output buffer keeps for
+     * re-use after they have been flushed while streaming
+     * @param count the number of buffers to keep
+     * @see DynamicOutputBuffer#setReuseBuffersCount(int)
+     */
+    public void setReuseBuffersCount(int count) {
+        _buffer.setReuseBuffersCount(count);
+    }
+
     /**
      * Tries to flush the output buffer if streaming is enabled. This
      * method is a no-op if streaming is disabled.
      */
     protected void flushBuffer() {
+        if (!isEnabled(Feature.ENABLE_STREAMING)) {
+            return;
+        }
         try {
-            if (isEnabled(Feature.ENABLE_STREAMING)) {
-                _buffer.flushTo(_out);
+            if (_flushHighWatermark < 0) {
+                if (_channel != null) {
+                    _buffer.flushTo(_channel);
+                } else {
+                    _buffer.flushTo(_out);
+                }
+            } else if (_buffer.size() - _buffer.getFlushPosition() >= _flushHighWatermark) {
+                int position = _buffer.size() - _flushLowWatermark;
+                if (_channel != null) {
+                    _buffer.flushTo(_channel, position);
+                } else {
+                    _buffer.flushTo(_out, position);
+                }
             }
         } catch (IOException e) {
             throw _wrapIOFailure(e);
@@ -495,7 +995,29 @@ public class BsonGenerator extends GeneratorBase {
 
     @Override
     public JsonGenerator writeString(char[] text, int offset, int len) {
-        return writeString(new String(text, offset, len));
+        if (_characterEscapes != null) {
+            // escaping works on strings only
+            return writeString(new String(text, offset, len));
+        }
+
+        _writeArrayFieldNameIfNeeded();
+
+        _verifyValueWrite("write string");
+        _buffer.putByte(_typeMarker, BsonConstants.TYPE_STRING);
+
+        // reserve space for the string size
+        int p = _buffer.size();
+        _buffer.putInt(0);
+
+        // encode characters directly without creating a string
+        int l = _buffer.putUTF8(text, offset, len);
+        _buffer.putByte(BsonConstants.END_OF_STRING);
+
+        // write string size
+        _buffer.putInt(p, l + 1);
+
+        flushBuffer();
+        return this;
     }
 
     @Override
@@ -520,9 +1042,9 @@ public class BsonGenerator extends GeneratorBase {
         _writeArrayFieldNameIfNeeded();
         _verifyValueWrite("write raw string");
         _buffer.putByte(_typeMarker, BsonConstants.TYPE_BINARY);
-        _buffer.putInt(text.length * 2);
+        _buffer.putInt(len * 2);
         _buffer.putByte(BsonConstants.SUBTYPE_BINARY);
-        _buffer.putString(CharBuffer.wrap(text));
+        _buffer.putString(CharBuffer.wrap(text, offset, len));
         flushBuffer();
         return this;
     }
@@ -623,14 +1145,16 @@ public class BsonGenerator extends GeneratorBase {
     @Override
     public JsonGenerator writeNumber(BigDecimal dec) {
         if (isEnabled(Feature.WRITE_BIGDECIMALS_AS_DECIMAL128)) {
-            Decimal128 d = new Decimal128(dec);
-            _writeArrayFieldNameIfNeeded();
-            _verifyValueWrite("write number");
-            _buffer.putByte(_typeMarker, BsonConstants.TYPE_DECIMAL128);
-            _buffer.putLong(d.getLow());
-            _buffer.putLong(d.getHigh());
-            flushBuffer();
-            return this;
+            Decimal128 d;
+            if (dec.precision() <= 18) {
+                // the unscaled value fits into a long. Moving the decimal
+                // point does not inflate it into a BigInteger.
+                d = Decimal128.valueOf(dec.scaleByPowerOfTen(dec.scale()).longValue(),
+                        dec.scale());
+            } else {
+                d = new Decimal128(dec);
+            }
+            return writeDecimal128(d);
         }
 
         if (isEnabled(Feature.WRITE_BIGDECIMALS_AS_STRINGS)) {
@@ -647,6 +1171,33 @@ public class BsonGenerator extends GeneratorBase {
         }
     }
 
+    /**
+     * Write a BSON Decimal128 value
+     * @param d the value to write
+     * @return this generator
+     */
+    public JsonGenerator writeDecimal128(Decimal128 d) {
+        _writeArrayFieldNameIfNeeded();
+        _verifyValueWrite("write number");
+        _buffer.putByte(_typeMarker, BsonConstants.TYPE_DECIMAL128);
+        _buffer.putLong(d.getLow());
+        _buffer.putLong(d.getHigh());
+        flushBuffer();
+        return this;
+    }
+
+    /**
+     * Write a BSON Decimal128 value given by an unscaled value and a scale
+     * (i.e. <code>unscaledValue * 10^-scale</code>) without creating a
+     * {@link BigDecimal} first
+     * @param unscaledValue the unscaled value
+     * @param scale the scale
+     * @return this generator
+     */
+    public JsonGenerator writeDecimal128(long unscaledValue, int scale) {
+        return writeDecimal128(Decimal128.valueOf(unscaledValue, scale));
+    }
+
     @Override
     public JsonGenerator writeNumber(String encodedValue)
             throws UnsupportedOperationException {
@@ -684,13 +1235,11 @@ public class BsonGenerator extends GeneratorBase {
         _buffer.putInt(0);
 
         // write string
-        for (int i = offset; i < offset + length; ++i) {
-            _buffer.putByte(text[i]);
-        }
+        _buffer.putBytes(text, offset, length);
         _buffer.putByte(BsonConstants.END_OF_STRING);
 
         // write string size
-        _buffer.putInt(p, length);
+        _buffer.putInt(p, length + 1);
 
         flushBuffer();
         return this;
@@ -791,6 +1340,126 @@ public class BsonGenerator extends GeneratorBase {
         return this;
     }
 
+    /**
+     * Write a UUID as binary data. Uses the standard representation if
+     * {@link Feature#WRITE_UUIDS_AS_STANDARD} is enabled and the legacy
+     * representation otherwise.
+     * @param uuid the UUID to write
+     * @return this generator
+     */
+    public JsonGenerator writeUuid(UUID uuid) {
+        return writeUuid(uuid, isEnabled(Feature.WRITE_UUIDS_AS_STANDARD) ?
+                UuidRepresentation.STANDARD : UuidRepresentation.JAVA_LEGACY);
+    }
+
+    /**
+     * Write a UUID as binary data in the given representation. The UUID's
+     * bits are written directly into the output buffer.
+     * @param uuid the UUID to write
+     * @param representation the binary representation to use
+     * @return this generator
+     */
+    public JsonGenerator writeUuid(UUID uuid, UuidRepresentation representation) {
+        _writeArrayFieldNameIfNeeded();
+        _verifyValueWrite("write uuid");
+        _buffer.putByte(_typeMarker, BsonConstants.TYPE_BINARY);
+        _buffer.putInt(16);
+        _buffer.putByte(representation.getSubtype());
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        if (representation == UuidRepresentation.STANDARD) {
+            // the buffer is little endian
+            msb = Long.reverseBytes(msb);
+            lsb = Long.reverseBytes(lsb);
+        }
+        _buffer.putLong(msb);
+        _buffer.putLong(lsb);
+        flushBuffer();
+        return this;
+    }
+
+    /**
+     * Write a binary vector (binary subtype {@link BsonConstants#SUBTYPE_VECTOR})
+     * @param vector the vector to write
+     * @return this generator
+     */
+    public JsonGenerator writeBinaryVector(BinaryVector vector) {
+        ByteBuffer data = vector.getData();
+        _writeVectorHeader(vector.getDType(), vector.getPadding(), data.remaining());
+        _buffer.putBytes(data);
+        flushBuffer();
+        return this;
+    }
+
+    /**
+     * Write a vector of 32-bit floating point numbers. The numbers are
+     * copied in bulk into the output buffer without creating a
+     * {@link BinaryVector} first.
+     * @param values the vector elements
+     * @param offset the offset of the first element to write
+     * @param len the number of elements to write
+     * @return this generator
+     */
+    public JsonGenerator writeFloatVector(float[] values, int offset, int len) {
+        _writeVectorHeader(BsonConstants.VECTOR_DTYPE_FLOAT32, 0, len * 4);
+        _buffer.putFloats(values, offset, len);
+        flushBuffer();
+        return this;
+    }
+
+    /**
+     * Write a vector of signed 8-bit integers without creating a
+     * {@link BinaryVector} first
+     * @param values the vector elements
+     * @param offset the offset of the first element to write
+     * @param len the number of elements to write
+     * @return this generator
+     */
+    public JsonGenerator writeInt8Vector(byte[] values, int offset, int len) {
+        _writeVectorHeader(BsonConstants.VECTOR_DTYPE_INT8, 0, len);
+        _buffer.putBytes(values, offset, len);
+        flushBuffer();
+        return this;
+    }
+
+    /**
+     * Write a vector of packed bits without creating a {@link BinaryVector}
+     * first
+     * @param bits the bits packed into bytes
+     * @param offset the offset of the first byte to write
+     * @param len the number of bytes to write
+     * @param padding the number of unused least significant bits in the
+     * last byte
+     * @return this generator
+     */
+    public JsonGenerator writePackedBitVector(byte[] bits, int offset, int len,
+            int padding) {
+        if (padding < 0 || padding > 7 || (len == 0 && padding != 0)) {
+            throw new IllegalArgumentException("Invalid padding: " + padding);
+        }
+        _writeVectorHeader(BsonConstants.VECTOR_DTYPE_PACKED_BIT, padding, len);
+        _buffer.putBytes(bits, offset, len);
+        flushBuffer();
+        return this;
+    }
+
+    /**
+     * Writes the type marker and the binary header of a vector including
+     * its data type and padding bytes
+     * @param dtype the vector's data type
+     * @param padding the vector's padding
+     * @param len the number of bytes of the vector elements
+     */
+    protected void _writeVectorHeader(byte dtype, int padding, int len) {
+        _writeArrayFieldNameIfNeeded();
+        _verifyValueWrite("write binary vector");
+        _buffer.putByte(_typeMarker, BsonConstants.TYPE_BINARY);
+        _buffer.putInt(len + 2);
+        _buffer.putByte(BsonConstants.SUBTYPE_VECTOR);
+        _buffer.putByte(dtype);
+        _buffer.putByte((byte)padding);
+    }
+
     /**
      * Write a BSON JavaScript object
      * @param javaScript The javaScript to write
@@ -807,7 +1476,7 @@ public class BsonGenerator extends GeneratorBase {
             _buffer.putByte(_typeMarker, BsonConstants.TYPE_JAVASCRIPT_WITH_SCOPE);
             // reserve space for the entire structure size
             int p = _buffer.size();
-            _buffer.putInt(0);
+            reserveHeader();
 
             // write the code
             _writeString(javaScript.getCode());
@@ -816,9 +1485,8 @@ public class BsonGenerator extends GeneratorBase {
             // write the document
             ctxt.writeValue(this, javaScript.getScope());
             // write the length
-            if (!isEnabled(Feature.ENABLE_STREAMING)) {
-                int l = _buffer.size() - p;
-                _buffer.putInt(p, l);
+            if (canPutHeaders()) {
+                putHeader(p);
             }
         }
         flushBuffer();
@@ -839,6 +1507,78 @@ public class BsonGenerator extends GeneratorBase {
         return this;
     }
 
+    /**
+     * Write the BSON MinKey value
+     * @return this generator
+     */
+    public JsonGenerator writeMinKey() {
+        _writeArrayFieldNameIfNeeded();
+        _verifyValueWrite("write MinKey");
+        _buffer.putByte(_typeMarker, BsonConstants.TYPE_MINKEY);
+        flushBuffer();
+        return this;
+    }
+
+    /**
+     * Write the BSON MaxKey value
+     * @return this generator
+     */
+    public JsonGenerator writeMaxKey() {
+        _writeArrayFieldNameIfNeeded();
+        _verifyValueWrite("write MaxKey");
+        _buffer.putByte(_typeMarker, BsonConstants.TYPE_MAXKEY);
+        flushBuffer();
+        return this;
+    }
+
+    /**
+     * Write a complete BSON document verbatim. Its bytes are copied into
+     * the output buffer without being decoded. If the generator is
+     * currently writing a document or an array, the given document will
+     * be embedded.
+     * @param document the document to write
+     * @return this generator
+     */
+    public JsonGenerator writeRawDocument(BsonBytes document) {
+        return _writeRawDocument(document, false);
+    }
+
+    /**
+     * Write a complete BSON array verbatim. Its bytes are copied into the
+     * output buffer without being decoded.
+     * @param array the array to write (encoded like a document whose
+     * field names are the array indexes)
+     * @return this generator
+     */
+    public JsonGenerator writeRawArray(BsonBytes array) {
+        return _writeRawDocument(array, true);
+    }
+
+    /**
+     * Writes the type marker of an embedded document or array (if
+     * necessary) and copies the given bytes into the output buffer
+     * @param document the document or array to write
+     * @param array true if the document is an array
+     * @return this generator
+     */
+    protected JsonGenerator _writeRawDocument(BsonBytes document, boolean array) {
+        if (nextObjectIsEmbeddedInValue) {
+            // the document is the scope of JavaScript code and does not
+            // need a type marker
+            nextObjectIsEmbeddedInValue = false;
+        } else {
+            _writeArrayFieldNameIfNeeded();
+            _verifyValueWrite(array ? "write raw array" : "write raw document");
+            if (_depth > 0) {
+                _buffer.putByte(_typeMarker, array ? BsonConstants.TYPE_ARRAY :
+                        BsonConstants.TYPE_DOCUMENT);
+            }
+        }
+        _buffer.putBytes(document.asByteBuffer());
+        flushBuffer();
+        return this;
+    }
+
     /**
      * Write a BSON string structure (a null terminated string prependend by the length of the string)
      * @param string The string to write
@@ -864,18 +1604,79 @@ public class BsonGenerator extends GeneratorBase {
      */
     protected int _writeCString(String string) {
         // escape characters if necessary
-        string = escapeCharacters(string);
-        int l = _buffer.putUTF8(string);
+        int l = putEscapedUTF8(string);
         _buffer.putByte(BsonConstants.END_OF_STRING);
         return l + 1;
     }
 
+    /**
+     * Encodes the given string as UTF-8 and puts it into the output buffer.
+     * Characters are escaped according to {@link #_characterEscapes} on
+     * the fly. The unescaped parts of the string are written directly and
+     * escape sequences are copied from {@link #_escapeBytes}, so no
+     * intermediate strings are created.
+     * @param string the string to write
+     * @return the number of bytes written
+     */
+    protected int putEscapedUTF8(String string) {
+        if (_characterEscapes == null) {
+            return _buffer.putUTF8(string);
+        }
+
+        int[] escapes = _outputEscapes;
+        int l = 0;
+        int lastEscapePos = 0;
+        int len = string.length();
+        for (int i = 0; i < len; ++i) {
+            char c = string.charAt(i);
+            if (c < escapes.length && escapes[c] == CharacterEscapes.ESCAPE_CUSTOM) {
+                if (i > lastEscapePos) {
+                    l += _buffer.putUTF8(string, lastEscapePos, i);
+                }
+                byte[] escape = escapeBytes(c);
+                _buffer.putBytes(escape);
+                l += escape.length;
+                lastEscapePos = i + 1;
+            }
+        }
+        if (lastEscapePos < len) {
+            l += _buffer.putUTF8(string, lastEscapePos, len);
+        }
+        return l;
+    }
+
+    /**
+     * Gets the UTF-8 encoded escape sequence for the given character from
+     * {@link #_escapeBytes} or retrieves it from {@link #_characterEscapes}
+     * if it has not been requested before
+     * @param c the character to escape
+     * @return the escape sequence
+     */
+    protected byte[] escapeBytes(int c) {
+        byte[] r = _escapeBytes[c];
+        if (r == null) {
+            SerializableString escape = _characterEscapes.getEscapeSequence(c);
+            if (escape == null) {
+                throw _constructWriteException("Invalid custom escape definitions; custom escape "
+                        + "not found for character code 0x" + Integer.toHexString(c) +
+                        ", although was supposed to have one");
+            }
+            r = escape.asUnquotedUTF8();
+            _escapeBytes[c] = r;
+        }
+        return r;
+    }
+
     /**
      * Escapes the given string according to {@link #_characterEscapes}. If
      * there are no character escapes returns the original string.
      * @param string the string to escape
      * @return the escaped string or the original one if there is nothing to escape
+     * @deprecated This method is not called anymore. Strings are escaped
+     * while they are written. Override {@link #putEscapedUTF8(String)} to
+     * customize escaping.
      */
+    @Deprecated
     protected String escapeCharacters(String string) {
         if (_characterEscapes == null) {
             // escaping not necessary
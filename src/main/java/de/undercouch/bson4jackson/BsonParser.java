@@ -5,7 +5,12 @@ import de.undercouch.bson4jackson.io.ByteOrderUtil;
 import de.undercouch.bson4jackson.io.CountingInputStream;
 import de.undercouch.bson4jackson.io.LittleEndianInputStream;
 import de.undercouch.bson4jackson.io.StaticBufferedInputStream;
+import de.undercouch.bson4jackson.io.StaticBuffers;
+import de.undercouch.bson4jackson.io.StaticBuffersPool;
+import de.undercouch.bson4jackson.io.StaticBuffersPools;
 import de.undercouch.bson4jackson.io.UnsafeByteArrayInputStream;
+import de.undercouch.bson4jackson.raw.BsonBytes;
+import de.undercouch.bson4jackson.types.BinaryVector;
 import de.undercouch.bson4jackson.types.Decimal128;
 import de.undercouch.bson4jackson.types.JavaScript;
 import de.undercouch.bson4jackson.types.ObjectId;
@@ -24,7 +29,6 @@ import tools.jackson.core.exc.StreamReadException;
 import tools.jackson.core.io.ContentReference;
 import tools.jackson.core.io.IOContext;
 import tools.jackson.core.json.JsonReadContext;
-import tools.jackson.core.type.TypeReference;
 
 import java.io.BufferedInputStream;
 import java.io.EOFException;
@@ -35,8 +39,12 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.regex.Pattern;
@@ -54,7 +62,18 @@ public class BsonParser extends ParserBase {
          * reading from streams that may contain other content after the
          * document that will be read by something else.
          */
-        HONOR_DOCUMENT_LENGTH;
+        HONOR_DOCUMENT_LENGTH,
+
+        /**
+         * <p>Reports {@link Decimal128} values as
+         * {@link JsonToken#VALUE_NUMBER_FLOAT} with the number type
+         * {@link NumberType#BIG_DECIMAL} instead of embedded objects. This
+         * allows them to be deserialized like any other number. NaN and
+         * infinite values as well as negative zero are reported as
+         * {@link Double}s.</p>
+         * <p>This feature is disabled by default.</p>
+         */
+        READ_DECIMAL128_AS_BIGDECIMAL;
 
         /**
          * @return the bit mask that identifies this feature
@@ -84,6 +103,43 @@ public class BsonParser extends ParserBase {
      */
     protected InputStream _rawInputStream;
 
+    /**
+     * Bounds {@link #_rawInputStream} to the length of the document if
+     * {@link Feature#HONOR_DOCUMENT_LENGTH} is enabled (may be null
+     * otherwise or if no document has been started yet)
+     */
+    protected BoundedInputStream _boundedInputStream;
+
+    /**
+     * True if {@link Feature#HONOR_DOCUMENT_LENGTH} is enabled and the
+     * document's length has not been read from {@link #_rawInputStream} yet
+     */
+    protected boolean _documentLengthPending;
+
+    /**
+     * Refers to the input the parser currently reads from. Used to
+     * report locations.
+     */
+    protected ContentReference _contentReference;
+
+    /**
+     * The buffered stream wrapping {@link #_rawInputStream} (may be null if
+     * the raw stream does not need buffering). Will be closed when the
+     * parser is closed, so its buffer can be re-used.
+     */
+    protected StaticBufferedInputStream _bufferedInputStream;
+
+    /**
+     * The pool {@link #_staticBuffers} has been acquired from
+     */
+    protected final StaticBuffersPool _staticBuffersPool;
+
+    /**
+     * Re-usable buffers acquired from {@link #_staticBuffersPool}. Will be
+     * released when the parser is closed.
+     */
+    protected StaticBuffers _staticBuffers;
+
     /**
      * The position of the current token
      */
@@ -99,6 +155,25 @@ public class BsonParser extends ParserBase {
      */
     protected Context _currentContext;
 
+    /**
+     * The names of properties that should be reported before all other
+     * properties of a document (may be null)
+     * @see #setTypePropertyNames(String...)
+     */
+    protected String[] _typePropertyNames;
+
+    /**
+     * The UTF-8 encoded {@link #_typePropertyNames}
+     */
+    protected byte[][] _typePropertyNameBytes;
+
+    /**
+     * A buffer for property names read while looking ahead for a type
+     * property. Its size equals the length of the longest name in
+     * {@link #_typePropertyNameBytes}.
+     */
+    protected byte[] _lookaheadNameBuffer;
+
     /**
      * Constructs a new parser
      * @param readCtxt the object read context
@@ -110,21 +185,45 @@ public class BsonParser extends ParserBase {
      * @param in the input stream to parse.
      */
     public BsonParser(ObjectReadContext readCtxt, IOContext ctxt, int jsonFeatures, int bsonFeatures, InputStream in) {
+        this(readCtxt, ctxt, jsonFeatures, bsonFeatures, in, StaticBuffersPools.defaultPool());
+    }
+
+    /**
+     * Constructs a new parser that obtains its re-usable buffers from
+     * the given pool
+     * @param readCtxt the object read context
+     * @param ctxt the Jackson IO context
+     * @param jsonFeatures bit flag composed of bits that indicate which
+     * {@link StreamReadFeature}s are enabled.
+     * @param bsonFeatures bit flag composed of bits that indicate which
+     * {@link Feature}s are enabled.
+     * @param in the input stream to parse.
+     * @param staticBuffersPool the pool providing re-usable buffers
+     */
+    public BsonParser(ObjectReadContext readCtxt, IOContext ctxt, int jsonFeatures,
+            int bsonFeatures, InputStream in, StaticBuffersPool staticBuffersPool) {
         super(readCtxt, ctxt, jsonFeatures);
         _streamReadContext = JsonReadContext.createRootContext(null);
         _bsonFeatures = bsonFeatures;
         _rawInputStream = in;
+        _contentReference = ctxt.contentReference();
+        _staticBuffersPool = staticBuffersPool;
+        _staticBuffers = staticBuffersPool.acquire();
         // only initialize streams here if document length isn't going to be honored
-        if (!isEnabled(Feature.HONOR_DOCUMENT_LENGTH)) {
+        if (isEnabled(Feature.HONOR_DOCUMENT_LENGTH)) {
+            // streams will be initialized by handleNewDocument()
+            _documentLengthPending = true;
+        } else {
             // wrap input stream into high-performance buffered input stream.
             // even wrap BufferedInputStream and ByteArrayInputStream because
             // their methods are synchronized. Our StaticBufferedInputStream
             // is not thread-safe and thus much faster.
             if (!(in instanceof UnsafeByteArrayInputStream)) {
-                in = new StaticBufferedInputStream(in);
+                _bufferedInputStream = new StaticBufferedInputStream(in, _staticBuffers);
+                in = _bufferedInputStream;
             }
             _counter = new CountingInputStream(in);
-            _in = new LittleEndianInputStream(_counter);
+            _in = new LittleEndianInputStream(_counter, _staticBuffers);
         }
     }
 
@@ -137,6 +236,98 @@ public class BsonParser extends ParserBase {
         return (_bsonFeatures & f.getMask()) != 0;
     }
 
+    /**
+     * <p>Sets the names of properties that should be reported before all
+     * other properties of a document. This is useful for polymorphic type
+     * handling with {@link com.fasterxml.jackson.annotation.JsonTypeInfo}.
+     * If the type property is not the first property of a serialized
+     * object, Jackson has to buffer all properties before it can select
+     * the type to deserialize.</p>
+     * <p>Whenever a new document starts, the parser scans ahead in the
+     * document's bytes for a string property with one of the given names
+     * without decoding the other values. If it finds such a property, it
+     * reports it first and skips it later at its original position. The
+     * order of all other properties remains unchanged.</p>
+     * <p>Scanning ahead requires the parser to rewind the input. Documents
+     * read from a stream are only scanned if they fit into the parser's
+     * internal buffer.</p>
+     * @param names the property names (may be empty to disable scanning)
+     */
+    public void setTypePropertyNames(String... names) {
+        if (names == null || names.length == 0) {
+            _typePropertyNames = null;
+            _typePropertyNameBytes = null;
+            _lookaheadNameBuffer = null;
+            return;
+        }
+
+        _typePropertyNames = names.clone();
+        _typePropertyNameBytes = new byte[names.length][];
+        int maxLength = 0;
+        for (int i = 0; i < names.length; ++i) {
+            _typePropertyNameBytes[i] = names[i].getBytes(StandardCharsets.UTF_8);
+            maxLength = Math.max(maxLength, _typePropertyNameBytes[i].length);
+        }
+        _lookaheadNameBuffer = new byte[maxLength];
+    }
+
+    /**
+     * <p>Resets this parser so it can be re-used to read from another input
+     * stream. This avoids allocating a new parser, its input stream wrappers,
+     * and its buffers for each document. The parser's state is discarded.
+     * The previous input stream is neither read any further nor closed.</p>
+     * <p>A parser must only be reset if it has not been closed. It must
+     * not be used by more than one thread at a time. If it has been created
+     * with the thread-local {@link StaticBuffersPool} (the default), it
+     * should only be reset and used on the thread that created it. Use
+     * {@link BsonFactory#acquireParser(InputStream)} to get parsers that can
+     * be shared between threads.</p>
+     * <p>The parser keeps the {@link ObjectReadContext} it has been created
+     * with. Locations reported after the reset refer to an unknown source.
+     * Use {@link #reset(InputStream, ContentReference)} to provide a
+     * reference to the new input stream.</p>
+     * @param in the input stream to parse
+     * @throws IllegalStateException if the parser has already been closed
+     */
+    public void reset(InputStream in) {
+        reset(in, ContentReference.unknown());
+    }
+
+    /**
+     * Resets this parser so it can be re-used to read from another input
+     * stream (see {@link #reset(InputStream)})
+     * @param in the input stream to parse
+     * @param contentReference refers to the new input stream and will be
+     * used to report locations
+     * @throws IllegalStateException if the parser has already been closed
+     */
+    public void reset(InputStream in, ContentReference contentReference) {
+        if (isClosed()) {
+            throw new IllegalStateException("Parser has already been closed");
+        }
+
+        _rawInputStream = in;
+        _contentReference = contentReference;
+        _currToken = null;
+        _currentContext = null;
+        _tokenPos = 0;
+        _streamReadContext = JsonReadContext.createRootContext(null);
+
+        if (isEnabled(Feature.HONOR_DOCUMENT_LENGTH)) {
+            // streams will be re-initialized by handleNewDocument()
+            _documentLengthPending = true;
+        } else if (in instanceof UnsafeByteArrayInputStream) {
+            _counter.setInputStream(in);
+        } else {
+            if (_bufferedInputStream == null) {
+                _bufferedInputStream = new StaticBufferedInputStream(in, _staticBuffers);
+            } else {
+                _bufferedInputStream.setInputStream(in);
+            }
+            _counter.setInputStream(_bufferedInputStream);
+        }
+    }
+
     @Override
     public boolean isExpectedStartArrayToken() {
         JsonToken t = _currToken;
@@ -199,7 +390,8 @@ public class BsonParser extends ParserBase {
     @Override
     public void close() {
         try {
-            if (isEnabled(StreamReadFeature.AUTO_CLOSE_SOURCE) && _in != null) {
+            if (isEnabled(StreamReadFeature.AUTO_CLOSE_SOURCE) && _in != null &&
+                    !_documentLengthPending) {
                 _in.close();
             }
         } catch (IOException e) {
@@ -236,7 +428,14 @@ public class BsonParser extends ParserBase {
                 }
 
                 boolean readValue = true;
-                if (ctx.state == State.FIELDNAME) {
+                if (ctx.state == State.FIELDNAME && ctx.hoistedValue != null) {
+                    // report the type property found by hoistTypeProperty() first
+                    readValue = false;
+                    ctx.type = BsonConstants.TYPE_STRING;
+                    ctx.fieldName = ctx.hoistedFieldName;
+                    ctx.state = State.VALUE;
+                    _currToken = JsonToken.PROPERTY_NAME;
+                } else if (ctx.state == State.FIELDNAME) {
                     readValue = false;
                     while (true) {
                         // read field name or end of document
@@ -261,6 +460,16 @@ public class BsonParser extends ParserBase {
                             } else {
                                 // read field name
                                 ctx.fieldName = readCString();
+                                if (ctx.hoistedFieldName != null &&
+                                        ctx.type == BsonConstants.TYPE_STRING &&
+                                        ctx.hoistedFieldName.equals(ctx.fieldName)) {
+                                    // the type property has already been
+                                    // reported. skip it.
+                                    _in.skipBytes(_in.readInt());
+                                    ctx.hoistedFieldName = null;
+                                    ctx.state = State.FIELDNAME;
+                                    continue;
+                                }
                             }
                         }
                         break;
@@ -276,7 +485,12 @@ public class BsonParser extends ParserBase {
                             break;
 
                         case BsonConstants.TYPE_STRING:
-                            ctx.value = readString();
+                            if (ctx.hoistedValue != null) {
+                                ctx.value = ctx.hoistedValue;
+                                ctx.hoistedValue = null;
+                            } else {
+                                ctx.value = readString();
+                            }
                             _currToken = JsonToken.VALUE_STRING;
                             break;
 
@@ -352,8 +566,14 @@ public class BsonParser extends ParserBase {
                         case BsonConstants.TYPE_DECIMAL128:
                             long low = _in.readLong();
                             long high = _in.readLong();
-                            ctx.value = Decimal128.fromIEEE754BIDEncoding(high, low);
-                            _currToken = JsonToken.VALUE_EMBEDDED_OBJECT;
+                            Decimal128 d = Decimal128.fromIEEE754BIDEncoding(high, low);
+                            if (isEnabled(Feature.READ_DECIMAL128_AS_BIGDECIMAL)) {
+                                ctx.value = decimal128ToNumber(d);
+                                _currToken = JsonToken.VALUE_NUMBER_FLOAT;
+                            } else {
+                                ctx.value = d;
+                                _currToken = JsonToken.VALUE_EMBEDDED_OBJECT;
+                            }
                             break;
 
                         case BsonConstants.TYPE_MINKEY:
@@ -386,10 +606,12 @@ public class BsonParser extends ParserBase {
      * @throws IOException if an I/O error occurs
      */
     protected JsonToken handleNewDocument(boolean array) throws IOException {
-        if (_in == null) {
+        int documentLength;
+        if (_documentLengthPending) {
             // this means Feature.HONOR_DOCUMENT_LENGTH is enabled, and we
             // haven't yet started reading. Read the first int to find out the
             // length of the document.
+            _documentLengthPending = false;
             byte[] buf = new byte[Integer.SIZE / Byte.SIZE];
             int len = 0;
             while (len < buf.length) {
@@ -402,24 +624,220 @@ public class BsonParser extends ParserBase {
 
             // wrap the input stream by a bounded stream, subtract buf.length from the
             // length because the size itself is included in the length
-            int documentLength = ByteBuffer.wrap(buf).order(ByteOrder.LITTLE_ENDIAN).getInt();
-            InputStream in = new BoundedInputStream(_rawInputStream, documentLength - buf.length);
+            documentLength = ByteBuffer.wrap(buf).order(ByteOrder.LITTLE_ENDIAN).getInt();
+            if (_boundedInputStream == null) {
+                _boundedInputStream = new BoundedInputStream(_rawInputStream,
+                        documentLength - buf.length);
+            } else {
+                // the parser has been reset. re-use the existing streams.
+                _boundedInputStream.setInputStream(_rawInputStream,
+                        documentLength - buf.length);
+            }
+            InputStream in = _boundedInputStream;
 
             // buffer if the raw input stream is not already buffered
             if (!(_rawInputStream instanceof BufferedInputStream)) {
-                in = new StaticBufferedInputStream(in);
+                if (_bufferedInputStream == null) {
+                    _bufferedInputStream = new StaticBufferedInputStream(in, _staticBuffers);
+                } else {
+                    _bufferedInputStream.setInputStream(in);
+                }
+                in = _bufferedInputStream;
+            }
+            if (_counter == null) {
+                _counter = new CountingInputStream(in);
+                _in = new LittleEndianInputStream(_counter, _staticBuffers);
+            } else {
+                _counter.setInputStream(in);
             }
-            _counter = new CountingInputStream(in);
-            _in = new LittleEndianInputStream(_counter);
         } else {
-            // read document header (skip size, we're not interested)
-            _in.readInt();
+            // read document header
+            documentLength = _in.readInt();
         }
 
         _currentContext = new Context(_currentContext, array);
+        _currentContext.length = documentLength;
+        if (!array && _typePropertyNames != null) {
+            hoistTypeProperty(_currentContext, documentLength - 4);
+        }
         return array ? JsonToken.START_ARRAY : JsonToken.START_OBJECT;
     }
 
+    /**
+     * Scans ahead in the current document for a string property whose name
+     * is one of {@link #_typePropertyNames}. If the property is found and
+     * it is not the document's first property, it will be stored in the
+     * given context, so {@link #nextToken()} can report it first. Resets
+     * the input stream to the current position afterwards.
+     * @param ctx the context of the document
+     * @param length the number of bytes remaining in the document (may be
+     * invalid if the document has been written in streaming mode)
+     * @throws IOException if an I/O error occurs
+     */
+    protected void hoistTypeProperty(Context ctx, int length) throws IOException {
+        int limit = getLookaheadLimit();
+        if (length > limit || (length <= 0 && limit != Integer.MAX_VALUE) ||
+                !_in.markSupported()) {
+            return;
+        }
+
+        _in.mark(length > 0 ? length : Integer.MAX_VALUE);
+        try {
+            boolean first = true;
+            while (true) {
+                byte type = _in.readByte();
+                if (type == BsonConstants.TYPE_END) {
+                    break;
+                }
+                int index = readTypePropertyNameIndex();
+                if (index >= 0 && type == BsonConstants.TYPE_STRING) {
+                    if (!first) {
+                        ctx.hoistedFieldName = _typePropertyNames[index];
+                        ctx.hoistedValue = readString();
+                    }
+                    break;
+                }
+                if (!skipValue(type)) {
+                    break;
+                }
+                first = false;
+            }
+        } finally {
+            _in.reset();
+        }
+    }
+
+    /**
+     * @return the maximum number of bytes {@link #hoistTypeProperty(Context, int)}
+     * may read before it has to reset the input stream
+     */
+    protected int getLookaheadLimit() {
+        if (_bufferedInputStream != null) {
+            return _bufferedInputStream.getMarkLimit();
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Reads a null-terminated property name and compares it to
+     * {@link #_typePropertyNameBytes} without decoding it
+     * @return the index of the matching type property name or -1 if the
+     * property name does not match
+     * @throws IOException if an I/O error occurs
+     */
+    protected int readTypePropertyNameIndex() throws IOException {
+        byte[] buf = _lookaheadNameBuffer;
+        int len = 0;
+        byte b;
+        while ((b = _in.readByte()) != 0) {
+            if (len < buf.length) {
+                buf[len] = b;
+            }
+            ++len;
+        }
+        if (len > buf.length) {
+            return -1;
+        }
+        for (int i = 0; i < _typePropertyNameBytes.length; ++i) {
+            byte[] name = _typePropertyNameBytes[i];
+            if (Arrays.equals(name, 0, name.length, buf, 0, len)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Skips over the value of an element without decoding it
+     * @param type the element's type
+     * @return true if the value has been skipped, false if the type is
+     * unknown or the value's size is invalid
+     * @throws IOException if an I/O error occurs
+     */
+    protected boolean skipValue(byte type) throws IOException {
+        int n;
+        switch (type) {
+            case BsonConstants.TYPE_UNDEFINED:
+            case BsonConstants.TYPE_NULL:
+            case BsonConstants.TYPE_MINKEY:
+            case BsonConstants.TYPE_MAXKEY:
+                return true;
+
+            case BsonConstants.TYPE_BOOLEAN:
+                n = 1;
+                break;
+
+            case BsonConstants.TYPE_INT32:
+                n = 4;
+                break;
+
+            case BsonConstants.TYPE_DOUBLE:
+            case BsonConstants.TYPE_DATETIME:
+            case BsonConstants.TYPE_TIMESTAMP:
+            case BsonConstants.TYPE_INT64:
+                n = 8;
+                break;
+
+            case BsonConstants.TYPE_OBJECTID:
+                n = 12;
+                break;
+
+            case BsonConstants.TYPE_DECIMAL128:
+                n = 16;
+                break;
+
+            case BsonConstants.TYPE_STRING:
+            case BsonConstants.TYPE_JAVASCRIPT:
+            case BsonConstants.TYPE_SYMBOL:
+                n = _in.readInt();
+                break;
+
+            case BsonConstants.TYPE_DBPOINTER:
+                n = _in.readInt() + 12;
+                break;
+
+            case BsonConstants.TYPE_BINARY:
+                // the size does not include the subtype
+                n = _in.readInt() + 1;
+                break;
+
+            case BsonConstants.TYPE_DOCUMENT:
+            case BsonConstants.TYPE_ARRAY:
+            case BsonConstants.TYPE_JAVASCRIPT_WITH_SCOPE:
+                // the size includes the size field itself
+                n = _in.readInt() - 4;
+                break;
+
+            case BsonConstants.TYPE_REGEX:
+                skipCString();
+                skipCString();
+                return true;
+
+            default:
+                return false;
+        }
+        return n >= 0 && _in.skipBytes(n) == n;
+    }
+
+    /**
+     * Converts a {@link Decimal128} to a {@link BigDecimal}. Values that
+     * cannot be represented as a {@link BigDecimal} are converted to a
+     * {@link Double}.
+     * @param d the value to convert
+     * @return the converted value
+     */
+    protected Number decimal128ToNumber(Decimal128 d) {
+        if (!d.isFinite()) {
+            return d.doubleValue();
+        }
+        try {
+            return d.bigDecimalValue();
+        } catch (ArithmeticException e) {
+            // negative zero
+            return -0.0;
+        }
+    }
+
     /**
      * Reads binary data from the input stream
      * @return the json token read
@@ -429,6 +847,7 @@ public class BsonParser extends ParserBase {
         int size = _in.readInt();
         byte subtype = _in.readByte();
         Context ctx = getContext();
+        ctx.subtype = subtype;
         switch (subtype) {
             case BsonConstants.SUBTYPE_BINARY_OLD:
                 int size2 = _in.readInt();
@@ -438,21 +857,78 @@ public class BsonParser extends ParserBase {
                 break;
 
             case BsonConstants.SUBTYPE_UUID:
+                if (size != 16) {
+                    ctx.value = readBinary(size);
+                    break;
+                }
                 long l1 = _in.readLong();
                 long l2 = _in.readLong();
                 ctx.value = new UUID(l1, l2);
                 break;
 
+            case BsonConstants.SUBTYPE_UUID_STANDARD:
+                if (size != 16) {
+                    ctx.value = readBinary(size);
+                    break;
+                }
+                // standard UUIDs are stored in big endian byte order
+                long msb = Long.reverseBytes(_in.readLong());
+                long lsb = Long.reverseBytes(_in.readLong());
+                ctx.value = new UUID(msb, lsb);
+                break;
+
+            case BsonConstants.SUBTYPE_VECTOR:
+                ctx.value = readBinaryVector(size);
+                break;
+
             default:
-                byte[] buf = new byte[size];
-                _in.readFully(buf);
-                ctx.value = buf;
+                ctx.value = readBinary(size);
                 break;
         }
 
         return JsonToken.VALUE_EMBEDDED_OBJECT;
     }
 
+    /**
+     * Reads the given number of bytes of binary data from the input stream
+     * @param size the number of bytes to read
+     * @return the binary data
+     * @throws IOException if an I/O error occurs
+     */
+    protected byte[] readBinary(int size) throws IOException {
+        byte[] buf = new byte[size];
+        _in.readFully(buf);
+        return buf;
+    }
+
+    /**
+     * Reads a binary vector from the input stream. The binary data is
+     * read into a single array that is wrapped by the returned object.
+     * @param size the size of the binary data including the vector's
+     * data type and padding bytes
+     * @return the vector or the raw binary data (data type, padding and
+     * elements) if the vector's data type is unknown
+     * @throws IOException if an I/O error occurs
+     * @throws StreamReadException if the vector is malformed
+     */
+    protected Object readBinaryVector(int size) throws IOException {
+        if (size < 2) {
+            throw new StreamReadException(this, "Invalid binary vector size: " + size);
+        }
+        byte[] data = readBinary(size);
+        if (!BinaryVector.isKnownDType(data[0])) {
+            // data type of a newer BSON version. keep the binary data.
+            return data;
+        }
+        try {
+            return new BinaryVector(data[0], data[1] & 0xFF,
+                    ByteBuffer.wrap(data, 2, data.length - 2));
+        } catch (IllegalArgumentException e) {
+            throw new StreamReadException(this, "Invalid binary vector: " +
+                    e.getMessage());
+        }
+    }
+
     /**
      * Converts a BSON regex pattern string to a combined value of Java flags that
      * can be used in {@link Pattern#compile(String, int)}
@@ -599,9 +1075,11 @@ public class BsonParser extends ParserBase {
      */
     protected ObjectId readObjectId() throws IOException {
         int timestamp = ByteOrderUtil.flip(_in.readInt());
-        int randomValue1 = _in.readByte() << 16 | _in.readByte() << 8 | _in.readByte();
-        short randomValue2 = (short)(_in.readByte() << 8 | _in.readByte());
-        int counter = _in.readByte() << 16 | _in.readByte() << 8 | _in.readByte();
+        int randomValue1 = _in.readUnsignedByte() << 16 | _in.readUnsignedByte() << 8 |
+                _in.readUnsignedByte();
+        short randomValue2 = (short)(_in.readUnsignedByte() << 8 | _in.readUnsignedByte());
+        int counter = _in.readUnsignedByte() << 16 | _in.readUnsignedByte() << 8 |
+                _in.readUnsignedByte();
         return new ObjectId(timestamp, counter, randomValue1, randomValue2);
     }
 
@@ -611,13 +1089,151 @@ public class BsonParser extends ParserBase {
      * @throws IOException if the document could not be read
      */
     protected Map<String, Object> readDocument() throws IOException {
-        ObjectReadContext readCtxt = objectReadContext();
-        if (readCtxt == null) {
-            throw new IllegalStateException("Could not parse embedded document " +
-                    "because BSON parser has no read context");
-        }
         _currToken = handleNewDocument(false);
-        return readCtxt.readValue(this, new TypeReference<Map<String, Object>>() {});
+        return readDocumentValues();
+    }
+
+    /**
+     * <p>Reads a whole document into a {@link LinkedHashMap} without
+     * going through an object mapper. Embedded documents are read into
+     * {@link LinkedHashMap}s and arrays into {@link ArrayList}s. All other
+     * values are represented by the same objects the parser reports for
+     * their tokens (e.g. {@link String}, {@link Integer}, {@link Date},
+     * {@link ObjectId}, or <code>byte[]</code>).</p>
+     * <p>If the current token is {@link JsonToken#START_OBJECT}, the
+     * remainder of the current document will be read. Otherwise, the next
+     * token must start a new document.</p>
+     * @return the document or null if the end of the input has been reached
+     * @throws StreamReadException if the next token does not start a
+     * document or if the document is malformed
+     */
+    public Map<String, Object> readDocumentAsMap() {
+        clearEndOfDocument();
+        if (_currToken != JsonToken.START_OBJECT) {
+            JsonToken t = nextToken();
+            if (t == null) {
+                return null;
+            }
+            if (t != JsonToken.START_OBJECT) {
+                throw new StreamReadException(this, "Current token does not " +
+                        "start a document: " + t);
+            }
+        }
+        return readDocumentValues();
+    }
+
+    /**
+     * <p>Reads a whole document without decoding it. The document's bytes
+     * (including its header) are copied from the input into a new array.
+     * This is much faster than parsing the document, and the result can
+     * be written back verbatim with
+     * {@link BsonGenerator#writeRawDocument(BsonBytes)} or be accessed
+     * lazily through a {@link de.undercouch.bson4jackson.tree.BsonDocumentNode}.</p>
+     * <p>If the current token is {@link JsonToken#START_OBJECT} or
+     * {@link JsonToken#START_ARRAY}, the current document or array will be
+     * read. Otherwise, the next token must start one. Afterwards, the
+     * current token will be the corresponding {@link JsonToken#END_OBJECT}
+     * or {@link JsonToken#END_ARRAY}.</p>
+     * @return the document or null if the end of the input has been reached
+     * @throws StreamReadException if the next token does not start a
+     * document or an array, or if the document's length is unknown
+     */
+    public BsonBytes readRawDocument() {
+        clearEndOfDocument();
+        if (_currToken != JsonToken.START_OBJECT && _currToken != JsonToken.START_ARRAY) {
+            JsonToken t = nextToken();
+            if (t == null) {
+                return null;
+            }
+            if (t != JsonToken.START_OBJECT && t != JsonToken.START_ARRAY) {
+                throw new StreamReadException(this, "Current token does not " +
+                        "start a document: " + t);
+            }
+        }
+
+        Context ctx = getContext();
+        if (ctx.length < 5) {
+            throw new StreamReadException(this, "Invalid document length: " + ctx.length);
+        }
+        byte[] buf = new byte[ctx.length];
+        ByteBuffer.wrap(buf).order(ByteOrder.LITTLE_ENDIAN).putInt(ctx.length);
+        try {
+            // the header has already been read
+            _in.readFully(buf, 4, buf.length - 4);
+        } catch (IOException e) {
+            throw _wrapIOFailure(e);
+        }
+
+        _currToken = ctx.array ? JsonToken.END_ARRAY : JsonToken.END_OBJECT;
+        _currentContext = ctx.parent;
+
+        try {
+            return new BsonBytes(buf);
+        } catch (IllegalArgumentException e) {
+            throw new StreamReadException(this, "Invalid document: " + e.getMessage());
+        }
+    }
+
+    /**
+     * If a top-level document has just been read completely, clears the
+     * current token, so the next call to {@link #nextToken()} starts the
+     * next document instead of reporting the end of the input
+     */
+    protected void clearEndOfDocument() {
+        if (_currentContext == null && (_currToken == JsonToken.END_OBJECT ||
+                _currToken == JsonToken.END_ARRAY)) {
+            _currToken = null;
+        }
+    }
+
+    /**
+     * Reads all properties of the current document until its end
+     * @return the properties
+     * @throws StreamReadException if the document is malformed
+     */
+    protected Map<String, Object> readDocumentValues() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        JsonToken t;
+        while ((t = nextToken()) == JsonToken.PROPERTY_NAME) {
+            String name = _currentContext.fieldName;
+            result.put(name, readTokenValue(nextToken()));
+        }
+        if (t != JsonToken.END_OBJECT) {
+            throw new StreamReadException(this, "Unexpected token in document: " + t);
+        }
+        return result;
+    }
+
+    /**
+     * Reads all elements of the current array until its end
+     * @return the elements
+     * @throws StreamReadException if the array is malformed
+     */
+    protected List<Object> readArrayValues() {
+        List<Object> result = new ArrayList<>();
+        JsonToken t;
+        while ((t = nextToken()) != JsonToken.END_ARRAY) {
+            result.add(readTokenValue(t));
+        }
+        return result;
+    }
+
+    /**
+     * Converts the given value token to an object. Reads embedded
+     * documents and arrays completely.
+     * @param t the token
+     * @return the token's value
+     * @throws StreamReadException if the token is not a value token
+     */
+    protected Object readTokenValue(JsonToken t) {
+        if (t == JsonToken.START_OBJECT) {
+            return readDocumentValues();
+        } else if (t == JsonToken.START_ARRAY) {
+            return readArrayValues();
+        } else if (t == null || !t.isScalarValue()) {
+            throw new StreamReadException(this, "Unexpected token: " + t);
+        }
+        return _currentContext.value;
     }
 
     /**
@@ -649,15 +1265,28 @@ public class BsonParser extends ParserBase {
         return _currentContext.type;
     }
 
+    /**
+     * @return the binary subtype of the current element (one of the
+     * <code>SUBTYPE_*</code> constants in {@link BsonConstants}). Only
+     * valid if {@link #getCurrentBsonType()} returns
+     * {@link BsonConstants#TYPE_BINARY}.
+     */
+    public byte getCurrentBinarySubtype() {
+        if (_currentContext == null) {
+            return BsonConstants.SUBTYPE_BINARY;
+        }
+        return _currentContext.subtype;
+    }
+
     @Override
     public TokenStreamLocation currentTokenLocation() {
-        return new BsonLocation(_ioContext.contentReference(), _tokenPos);
+        return new BsonLocation(_contentReference, _tokenPos);
     }
 
     @Override
     public TokenStreamLocation currentLocation() {
-        long pos = _counter != null ? _counter.getPosition() : 0L;
-        return new BsonLocation(_ioContext.contentReference(), pos);
+        long pos = _counter != null && !_documentLengthPending ? _counter.getPosition() : 0L;
+        return new BsonLocation(_contentReference, pos);
     }
 
     @Override
@@ -778,13 +1407,25 @@ public class BsonParser extends ParserBase {
             return BigDecimal.valueOf(n.longValue());
         } else if (n instanceof Double || n instanceof Float) {
             return BigDecimal.valueOf(n.doubleValue());
+        } else if (n instanceof BigDecimal bd) {
+            return bd;
+        } else if (n instanceof Decimal128 d && d.isFinite()) {
+            try {
+                return d.bigDecimalValue();
+            } catch (ArithmeticException e) {
+                // negative zero. Convert it to zero below.
+            }
         }
         return new BigDecimal(n.toString());
     }
 
     @Override
     public byte[] getBinaryValue(Base64Variant b64variant) {
-        return (byte[])getContext().value;
+        Object value = getContext().value;
+        if (value instanceof BinaryVector v) {
+            return v.toBinaryData();
+        }
+        return (byte[])value;
     }
 
     @Override
@@ -817,6 +1458,24 @@ public class BsonParser extends ParserBase {
         _rawInputStream.close();
     }
 
+    @Override
+    protected void _releaseBuffers() {
+        super._releaseBuffers();
+        if (_bufferedInputStream != null) {
+            // does not close the underlying stream but releases the buffer
+            try {
+                _bufferedInputStream.close();
+            } catch (IOException e) {
+                // cannot happen
+            }
+            _bufferedInputStream = null;
+        }
+        if (_staticBuffers != null) {
+            _staticBuffersPool.release(_staticBuffers);
+            _staticBuffers = null;
+        }
+    }
+
     @Override
     protected int _parseIntValue() {
         // BSON values are already parsed, no lazy parsing needed
@@ -857,6 +1516,12 @@ public class BsonParser extends ParserBase {
          */
         byte type;
 
+        /**
+         * The binary subtype of the current element (only valid if
+         * {@link #type} is {@link BsonConstants#TYPE_BINARY})
+         */
+        byte subtype;
+
         /**
          * The field name of the current element
          */
@@ -872,6 +1537,25 @@ public class BsonParser extends ParserBase {
          */
         State state = State.FIELDNAME;
 
+        /**
+         * The number of bytes of the document including its header (may be
+         * invalid if the document has been written in streaming mode)
+         */
+        int length;
+
+        /**
+         * The name of a type property that has been found by
+         * {@link BsonParser#hoistTypeProperty(Context, int)} and that
+         * has to be skipped at its original position (may be null)
+         */
+        String hoistedFieldName;
+
+        /**
+         * The value of the type property that has not been reported yet
+         * (may be null)
+         */
+        String hoistedValue;
+
         public Context(Context parent, boolean array) {
             this.parent = parent;
             this.array = array;
@@ -879,6 +1563,7 @@ public class BsonParser extends ParserBase {
 
         public void reset() {
             type = 0;
+            subtype = 0;
             fieldName = null;
             value = null;
             state = State.FIELDNAME;
@@ -895,9 +1580,13 @@ public class BsonParser extends ParserBase {
         public Context copy(Context parent, boolean array) {
             Context r = new Context(parent, array);
             r.type = type;
+            r.subtype = subtype;
             r.fieldName = fieldName;
             r.value = value;
             r.state = state;
+            r.length = length;
+            r.hoistedFieldName = hoistedFieldName;
+            r.hoistedValue = hoistedValue;
             return r;
         }
     }
@@ -0,0 +1,133 @@
+package de.undercouch.bson4jackson;
+
+import de.undercouch.bson4jackson.io.CountingOutputBuffer;
+import tools.jackson.core.ObjectWriteContext;
+import tools.jackson.core.StreamWriteFeature;
+import tools.jackson.core.io.IOContext;
+import tools.jackson.core.json.JsonWriteContext;
+
+import java.util.Arrays;
+
+/**
+ * <p>A generator that does not produce any output. It only calculates
+ * the exact sizes of the BSON documents (including embedded documents,
+ * arrays and JavaScript code with scope) that a {@link BsonGenerator}
+ * with the same features would write. Strings are not encoded.</p>
+ * <p>The sizes can be passed to
+ * {@link BsonGenerator#setDocumentSizes(int[])} to stream the documents
+ * in a second pass without buffering them.</p>
+ * @see BsonDocumentSizer
+ */
+public class BsonSizingGenerator extends BsonGenerator {
+    /**
+     * The calculated document sizes in the order in which the documents
+     * have been started
+     */
+    protected int[] _sizes = new int[16];
+
+    /**
+     * The number of entries in {@link #_sizes}
+     */
+    protected int _sizeCount;
+
+    /**
+     * A stack of indexes into {@link #_sizes} for all documents that
+     * have been started but not finished yet
+     */
+    protected int[] _openDocuments = new int[16];
+
+    /**
+     * The number of entries in {@link #_openDocuments}
+     */
+    protected int _openDocumentCount;
+
+    /**
+     * Creates a new sizing generator
+     * @param writeCtxt the object write context
+     * @param ctxt the IO context
+     * @param jsonFeatures bit flag composed of bits that indicate which
+     * {@link StreamWriteFeature}s are enabled.
+     * @param bsonFeatures bit flag composed of bits that indicate which
+     * {@link Feature}s are enabled.
+     */
+    public BsonSizingGenerator(ObjectWriteContext writeCtxt, IOContext ctxt,
+            int jsonFeatures, int bsonFeatures) {
+        super(writeCtxt, ctxt, jsonFeatures, bsonFeatures, new CountingOutputBuffer());
+    }
+
+    /**
+     * @return the sizes of all documents written so far in the order in
+     * which they have been started. The size of a document that has not
+     * been finished yet is 0.
+     */
+    public int[] getDocumentSizes() {
+        return Arrays.copyOf(_sizes, _sizeCount);
+    }
+
+    /**
+     * @return the total number of bytes of all tokens written so far. If
+     * all documents have been finished, this is the exact number of bytes
+     * a {@link BsonGenerator} with the same features would produce.
+     */
+    public int getSize() {
+        return _buffer.size();
+    }
+
+    /**
+     * Resets this generator so it can be used to calculate the size of
+     * further values. All sizes calculated so far are discarded.
+     */
+    public void resetSizes() {
+        _buffer.clear();
+        _typeMarker = 0;
+        _depth = 0;
+        nextObjectIsEmbeddedInValue = false;
+        _writeContext = JsonWriteContext.createRootContext(null);
+        _sizeCount = 0;
+        _openDocumentCount = 0;
+    }
+
+    @Override
+    protected void reserveHeader() {
+        if (_sizeCount == _sizes.length) {
+            _sizes = Arrays.copyOf(_sizes, _sizes.length * 2);
+        }
+        if (_openDocumentCount == _openDocuments.length) {
+            _openDocuments = Arrays.copyOf(_openDocuments, _openDocuments.length * 2);
+        }
+        _sizes[_sizeCount] = 0;
+        _openDocuments[_openDocumentCount++] = _sizeCount++;
+        super.reserveHeader();
+    }
+
+    @Override
+    protected void putHeader(int pos) {
+        // documents are always finished in reverse order
+        int index = _openDocuments[--_openDocumentCount];
+        _sizes[index] = _buffer.size() - pos;
+    }
+
+    @Override
+    protected boolean canPutHeaders() {
+        return true;
+    }
+
+    @Override
+    public void flush() {
+        // nothing to flush
+    }
+
+    @Override
+    protected void _closeInput() {
+        if (isEnabled(StreamWriteFeature.AUTO_CLOSE_CONTENT)) {
+            while (_depth > 0) {
+                writeEndObject();
+            }
+        }
+    }
+
+    @Override
+    public Object streamWriteOutputTarget() {
+        return null;
+    }
+}
@@ -0,0 +1,477 @@
+package de.undercouch.bson4jackson;
+
+import de.undercouch.bson4jackson.types.BinaryVector;
+import de.undercouch.bson4jackson.types.Decimal128;
+import de.undercouch.bson4jackson.types.JavaScript;
+import de.undercouch.bson4jackson.types.ObjectId;
+import de.undercouch.bson4jackson.types.Symbol;
+import de.undercouch.bson4jackson.types.Timestamp;
+import tools.jackson.core.JsonGenerator;
+import tools.jackson.core.JsonToken;
+import tools.jackson.core.exc.StreamReadException;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Converts BSON to JSON without creating intermediate objects for
+ * documents and arrays. Tokens are read from a {@link BsonParser} and
+ * written to an arbitrary {@link JsonGenerator} one by one, so large
+ * documents and arrays are streamed with constant memory.</p>
+ * <p>By default, BSON-specific values are written the same way the
+ * serializers from {@link BsonModule} write them to JSON generators (e.g.
+ * date times as milliseconds since the epoch and binary data as Base64
+ * strings). {@link Feature}s can be enabled to write ObjectIds, date
+ * times, Decimal128 values, and binary data in MongoDB Extended JSON
+ * format instead.</p>
+ * <p>Instances of this class are immutable and thread-safe.</p>
+ */
+public class BsonToJsonTranscoder {
+    /**
+     * Defines toggable features
+     */
+    public enum Feature {
+        /**
+         * Writes ObjectIds as <code>{"$oid": "&lt;hex&gt;"}</code>
+         */
+        EXTENDED_OBJECTID,
+
+        /**
+         * Writes date times as <code>{"$date": "&lt;ISO-8601&gt;"}</code>
+         * (or <code>{"$date": {"$numberLong": "&lt;millis&gt;"}}</code> if
+         * the year is before 1970 or after 9999)
+         */
+        EXTENDED_DATETIME,
+
+        /**
+         * Writes Decimal128 values as
+         * <code>{"$numberDecimal": "&lt;value&gt;"}</code>
+         */
+        EXTENDED_DECIMAL128,
+
+        /**
+         * Writes binary data (including UUIDs and binary vectors) as
+         * <code>{"$binary": {"base64": "&lt;data&gt;", "subType": "&lt;hex&gt;"}}</code>
+         */
+        EXTENDED_BINARY;
+
+        /**
+         * @return the bit mask that identifies this feature
+         */
+        public int getMask() {
+            return 1 << ordinal();
+        }
+    }
+
+    /**
+     * The largest date time that can be written in ISO-8601 format
+     * (9999-12-31T23:59:59.999Z)
+     */
+    private static final long MAX_ISO_DATETIME = 253402300799999L;
+
+    /**
+     * Formats date times in Extended JSON
+     */
+    private static final DateTimeFormatter ISO_DATETIME = DateTimeFormatter
+            .ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'")
+            .withZone(ZoneOffset.UTC);
+
+    /**
+     * The enabled features
+     */
+    protected final int _features;
+
+    /**
+     * Creates a new transcoder
+     * @param features the features to enable
+     */
+    public BsonToJsonTranscoder(Feature... features) {
+        int f = 0;
+        for (Feature feature : features) {
+            f |= feature.getMask();
+        }
+        _features = f;
+    }
+
+    /**
+     * Checks if a feature is enabled
+     * @param f the feature
+     * @return true if the given feature is enabled
+     */
+    public boolean isEnabled(Feature f) {
+        return (_features & f.getMask()) != 0;
+    }
+
+    /**
+     * Transcodes all remaining documents the parser provides
+     * @param parser the parser to read from
+     * @param gen the generator to write to
+     * @return the number of documents transcoded
+     */
+    public int transcodeAll(BsonParser parser, JsonGenerator gen) {
+        int n = 0;
+        while (transcode(parser, gen)) {
+            ++n;
+        }
+        return n;
+    }
+
+    /**
+     * <p>Transcodes the parser's current value including all of its
+     * children. If the current token is a property name, the name and the
+     * following value will be transcoded. If there is no current token or
+     * if the current token ends a document or an array, the next value
+     * will be transcoded.</p>
+     * <p>Afterwards, the parser's current token will be the last token of
+     * the transcoded value.</p>
+     * @param parser the parser to read from
+     * @param gen the generator to write to
+     * @return true if a value has been transcoded, false if the end of the
+     * input has been reached
+     * @throws StreamReadException if the input is malformed
+     */
+    public boolean transcode(BsonParser parser, JsonGenerator gen) {
+        parser.clearEndOfDocument();
+        JsonToken t = parser.currentToken();
+        if (t == null || t == JsonToken.END_OBJECT || t == JsonToken.END_ARRAY) {
+            t = parser.nextToken();
+            if (t == null) {
+                return false;
+            }
+        }
+        if (t == JsonToken.PROPERTY_NAME) {
+            gen.writeName(parser.currentName());
+            t = parser.nextToken();
+        }
+
+        int depth = 0;
+        while (true) {
+            switch (t) {
+                case START_OBJECT:
+                    gen.writeStartObject();
+                    ++depth;
+                    break;
+
+                case START_ARRAY:
+                    gen.writeStartArray();
+                    ++depth;
+                    break;
+
+                case END_OBJECT:
+                    gen.writeEndObject();
+                    --depth;
+                    break;
+
+                case END_ARRAY:
+                    gen.writeEndArray();
+                    --depth;
+                    break;
+
+                case PROPERTY_NAME:
+                    gen.writeName(parser.currentName());
+                    break;
+
+                default:
+                    writeScalar(parser, gen, t);
+                    break;
+            }
+
+            if (depth == 0) {
+                return true;
+            }
+
+            t = parser.nextToken();
+            if (t == null) {
+                throw new StreamReadException(parser, "Unexpected end of input");
+            }
+        }
+    }
+
+    /**
+     * Transcodes a value that is neither a document nor an array
+     * @param parser the parser to read from
+     * @param gen the generator to write to
+     * @param t the current token
+     */
+    protected void writeScalar(BsonParser parser, JsonGenerator gen, JsonToken t) {
+        switch (t) {
+            case VALUE_STRING:
+                gen.writeString(parser.getString());
+                break;
+
+            case VALUE_NUMBER_INT:
+                if (parser.getCurrentBsonType() == BsonConstants.TYPE_INT64) {
+                    gen.writeNumber(parser.getLongValue());
+                } else {
+                    gen.writeNumber(parser.getIntValue());
+                }
+                break;
+
+            case VALUE_NUMBER_FLOAT:
+                if (parser.getCurrentBsonType() == BsonConstants.TYPE_DECIMAL128) {
+                    writeDecimal128(gen, toDecimal128(parser.getNumberValue()));
+                } else {
+                    gen.writeNumber(parser.getDoubleValue());
+                }
+                break;
+
+            case VALUE_TRUE:
+                gen.writeBoolean(true);
+                break;
+
+            case VALUE_FALSE:
+                gen.writeBoolean(false);
+                break;
+
+            case VALUE_NULL:
+                gen.writeNull();
+                break;
+
+            case VALUE_EMBEDDED_OBJECT:
+                if (parser.getCurrentBsonType() == BsonConstants.TYPE_BINARY) {
+                    writeBinary(gen, parser.getEmbeddedObject(),
+                            parser.getCurrentBinarySubtype());
+                } else {
+                    writeValue(gen, parser.getEmbeddedObject());
+                }
+                break;
+
+            default:
+                throw new StreamReadException(parser, "Unexpected token: " + t);
+        }
+    }
+
+    /**
+     * Writes an object the parser reports as an embedded object or as a
+     * value of a JavaScript scope or a DBPointer
+     * @param gen the generator to write to
+     * @param value the value (may be null)
+     */
+    protected void writeValue(JsonGenerator gen, Object value) {
+        if (value == null) {
+            gen.writeNull();
+        } else if (value instanceof String s) {
+            gen.writeString(s);
+        } else if (value instanceof Integer i) {
+            gen.writeNumber(i);
+        } else if (value instanceof Long l) {
+            gen.writeNumber(l);
+        } else if (value instanceof Double d) {
+            gen.writeNumber(d);
+        } else if (value instanceof Boolean b) {
+            gen.writeBoolean(b);
+        } else if (value instanceof Date d) {
+            writeDateTime(gen, d.getTime());
+        } else if (value instanceof ObjectId id) {
+            writeObjectId(gen, id);
+        } else if (value instanceof Decimal128 d) {
+            writeDecimal128(gen, d);
+        } else if (value instanceof BigDecimal bd) {
+            writeDecimal128(gen, new Decimal128(bd));
+        } else if (value instanceof byte[] || value instanceof BinaryVector) {
+            writeBinary(gen, value, value instanceof BinaryVector ?
+                    BsonConstants.SUBTYPE_VECTOR : BsonConstants.SUBTYPE_BINARY);
+        } else if (value instanceof UUID) {
+            writeBinary(gen, value, BsonConstants.SUBTYPE_UUID);
+        } else if (value instanceof Timestamp ts) {
+            gen.writeStartObject();
+            gen.writeNumberProperty("$time", ts.getTime());
+            gen.writeNumberProperty("$inc", ts.getInc());
+            gen.writeEndObject();
+        } else if (value instanceof Pattern p) {
+            gen.writeStartObject();
+            gen.writeStringProperty("$pattern", p.pattern());
+            gen.writeNumberProperty("$flags", p.flags());
+            gen.writeEndObject();
+        } else if (value instanceof JavaScript js) {
+            gen.writeStartObject();
+            gen.writeStringProperty("$code", js.getCode());
+            gen.writeName("$scope");
+            writeValue(gen, js.getScope());
+            gen.writeEndObject();
+        } else if (value instanceof Symbol s) {
+            gen.writeString(s.getSymbol());
+        } else if (value instanceof Map<?, ?> m) {
+            gen.writeStartObject();
+            for (Map.Entry<?, ?> e : m.entrySet()) {
+                gen.writeName(String.valueOf(e.getKey()));
+                writeValue(gen, e.getValue());
+            }
+            gen.writeEndObject();
+        } else if (value instanceof List<?> l) {
+            gen.writeStartArray();
+            for (Object o : l) {
+                writeValue(gen, o);
+            }
+            gen.writeEndArray();
+        } else {
+            gen.writePOJO(value);
+        }
+    }
+
+    /**
+     * Writes an ObjectId
+     * @param gen the generator to write to
+     * @param id the ObjectId
+     */
+    protected void writeObjectId(JsonGenerator gen, ObjectId id) {
+        gen.writeStartObject();
+        if (isEnabled(Feature.EXTENDED_OBJECTID)) {
+            gen.writeStringProperty("$oid", id.toHexString());
+        } else {
+            gen.writeNumberProperty("$timestamp", id.getTimestamp());
+            gen.writeNumberProperty("$randomValue1", id.getRandomValue1());
+            gen.writeNumberProperty("$randomValue2", (int)id.getRandomValue2());
+            gen.writeNumberProperty("$counter", id.getCounter());
+        }
+        gen.writeEndObject();
+    }
+
+    /**
+     * Writes a date time
+     * @param gen the generator to write to
+     * @param millis the milliseconds since the epoch
+     */
+    protected void writeDateTime(JsonGenerator gen, long millis) {
+        if (!isEnabled(Feature.EXTENDED_DATETIME)) {
+            gen.writeNumber(millis);
+            return;
+        }
+        gen.writeStartObject();
+        gen.writeName("$date");
+        if (millis >= 0 && millis <= MAX_ISO_DATETIME) {
+            gen.writeString(ISO_DATETIME.format(Instant.ofEpochMilli(millis)));
+        } else {
+            gen.writeStartObject();
+            gen.writeStringProperty("$numberLong", Long.toString(millis));
+            gen.writeEndObject();
+        }
+        gen.writeEndObject();
+    }
+
+    /**
+     * Converts a number the parser reports for a Decimal128 value if
+     * {@link BsonParser.Feature#READ_DECIMAL128_AS_BIGDECIMAL} is enabled
+     * back to a Decimal128
+     * @param n the number (a {@link BigDecimal} or a {@link Double} if the
+     * value is not finite or negative zero)
+     * @return the Decimal128 value
+     */
+    protected static Decimal128 toDecimal128(Number n) {
+        if (n instanceof BigDecimal bd) {
+            return new Decimal128(bd);
+        }
+        double v = n.doubleValue();
+        if (Double.isNaN(v)) {
+            return Decimal128.NaN;
+        }
+        if (Double.isInfinite(v)) {
+            return v > 0 ? Decimal128.POSITIVE_INFINITY : Decimal128.NEGATIVE_INFINITY;
+        }
+        return Decimal128.NEGATIVE_ZERO;
+    }
+
+    /**
+     * Writes a Decimal128 value
+     * @param gen the generator to write to
+     * @param d the value
+     */
+    protected void writeDecimal128(JsonGenerator gen, Decimal128 d) {
+        if (isEnabled(Feature.EXTENDED_DECIMAL128)) {
+            gen.writeStartObject();
+            gen.writeStringProperty("$numberDecimal", d.toString());
+            gen.writeEndObject();
+        } else if (d.isFinite()) {
+            gen.writeNumber(d.toString());
+        } else {
+            // JSON has no representation for NaN and infinity
+            gen.writeString(d.toString());
+        }
+    }
+
+    /**
+     * Writes binary data
+     * @param gen the generator to write to
+     * @param value the binary data as reported by the parser (a byte
+     * array, a {@link UUID}, or a {@link BinaryVector})
+     * @param subtype the binary subtype
+     */
+    protected void writeBinary(JsonGenerator gen, Object value, byte subtype) {
+        if (!isEnabled(Feature.EXTENDED_BINARY)) {
+            if (value instanceof UUID u) {
+                gen.writeString(u.toString());
+            } else if (value instanceof BinaryVector v) {
+                writeBinaryVector(gen, v);
+            } else {
+                gen.writeBinary((byte[])value);
+            }
+            return;
+        }
+
+        byte[] data;
+        if (value instanceof UUID u) {
+            ByteOrder order = subtype == BsonConstants.SUBTYPE_UUID_STANDARD ?
+                    ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+            data = new byte[16];
+            ByteBuffer.wrap(data).order(order)
+                    .putLong(u.getMostSignificantBits())
+                    .putLong(u.getLeastSignificantBits());
+        } else if (value instanceof BinaryVector v) {
+            ByteBuffer vd = v.getData();
+            data = new byte[2 + vd.remaining()];
+            data[0] = v.getDType();
+            data[1] = (byte)v.getPadding();
+            vd.get(data, 2, data.length - 2);
+        } else {
+            data = (byte[])value;
+        }
+
+        gen.writeStartObject();
+        gen.writeName("$binary");
+        gen.writeStartObject();
+        gen.writeName("base64");
+        gen.writeBinary(data);
+        gen.writeStringProperty("subType", String.format("%02x", subtype & 0xFF));
+        gen.writeEndObject();
+        gen.writeEndObject();
+    }
+
+    /**
+     * Writes a binary vector the same way as
+     * {@link de.undercouch.bson4jackson.serializers.BsonBinaryVectorSerializer}
+     * @param gen the generator to write to
+     * @param value the vector
+     */
+    protected void writeBinaryVector(JsonGenerator gen, BinaryVector value) {
+        gen.writeStartObject();
+        gen.writeNumberProperty("$dtype", value.getDType() & 0xFF);
+        gen.writeNumberProperty("$padding", value.getPadding());
+        gen.writeName("$values");
+        gen.writeStartArray();
+        if (value.getDType() == BsonConstants.VECTOR_DTYPE_FLOAT32) {
+            FloatBuffer fb = value.asFloatBuffer();
+            while (fb.hasRemaining()) {
+                gen.writeNumber(fb.get());
+            }
+        } else {
+            boolean signed = value.getDType() == BsonConstants.VECTOR_DTYPE_INT8;
+            ByteBuffer bb = value.getData();
+            while (bb.hasRemaining()) {
+                byte b = bb.get();
+                gen.writeNumber(signed ? b : b & 0xFF);
+            }
+        }
+        gen.writeEndArray();
+        gen.writeEndObject();
+    }
+}
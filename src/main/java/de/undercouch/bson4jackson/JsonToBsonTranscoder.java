@@ -0,0 +1,322 @@
+package de.undercouch.bson4jackson;
+
+import de.undercouch.bson4jackson.types.Decimal128;
+import de.undercouch.bson4jackson.types.ObjectId;
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonToken;
+import tools.jackson.core.exc.StreamReadException;
+
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * <p>Converts JSON to BSON without creating intermediate objects for
+ * documents and arrays. Tokens are read from an arbitrary
+ * {@link JsonParser} and written to a {@link BsonGenerator} one by one.</p>
+ * <p>The following MongoDB Extended JSON wrappers are converted to the
+ * corresponding BSON types:</p>
+ * <ul>
+ * <li><code>{"$oid": "&lt;hex&gt;"}</code> (ObjectId)</li>
+ * <li><code>{"$date": "&lt;ISO-8601&gt;"}</code>,
+ * <code>{"$date": &lt;millis&gt;}</code>, or
+ * <code>{"$date": {"$numberLong": "&lt;millis&gt;"}}</code> (date time)</li>
+ * <li><code>{"$numberDecimal": "&lt;value&gt;"}</code> (Decimal128)</li>
+ * <li><code>{"$numberLong": "&lt;value&gt;"}</code> (64-bit integer)</li>
+ * <li><code>{"$binary": {"base64": "&lt;data&gt;", "subType": "&lt;hex&gt;"}}</code>
+ * (binary data)</li>
+ * </ul>
+ * <p>These are the formats {@link BsonToJsonTranscoder} writes if the
+ * corresponding features are enabled. An object whose first property has
+ * one of these names must be a valid wrapper. Objects with other property
+ * names (including other names starting with <code>$</code>) are written
+ * as documents.</p>
+ * <p>The generator's output buffer is written and cleared after each
+ * top-level document, so it can be re-used for the next document. The
+ * underlying output stream is not flushed. Call
+ * {@link BsonGenerator#flush()} or {@link BsonGenerator#close()} when
+ * all values have been transcoded.</p>
+ * <p>Instances of this class are immutable and thread-safe.</p>
+ */
+public class JsonToBsonTranscoder {
+    /**
+     * Transcodes all remaining values the parser provides
+     * @param parser the parser to read from
+     * @param gen the generator to write to
+     * @return the number of values transcoded
+     */
+    public int transcodeAll(JsonParser parser, BsonGenerator gen) {
+        int n = 0;
+        while (transcode(parser, gen)) {
+            ++n;
+        }
+        return n;
+    }
+
+    /**
+     * <p>Transcodes the parser's current value including all of its
+     * children. If the current token is a property name, the name and the
+     * following value will be transcoded. If there is no current token or
+     * if the current token ends an object or an array, the next value
+     * will be transcoded.</p>
+     * <p>Afterwards, the parser's current token will be the last token of
+     * the transcoded value.</p>
+     * @param parser the parser to read from
+     * @param gen the generator to write to
+     * @return true if a value has been transcoded, false if the end of the
+     * input has been reached
+     * @throws StreamReadException if the input is malformed or contains
+     * an invalid Extended JSON wrapper
+     */
+    public boolean transcode(JsonParser parser, BsonGenerator gen) {
+        JsonToken t = parser.currentToken();
+        if (t == null || t == JsonToken.END_OBJECT || t == JsonToken.END_ARRAY) {
+            t = parser.nextToken();
+            if (t == null) {
+                return false;
+            }
+        }
+        if (t == JsonToken.PROPERTY_NAME) {
+            gen.writeName(parser.currentName());
+            t = parser.nextToken();
+        }
+
+        int depth = 0;
+        while (true) {
+            switch (t) {
+                case START_OBJECT:
+                    if (parser.nextToken() == JsonToken.PROPERTY_NAME) {
+                        String name = parser.currentName();
+                        if (name.startsWith("$") && writeWrapper(parser, gen, name)) {
+                            break;
+                        }
+                        gen.writeStartObject();
+                        gen.writeName(name);
+                        ++depth;
+                    } else {
+                        // empty object
+                        gen.writeStartObject();
+                        gen.writeEndObject();
+                    }
+                    break;
+
+                case START_ARRAY:
+                    gen.writeStartArray();
+                    ++depth;
+                    break;
+
+                case END_OBJECT:
+                    gen.writeEndObject();
+                    --depth;
+                    break;
+
+                case END_ARRAY:
+                    gen.writeEndArray();
+                    --depth;
+                    break;
+
+                case PROPERTY_NAME:
+                    gen.writeName(parser.currentName());
+                    break;
+
+                default:
+                    writeScalar(parser, gen, t);
+                    break;
+            }
+
+            if (depth == 0) {
+                break;
+            }
+
+            t = parser.nextToken();
+            if (t == null) {
+                throw new StreamReadException(parser, "Unexpected end of input");
+            }
+        }
+
+        if (gen.streamWriteContext().inRoot()) {
+            gen.writeCompleteDocuments();
+        }
+        return true;
+    }
+
+    /**
+     * Transcodes a value that is neither an object nor an array
+     * @param parser the parser to read from
+     * @param gen the generator to write to
+     * @param t the current token
+     */
+    protected void writeScalar(JsonParser parser, BsonGenerator gen, JsonToken t) {
+        switch (t) {
+            case VALUE_STRING:
+                gen.writeString(parser.getString());
+                break;
+
+            case VALUE_NUMBER_INT:
+                switch (parser.getNumberType()) {
+                    case INT:
+                        gen.writeNumber(parser.getIntValue());
+                        break;
+
+                    case LONG:
+                        gen.writeNumber(parser.getLongValue());
+                        break;
+
+                    default:
+                        gen.writeNumber(parser.getBigIntegerValue());
+                        break;
+                }
+                break;
+
+            case VALUE_NUMBER_FLOAT:
+                if (parser.getNumberType() == JsonParser.NumberType.BIG_DECIMAL) {
+                    // keep the exact value (e.g. a Decimal128)
+                    gen.writeNumber(parser.getDecimalValue());
+                } else {
+                    gen.writeNumber(parser.getDoubleValue());
+                }
+                break;
+
+            case VALUE_TRUE:
+                gen.writeBoolean(true);
+                break;
+
+            case VALUE_FALSE:
+                gen.writeBoolean(false);
+                break;
+
+            case VALUE_NULL:
+                gen.writeNull();
+                break;
+
+            case VALUE_EMBEDDED_OBJECT:
+                gen.writePOJO(parser.getEmbeddedObject());
+                break;
+
+            default:
+                throw new StreamReadException(parser, "Unexpected token: " + t);
+        }
+    }
+
+    /**
+     * Writes an Extended JSON wrapper as the corresponding BSON value. The
+     * parser's current token must be the wrapper's first property name.
+     * Afterwards, the current token will be the end of the wrapper object.
+     * @param parser the parser to read from
+     * @param gen the generator to write to
+     * @param name the first property name
+     * @return true if the value has been written, false if the property
+     * name does not denote a wrapper
+     * @throws StreamReadException if the wrapper is invalid
+     */
+    protected boolean writeWrapper(JsonParser parser, BsonGenerator gen, String name) {
+        try {
+            switch (name) {
+                case "$oid":
+                    gen.writeObjectId(ObjectId.parse(nextString(parser, name)));
+                    break;
+
+                case "$date":
+                    gen.writeDateTime(new Date(readDate(parser)));
+                    break;
+
+                case "$numberDecimal":
+                    gen.writeDecimal128(Decimal128.parse(nextString(parser, name)));
+                    break;
+
+                case "$numberLong":
+                    gen.writeNumber(Long.parseLong(nextString(parser, name)));
+                    break;
+
+                case "$binary":
+                    writeBinary(parser, gen);
+                    break;
+
+                default:
+                    return false;
+            }
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new StreamReadException(parser, "Invalid Extended JSON " +
+                    name + " value: " + e.getMessage());
+        }
+        expectEndObject(parser, name);
+        return true;
+    }
+
+    /**
+     * Reads the value of a <code>$date</code> wrapper
+     * @param parser the parser to read from
+     * @return the milliseconds since the epoch
+     */
+    protected long readDate(JsonParser parser) {
+        JsonToken t = parser.nextToken();
+        if (t == JsonToken.VALUE_STRING) {
+            return OffsetDateTime.parse(parser.getString()).toInstant().toEpochMilli();
+        }
+        if (t == JsonToken.VALUE_NUMBER_INT) {
+            return parser.getLongValue();
+        }
+        if (t == JsonToken.START_OBJECT && parser.nextToken() == JsonToken.PROPERTY_NAME &&
+                "$numberLong".equals(parser.currentName())) {
+            long r = Long.parseLong(nextString(parser, "$numberLong"));
+            expectEndObject(parser, "$numberLong");
+            return r;
+        }
+        throw new StreamReadException(parser, "Invalid Extended JSON $date value");
+    }
+
+    /**
+     * Reads the value of a <code>$binary</code> wrapper and writes it
+     * @param parser the parser to read from
+     * @param gen the generator to write to
+     */
+    protected void writeBinary(JsonParser parser, BsonGenerator gen) {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new StreamReadException(parser, "Invalid Extended JSON $binary value");
+        }
+        byte[] data = null;
+        int subtype = -1;
+        while (parser.nextToken() == JsonToken.PROPERTY_NAME) {
+            String name = parser.currentName();
+            if ("base64".equals(name)) {
+                data = Base64.getDecoder().decode(nextString(parser, name));
+            } else if ("subType".equals(name)) {
+                subtype = Integer.parseInt(nextString(parser, name), 16);
+            } else {
+                throw new StreamReadException(parser, "Unexpected property in " +
+                        "Extended JSON $binary value: " + name);
+            }
+        }
+        if (data == null || subtype < 0 || subtype > 0xFF) {
+            throw new StreamReadException(parser, "Invalid Extended JSON $binary value");
+        }
+        gen.writeBinary(null, (byte)subtype, data, 0, data.length);
+    }
+
+    /**
+     * Reads the next token and makes sure it is a string
+     * @param parser the parser to read from
+     * @param name the name of the wrapper being read
+     * @return the string
+     */
+    protected String nextString(JsonParser parser, String name) {
+        if (parser.nextToken() != JsonToken.VALUE_STRING) {
+            throw new StreamReadException(parser, "Invalid Extended JSON " +
+                    name + " value: string expected");
+        }
+        return parser.getString();
+    }
+
+    /**
+     * Reads the next token and makes sure it ends the current object
+     * @param parser the parser to read from
+     * @param name the name of the wrapper being read
+     */
+    protected void expectEndObject(JsonParser parser, String name) {
+        if (parser.nextToken() != JsonToken.END_OBJECT) {
+            throw new StreamReadException(parser, "Extended JSON " + name +
+                    " wrapper must not have other properties");
+        }
+    }
+}
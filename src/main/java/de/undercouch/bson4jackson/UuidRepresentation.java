@@ -0,0 +1,33 @@
+package de.undercouch.bson4jackson;
+
+/**
+ * Binary representations of UUIDs in BSON
+ */
+public enum UuidRepresentation {
+    /**
+     * The legacy representation of the MongoDB Java driver. Uses binary
+     * subtype {@link BsonConstants#SUBTYPE_UUID} and stores the most and
+     * the least significant bits of the UUID in little endian byte order.
+     */
+    JAVA_LEGACY(BsonConstants.SUBTYPE_UUID),
+
+    /**
+     * The standard representation. Uses binary subtype
+     * {@link BsonConstants#SUBTYPE_UUID_STANDARD} and stores the UUID in
+     * big endian byte order as defined in RFC 4122.
+     */
+    STANDARD(BsonConstants.SUBTYPE_UUID_STANDARD);
+
+    private final byte subtype;
+
+    UuidRepresentation(byte subtype) {
+        this.subtype = subtype;
+    }
+
+    /**
+     * @return the binary subtype used for this representation
+     */
+    public byte getSubtype() {
+        return subtype;
+    }
+}
@@ -0,0 +1,58 @@
+package de.undercouch.bson4jackson.deserializers;
+
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonToken;
+import tools.jackson.core.TreeNode;
+import tools.jackson.databind.DeserializationContext;
+import tools.jackson.databind.ValueDeserializer;
+import tools.jackson.databind.node.ValueNode;
+import de.undercouch.bson4jackson.BsonConstants;
+import de.undercouch.bson4jackson.BsonParser;
+import de.undercouch.bson4jackson.types.BinaryVector;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Deserializes binary vectors
+ */
+public class BsonBinaryVectorDeserializer extends ValueDeserializer<BinaryVector> {
+    @Override
+    public BinaryVector deserialize(JsonParser jp, DeserializationContext ctxt) {
+        if (jp instanceof BsonParser bsonParser) {
+            if (bsonParser.currentToken() != JsonToken.VALUE_EMBEDDED_OBJECT ||
+                    !(bsonParser.getEmbeddedObject() instanceof BinaryVector)) {
+                ctxt.reportBadDefinition(BinaryVector.class,
+                        "Current token isn't a embedded object or a binary vector");
+            }
+            return (BinaryVector)bsonParser.getEmbeddedObject();
+        } else if (jp.currentToken() == JsonToken.VALUE_EMBEDDED_OBJECT &&
+                jp.getEmbeddedObject() instanceof BinaryVector) {
+            return (BinaryVector)jp.getEmbeddedObject();
+        } else {
+            TreeNode tree = ctxt.readTree(jp);
+            byte dtype = (byte)((ValueNode)tree.get("$dtype")).asInt();
+            int padding = ((ValueNode)tree.get("$padding")).asInt();
+            TreeNode values = tree.get("$values");
+            int n = values.size();
+            ByteBuffer data;
+            if (dtype == BsonConstants.VECTOR_DTYPE_FLOAT32) {
+                data = ByteBuffer.allocate(n * 4).order(ByteOrder.LITTLE_ENDIAN);
+                for (int i = 0; i < n; ++i) {
+                    data.putFloat(((ValueNode)values.get(i)).floatValue());
+                }
+            } else {
+                data = ByteBuffer.allocate(n);
+                for (int i = 0; i < n; ++i) {
+                    data.put((byte)((ValueNode)values.get(i)).asInt());
+                }
+            }
+            data.flip();
+            try {
+                return new BinaryVector(dtype, padding, data);
+            } catch (IllegalArgumentException e) {
+                return ctxt.reportBadDefinition(BinaryVector.class, e.getMessage());
+            }
+        }
+    }
+}
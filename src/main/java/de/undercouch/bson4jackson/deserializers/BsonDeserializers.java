@@ -1,6 +1,10 @@
 package de.undercouch.bson4jackson.deserializers;
 
 import tools.jackson.databind.module.SimpleDeserializers;
+import de.undercouch.bson4jackson.tree.BsonDocumentNode;
+import de.undercouch.bson4jackson.tree.BsonNode;
+import de.undercouch.bson4jackson.tree.BsonValueNode;
+import de.undercouch.bson4jackson.types.BinaryVector;
 import de.undercouch.bson4jackson.types.JavaScript;
 import de.undercouch.bson4jackson.types.ObjectId;
 import de.undercouch.bson4jackson.types.Timestamp;
@@ -28,5 +32,10 @@ public class BsonDeserializers extends SimpleDeserializers {
         addDeserializer(ObjectId.class, new BsonObjectIdDeserializer());
         addDeserializer(Pattern.class, new BsonRegexDeserializer());
         addDeserializer(Timestamp.class, new BsonTimestampDeserializer());
+        addDeserializer(BinaryVector.class, new BsonBinaryVectorDeserializer());
+        addDeserializer(BsonNode.class, new BsonNodeDeserializer<>(BsonNode.class));
+        addDeserializer(BsonDocumentNode.class,
+                new BsonNodeDeserializer<>(BsonDocumentNode.class));
+        addDeserializer(BsonValueNode.class, new BsonNodeDeserializer<>(BsonValueNode.class));
     }
 }
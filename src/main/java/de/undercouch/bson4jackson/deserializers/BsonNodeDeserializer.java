@@ -0,0 +1,147 @@
+package de.undercouch.bson4jackson.deserializers;
+
+import de.undercouch.bson4jackson.BsonConstants;
+import de.undercouch.bson4jackson.BsonParser;
+import de.undercouch.bson4jackson.tree.BsonDocumentNode;
+import de.undercouch.bson4jackson.tree.BsonNode;
+import de.undercouch.bson4jackson.tree.BsonValueNode;
+import de.undercouch.bson4jackson.types.Decimal128;
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonToken;
+import tools.jackson.databind.DeserializationContext;
+import tools.jackson.databind.ValueDeserializer;
+
+import java.math.BigDecimal;
+
+/**
+ * <p>Deserializes BSON tree nodes. If the parser is a {@link BsonParser},
+ * documents and arrays are read with {@link BsonParser#readRawDocument()}
+ * without decoding them. Their elements will be decoded lazily when they
+ * are accessed.</p>
+ * <p>Other parsers are read token by token. The BSON types of the values
+ * are derived from the tokens.</p>
+ * @param <T> the type of the nodes to deserialize
+ */
+public class BsonNodeDeserializer<T extends BsonNode> extends ValueDeserializer<T> {
+    /**
+     * The type of the nodes to deserialize
+     */
+    protected final Class<T> _nodeType;
+
+    /**
+     * Creates a new deserializer
+     * @param nodeType the type of the nodes to deserialize
+     */
+    public BsonNodeDeserializer(Class<T> nodeType) {
+        _nodeType = nodeType;
+    }
+
+    @Override
+    public T deserialize(JsonParser jp, DeserializationContext ctxt) {
+        BsonNode n;
+        try {
+            n = readNode(jp);
+        } catch (IllegalArgumentException e) {
+            return ctxt.reportInputMismatch(this, e.getMessage());
+        }
+        if (!_nodeType.isInstance(n)) {
+            return ctxt.reportInputMismatch(this, "Cannot deserialize " +
+                    _nodeType.getSimpleName() + " from token " + jp.currentToken());
+        }
+        return _nodeType.cast(n);
+    }
+
+    /**
+     * Reads a node starting at the parser's current token
+     * @param jp the parser
+     * @return the node
+     * @throws IllegalArgumentException if the current token cannot be
+     * converted to a node
+     */
+    protected BsonNode readNode(JsonParser jp) {
+        JsonToken t = jp.currentToken();
+        if (jp instanceof BsonParser bsonParser) {
+            if (t == JsonToken.START_OBJECT || t == JsonToken.START_ARRAY) {
+                return new BsonDocumentNode(bsonParser.readRawDocument(),
+                        t == JsonToken.START_ARRAY);
+            }
+            byte type = bsonParser.getCurrentBsonType();
+            Object value = readValue(jp, t);
+            if (type == BsonConstants.TYPE_DECIMAL128 && !(value instanceof Decimal128)) {
+                // BsonParser.Feature.READ_DECIMAL128_AS_BIGDECIMAL is enabled
+                value = value instanceof BigDecimal bd ? new Decimal128(bd) :
+                        Decimal128.parse(value.toString());
+            }
+            if (type == BsonConstants.TYPE_BINARY) {
+                // keep the original subtype (e.g. MD5 or standard UUID)
+                return new BsonValueNode(type, bsonParser.getCurrentBinarySubtype(), value);
+            }
+            return new BsonValueNode(type, value);
+        }
+
+        if (t == JsonToken.START_OBJECT || t == JsonToken.PROPERTY_NAME) {
+            BsonDocumentNode doc = new BsonDocumentNode();
+            if (t == JsonToken.START_OBJECT) {
+                t = jp.nextToken();
+            }
+            while (t == JsonToken.PROPERTY_NAME) {
+                String name = jp.currentName();
+                jp.nextToken();
+                doc.set(name, readNode(jp));
+                t = jp.nextToken();
+            }
+            return doc;
+        }
+
+        if (t == JsonToken.START_ARRAY) {
+            BsonDocumentNode array = new BsonDocumentNode(true);
+            while (jp.nextToken() != JsonToken.END_ARRAY) {
+                array.add(readNode(jp));
+            }
+            return array;
+        }
+
+        return BsonValueNode.valueOf(readValue(jp, t));
+    }
+
+    /**
+     * Gets the value of the current scalar token
+     * @param jp the parser
+     * @param t the current token
+     * @return the value
+     * @throws IllegalArgumentException if the token is not a scalar value
+     */
+    protected Object readValue(JsonParser jp, JsonToken t) {
+        switch (t) {
+            case VALUE_STRING:
+                return jp.getString();
+
+            case VALUE_NUMBER_INT:
+                if (jp.getNumberType() == JsonParser.NumberType.BIG_INTEGER) {
+                    return new BigDecimal(jp.getBigIntegerValue());
+                }
+                return jp.getNumberValue();
+
+            case VALUE_NUMBER_FLOAT:
+                if (jp.getNumberType() == JsonParser.NumberType.BIG_DECIMAL) {
+                    return jp.getDecimalValue();
+                }
+                return jp.getDoubleValue();
+
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+
+            case VALUE_NULL:
+                return null;
+
+            case VALUE_EMBEDDED_OBJECT:
+                return jp.getEmbeddedObject();
+
+            default:
+                throw new IllegalArgumentException("Unexpected token " + t);
+        }
+    }
+}
@@ -12,7 +12,7 @@ public class BoundedInputStream extends FilterInputStream {
     /**
      * The stream's size
      */
-    protected final int size;
+    protected int size;
 
     /**
      * The number of bytes read so far
@@ -39,6 +39,20 @@ public class BoundedInputStream extends FilterInputStream {
         this.size = size;
     }
 
+    /**
+     * Replaces the input stream to read from and resets the number of
+     * bytes read. Used to re-use this object for another stream.
+     * @param in the new input stream
+     * @param size the new stream's size
+     */
+    public void setInputStream(InputStream in, int size) {
+        this.in = in;
+        this.size = size;
+        count = 0;
+        eof = false;
+        mark = 0;
+    }
+
     @Override
     public synchronized int read() throws IOException {
         if (!eof && count < size) {
@@ -26,6 +26,17 @@ public class CountingInputStream extends FilterInputStream {
         super(in);
     }
 
+    /**
+     * Replaces the input stream to read from and resets the number of
+     * bytes read. Used to re-use this object for another stream.
+     * @param in the new input stream
+     */
+    public void setInputStream(InputStream in) {
+        this.in = in;
+        _pos = 0;
+        _markpos = -1;
+    }
+
     /**
      * @return the number of bytes read or skipped
      */
@@ -0,0 +1,154 @@
+package de.undercouch.bson4jackson.io;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * <p>A {@link DynamicOutputBuffer} that does not store anything. It only
+ * keeps track of the write position and the size of the data that would
+ * have been written. Strings are not encoded. Their UTF-8 length is
+ * calculated instead.</p>
+ * <p>This buffer can be used to calculate the exact number of bytes a
+ * generator will produce without allocating memory for them. Writing
+ * it to an output stream or a channel is a no-op.</p>
+ */
+public class CountingOutputBuffer extends DynamicOutputBuffer {
+    /**
+     * Creates a new counting buffer
+     */
+    public CountingOutputBuffer() {
+        super(ByteOrder.LITTLE_ENDIAN, 1, 1, null);
+    }
+
+    /**
+     * Calculates the number of bytes the given character sequence would
+     * occupy if it was encoded as UTF-8
+     * @param s the character sequence
+     * @return the number of UTF-8 bytes
+     * @throws IllegalStateException if the character sequence contains
+     * invalid surrogate code units
+     */
+    public static int utf8Length(CharSequence s) {
+        return utf8Length(s, 0, s.length());
+    }
+
+    /**
+     * Calculates the number of bytes a range of the given character
+     * sequence would occupy if it was encoded as UTF-8
+     * @param s the character sequence
+     * @param start the index of the first character
+     * @param end the index after the last character
+     * @return the number of UTF-8 bytes
+     * @throws IllegalStateException if the range contains invalid
+     * surrogate code units
+     */
+    public static int utf8Length(CharSequence s, int start, int end) {
+        int result = end - start;
+        for (int i = start; i < end; ++i) {
+            char c = s.charAt(i);
+            if (c <= 0x7F) {
+                continue;
+            }
+            if (c <= 0x7FF) {
+                result += 1;
+            } else if (Character.isLowSurrogate(c)) {
+                throw new IllegalStateException("Could not encode string. " +
+                        "Unexpected low surrogate code unit at position " + (i - start));
+            } else if (Character.isHighSurrogate(c)) {
+                if (i + 1 >= end) {
+                    throw new IllegalStateException("Could not encode string. " +
+                            "Missing low surrogate code unit at end of input.");
+                }
+                if (!Character.isLowSurrogate(s.charAt(i + 1))) {
+                    throw new IllegalStateException("Could not encode string. " +
+                            "Missing low surrogate code unit at position " + (i - start));
+                }
+                // two chars become four bytes
+                result += 2;
+                ++i;
+            } else {
+                result += 2;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void putByte(int pos, byte b) {
+        adaptSize(pos + 1);
+    }
+
+    @Override
+    public void putBytes(int pos, byte... bs) {
+        adaptSize(pos + bs.length);
+    }
+
+    @Override
+    public void putBytes(int pos, byte[] bs, int offset, int length) {
+        adaptSize(pos + length);
+    }
+
+    @Override
+    public void putBytes(int pos, ByteBuffer src) {
+        adaptSize(pos + src.remaining());
+    }
+
+    @Override
+    public void putInt(int pos, int i) {
+        adaptSize(pos + 4);
+    }
+
+    @Override
+    public void putLong(int pos, long l) {
+        adaptSize(pos + 8);
+    }
+
+    @Override
+    public void putFloat(int pos, float f) {
+        adaptSize(pos + 4);
+    }
+
+    @Override
+    public void putFloats(int pos, float[] fs, int offset, int len) {
+        adaptSize(pos + len * 4);
+    }
+
+    @Override
+    public void putDouble(int pos, double d) {
+        adaptSize(pos + 8);
+    }
+
+    @Override
+    public void putString(int pos, CharSequence s) {
+        adaptSize(pos + s.length() * 2);
+    }
+
+    @Override
+    protected int putUTF8(int pos, CharSequence s, int start, int end) {
+        int len = utf8Length(s, start, end);
+        adaptSize(pos + len);
+        return len;
+    }
+
+    @Override
+    public void flushTo(OutputStream out) {
+        // nothing to flush
+    }
+
+    @Override
+    public void flushTo(WritableByteChannel out) {
+        // nothing to flush
+    }
+
+    @Override
+    public void writeTo(OutputStream out) {
+        // nothing to write
+    }
+
+    @Override
+    public void writeTo(WritableByteChannel out) {
+        // nothing to write
+    }
+}
@@ -2,9 +2,12 @@ package de.undercouch.bson4jackson.io;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.CharBuffer;
 import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.LinkedList;
@@ -21,9 +24,15 @@ import java.util.Queue;
  * <li>It is able to flush some of its internal buffers to an output stream
  * or to a writable channel.</li>
  * </ul>
- * <p>The buffer has an initial size. This is also the size of each internal
- * buffer, so if a new buffer has to be allocated it will take exactly
- * that many bytes.</p>
+ * <p>The buffer has an initial size. By default, this is also the size of
+ * each internal buffer, so if a new buffer has to be allocated it will take
+ * exactly that many bytes. Alternatively, a maximum buffer size can be given
+ * (see {@link #DynamicOutputBuffer(ByteOrder, int, int)}). In this case, the
+ * first internal buffer is small and each new buffer is twice as large as
+ * the previous one until the maximum size is reached. When such a buffer is
+ * cleared, it keeps its largest internal buffer for the next document
+ * written by the same thread, so the initial size adapts to the size of
+ * the documents actually written.</p>
  * <p>By calling {@link #flushTo(OutputStream)} or {@link #flushTo(WritableByteChannel)}
  * some of this buffer's internal buffers are flushed and then deallocated. The
  * buffer maintains an internal counter for all flushed buffers. This allows the
@@ -42,6 +51,19 @@ import java.util.Queue;
  * buf.writeTo(out);</pre>
  * <p>If flushing is never used a single call to one of the <code>writeTo</code>
  * methods is enough to write the whole buffer.</p>
+ * <p>{@link #flushTo(WritableByteChannel, int)} flushes all bytes up to an
+ * arbitrary position, even if this position lies within an internal
+ * buffer. This allows callers to control the latency of streamed output
+ * independently of the size of the internal buffers.</p>
+ * <p>A buffer can also be created on top of a caller-supplied
+ * {@link ByteBuffer} (see {@link #DynamicOutputBuffer(ByteOrder, ByteBuffer)}).
+ * In this case, all bytes are written directly into the caller's buffer and
+ * a {@link BufferOverflowException} is thrown if it is too small.</p>
+ * <p>If the channel passed to {@link #flushTo(WritableByteChannel)} or
+ * {@link #writeTo(WritableByteChannel)} is a {@link GatheringByteChannel},
+ * all internal buffers are handed over to it in a single vectored write
+ * call. Callers that want to do their own vectored I/O can use
+ * {@link #toReadOnlyByteBuffers()}.</p>
  * <p>Once the buffer has been written to an output stream or channel, putting
  * elements into it is not possible anymore and will lead to an
  * {@link java.lang.IndexOutOfBoundsException}.</p>
@@ -62,15 +84,58 @@ public class DynamicOutputBuffer {
      */
     public final static int DEFAULT_BUFFER_SIZE = Math.max(StaticBuffers.GLOBAL_MIN_SIZE, 1024 * 8);
 
+    /**
+     * The default initial size of buffers that grow geometrically
+     * @see #DynamicOutputBuffer(ByteOrder, int, int)
+     */
+    public final static int DEFAULT_ADAPTIVE_INITIAL_SIZE = 256;
+
     /**
      * The byte order of this buffer
      */
     protected final ByteOrder _order;
 
     /**
-     * The size of each internal buffer (also the initial buffer size)
+     * Provides the re-usable first buffer (null if this buffer writes
+     * into {@link #_target})
+     */
+    protected final StaticBuffers _staticBuffers;
+
+    /**
+     * A caller-supplied buffer that is used as the only internal buffer
+     * (null if internal buffers are allocated dynamically)
+     */
+    protected final ByteBuffer _target;
+
+    /**
+     * The initial buffer size given to the constructor
+     */
+    protected final int _initialSize;
+
+    /**
+     * The size of the first internal buffer. If the buffer does not
+     * grow geometrically, this is also the size of all other internal
+     * buffers.
      */
-    protected final int _bufferSize;
+    protected int _bufferSize;
+
+    /**
+     * The maximum size of an internal buffer. Equals {@link #_bufferSize}
+     * if the buffer does not grow geometrically.
+     */
+    protected final int _maxBufferSize;
+
+    /**
+     * The number of internal buffers that are smaller than
+     * {@link #_maxBufferSize}
+     */
+    protected int _growthBuffers;
+
+    /**
+     * The total size of all internal buffers that are smaller than
+     * {@link #_maxBufferSize}
+     */
+    protected int _growthLimit;
 
     /**
      * The current write position
@@ -141,15 +206,149 @@ public class DynamicOutputBuffer {
      * @param initialSize the initial buffer size
      */
     public DynamicOutputBuffer(ByteOrder order, int initialSize) {
+        this(order, initialSize, initialSize);
+    }
+
+    /**
+     * Creates a dynamic buffer with the given byte order whose internal
+     * buffers grow geometrically. The first internal buffer has the given
+     * initial size (or the size of the re-usable buffer kept from the last
+     * time a buffer was cleared on this thread, whichever is larger). Each
+     * following buffer is twice as large as the previous one until the
+     * given maximum size is reached.
+     * @param order the byte order
+     * @param initialSize the size of the first internal buffer
+     * @param maxBufferSize the maximum size of an internal buffer
+     */
+    public DynamicOutputBuffer(ByteOrder order, int initialSize, int maxBufferSize) {
+        this(order, initialSize, maxBufferSize, StaticBuffers.getInstance());
+    }
+
+    /**
+     * Creates a dynamic buffer with the given byte order whose internal
+     * buffers grow geometrically (see
+     * {@link #DynamicOutputBuffer(ByteOrder, int, int)}) and that obtains
+     * its re-usable buffer from the given {@link StaticBuffers} instance
+     * instead of the thread-local one.
+     * @param order the byte order
+     * @param initialSize the size of the first internal buffer
+     * @param maxBufferSize the maximum size of an internal buffer
+     * (pass <code>initialSize</code> for internal buffers of uniform size)
+     * @param staticBuffers provides the re-usable buffer
+     */
+    public DynamicOutputBuffer(ByteOrder order, int initialSize, int maxBufferSize,
+            StaticBuffers staticBuffers) {
         if (initialSize <= 0) {
             throw new IllegalArgumentException("Initial buffer size must be larger than 0");
         }
+        if (maxBufferSize < initialSize) {
+            throw new IllegalArgumentException("Maximum buffer size must not " +
+                    "be smaller than initial buffer size");
+        }
 
         _order = order;
+        _staticBuffers = staticBuffers;
+        _target = null;
+        _initialSize = initialSize;
         _bufferSize = initialSize;
+        _maxBufferSize = maxBufferSize;
         clear();
     }
 
+    /**
+     * Creates a buffer with the given byte order that writes directly into
+     * the remaining space of the given caller-supplied buffer. The buffer
+     * does not allocate any other internal buffers. Attempts to put bytes
+     * beyond the caller's buffer lead to a {@link BufferOverflowException}.
+     * Position 0 of this buffer corresponds to the current position of the
+     * caller's buffer. Neither its position nor its limit are changed.
+     * @param order the byte order
+     * @param target the buffer to write into
+     */
+    public DynamicOutputBuffer(ByteOrder order, ByteBuffer target) {
+        ByteBuffer slice = target.slice().order(order);
+        if (slice.capacity() == 0) {
+            throw new BufferOverflowException();
+        }
+
+        _order = order;
+        _staticBuffers = null;
+        _target = slice;
+        _initialSize = slice.capacity();
+        _bufferSize = _initialSize;
+        _maxBufferSize = _initialSize;
+        clear();
+    }
+
+    /**
+     * @return true if the internal buffers grow geometrically
+     */
+    protected boolean isAdaptive() {
+        return _maxBufferSize > _initialSize;
+    }
+
+    /**
+     * Calculates {@link #_growthBuffers} and {@link #_growthLimit} based
+     * on the current size of the first internal buffer
+     */
+    protected void updateGeometry() {
+        int n = 0;
+        long start = 0;
+        long len = _bufferSize;
+        while (len < _maxBufferSize) {
+            start += len;
+            len <<= 1;
+            ++n;
+        }
+        _growthBuffers = n;
+        _growthLimit = (int)Math.min(start, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Calculates the number of the internal buffer that holds the byte
+     * at the given absolute position
+     * @param pos the position
+     * @return the number of the internal buffer
+     */
+    protected int bufferIndex(int pos) {
+        if (pos < _growthLimit) {
+            return 31 - Integer.numberOfLeadingZeros(pos / _bufferSize + 1);
+        }
+        return _growthBuffers + (pos - _growthLimit) / _maxBufferSize;
+    }
+
+    /**
+     * Calculates the absolute position of the first byte of the
+     * given internal buffer
+     * @param n the number of the internal buffer
+     * @return the position
+     */
+    protected int bufferStart(int n) {
+        if (n <= _growthBuffers) {
+            return _bufferSize * ((1 << n) - 1);
+        }
+        return _growthLimit + (n - _growthBuffers) * _maxBufferSize;
+    }
+
+    /**
+     * Calculates the size of the given internal buffer
+     * @param n the number of the internal buffer
+     * @return the size
+     */
+    protected int bufferLength(int n) {
+        return n < _growthBuffers ? _bufferSize << n : _maxBufferSize;
+    }
+
+    /**
+     * Calculates the index of the byte at the given absolute position
+     * within the internal buffer that holds it
+     * @param pos the position
+     * @return the index within the internal buffer
+     */
+    protected int bufferOffset(int pos) {
+        return pos - bufferStart(bufferIndex(pos));
+    }
+
     /**
      * Sets the number of buffers to save for reuse after they have been
      * invalidated by {@link #flushTo(OutputStream)} or {@link #flushTo(WritableByteChannel)}.
@@ -172,18 +371,38 @@ public class DynamicOutputBuffer {
     }
 
     /**
-     * Allocates a new buffer or attempts to reuse an existing one.
-     * @return a new buffer with the current buffer size and the current byte order
+     * Allocates a new buffer or attempts to reuse an existing one. If the
+     * buffer grows geometrically and the first internal buffer is allocated,
+     * the size of the re-usable static buffer is adopted (up to the
+     * maximum buffer size).
+     * @return a new buffer with the size of the next internal buffer
+     * and the current byte order
      */
     protected ByteBuffer allocateBuffer() {
-        if (_buffersToReuse != null && !_buffersToReuse.isEmpty()) {
+        int n = _buffers.size();
+        if (_target != null) {
+            if (n > 0) {
+                throw new BufferOverflowException();
+            }
+            _target.clear();
+            return _target;
+        }
+
+        int length = bufferLength(n);
+        if (_buffersToReuse != null && !_buffersToReuse.isEmpty() &&
+                _buffersToReuse.peek().capacity() >= length) {
             ByteBuffer bb = _buffersToReuse.poll();
             bb.rewind();
-            bb.limit(bb.capacity());
+            bb.limit(length);
             return bb;
         }
-        ByteBuffer r = StaticBuffers.getInstance().byteBuffer(BUFFER_KEY, _bufferSize);
-        r.limit(_bufferSize);
+        ByteBuffer r = _staticBuffers.adaptiveByteBuffer(BUFFER_KEY, length);
+        if (n == 0 && isAdaptive() && r.capacity() > length) {
+            _bufferSize = Math.min(r.capacity(), _maxBufferSize);
+            updateGeometry();
+            length = _bufferSize;
+        }
+        r.limit(length);
         return r.order(_order);
     }
 
@@ -222,7 +441,12 @@ public class DynamicOutputBuffer {
      * @return the buffer at the requested position
      */
     protected ByteBuffer getBuffer(int position) {
-        int n = position / _bufferSize;
+        if (_buffers.isEmpty()) {
+            // allocate the first buffer before calculating the index
+            // because it may change the size of the internal buffers
+            addNewBuffer();
+        }
+        int n = bufferIndex(position);
         while (n >= _buffers.size()) {
             addNewBuffer();
         }
@@ -248,15 +472,31 @@ public class DynamicOutputBuffer {
         return _size;
     }
 
+    /**
+     * @return the position of the first byte that has not been flushed
+     * yet. Bytes before this position cannot be modified anymore.
+     */
+    public int getFlushPosition() {
+        return _flushPosition;
+    }
+
     /**
      * Clear the buffer and reset size and write position
      */
     public void clear() {
-        // release a static buffer if possible
-        if (_buffersToReuse != null && !_buffersToReuse.isEmpty()) {
-            StaticBuffers.getInstance().releaseByteBuffer(BUFFER_KEY, _buffersToReuse.peek());
-        } else if (!_buffers.isEmpty()) {
-            StaticBuffers.getInstance().releaseByteBuffer(BUFFER_KEY, _buffers.get(0));
+        // release a static buffer if possible. keep the largest one, so
+        // the next buffer on this thread can start with an adequate size.
+        ByteBuffer toRelease = null;
+        if (_buffersToReuse != null) {
+            for (ByteBuffer bb : _buffersToReuse) {
+                toRelease = largerRetainable(toRelease, bb);
+            }
+        }
+        for (ByteBuffer bb : _buffers) {
+            toRelease = largerRetainable(toRelease, bb);
+        }
+        if (toRelease != null && _staticBuffers != null) {
+            _staticBuffers.releaseByteBuffer(BUFFER_KEY, toRelease);
         }
 
         if (_buffersToReuse != null) {
@@ -266,6 +506,24 @@ public class DynamicOutputBuffer {
         _position = 0;
         _flushPosition = 0;
         _size = 0;
+        _bufferSize = _initialSize;
+        updateGeometry();
+    }
+
+    /**
+     * Selects the larger of two buffers that can be kept for re-use
+     * @param a the first buffer (may be null)
+     * @param b the second buffer (may be null)
+     * @return the larger buffer or null if none of them can be kept
+     */
+    private static ByteBuffer largerRetainable(ByteBuffer a, ByteBuffer b) {
+        if (b == null || b.capacity() > StaticBuffers.MAX_RETAINED_SIZE) {
+            return a;
+        }
+        if (a == null || b.capacity() > a.capacity()) {
+            return b;
+        }
+        return a;
     }
 
     /**
@@ -309,7 +567,7 @@ public class DynamicOutputBuffer {
     public void putByte(int pos, byte b) {
         adaptSize(pos + 1);
         ByteBuffer bb = getBuffer(pos);
-        int i = pos % _bufferSize;
+        int i = bufferOffset(pos);
         bb.put(i, b);
     }
 
@@ -336,7 +594,7 @@ public class DynamicOutputBuffer {
         ByteBuffer bb;
         while (length > 0) {
             bb = getBuffer(pos);
-            int index = pos % _bufferSize;
+            int index = bufferOffset(pos);
             bb.position(index);
             int chunkLength = Math.min(bb.limit() - index, length);
             bb.put(bs, offset, chunkLength);
@@ -346,6 +604,44 @@ public class DynamicOutputBuffer {
         }
     }
 
+    /**
+     * Puts the remaining bytes of the given buffer into this buffer at the
+     * current write position and increases the write position accordingly.
+     * The position of the given buffer is not changed.
+     * @param src the buffer whose remaining bytes should be put
+     */
+    public void putBytes(ByteBuffer src) {
+        int length = src.remaining();
+        putBytes(_position, src);
+        _position += length;
+    }
+
+    /**
+     * Puts the remaining bytes of the given buffer into this buffer at the
+     * given position. The bytes are copied in bulk to each internal buffer.
+     * Does not increase the write position. The position of the given
+     * buffer is not changed.
+     * @param pos the position where to put the bytes
+     * @param src the buffer whose remaining bytes should be put
+     */
+    public void putBytes(int pos, ByteBuffer src) {
+        int length = src.remaining();
+        adaptSize(pos + length);
+        ByteBuffer s = src.duplicate();
+        int limit = s.limit();
+        while (length > 0) {
+            ByteBuffer bb = getBuffer(pos);
+            int index = bufferOffset(pos);
+            bb.position(index);
+            int chunkLength = Math.min(bb.limit() - index, length);
+            s.limit(s.position() + chunkLength);
+            bb.put(s);
+            s.limit(limit);
+            pos += chunkLength;
+            length -= chunkLength;
+        }
+    }
+
     /**
      * Puts a 32-bit integer into the buffer at the current write position
      * and increases write position accordingly.
@@ -365,7 +661,7 @@ public class DynamicOutputBuffer {
     public void putInt(int pos, int i) {
         adaptSize(pos + 4);
         ByteBuffer bb = getBuffer(pos);
-        int index = pos % _bufferSize;
+        int index = bufferOffset(pos);
         if (bb.limit() - index >= 4) {
             bb.putInt(index, i);
         } else {
@@ -401,7 +697,7 @@ public class DynamicOutputBuffer {
     public void putLong(int pos, long l) {
         adaptSize(pos + 8);
         ByteBuffer bb = getBuffer(pos);
-        int index = pos % _bufferSize;
+        int index = bufferOffset(pos);
         if (bb.limit() - index >= 8) {
             bb.putLong(index, l);
         } else {
@@ -442,6 +738,48 @@ public class DynamicOutputBuffer {
         putInt(pos, Float.floatToRawIntBits(f));
     }
 
+    /**
+     * Puts several 32-bit floating point numbers into the buffer at the
+     * current write position and increases the write position accordingly
+     * @param fs an array of floats to put
+     * @param offset the offset of the first float to put
+     * @param len the number of floats to put
+     */
+    public void putFloats(float[] fs, int offset, int len) {
+        putFloats(_position, fs, offset, len);
+        _position += len * 4;
+    }
+
+    /**
+     * Puts several 32-bit floating point numbers into the buffer at the
+     * given position. The numbers are copied in bulk to each internal
+     * buffer. Does not increase the write position.
+     * @param pos the position where to put the floats
+     * @param fs an array of floats to put
+     * @param offset the offset of the first float to put
+     * @param len the number of floats to put
+     */
+    public void putFloats(int pos, float[] fs, int offset, int len) {
+        adaptSize(pos + len * 4);
+        while (len > 0) {
+            ByteBuffer bb = getBuffer(pos);
+            int index = bufferOffset(pos);
+            int n = Math.min((bb.limit() - index) / 4, len);
+            if (n == 0) {
+                // the float spans two internal buffers
+                putInt(pos, Float.floatToRawIntBits(fs[offset]));
+                n = 1;
+            } else {
+                ByteBuffer dup = bb.duplicate().order(_order);
+                dup.position(index);
+                dup.asFloatBuffer().put(fs, offset, n);
+            }
+            pos += n * 4;
+            offset += n;
+            len -= n;
+        }
+    }
+
     /**
      * Puts a 64-bit floating point number into the buffer at the current
      * write position and increases the write position accordingly.
@@ -512,107 +850,168 @@ public class DynamicOutputBuffer {
      * @return the number of UTF-8 bytes put
      */
     public int putUTF8(int pos, String s) {
+        return putUTF8(pos, s, 0, s.length());
+    }
+
+    /**
+     * Encodes a range of the given string as UTF-8, puts it into the
+     * buffer and increases the write position accordingly
+     * @param s the string
+     * @param start the index of the first character to put
+     * @param end the index after the last character to put
+     * @return the number of UTF-8 bytes put
+     */
+    public int putUTF8(String s, int start, int end) {
+        int written = putUTF8(_position, s, start, end);
+        _position += written;
+        return written;
+    }
+
+    /**
+     * Encodes the given characters as UTF-8, puts them into the buffer
+     * and increases the write position accordingly. The characters are
+     * encoded directly without creating an intermediate string.
+     * @param cs the array containing the characters to put
+     * @param offset the offset of the first character to put
+     * @param len the number of characters to put
+     * @return the number of UTF-8 bytes put
+     */
+    public int putUTF8(char[] cs, int offset, int len) {
+        int written = putUTF8(_position, cs, offset, len);
+        _position += written;
+        return written;
+    }
+
+    /**
+     * Puts the given characters as UTF-8 into the buffer at the given
+     * position. This method does not increase the write position.
+     * @param pos the position where to put the characters
+     * @param cs the array containing the characters to put
+     * @param offset the offset of the first character to put
+     * @param len the number of characters to put
+     * @return the number of UTF-8 bytes put
+     */
+    public int putUTF8(int pos, char[] cs, int offset, int len) {
+        return putUTF8(pos, CharBuffer.wrap(cs), offset, offset + len);
+    }
+
+    /**
+     * Puts a range of the given character sequence as UTF-8 into the
+     * buffer at the given position. This method does not increase the
+     * write position.
+     * @param pos the position where to put the characters
+     * @param s the character sequence
+     * @param start the index of the first character to put
+     * @param end the index after the last character to put
+     * @return the number of UTF-8 bytes put
+     */
+    protected int putUTF8(int pos, CharSequence s, int start, int end) {
         int pos2 = pos;
         ByteBuffer bb = getBuffer(pos2);
-        byte[] arr = bb.array();
-        int index = pos2 % _bufferSize;
-
-        // shortcut
-        int si = 0;
-        while (si < s.length() && index < bb.limit()) {
-            char c = s.charAt(si);
-            if (c <= 0x7F) {
-                arr[index++] = (byte)c;
-                pos2++;
-            } else {
-                break;
-            }
-            ++si;
+        if (!bb.hasArray()) {
+            return putUTF8Direct(pos, s, start, end);
         }
+        byte[] arr = bb.array();
+        int off = bb.arrayOffset();
+        int index = bufferOffset(pos2);
 
-        while (si < s.length()) {
+        int si = start;
+        while (si < end) {
             if (index == bb.limit()) {
                 bb.position(index);
                 bb = getBuffer(pos2);
                 arr = bb.array();
+                off = bb.arrayOffset();
                 index = 0;
             }
 
             char c = s.charAt(si);
             if (c <= 0x7F) {
-                arr[index++] = (byte)c;
-                pos2++;
+                // shortcut: copy the whole run of ASCII characters that
+                // fits into the current internal buffer at once
+                int runEnd = asciiRunEnd(s, si + 1, Math.min(end, si + bb.limit() - index));
+                copyASCII(s, si, runEnd, arr, off + index);
+                index += runEnd - si;
+                pos2 += runEnd - si;
+                si = runEnd;
+                continue;
             } else if (c <= 0x7FF) {
-                arr[index++] = (byte)(0xc0 | (c >> 6));
+                arr[off + index++] = (byte)(0xc0 | (c >> 6));
                 pos2++;
                 if (index == bb.limit()) {
                     bb.position(index);
                     bb = getBuffer(pos2);
                     arr = bb.array();
+                    off = bb.arrayOffset();
                     index = 0;
                 }
-                arr[index++] = (byte)(0x80 | (c & 0x3F));
+                arr[off + index++] = (byte)(0x80 | (c & 0x3F));
                 pos2++;
             } else if (Character.isLowSurrogate(c)) {
                 throw new IllegalStateException("Could not encode string. " +
-                        "Unexpected low surrogate code unit at position " + si);
+                        "Unexpected low surrogate code unit at position " + (si - start));
             } else if (Character.isHighSurrogate(c)) {
-                if (si + 1 >= s.length()) {
+                if (si + 1 >= end) {
                     throw new IllegalStateException("Could not encode string. " +
                             "Missing low surrogate code unit at end of input.");
                 }
                 char d = s.charAt(si + 1);
                 if (!Character.isLowSurrogate(d)) {
                     throw new IllegalStateException("Could not encode string. " +
-                            "Missing low surrogate code unit at position " + si);
+                            "Missing low surrogate code unit at position " + (si - start));
                 }
                 si++;
 
                 int cp = Character.toCodePoint(c, d);
-                arr[index++] = (byte)(0xf0 | (cp >> 18));
+                arr[off + index++] = (byte)(0xf0 | (cp >> 18));
                 pos2++;
                 if (index == bb.limit()) {
                     bb.position(index);
                     bb = getBuffer(pos2);
                     arr = bb.array();
+                    off = bb.arrayOffset();
                     index = 0;
                 }
-                arr[index++] = (byte)(0x80 | ((cp >> 12) & 0x3F));
+                arr[off + index++] = (byte)(0x80 | ((cp >> 12) & 0x3F));
                 pos2++;
                 if (index == bb.limit()) {
                     bb.position(index);
                     bb = getBuffer(pos2);
                     arr = bb.array();
+                    off = bb.arrayOffset();
                     index = 0;
                 }
-                arr[index++] = (byte)(0x80 | ((cp >> 6) & 0x3F));
+                arr[off + index++] = (byte)(0x80 | ((cp >> 6) & 0x3F));
                 pos2++;
                 if (index == bb.limit()) {
                     bb.position(index);
                     bb = getBuffer(pos2);
                     arr = bb.array();
+                    off = bb.arrayOffset();
                     index = 0;
                 }
-                arr[index++] = (byte)(0x80 | (cp & 0x3F));
+                arr[off + index++] = (byte)(0x80 | (cp & 0x3F));
                 pos2++;
             } else {
-                arr[index++] = (byte)(0xe0 | (c >> 12));
+                arr[off + index++] = (byte)(0xe0 | (c >> 12));
                 pos2++;
                 if (index == bb.limit()) {
                     bb.position(index);
                     bb = getBuffer(pos2);
                     arr = bb.array();
+                    off = bb.arrayOffset();
                     index = 0;
                 }
-                arr[index++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+                arr[off + index++] = (byte)(0x80 | ((c >> 6) & 0x3F));
                 pos2++;
                 if (index == bb.limit()) {
                     bb.position(index);
                     bb = getBuffer(pos2);
                     arr = bb.array();
+                    off = bb.arrayOffset();
                     index = 0;
                 }
-                arr[index++] = (byte)(0x80 | (c & 0x3F));
+                arr[off + index++] = (byte)(0x80 | (c & 0x3F));
                 pos2++;
             }
 
@@ -624,6 +1023,127 @@ public class DynamicOutputBuffer {
         return pos2 - pos;
     }
 
+    /**
+     * Finds the end of a run of ASCII characters
+     * @param s the character sequence
+     * @param start the index where to start searching
+     * @param end the index where to stop searching
+     * @return the index of the first non-ASCII character or
+     * <code>end</code> if there is none
+     */
+    private static int asciiRunEnd(CharSequence s, int start, int end) {
+        int i = start;
+        if (s instanceof CharBuffer cb && cb.hasArray()) {
+            char[] cs = cb.array();
+            int o = cb.arrayOffset() + cb.position();
+            while (i < end && cs[o + i] <= 0x7F) {
+                ++i;
+            }
+            return i;
+        }
+        while (i < end && s.charAt(i) <= 0x7F) {
+            ++i;
+        }
+        return i;
+    }
+
+    /**
+     * Copies a range of ASCII characters into a byte array. Strings are
+     * copied in bulk with {@link String#getBytes(int, int, byte[], int)},
+     * which is safe here because all characters are known to be ASCII.
+     * For compact strings, this boils down to a plain array copy. Character
+     * arrays (wrapped by {@link #putUTF8(int, char[], int, int)}) are
+     * narrowed in a loop over the array itself.
+     * @param s the character sequence containing only ASCII characters
+     * in the given range
+     * @param start the index of the first character to copy
+     * @param end the index after the last character to copy
+     * @param arr the byte array to copy into
+     * @param off the position of the first byte in the array
+     */
+    @SuppressWarnings("deprecation")
+    private static void copyASCII(CharSequence s, int start, int end, byte[] arr, int off) {
+        if (s instanceof String) {
+            ((String)s).getBytes(start, end, arr, off);
+        } else if (s instanceof CharBuffer cb && cb.hasArray()) {
+            char[] cs = cb.array();
+            int o = cb.arrayOffset() + cb.position();
+            for (int i = start; i < end; ++i) {
+                arr[off++] = (byte)cs[o + i];
+            }
+        } else {
+            for (int i = start; i < end; ++i) {
+                arr[off++] = (byte)s.charAt(i);
+            }
+        }
+    }
+
+    /**
+     * Encodes a range of the given character sequence as UTF-8 and puts it
+     * into the buffer at the given position with absolute
+     * {@link ByteBuffer#put(int, byte)} calls. Used for internal buffers
+     * that are not backed by an array (e.g. a direct caller-supplied
+     * buffer). This method does not increase the write position.
+     * @param pos the position where to put the characters
+     * @param s the character sequence
+     * @param start the index of the first character to put
+     * @param end the index after the last character to put
+     * @return the number of UTF-8 bytes put
+     */
+    private int putUTF8Direct(int pos, CharSequence s, int start, int end) {
+        int pos2 = pos;
+        ByteBuffer bb = getBuffer(pos2);
+        int index = bufferOffset(pos2);
+
+        int si = start;
+        while (si < end) {
+            int cp = s.charAt(si);
+            if (Character.isLowSurrogate((char)cp)) {
+                throw new IllegalStateException("Could not encode string. " +
+                        "Unexpected low surrogate code unit at position " + (si - start));
+            } else if (Character.isHighSurrogate((char)cp)) {
+                if (si + 1 >= end) {
+                    throw new IllegalStateException("Could not encode string. " +
+                            "Missing low surrogate code unit at end of input.");
+                }
+                char d = s.charAt(si + 1);
+                if (!Character.isLowSurrogate(d)) {
+                    throw new IllegalStateException("Could not encode string. " +
+                            "Missing low surrogate code unit at position " + (si - start));
+                }
+                cp = Character.toCodePoint((char)cp, d);
+                si++;
+            }
+            si++;
+
+            // the first byte of a multibyte sequence starts with as many
+            // 1 bits as there are bytes. all following bytes carry 6 bits.
+            int n = cp <= 0x7F ? 1 : cp <= 0x7FF ? 2 : cp <= 0xFFFF ? 3 : 4;
+            for (int k = 0; k < n; ++k) {
+                int shift = 6 * (n - 1 - k);
+                int b;
+                if (k > 0) {
+                    b = 0x80 | ((cp >> shift) & 0x3F);
+                } else if (n > 1) {
+                    b = (0xF00 >> n) | (cp >> shift);
+                } else {
+                    b = cp;
+                }
+                if (index == bb.limit()) {
+                    bb.position(index);
+                    bb = getBuffer(pos2);
+                    index = 0;
+                }
+                bb.put(index++, (byte)b);
+                pos2++;
+            }
+        }
+
+        bb.position(index);
+        adaptSize(pos2);
+        return pos2 - pos;
+    }
+
     /**
      * Tries to copy as much bytes as possible from this buffer to
      * the given channel. See {@link #flushTo(WritableByteChannel)}
@@ -632,8 +1152,8 @@ public class DynamicOutputBuffer {
      * @throws IOException if the buffer could not be flushed
      */
     public void flushTo(OutputStream out) throws IOException {
-        int n1 = _flushPosition / _bufferSize;
-        int n2 = _position / _bufferSize;
+        int n1 = bufferIndex(_flushPosition);
+        int n2 = bufferIndex(_position);
         if (n1 < n2) {
             flushTo(Channels.newChannel(out));
         }
@@ -646,20 +1166,90 @@ public class DynamicOutputBuffer {
      * the buffer the write position is currently pointing to nor does
      * it deallocate buffers following the write position. The method
      * increases an internal pointer so consecutive calls also copy
-     * consecutive bytes.
+     * consecutive bytes. If the channel is a {@link GatheringByteChannel}
+     * and more than one buffer can be flushed, all of them are written
+     * with a single vectored write call.
      * @param out the channel to write to
      * @throws IOException if the buffer could not be flushed
      */
     public void flushTo(WritableByteChannel out) throws IOException {
-        int n1 = _flushPosition / _bufferSize;
-        int n2 = _position / _bufferSize;
+        int n1 = bufferIndex(_flushPosition);
+        int n2 = bufferIndex(_position);
+        if (out instanceof GatheringByteChannel && n2 - n1 > 1) {
+            ByteBuffer[] bbs = new ByteBuffer[n2 - n1];
+            for (int i = 0; i < bbs.length; ++i) {
+                ByteBuffer bb = _buffers.get(n1 + i);
+                bb.position(i == 0 ? bufferOffset(_flushPosition) : 0);
+                bbs[i] = bb;
+            }
+            writeFully((GatheringByteChannel)out, bbs);
+            while (n1 < n2) {
+                deallocateBuffer(n1);
+                ++n1;
+            }
+            _flushPosition = bufferStart(n2);
+            return;
+        }
+
         while (n1 < n2) {
             ByteBuffer bb = _buffers.get(n1);
-            bb.rewind();
-            out.write(bb);
+            bb.position(bufferOffset(_flushPosition));
+            while (bb.hasRemaining()) {
+                out.write(bb);
+            }
             deallocateBuffer(n1);
-            _flushPosition += _bufferSize;
             ++n1;
+            _flushPosition = bufferStart(n1);
+        }
+    }
+
+    /**
+     * Copies all bytes from the current flush position up to the given
+     * position to the given output stream. See
+     * {@link #flushTo(WritableByteChannel, int)} for further information.
+     * @param out the output stream to write to
+     * @param position the position of the first byte not to flush
+     * @throws IOException if the buffer could not be flushed
+     */
+    public void flushTo(OutputStream out, int position) throws IOException {
+        if (position > _flushPosition) {
+            flushTo(Channels.newChannel(out), position);
+        }
+    }
+
+    /**
+     * Copies all bytes from the current flush position up to the given
+     * position to the given channel. In contrast to
+     * {@link #flushTo(WritableByteChannel)}, this method may also flush
+     * parts of an internal buffer. Internal buffers that have been flushed
+     * completely are deallocated. Bytes before the given position cannot
+     * be modified anymore afterwards.
+     * @param out the channel to write to
+     * @param position the position of the first byte not to flush (will
+     * be limited to the current size of this buffer)
+     * @throws IOException if the buffer could not be flushed
+     */
+    public void flushTo(WritableByteChannel out, int position) throws IOException {
+        position = Math.min(position, _size);
+        while (_flushPosition < position) {
+            int n = bufferIndex(_flushPosition);
+            int start = bufferStart(n);
+            int length = bufferLength(n);
+            int end = Math.min(position - start, length);
+
+            ByteBuffer bb = _buffers.get(n);
+            int limit = bb.limit();
+            bb.limit(end);
+            bb.position(_flushPosition - start);
+            while (bb.hasRemaining()) {
+                out.write(bb);
+            }
+            bb.limit(limit);
+
+            _flushPosition = start + end;
+            if (end == length) {
+                deallocateBuffer(n);
+            }
         }
     }
 
@@ -677,22 +1267,87 @@ public class DynamicOutputBuffer {
     /**
      * Writes all non-flushed internal buffers to the given channel.
      * If {@link #flushTo(WritableByteChannel)} has not been called
-     * before, this method writes the whole buffer to the channel.
+     * before, this method writes the whole buffer to the channel. If the
+     * channel is a {@link GatheringByteChannel}, all buffers are written
+     * with a single vectored write call.
      * @param out the channel to write to
      * @throws IOException if the buffer could not be written
      */
     public void writeTo(WritableByteChannel out) throws IOException {
-        int n1 = _flushPosition / _bufferSize;
+        int n1 = bufferIndex(_flushPosition);
         int n2 = _buffers.size();
-        int toWrite = _size - _flushPosition;
+        if (out instanceof GatheringByteChannel && n2 - n1 > 1) {
+            ByteBuffer[] bbs = new ByteBuffer[n2 - n1];
+            for (int i = 0; i < bbs.length; ++i) {
+                ByteBuffer bb = _buffers.get(n1 + i);
+                prepareWrite(bb, n1 + i);
+                bbs[i] = bb;
+            }
+            writeFully((GatheringByteChannel)out, bbs);
+            return;
+        }
+
         while (n1 < n2) {
-            int curWrite = Math.min(toWrite, _bufferSize);
             ByteBuffer bb = _buffers.get(n1);
-            bb.position(curWrite);
-            bb.flip();
-            out.write(bb);
+            prepareWrite(bb, n1);
+            while (bb.hasRemaining()) {
+                out.write(bb);
+            }
             ++n1;
-            toWrite -= curWrite;
         }
     }
+
+    /**
+     * Sets the position and the limit of the given internal buffer so
+     * that it spans all bytes that have been written but not flushed yet
+     * @param bb the internal buffer
+     * @param n the number of the internal buffer
+     */
+    private void prepareWrite(ByteBuffer bb, int n) {
+        int start = bufferStart(n);
+        bb.limit(Math.min(_size - start, bufferLength(n)));
+        bb.position(Math.max(_flushPosition - start, 0));
+    }
+
+    /**
+     * Writes all remaining bytes of the given buffers to the given
+     * channel. Gathering writes may be partial, so this method repeats
+     * the call until all buffers have been drained.
+     * @param out the channel to write to
+     * @param bbs the buffers to write
+     * @throws IOException if the buffers could not be written
+     */
+    public static void writeFully(GatheringByteChannel out, ByteBuffer[] bbs)
+            throws IOException {
+        int offset = 0;
+        while (offset < bbs.length) {
+            out.write(bbs, offset, bbs.length - offset);
+            while (offset < bbs.length && !bbs[offset].hasRemaining()) {
+                ++offset;
+            }
+        }
+    }
+
+    /**
+     * Creates read-only views of all internal buffers that have not been
+     * flushed yet. Each view starts at the first byte of its internal
+     * buffer that has not been flushed and its limit is set to the number
+     * of bytes written into it. The views share their content with this buffer but have their
+     * own position and limit, so they can be passed to a
+     * {@link GatheringByteChannel} without affecting the state of this
+     * buffer. The views are only valid until the buffer is flushed,
+     * cleared or modified.
+     * @return the read-only views (in the order of the internal buffers)
+     */
+    public ByteBuffer[] toReadOnlyByteBuffers() {
+        int n1 = bufferIndex(_flushPosition);
+        int n2 = _buffers.size();
+        ByteBuffer[] result = new ByteBuffer[Math.max(0, n2 - n1)];
+        for (int i = 0; i < result.length; ++i) {
+            ByteBuffer view = _buffers.get(n1 + i).asReadOnlyBuffer().order(_order);
+            prepareWrite(view, n1 + i);
+            result[i] = view;
+        }
+        return result;
+    }
 }
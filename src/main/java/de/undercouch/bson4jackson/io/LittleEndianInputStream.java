@@ -27,6 +27,11 @@ public class LittleEndianInputStream extends FilterInputStream implements DataIn
      */
     protected static final StaticBuffers.Key UTF8_BUFFER = StaticBuffers.Key.BUFFER0;
 
+    /**
+     * Provides re-usable buffers for {@link #readUTF(DataInput, int)}
+     */
+    protected final StaticBuffers _staticBuffers;
+
     /**
      * A small buffer to speed up reading slightly
      */
@@ -52,7 +57,18 @@ public class LittleEndianInputStream extends FilterInputStream implements DataIn
      * @see FilterInputStream#FilterInputStream(InputStream)
      */
     public LittleEndianInputStream(InputStream in) {
+        this(in, StaticBuffers.getInstance());
+    }
+
+    /**
+     * Creates a new stream that obtains re-usable buffers from the
+     * given {@link StaticBuffers} instance
+     * @param in the input stream to read from
+     * @param staticBuffers provides re-usable buffers
+     */
+    public LittleEndianInputStream(InputStream in, StaticBuffers staticBuffers) {
         super(in);
+        _staticBuffers = staticBuffers;
         _rawBuf = new byte[8];
         _buf = ByteBuffer.wrap(_rawBuf).order(ByteOrder.LITTLE_ENDIAN);
     }
@@ -244,14 +260,15 @@ public class LittleEndianInputStream extends FilterInputStream implements DataIn
      * has been read
      */
     public String readUTF(DataInput input, int len) throws IOException {
-        StaticBuffers staticBuffers = StaticBuffers.getInstance();
+        StaticBuffers staticBuffers = _staticBuffers;
 
-        ByteBuffer utf8buf = staticBuffers.byteBuffer(UTF8_BUFFER, 1024 * 8);
+        ByteBuffer utf8buf = staticBuffers.adaptiveByteBuffer(UTF8_BUFFER,
+                len > 0 ? Math.min(len, 1024 * 8) : 1024 * 8);
         byte[] rawUtf8Buf = utf8buf.array();
 
         CharsetDecoder dec = getUTF8Decoder();
         int expectedLen = (len > 0 ? (int)(dec.averageCharsPerByte() * len) + 1 : 1024);
-        CharBuffer cb = staticBuffers.charBuffer(UTF8_BUFFER, expectedLen);
+        CharBuffer cb = staticBuffers.adaptiveCharBuffer(UTF8_BUFFER, expectedLen);
         try {
             while (len != 0 || utf8buf.position() > 0) {
                 // read as much as possible
@@ -287,8 +304,8 @@ public class LittleEndianInputStream extends FilterInputStream implements DataIn
                     utf8buf.compact();
 
                     // create a new char buffer with the same key
-                    CharBuffer newBuf = staticBuffers.charBuffer(UTF8_BUFFER,
-                            cb.capacity() + 1024);
+                    CharBuffer newBuf = staticBuffers.adaptiveCharBuffer(UTF8_BUFFER,
+                            cb.capacity() * 2 + 16);
 
                     cb.flip();
                     newBuf.put(cb);
@@ -33,7 +33,7 @@ public class StaticBufferedInputStream extends InputStream {
     /**
      * The original unbuffered input stream
      */
-    protected final InputStream _in;
+    protected InputStream _in;
 
     /**
      * The current read position
@@ -64,12 +64,47 @@ public class StaticBufferedInputStream extends InputStream {
      * @param size the minimum buffer size
      */
     public StaticBufferedInputStream(InputStream in, int size) {
+        this(in, size, StaticBuffers.getInstance());
+    }
+
+    /**
+     * Creates a new buffered input stream that obtains its buffer from
+     * the given {@link StaticBuffers} instance
+     * @param in the original unbuffered input stream
+     * @param staticBuffers provides the re-usable buffer
+     */
+    public StaticBufferedInputStream(InputStream in, StaticBuffers staticBuffers) {
+        this(in, 8192, staticBuffers);
+    }
+
+    /**
+     * Creates a new buffered input stream that obtains its buffer from
+     * the given {@link StaticBuffers} instance
+     * @param in the original unbuffered input stream
+     * @param size the minimum buffer size
+     * @param staticBuffers provides the re-usable buffer
+     */
+    public StaticBufferedInputStream(InputStream in, int size, StaticBuffers staticBuffers) {
         _in = in;
-        _staticBuffers = StaticBuffers.getInstance();
+        _staticBuffers = staticBuffers;
         _byteBuffer = _staticBuffers.byteBuffer(BUFFER_KEY, size);
         _raw = _byteBuffer.array();
     }
 
+    /**
+     * Replaces the original unbuffered input stream and discards all
+     * buffered bytes and the current mark. Used to re-use this object
+     * (and its buffer) for another stream. Must not be called after
+     * {@link #close()}.
+     * @param in the new unbuffered input stream
+     */
+    public void setInputStream(InputStream in) {
+        _in = in;
+        _pos = 0;
+        _count = 0;
+        _mark = -1;
+    }
+
     @Override
     public void close() throws IOException {
         _staticBuffers.releaseByteBuffer(BUFFER_KEY, _byteBuffer);
@@ -147,7 +182,15 @@ public class StaticBufferedInputStream extends InputStream {
 
         long avail = _count - _pos;
         if (avail <= 0) {
-            return _in.skip(n);
+            if (_mark < 0) {
+                return _in.skip(n);
+            }
+            // keep skipped bytes in the buffer, so we can reset to the mark
+            fill();
+            avail = _count - _pos;
+            if (avail <= 0) {
+                return 0;
+            }
         }
 
         long cnt = Math.min(avail, n);
@@ -155,6 +198,14 @@ public class StaticBufferedInputStream extends InputStream {
         return cnt;
     }
 
+    /**
+     * @return the maximum number of bytes that can be read or skipped after
+     * {@link #mark(int)} has been called without invalidating the mark
+     */
+    public int getMarkLimit() {
+        return _raw.length;
+    }
+
     @Override
     public boolean markSupported() {
         return true;
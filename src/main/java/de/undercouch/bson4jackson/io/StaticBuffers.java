@@ -8,15 +8,24 @@ import java.nio.CharBuffer;
  * Keeps thread-local re-usable buffers. Each buffer is identified by a key.
  * This class is a singleton, whereas the reference to the instance is held
  * in a {@link SoftReference} so buffers can be freed when they are not needed
- * anymore.
+ * anymore. Instead of using the thread-local instance, generators and
+ * parsers can obtain instances from a {@link StaticBuffersPool}.
  * @see tools.jackson.core.util.BufferRecycler
  */
 public class StaticBuffers {
     /**
-     * All buffers have a minimum size of 64 kb
+     * Buffers requested through {@link #byteBuffer(Key, int)} and
+     * {@link #charBuffer(Key, int)} have a minimum size of 64 kb
      */
     public static final int GLOBAL_MIN_SIZE = 1024 * 64;
 
+    /**
+     * Released buffers larger than this are not kept for re-use, so a
+     * single very large document does not pin its buffers for the whole
+     * lifetime of the thread
+     */
+    public static final int MAX_RETAINED_SIZE = 1024 * 1024;
+
     /**
      * Possible buffer keys
      */
@@ -46,7 +55,8 @@ public class StaticBuffers {
     protected CharBuffer[] _charBuffers = new CharBuffer[Key.values().length];
 
     /**
-     * Hidden constructor
+     * Hidden constructor. Use {@link #getInstance()} or a
+     * {@link StaticBuffersPool} to obtain an instance.
      */
     protected StaticBuffers() {
         // nothing to do here
@@ -77,8 +87,21 @@ public class StaticBuffers {
      * @see #byteBuffer(Key, int)
      */
     public CharBuffer charBuffer(Key key, int minSize) {
-        minSize = Math.max(minSize, GLOBAL_MIN_SIZE);
+        return adaptiveCharBuffer(key, Math.max(minSize, GLOBAL_MIN_SIZE));
+    }
 
+    /**
+     * Works like {@link #charBuffer(Key, int)} but does not round the
+     * requested size up to {@link #GLOBAL_MIN_SIZE}. If the re-usable
+     * buffer is large enough it is returned (its capacity may be larger
+     * than requested), otherwise a new buffer of exactly the requested
+     * size is allocated.
+     * @param key the buffer's identifier
+     * @param minSize the minimum size
+     * @return the {@link CharBuffer} instance
+     * @see #adaptiveByteBuffer(Key, int)
+     */
+    public CharBuffer adaptiveCharBuffer(Key key, int minSize) {
         CharBuffer r = _charBuffers[key.ordinal()];
         if (r == null || r.capacity() < minSize) {
             r = CharBuffer.allocate(minSize);
@@ -90,12 +113,16 @@ public class StaticBuffers {
     }
 
     /**
-     * Marks a buffer a being re-usable.
+     * Marks a buffer a being re-usable. Buffers larger than
+     * {@link #MAX_RETAINED_SIZE} are silently dropped.
      * @param key the buffer's key
      * @param buf the buffer
      * @see #releaseByteBuffer(Key, ByteBuffer)
      */
     public void releaseCharBuffer(Key key, CharBuffer buf) {
+        if (buf != null && buf.capacity() > MAX_RETAINED_SIZE) {
+            return;
+        }
         _charBuffers[key.ordinal()] = buf;
     }
 
@@ -111,8 +138,22 @@ public class StaticBuffers {
      * @see #charBuffer(Key, int)
      */
     public ByteBuffer byteBuffer(Key key, int minSize) {
-        minSize = Math.max(minSize, GLOBAL_MIN_SIZE);
+        return adaptiveByteBuffer(key, Math.max(minSize, GLOBAL_MIN_SIZE));
+    }
 
+    /**
+     * Works like {@link #byteBuffer(Key, int)} but does not round the
+     * requested size up to {@link #GLOBAL_MIN_SIZE}. If the re-usable
+     * buffer is large enough it is returned (its capacity may be larger
+     * than requested), otherwise a new buffer of exactly the requested
+     * size is allocated. Callers that handle small amounts of data
+     * should use this method to avoid pinning large buffers.
+     * @param key the buffer's identifier
+     * @param minSize the minimum size
+     * @return the {@link ByteBuffer} instance
+     * @see #adaptiveCharBuffer(Key, int)
+     */
+    public ByteBuffer adaptiveByteBuffer(Key key, int minSize) {
         ByteBuffer r = _byteBuffers[key.ordinal()];
         if (r == null || r.capacity() < minSize) {
             r = ByteBuffer.allocate(minSize);
@@ -124,12 +165,16 @@ public class StaticBuffers {
     }
 
     /**
-     * Marks a buffer a being re-usable.
+     * Marks a buffer a being re-usable. Buffers larger than
+     * {@link #MAX_RETAINED_SIZE} are silently dropped.
      * @param key the buffer's key
      * @param buf the buffer
      * @see #releaseCharBuffer(Key, CharBuffer)
      */
     public void releaseByteBuffer(Key key, ByteBuffer buf) {
+        if (buf != null && buf.capacity() > MAX_RETAINED_SIZE) {
+            return;
+        }
         _byteBuffers[key.ordinal()] = buf;
     }
 }
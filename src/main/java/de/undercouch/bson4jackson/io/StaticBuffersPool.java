@@ -0,0 +1,24 @@
+package de.undercouch.bson4jackson.io;
+
+/**
+ * A pool of {@link StaticBuffers} instances. Generators and parsers
+ * acquire an instance when they are created and release it when they are
+ * closed. Between these two calls, the instance is used by one thread only.
+ * Implementations can be obtained from {@link StaticBuffersPools}.
+ * @see tools.jackson.core.util.RecyclerPool
+ */
+public interface StaticBuffersPool {
+    /**
+     * Acquires a {@link StaticBuffers} instance. The instance must not be
+     * used by another thread until it has been released again.
+     * @return the instance
+     */
+    StaticBuffers acquire();
+
+    /**
+     * Returns an instance previously acquired with {@link #acquire()} to
+     * the pool. The instance must not be used anymore after this call.
+     * @param buffers the instance to release
+     */
+    void release(StaticBuffers buffers);
+}
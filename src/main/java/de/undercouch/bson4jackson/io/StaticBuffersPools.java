@@ -0,0 +1,153 @@
+package de.undercouch.bson4jackson.io;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Provides implementations of {@link StaticBuffersPool}
+ */
+public final class StaticBuffersPools {
+    /**
+     * The default capacity of pools created with {@link #newBoundedPool()}
+     */
+    public static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * Hidden constructor
+     */
+    private StaticBuffersPools() {
+        // nothing to do here
+    }
+
+    /**
+     * @return the pool that is used if nothing else has been configured
+     * (currently {@link #threadLocalPool()})
+     */
+    public static StaticBuffersPool defaultPool() {
+        return threadLocalPool();
+    }
+
+    /**
+     * Returns a pool that hands out the thread-local instance from
+     * {@link StaticBuffers#getInstance()}. This pool works well with a
+     * limited number of long-lived platform threads, but it does not
+     * recycle anything between virtual threads or short-lived threads.
+     * @return the pool
+     */
+    public static StaticBuffersPool threadLocalPool() {
+        return ThreadLocalPool.INSTANCE;
+    }
+
+    /**
+     * Returns a pool that creates a new {@link StaticBuffers} instance
+     * for every generator or parser and never recycles anything
+     * @return the pool
+     */
+    public static StaticBuffersPool nonRecyclingPool() {
+        return NonRecyclingPool.INSTANCE;
+    }
+
+    /**
+     * Creates a lock-free pool shared by all threads that keeps at most
+     * {@link #DEFAULT_CAPACITY} instances
+     * @return the new pool
+     */
+    public static StaticBuffersPool newBoundedPool() {
+        return newBoundedPool(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a lock-free pool shared by all threads that keeps at most
+     * the given number of instances. Instances released to a full pool
+     * are dropped. This pool is suitable for virtual threads.
+     * @param capacity the maximum number of instances to keep
+     * @return the new pool
+     */
+    public static StaticBuffersPool newBoundedPool(int capacity) {
+        return new BoundedPool(capacity);
+    }
+
+    /**
+     * A pool based on {@link StaticBuffers#getInstance()}
+     */
+    private static class ThreadLocalPool implements StaticBuffersPool {
+        static final ThreadLocalPool INSTANCE = new ThreadLocalPool();
+
+        @Override
+        public StaticBuffers acquire() {
+            return StaticBuffers.getInstance();
+        }
+
+        @Override
+        public void release(StaticBuffers buffers) {
+            // nothing to do here. the instance is held by the thread.
+        }
+    }
+
+    /**
+     * A pool that always creates new instances
+     */
+    private static class NonRecyclingPool implements StaticBuffersPool {
+        static final NonRecyclingPool INSTANCE = new NonRecyclingPool();
+
+        @Override
+        public StaticBuffers acquire() {
+            return new StaticBuffers();
+        }
+
+        @Override
+        public void release(StaticBuffers buffers) {
+            // nothing to do here
+        }
+    }
+
+    /**
+     * A lock-free pool with a fixed number of slots
+     */
+    private static class BoundedPool implements StaticBuffersPool {
+        /**
+         * The slots holding pooled instances (null if empty)
+         */
+        private final AtomicReferenceArray<StaticBuffers> _slots;
+
+        BoundedPool(int capacity) {
+            if (capacity <= 0) {
+                throw new IllegalArgumentException("Pool capacity must be larger than 0");
+            }
+            _slots = new AtomicReferenceArray<>(capacity);
+        }
+
+        @Override
+        public StaticBuffers acquire() {
+            int n = _slots.length();
+            int start = ThreadLocalRandom.current().nextInt(n);
+            for (int i = 0; i < n; ++i) {
+                int slot = (start + i) % n;
+                if (_slots.get(slot) != null) {
+                    StaticBuffers r = _slots.getAndSet(slot, null);
+                    if (r != null) {
+                        return r;
+                    }
+                }
+            }
+            return new StaticBuffers();
+        }
+
+        @Override
+        public void release(StaticBuffers buffers) {
+            if (buffers == null) {
+                return;
+            }
+            int n = _slots.length();
+            int start = ThreadLocalRandom.current().nextInt(n);
+            for (int i = 0; i < n; ++i) {
+                int slot = (start + i) % n;
+                if (_slots.get(slot) == null &&
+                        _slots.compareAndSet(slot, null, buffers)) {
+                    return;
+                }
+            }
+            // the pool is full. let the garbage collector take care.
+        }
+    }
+}
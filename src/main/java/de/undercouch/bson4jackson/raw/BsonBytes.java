@@ -0,0 +1,243 @@
+package de.undercouch.bson4jackson.raw;
+
+import de.undercouch.bson4jackson.io.UnsafeByteArrayInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * <p>A complete BSON document (or array) in its encoded form. Instances
+ * wrap a range of a byte array without copying it. The range must start
+ * with the document's length and end with its terminating zero byte.</p>
+ * <p>All positions passed to the accessor methods of this class are
+ * relative to the start of the document. Multi-byte values are read in
+ * little endian byte order. The wrapped bytes must not be modified as long
+ * as they are in use by an instance of this class.</p>
+ */
+public class BsonBytes {
+    /**
+     * The byte array containing the document
+     */
+    protected final byte[] _bytes;
+
+    /**
+     * The position of the document's first byte in {@link #_bytes}
+     */
+    protected final int _offset;
+
+    /**
+     * The number of bytes of the document
+     */
+    protected final int _length;
+
+    /**
+     * Wraps a byte array containing exactly one document
+     * @param bytes the byte array (will not be copied)
+     * @throws IllegalArgumentException if the byte array does not contain
+     * a document
+     */
+    public BsonBytes(byte[] bytes) {
+        this(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Wraps a range of a byte array containing exactly one document
+     * @param bytes the byte array (will not be copied)
+     * @param offset the position of the document's first byte
+     * @param length the number of bytes of the document
+     * @throws IllegalArgumentException if the range is out of bounds or
+     * if it does not contain a document
+     */
+    public BsonBytes(byte[] bytes, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > bytes.length - length) {
+            throw new IllegalArgumentException("Range out of bounds");
+        }
+        _bytes = bytes;
+        _offset = offset;
+        _length = length;
+        if (length < 5 || getInt(0) != length || bytes[offset + length - 1] != 0) {
+            throw new IllegalArgumentException("Bytes do not contain a BSON document");
+        }
+    }
+
+    /**
+     * @return the number of bytes of the document including its length
+     * and its terminating zero byte
+     */
+    public int length() {
+        return _length;
+    }
+
+    /**
+     * Reads a byte
+     * @param pos the byte's position relative to the start of the document
+     * @return the byte
+     */
+    public byte getByte(int pos) {
+        return _bytes[_offset + checkIndex(pos, 1)];
+    }
+
+    /**
+     * Reads a 32-bit integer
+     * @param pos the integer's position relative to the start of the document
+     * @return the integer
+     */
+    public int getInt(int pos) {
+        int i = _offset + checkIndex(pos, 4);
+        return (_bytes[i] & 0xFF) |
+                (_bytes[i + 1] & 0xFF) << 8 |
+                (_bytes[i + 2] & 0xFF) << 16 |
+                (_bytes[i + 3] & 0xFF) << 24;
+    }
+
+    /**
+     * Reads a 64-bit integer
+     * @param pos the integer's position relative to the start of the document
+     * @return the integer
+     */
+    public long getLong(int pos) {
+        checkIndex(pos, 8);
+        return (getInt(pos) & 0xFFFFFFFFL) | (long)getInt(pos + 4) << 32;
+    }
+
+    /**
+     * Reads a 64-bit floating point number
+     * @param pos the number's position relative to the start of the document
+     * @return the number
+     */
+    public double getDouble(int pos) {
+        return Double.longBitsToDouble(getLong(pos));
+    }
+
+    /**
+     * Decodes a UTF-8 string
+     * @param pos the position of the string's first byte relative to the
+     * start of the document
+     * @param len the number of bytes to decode
+     * @return the string
+     */
+    public String getUTF8(int pos, int len) {
+        return new String(_bytes, _offset + checkIndex(pos, len), len,
+                StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Copies bytes into a new array
+     * @param pos the position of the first byte to copy relative to the
+     * start of the document
+     * @param len the number of bytes to copy
+     * @return the copied bytes
+     */
+    public byte[] getBytes(int pos, int len) {
+        byte[] r = new byte[len];
+        System.arraycopy(_bytes, _offset + checkIndex(pos, len), r, 0, len);
+        return r;
+    }
+
+    /**
+     * Searches for the next zero byte (e.g. the end of a C string)
+     * @param pos the position where the search should start relative to
+     * the start of the document
+     * @return the position of the zero byte relative to the start of the
+     * document
+     * @throws IllegalStateException if there is no zero byte before the
+     * end of the document
+     */
+    public int indexOfZero(int pos) {
+        int end = _offset + _length;
+        for (int i = _offset + checkIndex(pos, 0); i < end; ++i) {
+            if (_bytes[i] == 0) {
+                return i - _offset;
+            }
+        }
+        throw new IllegalStateException("Unterminated string");
+    }
+
+    /**
+     * Wraps an embedded document without copying it
+     * @param pos the position of the embedded document relative to the
+     * start of this document
+     * @return the embedded document
+     * @throws IllegalArgumentException if there is no valid document at
+     * the given position
+     */
+    public BsonBytes slice(int pos) {
+        int len = getInt(pos);
+        if (len < 0 || len > _length - pos) {
+            throw new IllegalArgumentException("Embedded document exceeds " +
+                    "the bounds of its parent");
+        }
+        return new BsonBytes(_bytes, _offset + pos, len);
+    }
+
+    /**
+     * @return a read-only view of the document's bytes in little endian
+     * byte order
+     */
+    public ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(_bytes, _offset, _length).slice()
+                .asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * @return an input stream reading the document's bytes. The stream
+     * can be passed to a {@link de.undercouch.bson4jackson.BsonParser}.
+     */
+    public InputStream newInputStream() {
+        return new UnsafeByteArrayInputStream(_bytes, _offset, _length);
+    }
+
+    /**
+     * @return a copy of the document's bytes
+     */
+    public byte[] toByteArray() {
+        return getBytes(0, _length);
+    }
+
+    /**
+     * Writes the document's bytes to an output stream
+     * @param out the output stream
+     * @throws IOException if the bytes could not be written
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(_bytes, _offset, _length);
+    }
+
+    /**
+     * Checks if a range lies within the document
+     * @param pos the start of the range
+     * @param len the length of the range
+     * @return the start of the range
+     * @throws IndexOutOfBoundsException if the range is out of bounds
+     */
+    protected int checkIndex(int pos, int len) {
+        if (pos < 0 || len < 0 || pos > _length - len) {
+            throw new IndexOutOfBoundsException("Position " + pos +
+                    " out of bounds of document with length " + _length);
+        }
+        return pos;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof BsonBytes b)) {
+            return false;
+        }
+        return Arrays.equals(_bytes, _offset, _offset + _length,
+                b._bytes, b._offset, b._offset + b._length);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 1;
+        for (int i = _offset; i < _offset + _length; ++i) {
+            result = 31 * result + _bytes[i];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,923 @@
+package de.undercouch.bson4jackson.raw;
+
+import de.undercouch.bson4jackson.BsonConstants;
+import de.undercouch.bson4jackson.io.ByteOrderUtil;
+import de.undercouch.bson4jackson.types.ObjectId;
+import de.undercouch.bson4jackson.types.Timestamp;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>Edits an encoded BSON document without parsing it. Fields are
+ * located by their path (the names of the fields and embedded documents
+ * separated by dots, e.g. <code>"stats.hits"</code>, array elements are
+ * addressed by their index). The values of all other fields are skipped
+ * using their length prefixes without being decoded.</p>
+ * <p>Values with a fixed width (INT32, INT64, DOUBLE, BOOLEAN, DATETIME,
+ * OBJECTID, and TIMESTAMP) are overwritten in place. Fields can also be
+ * appended or removed. In this case, the bytes behind the field are moved
+ * and the length prefixes of all enclosing documents are updated in a
+ * single pass. Elements can only be appended to arrays with the next
+ * index as their name. When an array element is removed, the following
+ * elements are renumbered in the same pass, so the keys remain
+ * consecutive.</p>
+ * <p>The bytes between the end of the document and the limit of the
+ * buffer passed to the constructor are used as spare capacity for
+ * appended fields. If they are not sufficient, the document will be copied
+ * into a new buffer (see {@link #getBuffer()}).</p>
+ * <p>This class is not thread-safe.</p>
+ */
+public class BsonRawEditor {
+    /**
+     * The buffer containing the document (in little endian byte order)
+     */
+    protected ByteBuffer _buffer;
+
+    /**
+     * The position of the document in {@link #_buffer}
+     */
+    protected int _start;
+
+    /**
+     * The positions of the documents enclosing the field found by the
+     * last call to {@link #locate(String)}, from the outermost to the
+     * innermost one
+     */
+    protected int[] _path = new int[8];
+
+    /**
+     * The number of valid entries in {@link #_path}
+     */
+    protected int _pathLength;
+
+    /**
+     * True if the innermost document in {@link #_path} is an array
+     */
+    protected boolean _inArray;
+
+    /**
+     * Creates an editor for the document at the beginning of the given
+     * byte array. The remaining bytes of the array are used as spare
+     * capacity.
+     * @param document the byte array containing the document (will not
+     * be copied)
+     * @throws IllegalArgumentException if the byte array does not start
+     * with a valid document header
+     */
+    public BsonRawEditor(byte[] document) {
+        this(ByteBuffer.wrap(document));
+    }
+
+    /**
+     * Creates an editor for the document starting at the buffer's current
+     * position. The bytes between the end of the document and the buffer's
+     * limit are used as spare capacity.
+     * @param buffer the buffer containing the document (will not be copied,
+     * its position, limit and byte order will not be changed)
+     * @throws IllegalArgumentException if there is no valid document
+     * header at the buffer's position
+     */
+    public BsonRawEditor(ByteBuffer buffer) {
+        _buffer = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        _start = buffer.position();
+        if (buffer.remaining() < 5 || length() < 5 || length() > buffer.remaining()) {
+            throw new IllegalArgumentException("Buffer does not contain a BSON document");
+        }
+    }
+
+    /**
+     * @return the current number of bytes of the document
+     */
+    public int length() {
+        return _buffer.getInt(_start);
+    }
+
+    /**
+     * @return a view of the document's bytes. The view's position and
+     * limit mark the start and end of the document. The view shares its
+     * content with the buffer passed to the constructor unless the
+     * document had to be copied to append fields.
+     */
+    public ByteBuffer getBuffer() {
+        ByteBuffer r = _buffer.duplicate();
+        r.limit(_start + length()).position(_start);
+        return r;
+    }
+
+    /**
+     * @return a copy of the document's bytes
+     */
+    public byte[] toByteArray() {
+        byte[] r = new byte[length()];
+        getBuffer().get(r);
+        return r;
+    }
+
+    /**
+     * Gets the BSON type of a field
+     * @param path the field's path
+     * @return the field's type (one of the <code>TYPE_*</code> constants
+     * in {@link BsonConstants}) or {@link BsonConstants#TYPE_END} if the
+     * field does not exist
+     */
+    public byte getType(String path) {
+        int pos = locate(path);
+        return pos < 0 ? BsonConstants.TYPE_END : _buffer.get(pos);
+    }
+
+    /**
+     * Gets the value of an INT32 field
+     * @param path the field's path
+     * @return the value
+     * @throws NoSuchElementException if the field does not exist
+     * @throws IllegalStateException if the field has another type
+     */
+    public int getInt32(String path) {
+        return _buffer.getInt(requireValue(path, BsonConstants.TYPE_INT32));
+    }
+
+    /**
+     * Gets the value of an INT64 field
+     * @param path the field's path
+     * @return the value
+     * @throws NoSuchElementException if the field does not exist
+     * @throws IllegalStateException if the field has another type
+     */
+    public long getInt64(String path) {
+        return _buffer.getLong(requireValue(path, BsonConstants.TYPE_INT64));
+    }
+
+    /**
+     * Gets the value of a DOUBLE field
+     * @param path the field's path
+     * @return the value
+     * @throws NoSuchElementException if the field does not exist
+     * @throws IllegalStateException if the field has another type
+     */
+    public double getDouble(String path) {
+        return _buffer.getDouble(requireValue(path, BsonConstants.TYPE_DOUBLE));
+    }
+
+    /**
+     * Gets the value of a BOOLEAN field
+     * @param path the field's path
+     * @return the value
+     * @throws NoSuchElementException if the field does not exist
+     * @throws IllegalStateException if the field has another type
+     */
+    public boolean getBoolean(String path) {
+        return _buffer.get(requireValue(path, BsonConstants.TYPE_BOOLEAN)) != 0;
+    }
+
+    /**
+     * Gets the value of a DATETIME field
+     * @param path the field's path
+     * @return the value
+     * @throws NoSuchElementException if the field does not exist
+     * @throws IllegalStateException if the field has another type
+     */
+    public Date getDateTime(String path) {
+        return new Date(_buffer.getLong(requireValue(path, BsonConstants.TYPE_DATETIME)));
+    }
+
+    /**
+     * Gets the value of an OBJECTID field
+     * @param path the field's path
+     * @return the value
+     * @throws NoSuchElementException if the field does not exist
+     * @throws IllegalStateException if the field has another type
+     */
+    public ObjectId getObjectId(String path) {
+        int pos = requireValue(path, BsonConstants.TYPE_OBJECTID);
+        // ObjectIds are stored in big endian byte order
+        int timestamp = ByteOrderUtil.flip(_buffer.getInt(pos));
+        int randomValue1 = getUnsigned24(pos + 4);
+        short randomValue2 = Short.reverseBytes(_buffer.getShort(pos + 7));
+        int counter = getUnsigned24(pos + 9);
+        return new ObjectId(timestamp, counter, randomValue1, randomValue2);
+    }
+
+    /**
+     * Gets the value of a TIMESTAMP field
+     * @param path the field's path
+     * @return the value
+     * @throws NoSuchElementException if the field does not exist
+     * @throws IllegalStateException if the field has another type
+     */
+    public Timestamp getTimestamp(String path) {
+        int pos = requireValue(path, BsonConstants.TYPE_TIMESTAMP);
+        return new Timestamp(_buffer.getInt(pos + 4), _buffer.getInt(pos));
+    }
+
+    /**
+     * Overwrites the value of an INT32 field
+     * @param path the field's path
+     * @param value the new value
+     * @return true if the value has been written, false if the field
+     * does not exist
+     * @throws IllegalStateException if the field has another type
+     */
+    public boolean setInt32(String path, int value) {
+        int pos = findValue(path, BsonConstants.TYPE_INT32);
+        if (pos < 0) {
+            return false;
+        }
+        _buffer.putInt(pos, value);
+        return true;
+    }
+
+    /**
+     * Overwrites the value of an INT64 field
+     * @param path the field's path
+     * @param value the new value
+     * @return true if the value has been written, false if the field
+     * does not exist
+     * @throws IllegalStateException if the field has another type
+     */
+    public boolean setInt64(String path, long value) {
+        int pos = findValue(path, BsonConstants.TYPE_INT64);
+        if (pos < 0) {
+            return false;
+        }
+        _buffer.putLong(pos, value);
+        return true;
+    }
+
+    /**
+     * Overwrites the value of a DOUBLE field
+     * @param path the field's path
+     * @param value the new value
+     * @return true if the value has been written, false if the field
+     * does not exist
+     * @throws IllegalStateException if the field has another type
+     */
+    public boolean setDouble(String path, double value) {
+        int pos = findValue(path, BsonConstants.TYPE_DOUBLE);
+        if (pos < 0) {
+            return false;
+        }
+        _buffer.putDouble(pos, value);
+        return true;
+    }
+
+    /**
+     * Overwrites the value of a BOOLEAN field
+     * @param path the field's path
+     * @param value the new value
+     * @return true if the value has been written, false if the field
+     * does not exist
+     * @throws IllegalStateException if the field has another type
+     */
+    public boolean setBoolean(String path, boolean value) {
+        int pos = findValue(path, BsonConstants.TYPE_BOOLEAN);
+        if (pos < 0) {
+            return false;
+        }
+        _buffer.put(pos, (byte)(value ? 1 : 0));
+        return true;
+    }
+
+    /**
+     * Overwrites the value of a DATETIME field
+     * @param path the field's path
+     * @param value the new value
+     * @return true if the value has been written, false if the field
+     * does not exist
+     * @throws IllegalStateException if the field has another type
+     */
+    public boolean setDateTime(String path, Date value) {
+        int pos = findValue(path, BsonConstants.TYPE_DATETIME);
+        if (pos < 0) {
+            return false;
+        }
+        _buffer.putLong(pos, value.getTime());
+        return true;
+    }
+
+    /**
+     * Overwrites the value of an OBJECTID field
+     * @param path the field's path
+     * @param value the new value
+     * @return true if the value has been written, false if the field
+     * does not exist
+     * @throws IllegalStateException if the field has another type
+     */
+    public boolean setObjectId(String path, ObjectId value) {
+        int pos = findValue(path, BsonConstants.TYPE_OBJECTID);
+        if (pos < 0) {
+            return false;
+        }
+        putObjectId(pos, value);
+        return true;
+    }
+
+    /**
+     * Overwrites the value of a TIMESTAMP field
+     * @param path the field's path
+     * @param value the new value
+     * @return true if the value has been written, false if the field
+     * does not exist
+     * @throws IllegalStateException if the field has another type
+     */
+    public boolean setTimestamp(String path, Timestamp value) {
+        int pos = findValue(path, BsonConstants.TYPE_TIMESTAMP);
+        if (pos < 0) {
+            return false;
+        }
+        _buffer.putInt(pos, value.getInc());
+        _buffer.putInt(pos + 4, value.getTime());
+        return true;
+    }
+
+    /**
+     * Adds a number to the value of an INT32 field in place
+     * @param path the field's path
+     * @param delta the number to add
+     * @return the new value
+     * @throws NoSuchElementException if the field does not exist
+     * @throws IllegalStateException if the field has another type
+     */
+    public int incrementInt32(String path, int delta) {
+        int pos = requireValue(path, BsonConstants.TYPE_INT32);
+        int r = _buffer.getInt(pos) + delta;
+        _buffer.putInt(pos, r);
+        return r;
+    }
+
+    /**
+     * Adds a number to the value of an INT64 field in place
+     * @param path the field's path
+     * @param delta the number to add
+     * @return the new value
+     * @throws NoSuchElementException if the field does not exist
+     * @throws IllegalStateException if the field has another type
+     */
+    public long incrementInt64(String path, long delta) {
+        int pos = requireValue(path, BsonConstants.TYPE_INT64);
+        long r = _buffer.getLong(pos) + delta;
+        _buffer.putLong(pos, r);
+        return r;
+    }
+
+    /**
+     * Appends an INT32 field to a document
+     * @param documentPath the path of the document (an empty string
+     * denotes the top-level document)
+     * @param name the new field's name
+     * @param value the new field's value
+     * @return true if the field has been appended, false if the document
+     * does not exist
+     * @see #append(String, String, byte, ByteBuffer)
+     */
+    public boolean appendInt32(String documentPath, String name, int value) {
+        return append(documentPath, name, BsonConstants.TYPE_INT32,
+                allocateValue(4).putInt(0, value));
+    }
+
+    /**
+     * Appends an INT64 field to a document
+     * @param documentPath the path of the document (an empty string
+     * denotes the top-level document)
+     * @param name the new field's name
+     * @param value the new field's value
+     * @return true if the field has been appended, false if the document
+     * does not exist
+     * @see #append(String, String, byte, ByteBuffer)
+     */
+    public boolean appendInt64(String documentPath, String name, long value) {
+        return append(documentPath, name, BsonConstants.TYPE_INT64,
+                allocateValue(8).putLong(0, value));
+    }
+
+    /**
+     * Appends a DOUBLE field to a document
+     * @param documentPath the path of the document (an empty string
+     * denotes the top-level document)
+     * @param name the new field's name
+     * @param value the new field's value
+     * @return true if the field has been appended, false if the document
+     * does not exist
+     * @see #append(String, String, byte, ByteBuffer)
+     */
+    public boolean appendDouble(String documentPath, String name, double value) {
+        return append(documentPath, name, BsonConstants.TYPE_DOUBLE,
+                allocateValue(8).putDouble(0, value));
+    }
+
+    /**
+     * Appends a BOOLEAN field to a document
+     * @param documentPath the path of the document (an empty string
+     * denotes the top-level document)
+     * @param name the new field's name
+     * @param value the new field's value
+     * @return true if the field has been appended, false if the document
+     * does not exist
+     * @see #append(String, String, byte, ByteBuffer)
+     */
+    public boolean appendBoolean(String documentPath, String name, boolean value) {
+        return append(documentPath, name, BsonConstants.TYPE_BOOLEAN,
+                allocateValue(1).put(0, (byte)(value ? 1 : 0)));
+    }
+
+    /**
+     * Appends a DATETIME field to a document
+     * @param documentPath the path of the document (an empty string
+     * denotes the top-level document)
+     * @param name the new field's name
+     * @param value the new field's value
+     * @return true if the field has been appended, false if the document
+     * does not exist
+     * @see #append(String, String, byte, ByteBuffer)
+     */
+    public boolean appendDateTime(String documentPath, String name, Date value) {
+        return append(documentPath, name, BsonConstants.TYPE_DATETIME,
+                allocateValue(8).putLong(0, value.getTime()));
+    }
+
+    /**
+     * Appends a STRING field to a document
+     * @param documentPath the path of the document (an empty string
+     * denotes the top-level document)
+     * @param name the new field's name
+     * @param value the new field's value
+     * @return true if the field has been appended, false if the document
+     * does not exist
+     * @see #append(String, String, byte, ByteBuffer)
+     */
+    public boolean appendString(String documentPath, String name, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer v = allocateValue(4 + bytes.length + 1);
+        v.putInt(0, bytes.length + 1);
+        v.put(4, bytes);
+        return append(documentPath, name, BsonConstants.TYPE_STRING, v);
+    }
+
+    /**
+     * Appends an embedded document to a document
+     * @param documentPath the path of the document (an empty string
+     * denotes the top-level document)
+     * @param name the new field's name
+     * @param value the embedded document
+     * @return true if the field has been appended, false if the document
+     * does not exist
+     * @see #append(String, String, byte, ByteBuffer)
+     */
+    public boolean appendDocument(String documentPath, String name, BsonBytes value) {
+        return append(documentPath, name, BsonConstants.TYPE_DOCUMENT,
+                value.asByteBuffer());
+    }
+
+    /**
+     * <p>Appends a field with an encoded value to a document. The bytes
+     * behind the end of the document are moved and the length prefixes of
+     * the document and all enclosing documents are updated.</p>
+     * <p>This method does not check if the document already contains a
+     * field with the same name.</p>
+     * @param documentPath the path of the document (an empty string
+     * denotes the top-level document)
+     * @param name the new field's name
+     * @param type the new field's type (one of the <code>TYPE_*</code>
+     * constants in {@link BsonConstants})
+     * @param value the encoded value. All remaining bytes will be copied.
+     * @return true if the field has been appended, false if the document
+     * does not exist
+     * @throws IllegalArgumentException if the name contains a zero byte or
+     * if the document is an array and the name is not the next index
+     */
+    public boolean append(String documentPath, String name, byte type, ByteBuffer value) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        for (byte b : nameBytes) {
+            if (b == 0) {
+                throw new IllegalArgumentException("Field name must not contain zero bytes");
+            }
+        }
+        int elementLength = 1 + nameBytes.length + 1 + value.remaining();
+
+        // make room first, so positions found below remain valid
+        ensureCapacity(length() + elementLength);
+
+        int doc;
+        if (documentPath.isEmpty()) {
+            doc = _start;
+            _pathLength = 0;
+        } else {
+            int pos = locate(documentPath);
+            if (pos < 0) {
+                return false;
+            }
+            byte t = _buffer.get(pos);
+            if (t != BsonConstants.TYPE_DOCUMENT && t != BsonConstants.TYPE_ARRAY) {
+                throw new IllegalStateException("Field " + documentPath +
+                        " is not a document");
+            }
+            doc = valuePosition(pos);
+            if (t == BsonConstants.TYPE_ARRAY) {
+                String index = String.valueOf(countElements(doc));
+                if (!index.equals(name)) {
+                    throw new IllegalArgumentException("Elements can only be " +
+                            "appended to array " + documentPath + " with index " + index);
+                }
+            }
+        }
+        pushPath(doc);
+
+        // insert the element in front of the document's terminating zero byte
+        int insert = doc + _buffer.getInt(doc) - 1;
+        int end = _start + length();
+        move(insert, insert + elementLength, end - insert);
+
+        ByteBuffer dst = _buffer.duplicate();
+        dst.position(insert);
+        dst.put(type);
+        dst.put(nameBytes);
+        dst.put((byte)0);
+        dst.put(value.duplicate());
+
+        fixHeaders(elementLength);
+        return true;
+    }
+
+    /**
+     * Removes a field. The bytes behind the field are moved and the length
+     * prefixes of all enclosing documents are updated. If the field is an
+     * array element, the following elements are renumbered.
+     * @param path the field's path
+     * @return true if the field has been removed, false if it does not exist
+     */
+    public boolean remove(String path) {
+        int pos = locate(path);
+        if (pos < 0) {
+            return false;
+        }
+        int valuePos = valuePosition(pos);
+        int elementEnd = valuePos + valueSize(_buffer.get(pos), valuePos);
+        int from = elementEnd;
+        int to = pos;
+        if (_inArray) {
+            int index;
+            try {
+                index = Integer.parseInt(path.substring(path.lastIndexOf('.') + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalStateException("Array element " + path +
+                        " does not have a numeric key");
+            }
+            int array = _path[_pathLength - 1];
+            to = renumber(elementEnd, pos, array + _buffer.getInt(array) - 1, index);
+            from = array + _buffer.getInt(array) - 1;
+        }
+        int end = _start + length();
+        move(from, to, end - from);
+        fixHeaders(to - from);
+        return true;
+    }
+
+    /**
+     * Moves array elements towards the beginning of the buffer and gives
+     * them consecutive keys. Since the new keys are never longer than the
+     * old ones, the elements can be rewritten in a single pass.
+     * @param from the position of the first element to move
+     * @param to the position the first element should be moved to
+     * @param end the position of the array's terminating zero byte
+     * @param index the new key of the first element
+     * @return the position behind the last moved element
+     */
+    protected int renumber(int from, int to, int end, int index) {
+        int r = from;
+        int w = to;
+        while (r < end) {
+            byte type = _buffer.get(r);
+            int valuePos = valuePosition(r);
+            int size = valueSize(type, valuePos);
+            byte[] key = String.valueOf(index++).getBytes(StandardCharsets.US_ASCII);
+            if (w + 2 + key.length > valuePos) {
+                throw new IllegalStateException("Array keys are not consecutive");
+            }
+            _buffer.put(w, type);
+            _buffer.put(w + 1, key);
+            _buffer.put(w + 1 + key.length, (byte)0);
+            int newValuePos = w + 2 + key.length;
+            move(valuePos, newValuePos, size);
+            r = valuePos + size;
+            w = newValuePos + size;
+        }
+        return w;
+    }
+
+    /**
+     * Counts the elements of a document
+     * @param doc the position of the document
+     * @return the number of elements
+     */
+    protected int countElements(int doc) {
+        int end = doc + _buffer.getInt(doc) - 1;
+        int pos = doc + 4;
+        int n = 0;
+        while (pos < end) {
+            int valuePos = valuePosition(pos);
+            pos = valuePos + valueSize(_buffer.get(pos), valuePos);
+            ++n;
+        }
+        return n;
+    }
+
+    /**
+     * Locates a field and checks its type
+     * @param path the field's path
+     * @param type the expected type
+     * @return the position of the field's value or -1 if the field does
+     * not exist
+     * @throws IllegalStateException if the field has another type
+     */
+    protected int findValue(String path, byte type) {
+        int pos = locate(path);
+        if (pos < 0) {
+            return -1;
+        }
+        byte actual = _buffer.get(pos);
+        if (actual != type) {
+            throw new IllegalStateException("Field " + path + " has type 0x" +
+                    Integer.toHexString(actual & 0xFF) + " instead of 0x" +
+                    Integer.toHexString(type & 0xFF));
+        }
+        return valuePosition(pos);
+    }
+
+    /**
+     * Locates a field that must exist and checks its type
+     * @param path the field's path
+     * @param type the expected type
+     * @return the position of the field's value
+     * @throws NoSuchElementException if the field does not exist
+     * @throws IllegalStateException if the field has another type
+     */
+    protected int requireValue(String path, byte type) {
+        int pos = findValue(path, type);
+        if (pos < 0) {
+            throw new NoSuchElementException("Field " + path + " does not exist");
+        }
+        return pos;
+    }
+
+    /**
+     * Locates a field by its path. Stores the positions of all enclosing
+     * documents in {@link #_path} and sets {@link #_inArray}.
+     * @param path the field's path
+     * @return the position of the field's type byte or -1 if the field
+     * does not exist
+     * @throws IllegalStateException if the document is malformed
+     */
+    protected int locate(String path) {
+        _pathLength = 0;
+        _inArray = false;
+        int doc = _start;
+        int segmentStart = 0;
+        while (true) {
+            int segmentEnd = path.indexOf('.', segmentStart);
+            boolean last = segmentEnd < 0;
+            if (last) {
+                segmentEnd = path.length();
+            }
+            byte[] name = path.substring(segmentStart, segmentEnd)
+                    .getBytes(StandardCharsets.UTF_8);
+
+            pushPath(doc);
+            int pos = findField(doc, name);
+            if (pos < 0) {
+                return -1;
+            }
+            if (last) {
+                return pos;
+            }
+
+            byte type = _buffer.get(pos);
+            if (type != BsonConstants.TYPE_DOCUMENT && type != BsonConstants.TYPE_ARRAY) {
+                return -1;
+            }
+            doc = valuePosition(pos);
+            _inArray = type == BsonConstants.TYPE_ARRAY;
+            segmentStart = segmentEnd + 1;
+        }
+    }
+
+    /**
+     * Searches a document for a field with the given name. The names of
+     * other fields are compared without decoding them.
+     * @param doc the position of the document
+     * @param name the UTF-8 encoded name to search for
+     * @return the position of the field's type byte or -1 if the field
+     * does not exist
+     * @throws IllegalStateException if the document is malformed
+     */
+    protected int findField(int doc, byte[] name) {
+        int end = doc + _buffer.getInt(doc) - 1;
+        int pos = doc + 4;
+        while (pos < end) {
+            byte type = _buffer.get(pos);
+            boolean matches = true;
+            int i = pos + 1;
+            int n = 0;
+            byte b;
+            while ((b = _buffer.get(i)) != 0) {
+                if (n >= name.length || b != name[n]) {
+                    matches = false;
+                }
+                ++i;
+                ++n;
+            }
+            if (matches && n == name.length) {
+                return pos;
+            }
+            int valuePos = i + 1;
+            int size = valueSize(type, valuePos);
+            if (size < 0 || valuePos + size > end) {
+                throw new IllegalStateException("Document is malformed");
+            }
+            pos = valuePos + size;
+        }
+        return -1;
+    }
+
+    /**
+     * Skips over the name of a field
+     * @param pos the position of the field's type byte
+     * @return the position of the field's value
+     */
+    protected int valuePosition(int pos) {
+        int i = pos + 1;
+        while (_buffer.get(i) != 0) {
+            ++i;
+        }
+        return i + 1;
+    }
+
+    /**
+     * Calculates the number of bytes of a value
+     * @param type the value's type
+     * @param pos the position of the value
+     * @return the number of bytes
+     * @throws IllegalStateException if the type is unknown
+     */
+    protected int valueSize(byte type, int pos) {
+        switch (type) {
+            case BsonConstants.TYPE_UNDEFINED:
+            case BsonConstants.TYPE_NULL:
+            case BsonConstants.TYPE_MINKEY:
+            case BsonConstants.TYPE_MAXKEY:
+                return 0;
+
+            case BsonConstants.TYPE_BOOLEAN:
+                return 1;
+
+            case BsonConstants.TYPE_INT32:
+                return 4;
+
+            case BsonConstants.TYPE_DOUBLE:
+            case BsonConstants.TYPE_DATETIME:
+            case BsonConstants.TYPE_TIMESTAMP:
+            case BsonConstants.TYPE_INT64:
+                return 8;
+
+            case BsonConstants.TYPE_OBJECTID:
+                return 12;
+
+            case BsonConstants.TYPE_DECIMAL128:
+                return 16;
+
+            case BsonConstants.TYPE_STRING:
+            case BsonConstants.TYPE_JAVASCRIPT:
+            case BsonConstants.TYPE_SYMBOL:
+                return 4 + _buffer.getInt(pos);
+
+            case BsonConstants.TYPE_DBPOINTER:
+                return 4 + _buffer.getInt(pos) + 12;
+
+            case BsonConstants.TYPE_BINARY:
+                // the size does not include the subtype
+                return 4 + 1 + _buffer.getInt(pos);
+
+            case BsonConstants.TYPE_DOCUMENT:
+            case BsonConstants.TYPE_ARRAY:
+            case BsonConstants.TYPE_JAVASCRIPT_WITH_SCOPE:
+                // the size includes the size field itself
+                return _buffer.getInt(pos);
+
+            case BsonConstants.TYPE_REGEX:
+                int i = pos;
+                while (_buffer.get(i) != 0) {
+                    ++i;
+                }
+                ++i;
+                while (_buffer.get(i) != 0) {
+                    ++i;
+                }
+                return i + 1 - pos;
+
+            default:
+                throw new IllegalStateException("Unknown element type " + type);
+        }
+    }
+
+    /**
+     * Adds a document position to {@link #_path}
+     * @param doc the document's position
+     */
+    protected void pushPath(int doc) {
+        if (_pathLength == _path.length) {
+            int[] newPath = new int[_path.length * 2];
+            System.arraycopy(_path, 0, newPath, 0, _pathLength);
+            _path = newPath;
+        }
+        _path[_pathLength++] = doc;
+    }
+
+    /**
+     * Adds a number to the length prefixes of all documents in
+     * {@link #_path}
+     * @param delta the number to add
+     */
+    protected void fixHeaders(int delta) {
+        for (int i = 0; i < _pathLength; ++i) {
+            int doc = _path[i];
+            _buffer.putInt(doc, _buffer.getInt(doc) + delta);
+        }
+    }
+
+    /**
+     * Moves bytes within the buffer. The source and destination ranges
+     * may overlap.
+     * @param from the position of the first byte to move
+     * @param to the new position of the first byte
+     * @param len the number of bytes to move
+     */
+    protected void move(int from, int to, int len) {
+        if (len == 0 || from == to) {
+            return;
+        }
+        if (_buffer.hasArray()) {
+            byte[] a = _buffer.array();
+            int o = _buffer.arrayOffset();
+            System.arraycopy(a, o + from, a, o + to, len);
+        } else {
+            byte[] tmp = new byte[len];
+            _buffer.get(from, tmp);
+            _buffer.put(to, tmp);
+        }
+    }
+
+    /**
+     * Makes sure the buffer can hold a document with the given length.
+     * Copies the document into a new buffer if necessary.
+     * @param length the required length
+     */
+    protected void ensureCapacity(int length) {
+        if (_buffer.limit() - _start >= length) {
+            return;
+        }
+        int oldLength = length();
+        ByteBuffer newBuffer = ByteBuffer.allocate(Math.max(length, oldLength * 2))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        newBuffer.put(0, getBuffer(), 0, oldLength);
+        _buffer = newBuffer;
+        _start = 0;
+    }
+
+    /**
+     * Allocates a buffer for an encoded value
+     * @param size the value's size
+     * @return the buffer
+     */
+    protected static ByteBuffer allocateValue(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Reads a 24-bit unsigned integer in big endian byte order
+     * @param pos the position of the integer
+     * @return the integer
+     */
+    protected int getUnsigned24(int pos) {
+        return (_buffer.get(pos) & 0xFF) << 16 | (_buffer.get(pos + 1) & 0xFF) << 8 |
+                (_buffer.get(pos + 2) & 0xFF);
+    }
+
+    /**
+     * Writes an ObjectId
+     * @param pos the position to write to
+     * @param objectId the ObjectId
+     */
+    protected void putObjectId(int pos, ObjectId objectId) {
+        _buffer.putInt(pos, ByteOrderUtil.flip(objectId.getTimestamp()));
+        _buffer.put(pos + 4, (byte)((objectId.getRandomValue1() >> 16) & 0xFF));
+        _buffer.put(pos + 5, (byte)((objectId.getRandomValue1() >> 8) & 0xFF));
+        _buffer.put(pos + 6, (byte)(objectId.getRandomValue1() & 0xFF));
+        _buffer.put(pos + 7, (byte)((objectId.getRandomValue2() >> 8) & 0xFF));
+        _buffer.put(pos + 8, (byte)(objectId.getRandomValue2() & 0xFF));
+        _buffer.put(pos + 9, (byte)((objectId.getCounter() >> 16) & 0xFF));
+        _buffer.put(pos + 10, (byte)((objectId.getCounter() >> 8) & 0xFF));
+        _buffer.put(pos + 11, (byte)(objectId.getCounter() & 0xFF));
+    }
+}
@@ -0,0 +1,50 @@
+package de.undercouch.bson4jackson.serializers;
+
+import de.undercouch.bson4jackson.BsonConstants;
+import de.undercouch.bson4jackson.BsonGenerator;
+import de.undercouch.bson4jackson.types.BinaryVector;
+import tools.jackson.core.JsonGenerator;
+import tools.jackson.databind.SerializationContext;
+import tools.jackson.databind.ValueSerializer;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Serializer for binary vectors. If the generator is not a
+ * {@link BsonGenerator}, the vector will be written as an object with
+ * the fields <code>$dtype</code>, <code>$padding</code>, and
+ * <code>$values</code>.
+ */
+public class BsonBinaryVectorSerializer extends ValueSerializer<BinaryVector> {
+    @Override
+    public void serialize(BinaryVector value, JsonGenerator gen,
+            SerializationContext ctxt) {
+        if (value == null) {
+            ctxt.defaultSerializeNullValue(gen);
+        } else if (gen instanceof BsonGenerator bgen) {
+            bgen.writeBinaryVector(value);
+        } else {
+            gen.writeStartObject();
+            gen.writeNumberProperty("$dtype", value.getDType() & 0xFF);
+            gen.writeNumberProperty("$padding", value.getPadding());
+            gen.writeName("$values");
+            gen.writeStartArray();
+            if (value.getDType() == BsonConstants.VECTOR_DTYPE_FLOAT32) {
+                FloatBuffer fb = value.asFloatBuffer();
+                while (fb.hasRemaining()) {
+                    gen.writeNumber(fb.get());
+                }
+            } else {
+                boolean signed = value.getDType() == BsonConstants.VECTOR_DTYPE_INT8;
+                ByteBuffer bb = value.getData();
+                while (bb.hasRemaining()) {
+                    byte b = bb.get();
+                    gen.writeNumber(signed ? b : b & 0xFF);
+                }
+            }
+            gen.writeEndArray();
+            gen.writeEndObject();
+        }
+    }
+}
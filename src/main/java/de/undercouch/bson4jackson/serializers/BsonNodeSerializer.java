@@ -0,0 +1,24 @@
+package de.undercouch.bson4jackson.serializers;
+
+import de.undercouch.bson4jackson.BsonGenerator;
+import de.undercouch.bson4jackson.tree.BsonNode;
+import tools.jackson.core.JsonGenerator;
+import tools.jackson.databind.SerializationContext;
+import tools.jackson.databind.ValueSerializer;
+
+/**
+ * Serializer for BSON tree nodes. Unmodified documents are copied
+ * verbatim if the generator is a {@link BsonGenerator}.
+ * @see BsonNode#serialize(JsonGenerator, SerializationContext)
+ */
+public class BsonNodeSerializer extends ValueSerializer<BsonNode> {
+    @Override
+    public void serialize(BsonNode value, JsonGenerator gen,
+            SerializationContext ctxt) {
+        if (value == null) {
+            ctxt.defaultSerializeNullValue(gen);
+        } else {
+            value.serialize(gen, ctxt);
+        }
+    }
+}
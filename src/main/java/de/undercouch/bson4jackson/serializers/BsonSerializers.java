@@ -1,6 +1,8 @@
 package de.undercouch.bson4jackson.serializers;
 
 import tools.jackson.databind.module.SimpleSerializers;
+import de.undercouch.bson4jackson.tree.BsonNode;
+import de.undercouch.bson4jackson.types.BinaryVector;
 import de.undercouch.bson4jackson.types.JavaScript;
 import de.undercouch.bson4jackson.types.ObjectId;
 import de.undercouch.bson4jackson.types.Symbol;
@@ -32,5 +34,7 @@ public class BsonSerializers extends SimpleSerializers {
         addSerializer(Symbol.class, new BsonSymbolSerializer());
         addSerializer(Timestamp.class, new BsonTimestampSerializer());
         addSerializer(UUID.class, new BsonUuidSerializer());
+        addSerializer(BinaryVector.class, new BsonBinaryVectorSerializer());
+        addSerializer(BsonNode.class, new BsonNodeSerializer());
     }
 }
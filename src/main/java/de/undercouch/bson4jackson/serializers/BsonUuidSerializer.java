@@ -1,6 +1,5 @@
 package de.undercouch.bson4jackson.serializers;
 
-import de.undercouch.bson4jackson.BsonConstants;
 import de.undercouch.bson4jackson.BsonGenerator;
 import tools.jackson.core.JsonGenerator;
 import tools.jackson.databind.SerializationContext;
@@ -10,15 +9,16 @@ import tools.jackson.databind.ser.jdk.UUIDSerializer;
 import java.util.UUID;
 
 /**
- * Serializer for writing UUIDs as BSON binary fields with UUID subtype
+ * Serializer for writing UUIDs as BSON binary fields with UUID subtype.
+ * The binary representation depends on
+ * {@link BsonGenerator.Feature#WRITE_UUIDS_AS_STANDARD}.
  */
 public class BsonUuidSerializer extends ValueSerializer<UUID> {
     @Override
     public void serialize(UUID value, JsonGenerator gen,
             SerializationContext ctxt) {
         if (gen instanceof BsonGenerator bgen) {
-            bgen.writeBinary(null, BsonConstants.SUBTYPE_UUID,
-                    uuidToLittleEndianBytes(value), 0, 16);
+            bgen.writeUuid(value);
         } else {
             new UUIDSerializer().serialize(value, gen, ctxt);
         }
@@ -28,7 +28,10 @@ public class BsonUuidSerializer extends ValueSerializer<UUID> {
      * Utility routine for converting UUIDs to bytes in little endian format.
      * @param uuid The UUID to convert
      * @return a byte array representing the UUID in little endian format
+     * @deprecated {@link BsonGenerator#writeUuid(UUID)} writes UUIDs
+     * without converting them to a byte array first
      */
+    @Deprecated
     protected static byte[] uuidToLittleEndianBytes(UUID uuid) {
         long msb = uuid.getMostSignificantBits();
         long lsb = uuid.getLeastSignificantBits();
@@ -0,0 +1,824 @@
+package de.undercouch.bson4jackson.tree;
+
+import de.undercouch.bson4jackson.BsonConstants;
+import de.undercouch.bson4jackson.BsonGenerator;
+import de.undercouch.bson4jackson.raw.BsonBytes;
+import de.undercouch.bson4jackson.types.BinaryVector;
+import de.undercouch.bson4jackson.types.Decimal128;
+import de.undercouch.bson4jackson.types.JavaScript;
+import de.undercouch.bson4jackson.types.ObjectId;
+import de.undercouch.bson4jackson.types.Symbol;
+import de.undercouch.bson4jackson.types.Timestamp;
+import tools.jackson.core.JsonGenerator;
+import tools.jackson.databind.SerializationContext;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * <p>A BSON document or array. Nodes read from BSON are backed by the
+ * document's bytes ({@link BsonBytes}) and decode their children lazily:
+ * the first access to a child only locates the elements of this document
+ * without decoding their values. A value is decoded when it is accessed
+ * for the first time. Embedded documents and arrays become nodes backed
+ * by a range of the same bytes, so they are not copied.</p>
+ * <p>As long as a node and its descendants have not been modified, it
+ * will be written back verbatim when it is serialized with a
+ * {@link BsonGenerator}. Modifying a descendant marks all its ancestors as
+ * modified. Modified nodes are written element by element, but their
+ * unmodified children are still copied verbatim.</p>
+ * <p>Nodes can also be created in memory and filled with
+ * {@link #set(String, BsonNode)}, {@link #put(String, Object)}, and
+ * {@link #add(BsonNode)}. A document node should only be added to one
+ * parent.</p>
+ * <p>This class is not thread-safe. Even read access modifies the node's
+ * internal state.</p>
+ */
+public class BsonDocumentNode extends BsonNode {
+    /**
+     * True if this node is an array
+     */
+    protected final boolean _array;
+
+    /**
+     * The bytes backing this node (null if the node has been created in
+     * memory)
+     */
+    protected final BsonBytes _bytes;
+
+    /**
+     * True if this node or one of its descendants has been modified, so
+     * {@link #_bytes} cannot be written verbatim anymore
+     */
+    protected boolean _modified;
+
+    /**
+     * The node containing this node (may be null)
+     */
+    protected BsonDocumentNode _parent;
+
+    /**
+     * The elements of this node (null if {@link #_bytes} has not been
+     * indexed yet)
+     */
+    protected List<Entry> _entries;
+
+    /**
+     * Creates a new empty document
+     */
+    public BsonDocumentNode() {
+        this(false);
+    }
+
+    /**
+     * Creates a new empty document or array
+     * @param array true if the node should be an array
+     */
+    public BsonDocumentNode(boolean array) {
+        _array = array;
+        _bytes = null;
+        _entries = new ArrayList<>();
+    }
+
+    /**
+     * Creates a document backed by the given bytes
+     * @param bytes the document's bytes (will not be copied)
+     */
+    public BsonDocumentNode(BsonBytes bytes) {
+        this(bytes, false);
+    }
+
+    /**
+     * Creates a document or an array backed by the given bytes
+     * @param bytes the document's bytes (will not be copied)
+     * @param array true if the bytes represent an array
+     */
+    public BsonDocumentNode(BsonBytes bytes, boolean array) {
+        _array = array;
+        _bytes = bytes;
+    }
+
+    @Override
+    public byte getBsonType() {
+        return _array ? BsonConstants.TYPE_ARRAY : BsonConstants.TYPE_DOCUMENT;
+    }
+
+    /**
+     * @return the bytes backing this node or null if the node has been
+     * created in memory or if it has been modified
+     */
+    public BsonBytes getBytes() {
+        return _modified ? null : _bytes;
+    }
+
+    /**
+     * @return true if this node or one of its descendants has been modified
+     */
+    public boolean isModified() {
+        return _modified;
+    }
+
+    /**
+     * @return the number of elements of this document or array
+     */
+    public int size() {
+        return entries().size();
+    }
+
+    /**
+     * Checks if this document contains an element with the given name
+     * @param name the name (or the index of an array element)
+     * @return true if the element exists
+     */
+    public boolean has(String name) {
+        return indexOf(name) >= 0;
+    }
+
+    /**
+     * Gets an element by name. The element's value will be decoded if it
+     * has not been accessed before.
+     * @param name the name (or the index of an array element)
+     * @return the element or null if there is no element with the given name
+     */
+    public BsonNode get(String name) {
+        int i = indexOf(name);
+        return i < 0 ? null : get(i);
+    }
+
+    /**
+     * Gets an element by its position. The element's value will be decoded
+     * if it has not been accessed before.
+     * @param index the element's position
+     * @return the element
+     * @throws IndexOutOfBoundsException if the position is out of range
+     */
+    public BsonNode get(int index) {
+        Entry e = entries().get(index);
+        if (e.node == null) {
+            e.node = decode(e.type, e.position);
+        }
+        return e.node;
+    }
+
+    /**
+     * Follows a path of element names through embedded documents and arrays
+     * @param names the element names (or indexes of array elements)
+     * @return the node at the end of the path or null if the path does
+     * not exist
+     */
+    public BsonNode path(String... names) {
+        BsonNode n = this;
+        for (String name : names) {
+            if (!(n instanceof BsonDocumentNode d)) {
+                return null;
+            }
+            n = d.get(name);
+            if (n == null) {
+                return null;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Gets the name of an element without decoding its value
+     * @param index the element's position
+     * @return the name (or the index if this node is an array)
+     * @throws IndexOutOfBoundsException if the position is out of range
+     */
+    public String getName(int index) {
+        Entry e = entries().get(index);
+        return _array ? String.valueOf(index) : e.name;
+    }
+
+    /**
+     * @return a read-only list of the names of all elements in their
+     * original order (or their indexes if this node is an array). Values
+     * will not be decoded.
+     */
+    public List<String> names() {
+        final List<Entry> entries = entries();
+        return new AbstractList<>() {
+            @Override
+            public String get(int index) {
+                return getName(index);
+            }
+
+            @Override
+            public int size() {
+                return entries.size();
+            }
+        };
+    }
+
+    /**
+     * Sets an element. If the element already exists, its value will be
+     * replaced. Otherwise, it will be appended.
+     * @param name the element's name (or the index of an array element
+     * which must not be larger than the array's size)
+     * @param value the new value
+     * @throws IndexOutOfBoundsException if this node is an array and the
+     * index is out of range
+     */
+    public void set(String name, BsonNode value) {
+        if (value == null) {
+            value = BsonValueNode.valueOf(null);
+        }
+        int i = indexOf(name);
+        if (i >= 0) {
+            Entry e = _entries.get(i);
+            release(e);
+            e.node = value;
+        } else if (_array) {
+            if (!String.valueOf(_entries.size()).equals(name)) {
+                throw new IndexOutOfBoundsException("Invalid array index: " + name);
+            }
+            _entries.add(new Entry(null, value));
+        } else {
+            _entries.add(new Entry(name, value));
+        }
+        adopt(value);
+        modified();
+    }
+
+    /**
+     * Sets an element to a value converted with
+     * {@link BsonValueNode#valueOf(Object)}
+     * @param name the element's name
+     * @param value the new value (may be a {@link BsonNode} or null)
+     * @see #set(String, BsonNode)
+     */
+    public void put(String name, Object value) {
+        set(name, value instanceof BsonNode n ? n : BsonValueNode.valueOf(value));
+    }
+
+    /**
+     * Appends an element to an array
+     * @param value the element to append
+     * @throws IllegalStateException if this node is not an array
+     */
+    public void add(BsonNode value) {
+        if (!_array) {
+            throw new IllegalStateException("Node is not an array");
+        }
+        set(String.valueOf(size()), value);
+    }
+
+    /**
+     * Removes an element
+     * @param name the element's name (or the index of an array element)
+     * @return the removed element or null if there was no such element
+     */
+    public BsonNode remove(String name) {
+        int i = indexOf(name);
+        return i < 0 ? null : remove(i);
+    }
+
+    /**
+     * Removes an element
+     * @param index the element's position
+     * @return the removed element
+     * @throws IndexOutOfBoundsException if the position is out of range
+     */
+    public BsonNode remove(int index) {
+        BsonNode r = get(index);
+        release(_entries.remove(index));
+        modified();
+        return r;
+    }
+
+    /**
+     * Converts this node and all its descendants into Java objects like
+     * {@link de.undercouch.bson4jackson.BsonParser#readDocumentAsMap()}.
+     * Documents become {@link LinkedHashMap}s, arrays become
+     * {@link ArrayList}s.
+     * @return the converted node
+     */
+    public Object toJava() {
+        int n = size();
+        if (_array) {
+            List<Object> r = new ArrayList<>(n);
+            for (int i = 0; i < n; ++i) {
+                r.add(toJava(get(i)));
+            }
+            return r;
+        }
+        Map<String, Object> r = new LinkedHashMap<>();
+        for (int i = 0; i < n; ++i) {
+            r.put(_entries.get(i).name, toJava(get(i)));
+        }
+        return r;
+    }
+
+    /**
+     * Converts a node into a Java object
+     * @param n the node
+     * @return the converted node
+     * @see #toJava()
+     */
+    protected static Object toJava(BsonNode n) {
+        if (n instanceof BsonDocumentNode d) {
+            return d.toJava();
+        }
+        return ((BsonValueNode)n).getValue();
+    }
+
+    @Override
+    public void serialize(JsonGenerator gen, SerializationContext ctxt) {
+        if (!_modified && _bytes != null && gen instanceof BsonGenerator bgen) {
+            if (_array) {
+                bgen.writeRawArray(_bytes);
+            } else {
+                bgen.writeRawDocument(_bytes);
+            }
+            return;
+        }
+
+        int n = size();
+        if (_array) {
+            gen.writeStartArray();
+        } else {
+            gen.writeStartObject();
+        }
+        for (int i = 0; i < n; ++i) {
+            if (!_array) {
+                gen.writeName(_entries.get(i).name);
+            }
+            get(i).serialize(gen, ctxt);
+        }
+        if (_array) {
+            gen.writeEndArray();
+        } else {
+            gen.writeEndObject();
+        }
+    }
+
+    /**
+     * Marks this node and all its ancestors as modified
+     */
+    protected void modified() {
+        BsonDocumentNode n = this;
+        while (n != null && !n._modified) {
+            n._modified = true;
+            n = n._parent;
+        }
+    }
+
+    /**
+     * Makes this node the parent of the given node
+     * @param child the node
+     */
+    protected void adopt(BsonNode child) {
+        if (child instanceof BsonDocumentNode d) {
+            d._parent = this;
+        }
+    }
+
+    /**
+     * Detaches the node of an element that has been removed or replaced
+     * @param e the element
+     */
+    protected void release(Entry e) {
+        if (e.node instanceof BsonDocumentNode d && d._parent == this) {
+            d._parent = null;
+        }
+    }
+
+    /**
+     * Finds the position of an element
+     * @param name the element's name (or the index of an array element)
+     * @return the position or -1 if the element does not exist
+     */
+    protected int indexOf(String name) {
+        List<Entry> entries = entries();
+        if (_array) {
+            int i;
+            try {
+                i = Integer.parseInt(name);
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+            return i >= 0 && i < entries.size() ? i : -1;
+        }
+
+        // documents usually have only a few elements. a linear search
+        // is faster than building a hash map for every document.
+        for (int i = 0; i < entries.size(); ++i) {
+            if (entries.get(i).name.equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Locates the elements of the backing bytes if necessary. Only the
+     * element names are decoded.
+     * @return the elements
+     * @throws IllegalStateException if the backing bytes are malformed
+     */
+    protected List<Entry> entries() {
+        if (_entries != null) {
+            return _entries;
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        int end = _bytes.length() - 1;
+        int pos = 4;
+        while (pos < end) {
+            byte type = _bytes.getByte(pos);
+            int nameEnd = _bytes.indexOfZero(pos + 1);
+            String name = _array ? null : _bytes.getUTF8(pos + 1, nameEnd - pos - 1);
+            pos = nameEnd + 1;
+            int size = valueSize(type, pos);
+            if (size < 0 || size > end - pos) {
+                throw new IllegalStateException("Invalid size of element " +
+                        entries.size() + ": " + size);
+            }
+            if (type != BsonConstants.TYPE_UNDEFINED) {
+                // undefined values are deprecated and ignored like in
+                // the parser
+                entries.add(new Entry(name, type, pos));
+            }
+            pos += size;
+        }
+        if (pos != end) {
+            throw new IllegalStateException("Document is malformed");
+        }
+
+        _entries = entries;
+        return entries;
+    }
+
+    /**
+     * Calculates the number of bytes of an element's value
+     * @param type the element's type
+     * @param pos the position of the value in {@link #_bytes}
+     * @return the number of bytes
+     * @throws IllegalStateException if the type is unknown
+     */
+    protected int valueSize(byte type, int pos) {
+        switch (type) {
+            case BsonConstants.TYPE_UNDEFINED:
+            case BsonConstants.TYPE_NULL:
+            case BsonConstants.TYPE_MINKEY:
+            case BsonConstants.TYPE_MAXKEY:
+                return 0;
+
+            case BsonConstants.TYPE_BOOLEAN:
+                return 1;
+
+            case BsonConstants.TYPE_INT32:
+                return 4;
+
+            case BsonConstants.TYPE_DOUBLE:
+            case BsonConstants.TYPE_DATETIME:
+            case BsonConstants.TYPE_TIMESTAMP:
+            case BsonConstants.TYPE_INT64:
+                return 8;
+
+            case BsonConstants.TYPE_OBJECTID:
+                return 12;
+
+            case BsonConstants.TYPE_DECIMAL128:
+                return 16;
+
+            case BsonConstants.TYPE_STRING:
+            case BsonConstants.TYPE_JAVASCRIPT:
+            case BsonConstants.TYPE_SYMBOL:
+                return 4 + _bytes.getInt(pos);
+
+            case BsonConstants.TYPE_DBPOINTER:
+                return 4 + _bytes.getInt(pos) + 12;
+
+            case BsonConstants.TYPE_BINARY:
+                // the size does not include the subtype
+                return 4 + 1 + _bytes.getInt(pos);
+
+            case BsonConstants.TYPE_DOCUMENT:
+            case BsonConstants.TYPE_ARRAY:
+            case BsonConstants.TYPE_JAVASCRIPT_WITH_SCOPE:
+                // the size includes the size field itself
+                return _bytes.getInt(pos);
+
+            case BsonConstants.TYPE_REGEX:
+                int patternEnd = _bytes.indexOfZero(pos);
+                return _bytes.indexOfZero(patternEnd + 1) + 1 - pos;
+
+            default:
+                throw new IllegalStateException("Unknown element type " + type);
+        }
+    }
+
+    /**
+     * Decodes an element's value
+     * @param type the element's type
+     * @param pos the position of the value in {@link #_bytes}
+     * @return the decoded value
+     */
+    protected BsonNode decode(byte type, int pos) {
+        Object value;
+        switch (type) {
+            case BsonConstants.TYPE_DOCUMENT:
+            case BsonConstants.TYPE_ARRAY:
+                BsonDocumentNode d = new BsonDocumentNode(_bytes.slice(pos),
+                        type == BsonConstants.TYPE_ARRAY);
+                d._parent = this;
+                return d;
+
+            case BsonConstants.TYPE_BINARY:
+                return decodeBinary(pos);
+
+            case BsonConstants.TYPE_DOUBLE:
+                value = _bytes.getDouble(pos);
+                break;
+
+            case BsonConstants.TYPE_STRING:
+                value = decodeString(pos);
+                break;
+
+            case BsonConstants.TYPE_OBJECTID:
+                value = decodeObjectId(pos);
+                break;
+
+            case BsonConstants.TYPE_BOOLEAN:
+                value = _bytes.getByte(pos) != 0;
+                break;
+
+            case BsonConstants.TYPE_DATETIME:
+                value = new Date(_bytes.getLong(pos));
+                break;
+
+            case BsonConstants.TYPE_NULL:
+                value = null;
+                break;
+
+            case BsonConstants.TYPE_REGEX:
+                value = decodeRegex(pos);
+                break;
+
+            case BsonConstants.TYPE_DBPOINTER:
+                Map<String, Object> pointer = new LinkedHashMap<>();
+                pointer.put("$ns", decodeString(pos));
+                pointer.put("$id", decodeObjectId(pos + 4 + _bytes.getInt(pos)));
+                value = pointer;
+                break;
+
+            case BsonConstants.TYPE_JAVASCRIPT:
+                value = new JavaScript(decodeString(pos));
+                break;
+
+            case BsonConstants.TYPE_SYMBOL:
+                value = new Symbol(decodeString(pos));
+                break;
+
+            case BsonConstants.TYPE_JAVASCRIPT_WITH_SCOPE:
+                // skip size of the whole structure
+                int codePos = pos + 4;
+                String code = decodeString(codePos);
+                BsonDocumentNode scope = new BsonDocumentNode(_bytes.slice(
+                        codePos + 4 + _bytes.getInt(codePos)));
+                @SuppressWarnings("unchecked")
+                Map<String, Object> scopeMap = (Map<String, Object>)scope.toJava();
+                value = new JavaScript(code, scopeMap);
+                break;
+
+            case BsonConstants.TYPE_INT32:
+                value = _bytes.getInt(pos);
+                break;
+
+            case BsonConstants.TYPE_TIMESTAMP:
+                value = new Timestamp(_bytes.getInt(pos + 4), _bytes.getInt(pos));
+                break;
+
+            case BsonConstants.TYPE_INT64:
+                value = _bytes.getLong(pos);
+                break;
+
+            case BsonConstants.TYPE_DECIMAL128:
+                value = Decimal128.fromIEEE754BIDEncoding(_bytes.getLong(pos + 8),
+                        _bytes.getLong(pos));
+                break;
+
+            case BsonConstants.TYPE_MINKEY:
+                value = "MinKey";
+                break;
+
+            case BsonConstants.TYPE_MAXKEY:
+                value = "MaxKey";
+                break;
+
+            default:
+                throw new IllegalStateException("Unknown element type " + type);
+        }
+        return new BsonValueNode(type, value);
+    }
+
+    /**
+     * Decodes binary data
+     * @param pos the position of the value in {@link #_bytes}
+     * @return the decoded value
+     */
+    protected BsonNode decodeBinary(int pos) {
+        int size = _bytes.getInt(pos);
+        byte subtype = _bytes.getByte(pos + 4);
+        int dataPos = pos + 5;
+        Object value;
+        switch (subtype) {
+            case BsonConstants.SUBTYPE_BINARY_OLD:
+                value = _bytes.getBytes(dataPos + 4, _bytes.getInt(dataPos));
+                break;
+
+            case BsonConstants.SUBTYPE_UUID:
+                if (size != 16) {
+                    value = _bytes.getBytes(dataPos, size);
+                    break;
+                }
+                value = new UUID(_bytes.getLong(dataPos), _bytes.getLong(dataPos + 8));
+                break;
+
+            case BsonConstants.SUBTYPE_UUID_STANDARD:
+                if (size != 16) {
+                    value = _bytes.getBytes(dataPos, size);
+                    break;
+                }
+                // standard UUIDs are stored in big endian byte order
+                value = new UUID(Long.reverseBytes(_bytes.getLong(dataPos)),
+                        Long.reverseBytes(_bytes.getLong(dataPos + 8)));
+                break;
+
+            case BsonConstants.SUBTYPE_VECTOR:
+                if (size < 2) {
+                    throw new IllegalStateException("Invalid binary vector size: " + size);
+                }
+                if (!BinaryVector.isKnownDType(_bytes.getByte(dataPos))) {
+                    // data type of a newer BSON version. keep the binary data.
+                    value = _bytes.getBytes(dataPos, size);
+                    break;
+                }
+                // wrap the vector elements without copying them
+                ByteBuffer data = _bytes.asByteBuffer();
+                data.limit(dataPos + size).position(dataPos + 2);
+                value = new BinaryVector(_bytes.getByte(dataPos),
+                        _bytes.getByte(dataPos + 1) & 0xFF, data);
+                break;
+
+            default:
+                value = _bytes.getBytes(dataPos, size);
+                break;
+        }
+        return new BsonValueNode(BsonConstants.TYPE_BINARY, subtype, value);
+    }
+
+    /**
+     * Decodes a string that consists of an integer denoting the number of
+     * bytes and the bytes (including a terminating 0 byte)
+     * @param pos the position of the string in {@link #_bytes}
+     * @return the string
+     */
+    protected String decodeString(int pos) {
+        int bytes = _bytes.getInt(pos);
+        if (bytes <= 0) {
+            throw new IllegalStateException("Invalid number of string bytes");
+        }
+        return _bytes.getUTF8(pos + 4, bytes - 1);
+    }
+
+    /**
+     * Decodes an ObjectId
+     * @param pos the position of the ObjectId in {@link #_bytes}
+     * @return the ObjectId
+     */
+    protected ObjectId decodeObjectId(int pos) {
+        int timestamp = Integer.reverseBytes(_bytes.getInt(pos));
+        int randomValue1 = (_bytes.getByte(pos + 4) & 0xFF) << 16 |
+                (_bytes.getByte(pos + 5) & 0xFF) << 8 |
+                (_bytes.getByte(pos + 6) & 0xFF);
+        short randomValue2 = (short)((_bytes.getByte(pos + 7) & 0xFF) << 8 |
+                (_bytes.getByte(pos + 8) & 0xFF));
+        int counter = (_bytes.getByte(pos + 9) & 0xFF) << 16 |
+                (_bytes.getByte(pos + 10) & 0xFF) << 8 |
+                (_bytes.getByte(pos + 11) & 0xFF);
+        return new ObjectId(timestamp, counter, randomValue1, randomValue2);
+    }
+
+    /**
+     * Decodes and compiles a regular expression
+     * @param pos the position of the regular expression in {@link #_bytes}
+     * @return the compiled regular expression
+     */
+    protected Pattern decodeRegex(int pos) {
+        int patternEnd = _bytes.indexOfZero(pos);
+        String regex = _bytes.getUTF8(pos, patternEnd - pos);
+        int optionsEnd = _bytes.indexOfZero(patternEnd + 1);
+        int flags = 0;
+        for (int i = patternEnd + 1; i < optionsEnd; ++i) {
+            switch (_bytes.getByte(i)) {
+                case 'i':
+                    flags |= Pattern.CASE_INSENSITIVE;
+                    break;
+
+                case 'm':
+                    flags |= Pattern.MULTILINE;
+                    break;
+
+                case 's':
+                    flags |= Pattern.DOTALL;
+                    break;
+
+                case 'u':
+                    flags |= Pattern.UNICODE_CASE;
+                    break;
+
+                case 'l':
+                case 'x':
+                    // unsupported
+                    break;
+
+                default:
+                    throw new IllegalStateException("Invalid regex");
+            }
+        }
+        return Pattern.compile(regex, flags);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof BsonDocumentNode d) || _array != d._array) {
+            return false;
+        }
+        if (getBytes() != null && getBytes().equals(d.getBytes())) {
+            return true;
+        }
+        int n = size();
+        if (n != d.size()) {
+            return false;
+        }
+        for (int i = 0; i < n; ++i) {
+            if (!getName(i).equals(d.getName(i)) || !get(i).equals(d.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = _array ? 1 : 0;
+        int n = size();
+        for (int i = 0; i < n; ++i) {
+            result = 31 * result + getName(i).hashCode();
+            result = 31 * result + get(i).hashCode();
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(toJava());
+    }
+
+    /**
+     * An element of a document or an array
+     */
+    protected static class Entry {
+        /**
+         * The element's name (null for array elements)
+         */
+        final String name;
+
+        /**
+         * The element's BSON type (only valid if {@link #position} is valid)
+         */
+        final byte type;
+
+        /**
+         * The position of the element's value in the backing bytes or -1
+         * if the element has been created in memory
+         */
+        final int position;
+
+        /**
+         * The decoded value (null if the value has not been decoded yet)
+         */
+        BsonNode node;
+
+        Entry(String name, byte type, int position) {
+            this.name = name;
+            this.type = type;
+            this.position = position;
+        }
+
+        Entry(String name, BsonNode node) {
+            this(name, node.getBsonType(), -1);
+            this.node = node;
+        }
+    }
+}
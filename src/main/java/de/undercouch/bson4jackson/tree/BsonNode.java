@@ -0,0 +1,51 @@
+package de.undercouch.bson4jackson.tree;
+
+import de.undercouch.bson4jackson.BsonConstants;
+import de.undercouch.bson4jackson.BsonGenerator;
+import tools.jackson.core.JsonGenerator;
+import tools.jackson.databind.SerializationContext;
+
+/**
+ * <p>A node of a BSON tree. In contrast to Jackson's JSON tree model,
+ * every node keeps its BSON type, so ObjectIds, date times, Decimal128
+ * values, and binary subtypes survive a round trip.</p>
+ * <p>Documents and arrays are represented by {@link BsonDocumentNode}s,
+ * all other values by {@link BsonValueNode}s.</p>
+ */
+public abstract class BsonNode {
+    /**
+     * @return the node's BSON type (one of the <code>TYPE_*</code>
+     * constants in {@link BsonConstants})
+     */
+    public abstract byte getBsonType();
+
+    /**
+     * @return true if this node is a document
+     */
+    public boolean isDocument() {
+        return getBsonType() == BsonConstants.TYPE_DOCUMENT;
+    }
+
+    /**
+     * @return true if this node is an array
+     */
+    public boolean isArray() {
+        return getBsonType() == BsonConstants.TYPE_ARRAY;
+    }
+
+    /**
+     * @return true if this node is neither a document nor an array
+     */
+    public boolean isValue() {
+        return !isDocument() && !isArray();
+    }
+
+    /**
+     * Writes this node to a generator. If the generator is a
+     * {@link BsonGenerator}, the node's BSON type will be preserved.
+     * @param gen the generator to write to
+     * @param ctxt the serialization context (used to serialize values
+     * that are not natively supported by the generator)
+     */
+    public abstract void serialize(JsonGenerator gen, SerializationContext ctxt);
+}
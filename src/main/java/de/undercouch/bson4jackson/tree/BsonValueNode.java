@@ -0,0 +1,306 @@
+package de.undercouch.bson4jackson.tree;
+
+import de.undercouch.bson4jackson.BsonConstants;
+import de.undercouch.bson4jackson.BsonGenerator;
+import de.undercouch.bson4jackson.UuidRepresentation;
+import de.undercouch.bson4jackson.types.BinaryVector;
+import de.undercouch.bson4jackson.types.Decimal128;
+import de.undercouch.bson4jackson.types.JavaScript;
+import de.undercouch.bson4jackson.types.ObjectId;
+import de.undercouch.bson4jackson.types.Symbol;
+import de.undercouch.bson4jackson.types.Timestamp;
+import tools.jackson.core.JsonGenerator;
+import tools.jackson.databind.SerializationContext;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * <p>A BSON value that is neither a document nor an array. The value is
+ * represented by the same Java object {@link de.undercouch.bson4jackson.BsonParser}
+ * reports for the value's type (e.g. {@link String}, {@link Integer},
+ * {@link Date}, {@link ObjectId}, {@link Decimal128}, or
+ * <code>byte[]</code>). The BSON type and the binary subtype are kept
+ * separately, so the value can be written back without losing
+ * information.</p>
+ * <p>Instances of this class are immutable.</p>
+ */
+public class BsonValueNode extends BsonNode {
+    /**
+     * The BSON type
+     */
+    protected final byte _type;
+
+    /**
+     * The binary subtype (only relevant if {@link #_type} is
+     * {@link BsonConstants#TYPE_BINARY})
+     */
+    protected final byte _subtype;
+
+    /**
+     * The value (may be null)
+     */
+    protected final Object _value;
+
+    /**
+     * Creates a new value node. If the type is
+     * {@link BsonConstants#TYPE_BINARY}, the binary subtype will be derived
+     * from the value.
+     * @param type the BSON type (one of the <code>TYPE_*</code> constants
+     * in {@link BsonConstants})
+     * @param value the value (may be null)
+     */
+    public BsonValueNode(byte type, Object value) {
+        this(type, defaultSubtype(value), value);
+    }
+
+    /**
+     * Creates a new value node
+     * @param type the BSON type (one of the <code>TYPE_*</code> constants
+     * in {@link BsonConstants})
+     * @param subtype the binary subtype (one of the <code>SUBTYPE_*</code>
+     * constants in {@link BsonConstants}, only relevant for binary data)
+     * @param value the value (may be null)
+     */
+    public BsonValueNode(byte type, byte subtype, Object value) {
+        _type = type;
+        _subtype = subtype;
+        _value = value;
+    }
+
+    /**
+     * Creates a value node for the given Java object and selects the BSON
+     * type {@link BsonGenerator} would use to serialize it. {@link UUID}s
+     * get the legacy binary subtype {@link BsonConstants#SUBTYPE_UUID}.
+     * @param value the value (may be null)
+     * @return the value node
+     * @throws IllegalArgumentException if the value's type is not supported
+     */
+    public static BsonValueNode valueOf(Object value) {
+        byte type;
+        if (value == null) {
+            type = BsonConstants.TYPE_NULL;
+        } else if (value instanceof String) {
+            type = BsonConstants.TYPE_STRING;
+        } else if (value instanceof Integer || value instanceof Short ||
+                value instanceof Byte) {
+            value = ((Number)value).intValue();
+            type = BsonConstants.TYPE_INT32;
+        } else if (value instanceof Long) {
+            type = BsonConstants.TYPE_INT64;
+        } else if (value instanceof Double || value instanceof Float) {
+            value = ((Number)value).doubleValue();
+            type = BsonConstants.TYPE_DOUBLE;
+        } else if (value instanceof BigDecimal bd) {
+            value = new Decimal128(bd);
+            type = BsonConstants.TYPE_DECIMAL128;
+        } else if (value instanceof Decimal128) {
+            type = BsonConstants.TYPE_DECIMAL128;
+        } else if (value instanceof Boolean) {
+            type = BsonConstants.TYPE_BOOLEAN;
+        } else if (value instanceof Date) {
+            type = BsonConstants.TYPE_DATETIME;
+        } else if (value instanceof ObjectId) {
+            type = BsonConstants.TYPE_OBJECTID;
+        } else if (value instanceof byte[] || value instanceof UUID ||
+                value instanceof BinaryVector) {
+            type = BsonConstants.TYPE_BINARY;
+        } else if (value instanceof Pattern) {
+            type = BsonConstants.TYPE_REGEX;
+        } else if (value instanceof Timestamp) {
+            type = BsonConstants.TYPE_TIMESTAMP;
+        } else if (value instanceof Symbol) {
+            type = BsonConstants.TYPE_SYMBOL;
+        } else if (value instanceof JavaScript js) {
+            type = js.getScope() == null ? BsonConstants.TYPE_JAVASCRIPT :
+                    BsonConstants.TYPE_JAVASCRIPT_WITH_SCOPE;
+        } else {
+            throw new IllegalArgumentException("Unsupported value type: " +
+                    value.getClass().getName());
+        }
+        return new BsonValueNode(type, value);
+    }
+
+    /**
+     * Derives the binary subtype from a value
+     * @param value the value
+     * @return the binary subtype
+     */
+    protected static byte defaultSubtype(Object value) {
+        if (value instanceof UUID) {
+            return BsonConstants.SUBTYPE_UUID;
+        }
+        if (value instanceof BinaryVector) {
+            return BsonConstants.SUBTYPE_VECTOR;
+        }
+        return BsonConstants.SUBTYPE_BINARY;
+    }
+
+    @Override
+    public byte getBsonType() {
+        return _type;
+    }
+
+    /**
+     * @return the binary subtype (one of the <code>SUBTYPE_*</code>
+     * constants in {@link BsonConstants}, only relevant for binary data)
+     */
+    public byte getBinarySubtype() {
+        return _subtype;
+    }
+
+    /**
+     * @return the value (may be null)
+     */
+    public Object getValue() {
+        return _value;
+    }
+
+    /**
+     * <p>{@inheritDoc}</p>
+     * <p>Binary data with the old binary subtype
+     * {@link BsonConstants#SUBTYPE_BINARY_OLD} is written with the
+     * generic subtype {@link BsonConstants#SUBTYPE_BINARY}. DBPointers
+     * are written as documents.</p>
+     */
+    @Override
+    public void serialize(JsonGenerator gen, SerializationContext ctxt) {
+        if (!(gen instanceof BsonGenerator bgen)) {
+            if (_value == null) {
+                gen.writeNull();
+            } else {
+                ctxt.writeValue(gen, _value);
+            }
+            return;
+        }
+
+        switch (_type) {
+            case BsonConstants.TYPE_DOUBLE:
+                bgen.writeNumber(((Number)_value).doubleValue());
+                break;
+
+            case BsonConstants.TYPE_STRING:
+                bgen.writeString((String)_value);
+                break;
+
+            case BsonConstants.TYPE_BINARY:
+                if (_value instanceof UUID u) {
+                    bgen.writeUuid(u, _subtype == BsonConstants.SUBTYPE_UUID_STANDARD ?
+                            UuidRepresentation.STANDARD : UuidRepresentation.JAVA_LEGACY);
+                } else if (_value instanceof BinaryVector v) {
+                    bgen.writeBinaryVector(v);
+                } else {
+                    byte[] data = (byte[])_value;
+                    byte subtype = _subtype == BsonConstants.SUBTYPE_BINARY_OLD ?
+                            BsonConstants.SUBTYPE_BINARY : _subtype;
+                    bgen.writeBinary(null, subtype, data, 0, data.length);
+                }
+                break;
+
+            case BsonConstants.TYPE_OBJECTID:
+                bgen.writeObjectId((ObjectId)_value);
+                break;
+
+            case BsonConstants.TYPE_BOOLEAN:
+                bgen.writeBoolean((Boolean)_value);
+                break;
+
+            case BsonConstants.TYPE_DATETIME:
+                bgen.writeDateTime((Date)_value);
+                break;
+
+            case BsonConstants.TYPE_REGEX:
+                bgen.writeRegex((Pattern)_value);
+                break;
+
+            case BsonConstants.TYPE_JAVASCRIPT:
+            case BsonConstants.TYPE_JAVASCRIPT_WITH_SCOPE:
+                bgen.writeJavaScript((JavaScript)_value, ctxt);
+                break;
+
+            case BsonConstants.TYPE_SYMBOL:
+                bgen.writeSymbol((Symbol)_value);
+                break;
+
+            case BsonConstants.TYPE_INT32:
+                bgen.writeNumber(((Number)_value).intValue());
+                break;
+
+            case BsonConstants.TYPE_TIMESTAMP:
+                bgen.writeTimestamp((Timestamp)_value);
+                break;
+
+            case BsonConstants.TYPE_INT64:
+                bgen.writeNumber(((Number)_value).longValue());
+                break;
+
+            case BsonConstants.TYPE_DECIMAL128:
+                if (_value instanceof BigDecimal bd) {
+                    bgen.writeNumber(bd);
+                } else {
+                    bgen.writeDecimal128((Decimal128)_value);
+                }
+                break;
+
+            case BsonConstants.TYPE_MINKEY:
+                bgen.writeMinKey();
+                break;
+
+            case BsonConstants.TYPE_MAXKEY:
+                bgen.writeMaxKey();
+                break;
+
+            default:
+                if (_value == null) {
+                    bgen.writeNull();
+                } else {
+                    ctxt.writeValue(bgen, _value);
+                }
+                break;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof BsonValueNode n)) {
+            return false;
+        }
+        if (_type != n._type) {
+            return false;
+        }
+        if (_type == BsonConstants.TYPE_BINARY && _subtype != n._subtype) {
+            return false;
+        }
+        if (_value instanceof byte[] a && n._value instanceof byte[] b) {
+            return Arrays.equals(a, b);
+        }
+        if (_value instanceof Pattern a && n._value instanceof Pattern b) {
+            return a.pattern().equals(b.pattern()) && a.flags() == b.flags();
+        }
+        return Objects.equals(_value, n._value);
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + _type;
+        if (_value instanceof byte[] a) {
+            result = prime * result + Arrays.hashCode(a);
+        } else if (_value instanceof Pattern p) {
+            result = prime * result + p.pattern().hashCode();
+        } else {
+            result = prime * result + Objects.hashCode(_value);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(_value);
+    }
+}
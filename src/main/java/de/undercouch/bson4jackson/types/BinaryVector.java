@@ -0,0 +1,244 @@
+package de.undercouch.bson4jackson.types;
+
+import de.undercouch.bson4jackson.BsonConstants;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * <p>A dense numeric vector stored as BSON binary data with the vector
+ * subtype ({@link BsonConstants#SUBTYPE_VECTOR}). The payload starts with
+ * a data type byte and a padding byte followed by the vector elements:</p>
+ * <ul>
+ * <li>{@link BsonConstants#VECTOR_DTYPE_INT8}: signed 8-bit integers</li>
+ * <li>{@link BsonConstants#VECTOR_DTYPE_FLOAT32}: 32-bit IEEE 754 floating
+ * point numbers in little endian byte order</li>
+ * <li>{@link BsonConstants#VECTOR_DTYPE_PACKED_BIT}: single bits packed
+ * into bytes. The padding specifies how many of the least significant
+ * bits of the last byte are unused.</li>
+ * </ul>
+ * <p>Instances wrap the element data without copying it. Float vectors
+ * can be accessed through a {@link FloatBuffer} view over the data
+ * (see {@link #asFloatBuffer()}).</p>
+ */
+public class BinaryVector {
+    /**
+     * The vector's data type
+     */
+    protected final byte _dtype;
+
+    /**
+     * The number of unused bits in the last byte of a packed bit vector
+     */
+    protected final int _padding;
+
+    /**
+     * The vector elements (without data type and padding bytes)
+     */
+    protected final ByteBuffer _data;
+
+    /**
+     * Constructs a new vector
+     * @param dtype the data type (one of the <code>VECTOR_DTYPE_*</code>
+     * constants in {@link BsonConstants})
+     * @param padding the number of unused bits in the last byte of a
+     * packed bit vector (must be 0 for other data types)
+     * @param data the vector elements. The buffer's remaining bytes are
+     * wrapped without copying them.
+     * @throws IllegalArgumentException if the data type is unknown, if the
+     * padding is invalid, or if the number of bytes does not match the
+     * data type
+     */
+    public BinaryVector(byte dtype, int padding, ByteBuffer data) {
+        switch (dtype) {
+            case BsonConstants.VECTOR_DTYPE_INT8:
+                if (padding != 0) {
+                    throw new IllegalArgumentException("Padding must be 0 for INT8 vectors");
+                }
+                break;
+
+            case BsonConstants.VECTOR_DTYPE_FLOAT32:
+                if (padding != 0) {
+                    throw new IllegalArgumentException("Padding must be 0 for FLOAT32 vectors");
+                }
+                if (data.remaining() % 4 != 0) {
+                    throw new IllegalArgumentException("Number of bytes of a " +
+                            "FLOAT32 vector must be a multiple of 4");
+                }
+                break;
+
+            case BsonConstants.VECTOR_DTYPE_PACKED_BIT:
+                if (padding < 0 || padding > 7) {
+                    throw new IllegalArgumentException("Padding of PACKED_BIT " +
+                            "vectors must be between 0 and 7");
+                }
+                if (padding != 0 && !data.hasRemaining()) {
+                    throw new IllegalArgumentException("Padding of empty " +
+                            "PACKED_BIT vectors must be 0");
+                }
+                break;
+
+            default:
+                throw new IllegalArgumentException("Unknown vector data type 0x" +
+                        Integer.toHexString(dtype & 0xFF));
+        }
+
+        _dtype = dtype;
+        _padding = padding;
+        _data = data.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Creates a vector of 32-bit floating point numbers
+     * @param values the vector elements (will be copied)
+     * @return the vector
+     */
+    public static BinaryVector float32(float[] values) {
+        ByteBuffer data = ByteBuffer.allocate(values.length * 4)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        data.asFloatBuffer().put(values);
+        return new BinaryVector(BsonConstants.VECTOR_DTYPE_FLOAT32, 0, data);
+    }
+
+    /**
+     * Creates a vector of signed 8-bit integers
+     * @param values the vector elements (will not be copied)
+     * @return the vector
+     */
+    public static BinaryVector int8(byte[] values) {
+        return new BinaryVector(BsonConstants.VECTOR_DTYPE_INT8, 0,
+                ByteBuffer.wrap(values));
+    }
+
+    /**
+     * Creates a vector of packed bits
+     * @param bits the bits packed into bytes (most significant bit first,
+     * will not be copied)
+     * @param padding the number of unused least significant bits in
+     * the last byte
+     * @return the vector
+     */
+    public static BinaryVector packedBit(byte[] bits, int padding) {
+        return new BinaryVector(BsonConstants.VECTOR_DTYPE_PACKED_BIT, padding,
+                ByteBuffer.wrap(bits));
+    }
+
+    /**
+     * Checks if a data type is supported by this class
+     * @param dtype the data type
+     * @return true if the data type is one of the <code>VECTOR_DTYPE_*</code>
+     * constants in {@link BsonConstants}
+     */
+    public static boolean isKnownDType(byte dtype) {
+        return dtype == BsonConstants.VECTOR_DTYPE_INT8 ||
+                dtype == BsonConstants.VECTOR_DTYPE_FLOAT32 ||
+                dtype == BsonConstants.VECTOR_DTYPE_PACKED_BIT;
+    }
+
+    /**
+     * @return the data type (one of the <code>VECTOR_DTYPE_*</code>
+     * constants in {@link BsonConstants})
+     */
+    public byte getDType() {
+        return _dtype;
+    }
+
+    /**
+     * @return the number of unused bits in the last byte of a packed
+     * bit vector (always 0 for other data types)
+     */
+    public int getPadding() {
+        return _padding;
+    }
+
+    /**
+     * @return the number of vector elements
+     */
+    public int size() {
+        switch (_dtype) {
+            case BsonConstants.VECTOR_DTYPE_FLOAT32:
+                return _data.remaining() / 4;
+
+            case BsonConstants.VECTOR_DTYPE_PACKED_BIT:
+                return _data.remaining() * 8 - _padding;
+
+            default:
+                return _data.remaining();
+        }
+    }
+
+    /**
+     * @return a read-only view of the vector elements in little endian
+     * byte order (without data type and padding bytes)
+     */
+    public ByteBuffer getData() {
+        return _data.asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * @return a read-only view of the elements of a FLOAT32 vector
+     * @throws IllegalStateException if this is not a FLOAT32 vector
+     */
+    public FloatBuffer asFloatBuffer() {
+        if (_dtype != BsonConstants.VECTOR_DTYPE_FLOAT32) {
+            throw new IllegalStateException("Vector is not a FLOAT32 vector");
+        }
+        return getData().asFloatBuffer();
+    }
+
+    /**
+     * @return a copy of the elements of a FLOAT32 vector
+     * @throws IllegalStateException if this is not a FLOAT32 vector
+     */
+    public float[] toFloatArray() {
+        FloatBuffer fb = asFloatBuffer();
+        float[] r = new float[fb.remaining()];
+        fb.get(r);
+        return r;
+    }
+
+    /**
+     * @return a copy of the elements of an INT8 vector or the packed
+     * bytes of a PACKED_BIT vector
+     * @throws IllegalStateException if this is a FLOAT32 vector
+     */
+    public byte[] toByteArray() {
+        if (_dtype == BsonConstants.VECTOR_DTYPE_FLOAT32) {
+            throw new IllegalStateException("Vector is a FLOAT32 vector");
+        }
+        byte[] r = new byte[_data.remaining()];
+        _data.duplicate().get(r);
+        return r;
+    }
+
+    /**
+     * @return the payload of the binary data this vector is stored in (the
+     * data type, the padding, and the vector elements)
+     */
+    public byte[] toBinaryData() {
+        byte[] r = new byte[_data.remaining() + 2];
+        r[0] = _dtype;
+        r[1] = (byte)_padding;
+        _data.duplicate().get(r, 2, r.length - 2);
+        return r;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof BinaryVector v)) {
+            return false;
+        }
+        return _dtype == v._dtype && _padding == v._padding && _data.equals(v._data);
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + _dtype;
+        result = prime * result + _padding;
+        result = prime * result + _data.hashCode();
+        return result;
+    }
+}
@@ -49,6 +49,7 @@ public final class Decimal128 extends Number implements Comparable<Decimal128> {
 
     private static final int EXPONENT_OFFSET = 6176;
     private static final int MAX_BIT_LENGTH = 113;
+    private static final long SIGNIFICAND_HIGH_MASK = 0x0001ffffffffffffL;
 
     private static final BigInteger BIG_INT_TEN = new BigInteger("10");
     private static final BigInteger BIG_INT_ONE = new BigInteger("1");
@@ -138,6 +139,29 @@ public final class Decimal128 extends Number implements Comparable<Decimal128> {
         return new Decimal128(high, low);
     }
 
+    /**
+     * Returns a Decimal128 value representing the given unscaled value and scale, i.e. {@code unscaledValue * 10^-scale}. If the
+     * exponent is within the Decimal128 range, the value is encoded directly without creating a BigDecimal.
+     *
+     * @param unscaledValue the unscaled value
+     * @param scale the scale
+     * @return the Decimal128 value representing the given unscaled value and scale
+     * @throws NumberFormatException if the value is out of the Decimal128 range
+     */
+    public static Decimal128 valueOf(final long unscaledValue, final int scale) {
+        long exponent = -(long) scale;
+        if (exponent < MIN_EXPONENT || exponent > MAX_EXPONENT) {
+            // clamp or round exactly
+            return new Decimal128(BigDecimal.valueOf(unscaledValue, scale));
+        }
+        long localHigh = (exponent + EXPONENT_OFFSET) << 49;
+        if (unscaledValue < 0) {
+            localHigh |= SIGN_BIT_MASK;
+        }
+        // the absolute value of Long.MIN_VALUE is correct if interpreted as unsigned
+        return new Decimal128(localHigh, unscaledValue < 0 ? -unscaledValue : unscaledValue);
+    }
+
     /**
      * Constructs a Decimal128 value representing the given long.
      *
@@ -311,6 +335,11 @@ public final class Decimal128 extends Number implements Comparable<Decimal128> {
             return BigDecimal.valueOf(0, scale);
         }
 
+        if ((high & SIGNIFICAND_HIGH_MASK) == 0 && low >= 0) {
+            // the significand fits into a long
+            return BigDecimal.valueOf(isNegative() ? -low : low, scale);
+        }
+
         return new BigDecimal(new BigInteger(isNegative() ? -1 : 1, getBytes()), scale);
     }
 
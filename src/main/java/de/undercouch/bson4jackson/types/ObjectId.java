@@ -5,6 +5,8 @@ package de.undercouch.bson4jackson.types;
  * consist of a timestamp, a machine ID and a counter.
  */
 public class ObjectId {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
     private final int timestamp;
     private final int counter;
     private final int randomValue1;
@@ -51,4 +53,77 @@ public class ObjectId {
     public short getRandomValue2() {
         return randomValue2;
     }
+
+    /**
+     * Parses an identifier from a string of 24 hexadecimal digits as
+     * generated by {@link #toHexString()}
+     * @param hex the hexadecimal string
+     * @return the identifier
+     * @throws IllegalArgumentException if the string is not a valid
+     * identifier
+     */
+    public static ObjectId parse(String hex) {
+        if (hex.length() != 24) {
+            throw new IllegalArgumentException("Invalid ObjectId: " + hex);
+        }
+        int timestamp = parseHex(hex, 0, 8);
+        int randomValue1 = parseHex(hex, 8, 14);
+        short randomValue2 = (short)parseHex(hex, 14, 18);
+        int counter = parseHex(hex, 18, 24);
+        return new ObjectId(timestamp, counter, randomValue1, randomValue2);
+    }
+
+    private static int parseHex(String hex, int start, int end) {
+        int r = 0;
+        for (int i = start; i < end; ++i) {
+            int d = Character.digit(hex.charAt(i), 16);
+            if (d < 0) {
+                throw new IllegalArgumentException("Invalid ObjectId: " + hex);
+            }
+            r = (r << 4) | d;
+        }
+        return r;
+    }
+
+    /**
+     * Converts this identifier to a string of 24 hexadecimal digits in the
+     * order in which its bytes are stored in BSON documents (timestamp,
+     * random values, counter)
+     * @return the hexadecimal string
+     */
+    public String toHexString() {
+        char[] r = new char[24];
+        putHex(r, 0, timestamp, 8);
+        putHex(r, 8, randomValue1, 6);
+        putHex(r, 14, randomValue2, 4);
+        putHex(r, 18, counter, 6);
+        return new String(r);
+    }
+
+    private static void putHex(char[] dst, int pos, int value, int digits) {
+        for (int i = digits - 1; i >= 0; --i) {
+            dst[pos + i] = HEX_DIGITS[value & 0xF];
+            value >>>= 4;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof ObjectId id)) {
+            return false;
+        }
+        return timestamp == id.timestamp && counter == id.counter &&
+                randomValue1 == id.randomValue1 && randomValue2 == id.randomValue2;
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + timestamp;
+        result = prime * result + counter;
+        result = prime * result + randomValue1;
+        result = prime * result + randomValue2;
+        return result;
+    }
 }
@@ -0,0 +1,174 @@
+package de.undercouch.bson4jackson;
+
+import org.junit.Test;
+import tools.jackson.core.exc.JacksonIOException;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link BsonBatchReader}
+ */
+public class BsonBatchReaderTest {
+    @SuppressWarnings("rawtypes")
+    private static List<Integer> readAll(BsonBatchReader reader, byte[] b) {
+        List<Integer> result = new ArrayList<>();
+        try (BsonBatchReader.ValueIterator<Map> it = reader.readValues(
+                new ByteArrayInputStream(b), Map.class)) {
+            while (it.hasNext()) {
+                Map m = it.next();
+                int i = (Integer)m.get("i");
+                assertEquals("Value " + i, m.get("s"));
+                result.add(i);
+            }
+        }
+        return result;
+    }
+
+    private static List<Integer> range(int n) {
+        List<Integer> result = new ArrayList<>();
+        for (int i = 0; i < n; ++i) {
+            result.add(i);
+        }
+        return result;
+    }
+
+    /**
+     * Reads documents in parallel and returns them in the original order
+     */
+    @Test
+    public void ordered() throws Exception {
+        ObjectMapper mapper = JsonMapper.builder(new BsonFactory())
+            .addModule(new BsonModule())
+            .build();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        for (int i = 0; i < 2500; ++i) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("i", i);
+            m.put("s", "Value " + i);
+            baos.write(mapper.writeValueAsBytes(m));
+        }
+        byte[] b = baos.toByteArray();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            BsonBatchReader reader = new BsonBatchReader(mapper, pool, 8, true);
+            assertEquals(range(2500), readAll(reader, b));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Reads documents in parallel and returns them as soon as they are
+     * available
+     */
+    @Test
+    public void unordered() throws Exception {
+        ObjectMapper mapper = JsonMapper.builder(new BsonFactory())
+            .addModule(new BsonModule())
+            .build();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        for (int i = 0; i < 2500; ++i) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("i", i);
+            m.put("s", "Value " + i);
+            baos.write(mapper.writeValueAsBytes(m));
+        }
+        byte[] b = baos.toByteArray();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            BsonBatchReader reader = new BsonBatchReader(mapper, pool, 8, false);
+            List<Integer> result = readAll(reader, b);
+            Collections.sort(result);
+            assertEquals(range(2500), result);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Reads an empty input stream
+     */
+    @Test
+    public void empty() {
+        ObjectMapper mapper = JsonMapper.builder(new BsonFactory())
+            .addModule(new BsonModule())
+            .build();
+        assertEquals(Collections.emptyList(), readAll(
+                new BsonBatchReader(mapper), new byte[0]));
+    }
+
+    /**
+     * Reports a truncated document after all previous values
+     */
+    @Test
+    @SuppressWarnings("rawtypes")
+    public void truncated() throws Exception {
+        ObjectMapper mapper = JsonMapper.builder(new BsonFactory())
+            .addModule(new BsonModule())
+            .build();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        for (int i = 0; i < 3; ++i) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("i", i);
+            m.put("s", "Value " + i);
+            baos.write(mapper.writeValueAsBytes(m));
+        }
+        byte[] b = baos.toByteArray();
+        b = Arrays.copyOf(b, b.length - 1);
+        try (BsonBatchReader.ValueIterator<Map> it = new BsonBatchReader(mapper)
+                .readValues(new ByteArrayInputStream(b), Map.class)) {
+            assertEquals(0, it.next().get("i"));
+            assertEquals(1, it.next().get("i"));
+            try {
+                it.hasNext();
+                fail("Truncated document must not be accepted");
+            } catch (JacksonIOException e) {
+                // expected
+            }
+            assertFalse(it.hasNext());
+        }
+    }
+
+    /**
+     * Stops reading when the iterator is closed early
+     */
+    @Test
+    @SuppressWarnings("rawtypes")
+    public void closeEarly() throws Exception {
+        ObjectMapper mapper = JsonMapper.builder(new BsonFactory())
+            .addModule(new BsonModule())
+            .build();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        for (int i = 0; i < 1000; ++i) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("i", i);
+            m.put("s", "Value " + i);
+            baos.write(mapper.writeValueAsBytes(m));
+        }
+        byte[] b = baos.toByteArray();
+        BsonBatchReader.ValueIterator<Map> it = new BsonBatchReader(mapper,
+                ForkJoinPool.commonPool(), 4, true).readValues(
+                new ByteArrayInputStream(b), Map.class);
+        assertTrue(it.hasNext());
+        assertEquals(0, it.next().get("i"));
+        it.close();
+        assertFalse(it.hasNext());
+        it._ioThread.join(10000);
+        assertFalse(it._ioThread.isAlive());
+    }
+}
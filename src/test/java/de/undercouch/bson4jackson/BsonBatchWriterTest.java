@@ -0,0 +1,124 @@
+package de.undercouch.bson4jackson;
+
+import org.bson.BSONObject;
+import org.bson.BasicBSONDecoder;
+import org.junit.Test;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests {@link BsonBatchWriter}
+ */
+public class BsonBatchWriterTest {
+    private static byte[] writeSequentially(ObjectMapper mapper, List<?> values)
+            throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        for (Object v : values) {
+            baos.write(mapper.writeValueAsBytes(v));
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Writes documents in parallel and checks that they appear in the
+     * original order
+     */
+    @Test
+    public void order() throws Exception {
+        ObjectMapper mapper = JsonMapper.builder(new BsonFactory())
+            .addModule(new BsonModule())
+            .build();
+        List<Map<String, Object>> values = new ArrayList<>();
+        for (int i = 0; i < 2500; ++i) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("i", i);
+            m.put("s", "Value " + i);
+            m.put("l", List.of(i, (long)i * 1000000000L));
+            values.add(m);
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            new BsonBatchWriter(mapper, pool, 7).writeAll(values, baos);
+            byte[] b = baos.toByteArray();
+            assertArrayEquals(writeSequentially(mapper, values), b);
+
+            BasicBSONDecoder decoder = new BasicBSONDecoder();
+            ByteArrayInputStream in = new ByteArrayInputStream(b);
+            for (int i = 0; i < values.size(); ++i) {
+                BSONObject o = decoder.readObject(in);
+                assertEquals(i, o.get("i"));
+                assertEquals("Value " + i, o.get("s"));
+            }
+            assertEquals(0, in.available());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Writes documents to a file channel with gathering writes
+     */
+    @Test
+    public void fileChannel() throws Exception {
+        ObjectMapper mapper = JsonMapper.builder(new BsonFactory())
+            .addModule(new BsonModule())
+            .build();
+        List<Map<String, Object>> values = new ArrayList<>();
+        for (int i = 0; i < 1000; ++i) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("i", i);
+            m.put("s", "Value " + i);
+            m.put("l", List.of(i, (long)i * 1000000000L));
+            values.add(m);
+        }
+        File f = File.createTempFile("bson4jackson", ".bson");
+        try {
+            try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.WRITE)) {
+                new BsonBatchWriter(mapper, ForkJoinPool.commonPool(), 10)
+                        .writeAll(values, ch);
+            }
+            assertArrayEquals(writeSequentially(mapper, values),
+                    Files.readAllBytes(f.toPath()));
+        } finally {
+            f.delete();
+        }
+    }
+
+    /**
+     * Writes an empty list
+     */
+    @Test
+    public void empty() {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectMapper mapper = JsonMapper.builder(new BsonFactory())
+            .addModule(new BsonModule())
+            .build();
+        new BsonBatchWriter(mapper).writeAll(new ArrayList<>(), baos);
+        assertEquals(0, baos.size());
+    }
+
+    /**
+     * The batch writer must only accept object mappers that
+     * use a {@link BsonFactory}
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void mapperWithoutBsonFactory() {
+        new BsonBatchWriter(new ObjectMapper());
+    }
+}
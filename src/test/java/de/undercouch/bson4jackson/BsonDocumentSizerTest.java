@@ -0,0 +1,134 @@
+package de.undercouch.bson4jackson;
+
+import de.undercouch.bson4jackson.io.DynamicOutputBuffer;
+import de.undercouch.bson4jackson.types.JavaScript;
+import org.bson.BSONObject;
+import org.bson.BasicBSONDecoder;
+import org.junit.Test;
+import tools.jackson.core.ObjectWriteContext;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link BsonDocumentSizer} and {@link BsonSizingGenerator}
+ */
+public class BsonDocumentSizerTest {
+    /**
+     * The sizes calculated by the sizing generator must match the
+     * headers written by a regular generator
+     */
+    @Test
+    public void computeDocumentSizes() {
+        ObjectMapper mapper = JsonMapper.builder(new BsonFactory())
+            .addModule(new BsonModule())
+            .build();
+        Map<String, Object> embedded = new LinkedHashMap<>();
+        embedded.put("String", "Hello Wörld € 😀");
+        embedded.put("Array", Arrays.asList(1, "two", 3.0, Collections.singletonMap("x", 4L)));
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("Int32", 42);
+        data.put("Embedded", embedded);
+        data.put("Code", new JavaScript("x = y", Collections.singletonMap("y", 5)));
+        byte[] expected = mapper.writeValueAsBytes(data);
+
+        int[] sizes = new BsonDocumentSizer(mapper).computeDocumentSizes(data);
+
+        // main document, embedded document, array, document in array,
+        // JavaScript code with scope and the scope
+        assertEquals(6, sizes.length);
+        assertEquals(expected.length, sizes[0]);
+        for (int size : sizes) {
+            assertTrue(size > 0);
+        }
+    }
+
+    /**
+     * The calculated size must match the number of bytes actually written
+     */
+    @Test
+    public void sizeOf() {
+        ObjectMapper mapper = JsonMapper.builder(new BsonFactory())
+            .addModule(new BsonModule())
+            .build();
+        BsonDocumentSizer sizer = new BsonDocumentSizer(mapper);
+        for (int len : new int[] { 0, 100, DynamicOutputBuffer.DEFAULT_BUFFER_SIZE * 2 }) {
+            char[] chars = new char[len];
+            Arrays.fill(chars, 'ä');
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("String", "Hello Wörld € 😀");
+            data.put("Embedded", Collections.singletonMap("Large", new String(chars)));
+            assertEquals(mapper.writeValueAsBytes(data).length, sizer.sizeOf(data));
+        }
+    }
+
+    /**
+     * A sizing generator must be able to measure several values after
+     * each other
+     */
+    @Test
+    public void resetSizingGenerator() {
+        ObjectMapper mapper = JsonMapper.builder(new BsonFactory())
+            .addModule(new BsonModule())
+            .build();
+        BsonFactory factory = (BsonFactory)mapper.tokenStreamFactory();
+        Map<String, Object> data1 = Collections.singletonMap("a", "ä");
+        Map<String, Object> data2 = Collections.singletonMap("b",
+                Arrays.asList("Hello Wörld", Collections.singletonMap("c", 1)));
+
+        BsonSizingGenerator g = factory.createSizingGenerator(ObjectWriteContext.empty());
+        mapper.writeValue(g, data1);
+        assertEquals(mapper.writeValueAsBytes(data1).length, g.getSize());
+        g.resetSizes();
+        mapper.writeValue(g, data2);
+        assertEquals(mapper.writeValueAsBytes(data2).length, g.getSize());
+        assertEquals(g.getSize(), g.getDocumentSizes()[0]);
+        g.close();
+    }
+
+    /**
+     * Streams a large document with precomputed sizes and checks that the
+     * result is identical to what a buffering generator produces
+     */
+    @Test
+    public void writeValueWithPrecomputedSizes() {
+        ObjectMapper mapper = JsonMapper.builder(new BsonFactory())
+            .addModule(new BsonModule())
+            .build();
+        char[] chars = new char[DynamicOutputBuffer.DEFAULT_BUFFER_SIZE * 3];
+        Arrays.fill(chars, 'ä');
+        Map<String, Object> embedded = new LinkedHashMap<>();
+        embedded.put("Large", new String(chars));
+        embedded.put("Array", Arrays.asList(1, "two", Collections.singletonMap("x", 4L)));
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("Int32", 42);
+        data.put("Embedded", embedded);
+        byte[] expected = mapper.writeValueAsBytes(data);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new BsonDocumentSizer(mapper).writeValue(baos, data);
+        byte[] actual = baos.toByteArray();
+
+        assertArrayEquals(expected, actual);
+        BSONObject obj = new BasicBSONDecoder().readObject(actual);
+        assertEquals(42, obj.get("Int32"));
+    }
+
+    /**
+     * The document sizer must only accept object mappers that
+     * use a {@link BsonFactory}
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void mapperWithoutBsonFactory() {
+        new BsonDocumentSizer(new ObjectMapper());
+    }
+}
@@ -1,11 +1,22 @@
 package de.undercouch.bson4jackson;
 
+import de.undercouch.bson4jackson.io.StaticBuffers;
+import de.undercouch.bson4jackson.io.StaticBuffersPool;
+import de.undercouch.bson4jackson.io.StaticBuffersPools;
 import org.junit.Before;
 import org.junit.Test;
 import tools.jackson.core.TokenStreamFactory;
+import tools.jackson.databind.ObjectMapper;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 
 /**
  * Tests {@link BsonFactory}
@@ -70,4 +81,116 @@ public class BsonFactoryTest {
 
         assertEquals(factory.isEnabled(feature), copy.isEnabled(feature));
     }
+
+    /**
+     * {@link BsonFactory#copy()} should copy the static buffers pool
+     */
+    @Test
+    public void shouldCopyStaticBuffersPoolOnCopy() {
+        StaticBuffersPool pool = StaticBuffersPools.newBoundedPool();
+        factory.setStaticBuffersPool(pool);
+
+        BsonFactory copy = factory.copy();
+
+        assertSame(pool, copy.getStaticBuffersPool());
+    }
+
+    /**
+     * Generators and parsers should acquire their buffers from the
+     * configured pool and release them when they are closed
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void shouldUseStaticBuffersPool() throws Exception {
+        StaticBuffersPool delegate = StaticBuffersPools.newBoundedPool(1);
+        int[] counts = new int[2];
+        factory.setStaticBuffersPool(new StaticBuffersPool() {
+            @Override
+            public StaticBuffers acquire() {
+                counts[0]++;
+                return delegate.acquire();
+            }
+
+            @Override
+            public void release(StaticBuffers buffers) {
+                counts[1]++;
+                delegate.release(buffers);
+            }
+        });
+
+        ObjectMapper mapper = new ObjectMapper(factory);
+        Map<String, Object> data = Collections.singletonMap("name", "value");
+        byte[] bytes = mapper.writeValueAsBytes(data);
+        Map<?, ?> result = mapper.readValue(new ByteArrayInputStream(bytes), Map.class);
+
+        assertEquals(data, result);
+        assertEquals(2, counts[0]);
+        assertEquals(2, counts[1]);
+    }
+
+    /**
+     * Generators and parsers released to the factory's pool should be re-used
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void shouldReuseGeneratorsAndParsers() throws Exception {
+        ObjectMapper mapper = new ObjectMapper(factory);
+        Map<String, Object> data = Collections.singletonMap("name", "value");
+
+        ByteArrayOutputStream baos1 = new ByteArrayOutputStream();
+        BsonGenerator g1 = factory.acquireGenerator(baos1);
+        mapper.writeValue(g1, data);
+        g1.flush();
+        factory.releaseGenerator(g1);
+
+        ByteArrayOutputStream baos2 = new ByteArrayOutputStream();
+        BsonGenerator g2 = factory.acquireGenerator(baos2);
+        assertSame(g1, g2);
+        mapper.writeValue(g2, data);
+        g2.flush();
+        assertArrayEquals(baos1.toByteArray(), baos2.toByteArray());
+
+        BsonParser p1 = factory.acquireParser(new ByteArrayInputStream(baos1.toByteArray()));
+        assertEquals(data, mapper.readValue(p1, Map.class));
+        factory.releaseParser(p1);
+
+        BsonParser p2 = factory.acquireParser(new ByteArrayInputStream(baos2.toByteArray()));
+        assertSame(p1, p2);
+        assertEquals(data, mapper.readValue(p2, Map.class));
+
+        // closed instances must not be pooled
+        p2.close();
+        factory.releaseParser(p2);
+        assertNotSame(p2, factory.acquireParser(new ByteArrayInputStream(baos2.toByteArray())));
+    }
+
+    /**
+     * Pooled parsers that honor the document length should re-use their
+     * input stream wrappers and refer to the new input stream
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void shouldReuseParserStreamsWhenHonoringDocumentLength() throws Exception {
+        factory.enable(BsonParser.Feature.HONOR_DOCUMENT_LENGTH);
+        ObjectMapper mapper = new ObjectMapper(factory);
+        Map<String, Object> data = Collections.singletonMap("name", "value");
+        byte[] b = mapper.writeValueAsBytes(data);
+
+        BsonParser p1 = factory.acquireParser(new ByteArrayInputStream(b));
+        assertEquals(data, mapper.readValue(p1, Map.class));
+        Object in = p1._in;
+        Object counter = p1._counter;
+        Object bounded = p1._boundedInputStream;
+        Object contentReference = p1._contentReference;
+        factory.releaseParser(p1);
+
+        BsonParser p2 = factory.acquireParser(new ByteArrayInputStream(b));
+        assertSame(p1, p2);
+        assertEquals(0, p2.currentLocation().getByteOffset());
+        assertNotSame(contentReference, p2._contentReference);
+        assertEquals(data, mapper.readValue(p2, Map.class));
+        assertSame(in, p2._in);
+        assertSame(counter, p2._counter);
+        assertSame(bounded, p2._boundedInputStream);
+    }
 }
@@ -2,6 +2,7 @@ package de.undercouch.bson4jackson;
 
 import de.undercouch.bson4jackson.BsonGenerator.Feature;
 import de.undercouch.bson4jackson.io.DynamicOutputBuffer;
+import de.undercouch.bson4jackson.types.BinaryVector;
 import de.undercouch.bson4jackson.types.Decimal128;
 import de.undercouch.bson4jackson.types.JavaScript;
 import de.undercouch.bson4jackson.types.ObjectId;
@@ -10,9 +11,12 @@ import org.bson.BSONDecoder;
 import org.bson.BSONObject;
 import org.bson.BasicBSONDecoder;
 import org.bson.types.BSONTimestamp;
+import org.bson.types.Binary;
 import org.bson.types.Code;
 import org.bson.types.CodeWScope;
 import org.junit.Test;
+import tools.jackson.core.JsonToken;
+import tools.jackson.core.ObjectReadContext;
 import tools.jackson.core.ObjectWriteContext;
 import tools.jackson.core.SerializableString;
 import tools.jackson.core.io.CharacterEscapes;
@@ -30,9 +34,15 @@ import java.io.ByteArrayOutputStream;
 import java.io.Serial;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
@@ -137,6 +147,245 @@ public class BsonGeneratorTest {
         assertTrue(baos.size() > DynamicOutputBuffer.DEFAULT_BUFFER_SIZE * 3);
     }
 
+    /**
+     * Writes a small document with nested objects to the given generator
+     * @param gen the generator
+     */
+    private static void writeSampleDocument(BsonGenerator gen) {
+        gen.writeStartObject();
+        gen.writeName("String");
+        gen.writeString("Hello W\u00f6rld \u20ac");
+        gen.writeName("Int32");
+        gen.writeNumber(42);
+        gen.writeName("Embedded");
+        gen.writeStartObject();
+        gen.writeName("Array");
+        gen.writeStartArray();
+        gen.writeNumber(1L);
+        gen.writeString("two");
+        gen.writeEndArray();
+        gen.writeEndObject();
+        gen.writeEndObject();
+    }
+
+    /**
+     * Test if the generator can write directly into a heap buffer
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void generateIntoByteBuffer() throws Exception {
+        BsonFactory fac = new BsonFactory();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (BsonGenerator gen = (BsonGenerator)fac.createGenerator(
+                ObjectWriteContext.empty(), baos)) {
+            writeSampleDocument(gen);
+        }
+        byte[] expected = baos.toByteArray();
+
+        ByteBuffer bb = ByteBuffer.allocate(expected.length + 10);
+        bb.position(3);
+        try (BsonGenerator gen = fac.createGenerator(bb)) {
+            writeSampleDocument(gen);
+        }
+        assertEquals(3 + expected.length, bb.position());
+
+        byte[] actual = new byte[expected.length];
+        bb.position(3);
+        bb.get(actual);
+        assertArrayEquals(expected, actual);
+    }
+
+    /**
+     * Test if the generator can write directly into a direct buffer and
+     * if it moves the buffer's position behind each complete document
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void generateIntoDirectByteBuffer() throws Exception {
+        BsonFactory fac = new BsonFactory();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (BsonGenerator gen = (BsonGenerator)fac.createGenerator(
+                ObjectWriteContext.empty(), baos)) {
+            writeSampleDocument(gen);
+        }
+        byte[] expected = baos.toByteArray();
+
+        ByteBuffer bb = ByteBuffer.allocateDirect(expected.length * 2);
+        BsonGenerator gen = fac.createGenerator(bb);
+        writeSampleDocument(gen);
+        gen.flush();
+        assertEquals(expected.length, bb.position());
+        writeSampleDocument(gen);
+        gen.close();
+        assertEquals(expected.length * 2, bb.position());
+
+        bb.flip();
+        byte[] actual = new byte[expected.length];
+        bb.get(actual);
+        assertArrayEquals(expected, actual);
+        bb.get(actual);
+        assertArrayEquals(expected, actual);
+    }
+
+    /**
+     * Test if the generator fails fast if the caller-supplied buffer
+     * is too small
+     */
+    @Test(expected = BufferOverflowException.class)
+    public void generateIntoTooSmallByteBuffer() {
+        BsonFactory fac = new BsonFactory();
+        BsonGenerator gen = fac.createGenerator(ByteBuffer.allocate(20));
+        writeSampleDocument(gen);
+    }
+
+    /**
+     * Test if a generator can be reset and re-used to write to another
+     * output stream
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void resetGenerator() throws Exception {
+        BsonFactory fac = new BsonFactory();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        try (BsonGenerator gen = (BsonGenerator)fac.createGenerator(
+                ObjectWriteContext.empty(), expected)) {
+            writeSampleDocument(gen);
+        }
+
+        ByteArrayOutputStream baos1 = new ByteArrayOutputStream();
+        BsonGenerator gen = (BsonGenerator)fac.createGenerator(
+                ObjectWriteContext.empty(), baos1);
+        writeSampleDocument(gen);
+        gen.flush();
+
+        // start a document and discard it
+        ByteArrayOutputStream baos2 = new ByteArrayOutputStream();
+        gen.reset(baos2);
+        gen.writeStartObject();
+        gen.writeName("Discarded");
+
+        ByteArrayOutputStream baos3 = new ByteArrayOutputStream();
+        gen.reset(baos3);
+        writeSampleDocument(gen);
+        gen.close();
+
+        assertArrayEquals(expected.toByteArray(), baos1.toByteArray());
+        assertEquals(0, baos2.size());
+        assertArrayEquals(expected.toByteArray(), baos3.toByteArray());
+    }
+
+    /**
+     * Writes a document with embedded documents whose contents are larger
+     * than the generator's output buffer
+     * @param gen the generator to write to
+     * @param large a large string to embed
+     */
+    private static void writeLargeDocument(BsonGenerator gen, String large) {
+        gen.writeStartObject();
+        gen.writeName("a");
+        gen.writeString(large);
+        gen.writeName("b");
+        gen.writeStartObject();
+        gen.writeName("c");
+        gen.writeString(large);
+        gen.writeName("d");
+        gen.writeStartArray();
+        gen.writeString(large);
+        gen.writeNumber(5);
+        gen.writeEndArray();
+        gen.writeEndObject();
+        gen.writeEndObject();
+    }
+
+    /**
+     * Test if a generator streaming to a seekable channel patches
+     * the headers of documents that have already been flushed
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void generateIntoSeekableChannel() throws Exception {
+        char[] chars = new char[DynamicOutputBuffer.DEFAULT_BUFFER_SIZE + 100];
+        Arrays.fill(chars, 'x');
+        String large = new String(chars);
+
+        BsonFactory fac = new BsonFactory();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        try (BsonGenerator gen = (BsonGenerator)fac.createGenerator(
+                ObjectWriteContext.empty(), expected)) {
+            writeLargeDocument(gen, large);
+            writeSampleDocument(gen);
+        }
+
+        Path file = Files.createTempFile("bson4jackson", ".bson");
+        try {
+            try (FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                    BsonGenerator gen = fac.createGenerator(
+                            ObjectWriteContext.empty(), channel)) {
+                assertTrue(gen.isEnabled(Feature.ENABLE_STREAMING));
+                writeLargeDocument(gen, large);
+                writeSampleDocument(gen);
+            }
+
+            byte[] actual = Files.readAllBytes(file);
+            assertArrayEquals(expected.toByteArray(), actual);
+
+            BSONObject obj = new BasicBSONDecoder().readObject(actual);
+            assertEquals(large, obj.get("a"));
+            assertEquals(large, ((BSONObject)obj.get("b")).get("c"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Test if a streaming generator flushes its output buffer
+     * according to the configured watermarks
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void flushWatermarks() throws Exception {
+        BsonFactory fac = new BsonFactory();
+        fac.enable(Feature.ENABLE_STREAMING);
+        fac.setStreamingFlushWatermarks(4, 16);
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        try (BsonGenerator gen = (BsonGenerator)new BsonFactory().createGenerator(
+                ObjectWriteContext.empty(), expected)) {
+            writeSampleDocument(gen);
+        }
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        BsonGenerator gen = (BsonGenerator)fac.createGenerator(
+                ObjectWriteContext.empty(), baos);
+        gen.writeStartObject();
+        gen.writeName("String");
+        gen.writeString("Hello W\u00f6rld \u20ac");
+
+        // the first 33 bytes exceed the high watermark, so everything
+        // but the last 4 bytes must have been written already
+        assertEquals(29, baos.size());
+
+        gen.writeName("Int32");
+        gen.writeNumber(42);
+        gen.writeName("Embedded");
+        gen.writeStartObject();
+        gen.writeName("Array");
+        gen.writeStartArray();
+        gen.writeNumber(1L);
+        gen.writeString("two");
+        gen.writeEndArray();
+        gen.writeEndObject();
+        gen.writeEndObject();
+        gen.close();
+
+        // streaming does not write document sizes
+        byte[] e = expected.toByteArray();
+        byte[] a = baos.toByteArray();
+        assertEquals(e.length, a.length);
+        assertEquals(0, ByteBuffer.wrap(a).order(ByteOrder.LITTLE_ENDIAN).getInt(0));
+    }
+
     private void assertRaw(byte[] r) throws Exception {
         ByteArrayInputStream bais = new ByteArrayInputStream(r);
         BSONDecoder decoder = new BasicBSONDecoder();
@@ -182,6 +431,69 @@ public class BsonGeneratorTest {
         assertRaw(baos.toByteArray());
     }
 
+    /**
+     * Test if deeply nested documents and arrays are generated correctly
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void deeplyNested() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        BsonGenerator gen = (BsonGenerator) new BsonFactory().createGenerator(ObjectWriteContext.empty(), baos);
+        gen.writeStartObject();
+        for (int i = 0; i < 50; ++i) {
+            gen.writeName("a");
+            gen.writeStartArray();
+            gen.writeNumber(i);
+            gen.writeStartObject();
+        }
+        for (int i = 0; i < 50; ++i) {
+            gen.writeEndObject();
+            gen.writeEndArray();
+        }
+        gen.writeEndObject();
+        gen.close();
+
+        ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray());
+        BSONObject obj = new BasicBSONDecoder().readObject(bais);
+        for (int i = 0; i < 50; ++i) {
+            List<?> a = (List<?>)obj.get("a");
+            assertEquals(2, a.size());
+            assertEquals(i, a.get(0));
+            obj = (BSONObject)a.get(1);
+        }
+        assertTrue(obj.keySet().isEmpty());
+    }
+
+    /**
+     * Test the {@link BsonGenerator#writeUTF8String(byte[], int, int)} and
+     * {@link BsonGenerator#writeString(char[], int, int)} methods
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void utf8StringAndCharArray() throws Exception {
+        String str = "Hello W\u00f6rld \u20ac \ud83d\ude00";
+        byte[] utf8 = ("xx" + str + "y").getBytes(StandardCharsets.UTF_8);
+        char[] chars = ("xx" + str + "y").toCharArray();
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        BsonGenerator gen = (BsonGenerator) new BsonFactory().createGenerator(ObjectWriteContext.empty(), baos);
+        gen.writeStartObject();
+        gen.writeName("UTF8");
+        gen.writeUTF8String(utf8, 2, utf8.length - 3);
+        gen.writeName("Raw");
+        gen.writeRawUTF8String(utf8, 2, utf8.length - 3);
+        gen.writeName("Chars");
+        gen.writeString(chars, 2, chars.length - 3);
+        gen.writeEndObject();
+        gen.close();
+
+        ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray());
+        BSONObject obj = new BasicBSONDecoder().readObject(bais);
+        assertEquals(str, obj.get("UTF8"));
+        assertEquals(str, obj.get("Raw"));
+        assertEquals(str, obj.get("Chars"));
+    }
+
     /**
      * Test the {@link BsonGenerator#writeBinary(byte[], int, int)} method
      * @throws Exception if something goes wrong
@@ -498,6 +810,54 @@ public class BsonGeneratorTest {
         assertEquals(new BigDecimal("0.3"), strResult.bigDecimalValue());
     }
 
+    /**
+     * Test if {@link BigDecimal}s whose unscaled value fits into a long
+     * are encoded exactly like other {@link Decimal128}s and if the parser
+     * converts them back to equal {@link BigDecimal}s
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void writeDecimal128FastPath() throws Exception {
+        BigDecimal[] values = new BigDecimal[] {
+                new BigDecimal("0"), new BigDecimal("0.00"), new BigDecimal("-12.34"),
+                new BigDecimal("1E+20"), new BigDecimal("123456789012345678"),
+                new BigDecimal("-0.000000000000000001"),
+                new BigDecimal("1234567890123456789012345.6789"),
+                BigDecimal.valueOf(Long.MAX_VALUE, 4), BigDecimal.valueOf(Long.MIN_VALUE, 4)
+        };
+        for (BigDecimal v : values) {
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("big", v);
+            BSONObject obj = generateAndParse(data,
+                    Feature.WRITE_BIGDECIMALS_AS_DECIMAL128);
+            org.bson.types.Decimal128 expected = new org.bson.types.Decimal128(v);
+            assertEquals(expected, obj.get("big"));
+
+            Decimal128 d = Decimal128.valueOf(v.unscaledValue().longValue(), v.scale());
+            if (v.unscaledValue().bitLength() < 64) {
+                assertEquals(expected.getHigh(), d.getHigh());
+                assertEquals(expected.getLow(), d.getLow());
+            }
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            BsonGenerator gen = (BsonGenerator) new BsonFactory().createGenerator(
+                    ObjectWriteContext.empty(), baos);
+            gen.writeStartObject();
+            gen.writeName("big");
+            gen.writeDecimal128(new Decimal128(v));
+            gen.writeEndObject();
+            gen.close();
+
+            try (BsonParser p = (BsonParser) new BsonFactory().createParser(
+                    ObjectReadContext.empty(), baos.toByteArray())) {
+                assertEquals(JsonToken.START_OBJECT, p.nextToken());
+                assertEquals(JsonToken.PROPERTY_NAME, p.nextToken());
+                assertEquals(JsonToken.VALUE_EMBEDDED_OBJECT, p.nextToken());
+                assertEquals(v, p.getDecimalValue());
+            }
+        }
+    }
+
     /**
      * Test if  binary data can be serialized
      * @throws Exception if something goes wrong
@@ -538,6 +898,110 @@ public class BsonGeneratorTest {
         assertArrayEquals(binary, objbin);
     }
 
+    /**
+     * Test if UUIDs can be written in the standard and the legacy
+     * representation and parsed again
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void writeUuids() throws Exception {
+        UUID uuid = UUID.fromString("00112233-4455-6677-8899-aabbccddeeff");
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("uuid", uuid);
+
+        BSONObject obj = generateAndParse(data, Feature.WRITE_UUIDS_AS_STANDARD);
+        Binary b = (Binary)obj.get("uuid");
+        assertEquals(BsonConstants.SUBTYPE_UUID_STANDARD, b.getType());
+        ByteBuffer expected = ByteBuffer.allocate(16);
+        expected.putLong(uuid.getMostSignificantBits());
+        expected.putLong(uuid.getLeastSignificantBits());
+        assertArrayEquals(expected.array(), b.getData());
+
+        // legacy representation is still the default
+        assertEquals(uuid, generateAndParse(data).get("uuid"));
+
+        for (UuidRepresentation r : UuidRepresentation.values()) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            BsonGenerator gen = (BsonGenerator) new BsonFactory().createGenerator(
+                    ObjectWriteContext.empty(), baos);
+            gen.writeStartObject();
+            gen.writeName("uuid");
+            gen.writeUuid(uuid, r);
+            gen.writeEndObject();
+            gen.close();
+
+            ObjectMapper om = new ObjectMapper(new BsonFactory());
+            Map<?, ?> m = om.readValue(baos.toByteArray(), Map.class);
+            assertEquals(uuid, m.get("uuid"));
+        }
+    }
+
+    /**
+     * Test if binary vectors can be serialized and parsed again
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void writeBinaryVectors() throws Exception {
+        float[] floats = new float[] { 1.0f, -2.5f, Float.MAX_VALUE, 0.1f };
+        BinaryVector f = BinaryVector.float32(floats);
+        BinaryVector i = BinaryVector.int8(new byte[] { -128, 0, 127 });
+        BinaryVector b = BinaryVector.packedBit(new byte[] { (byte)0xff, (byte)0xf0 }, 4);
+
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("f", f);
+        data.put("i", i);
+        data.put("b", b);
+
+        BSONObject obj = generateAndParse(data);
+        Binary fb = (Binary)obj.get("f");
+        assertEquals(BsonConstants.SUBTYPE_VECTOR, fb.getType());
+        ByteBuffer expected = ByteBuffer.allocate(2 + 16).order(ByteOrder.LITTLE_ENDIAN);
+        expected.put(BsonConstants.VECTOR_DTYPE_FLOAT32).put((byte)0);
+        for (float v : floats) {
+            expected.putFloat(v);
+        }
+        assertArrayEquals(expected.array(), fb.getData());
+        assertArrayEquals(new byte[] { BsonConstants.VECTOR_DTYPE_INT8, 0, -128, 0, 127 },
+                ((Binary)obj.get("i")).getData());
+        assertArrayEquals(new byte[] { BsonConstants.VECTOR_DTYPE_PACKED_BIT, 4,
+                (byte)0xff, (byte)0xf0 }, ((Binary)obj.get("b")).getData());
+
+        // write vectors directly from arrays
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        BsonGenerator gen = (BsonGenerator) new BsonFactory().createGenerator(
+                ObjectWriteContext.empty(), baos);
+        gen.writeStartObject();
+        gen.writeName("f");
+        gen.writeFloatVector(new float[] { 0.0f, 1.0f, -2.5f, Float.MAX_VALUE, 0.1f }, 1, 4);
+        gen.writeName("i");
+        gen.writeInt8Vector(new byte[] { -128, 0, 127 }, 0, 3);
+        gen.writeName("b");
+        gen.writePackedBitVector(new byte[] { (byte)0xff, (byte)0xf0 }, 0, 2, 4);
+        gen.writeEndObject();
+        gen.close();
+
+        ObjectMapper om = JsonMapper.builder(new BsonFactory())
+            .addModule(new BsonModule())
+            .build();
+        VectorBean bean = om.readValue(baos.toByteArray(), VectorBean.class);
+        assertEquals(f, bean.f);
+        assertEquals(i, bean.i);
+        assertEquals(b, bean.b);
+        assertEquals(4, bean.f.size());
+        assertEquals(12, bean.b.size());
+        assertArrayEquals(floats, bean.f.toFloatArray(), 0.0f);
+        assertEquals(-2.5f, bean.f.asFloatBuffer().get(1), 0.0f);
+    }
+
+    /**
+     * A bean holding binary vectors
+     */
+    public static class VectorBean {
+        public BinaryVector f;
+        public BinaryVector i;
+        public BinaryVector b;
+    }
+
     /**
      * Test if multiple objects can be written in sequence using
      * {@link SequenceWriter}
@@ -745,6 +1209,55 @@ public class BsonGeneratorTest {
         assertArrayEquals(sBytes, bsonBytes);
     }
 
+    /**
+     * Escape sequences should only be requested once and should be
+     * written correctly next to non-ASCII characters
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void characterEscapesCached() throws Exception {
+        int[] lookups = new int[128];
+        BsonFactory escapingFactory = new BsonFactory();
+        escapingFactory.setCharacterEscapes(new CharacterEscapes() {
+            @Serial
+            private static final long serialVersionUID = -2375386380513314427L;
+
+            @Override
+            public int[] getEscapeCodesForAscii() {
+                int[] escapes = CharacterEscapes.standardAsciiEscapesForJSON();
+                escapes['.'] = CharacterEscapes.ESCAPE_CUSTOM;
+                escapes['$'] = CharacterEscapes.ESCAPE_CUSTOM;
+                return escapes;
+            }
+
+            @Override
+            public SerializableString getEscapeSequence(int ch) {
+                ++lookups[ch];
+                if (ch == '.') {
+                    return new SerializedString("\uff0e");
+                }
+                if (ch == '$') {
+                    return new SerializedString("\uff04");
+                }
+                return null;
+            }
+        });
+        ObjectMapper bsonMapper = new ObjectMapper(escapingFactory);
+
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("a.b.c", 1);
+        data.put("$set", 2);
+        data.put("$a.$b", 3);
+        data.put("\u00e4.\u20ac$\ud83d\ude00", 4);
+        byte[] bsonBytes = bsonMapper.writeValueAsBytes(data);
+
+        BSONObject obj = new BasicBSONDecoder().readObject(bsonBytes);
+        assertEquals(List.of("a\uff0eb\uff0ec", "\uff04set", "\uff04a\uff0e\uff04b",
+                "\u00e4\uff0e\u20ac\uff04\ud83d\ude00"), new ArrayList<>(obj.keySet()));
+        assertEquals(1, lookups['.']);
+        assertEquals(1, lookups['$']);
+    }
+
     /**
      * Checks if an {@link ObjectNode} can be written correctly if streaming
      * is disabled and flush-after-write-value is enabled (the default).
@@ -1,6 +1,7 @@
 package de.undercouch.bson4jackson;
 
 import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import de.undercouch.bson4jackson.types.BinaryVector;
 import de.undercouch.bson4jackson.types.JavaScript;
 import de.undercouch.bson4jackson.types.ObjectId;
 import de.undercouch.bson4jackson.types.Timestamp;
@@ -30,6 +31,7 @@ import tools.jackson.databind.deser.std.StdDeserializer;
 import tools.jackson.databind.json.JsonMapper;
 import tools.jackson.databind.module.SimpleModule;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -209,6 +211,201 @@ public class BsonParserTest {
         assertEquals(BigInteger.class, data.get("Int32").getClass());
     }
 
+    /**
+     * Test if Decimal128 values can be read as {@link BigDecimal}s
+     */
+    @Test
+    public void parseDecimal128AsBigDecimal() {
+        BSONObject o = new BasicBSONObject();
+        o.put("amount", new org.bson.types.Decimal128(new BigDecimal("-1234.56")));
+        o.put("price", new org.bson.types.Decimal128(new BigDecimal("0.1")));
+        o.put("nan", org.bson.types.Decimal128.NaN);
+        BSONEncoder enc = new BasicBSONEncoder();
+        byte[] b = enc.encode(o);
+
+        BsonFactory bsonFactory = new BsonFactory();
+        bsonFactory.enable(BsonParser.Feature.READ_DECIMAL128_AS_BIGDECIMAL);
+        try (BsonParser p = (BsonParser)bsonFactory.createParser(
+                ObjectReadContext.empty(), b)) {
+            assertEquals(JsonToken.START_OBJECT, p.nextToken());
+            assertEquals(JsonToken.PROPERTY_NAME, p.nextToken());
+            assertEquals(JsonToken.VALUE_NUMBER_FLOAT, p.nextToken());
+            assertEquals(JsonParser.NumberType.BIG_DECIMAL, p.getNumberType());
+            assertEquals(new BigDecimal("-1234.56"), p.getDecimalValue());
+            assertEquals(BsonConstants.TYPE_DECIMAL128, p.getCurrentBsonType());
+        }
+
+        ObjectMapper mapper = new ObjectMapper(bsonFactory);
+        DecimalBean bean = mapper.readValue(b, DecimalBean.class);
+        assertEquals(new BigDecimal("-1234.56"), bean.amount);
+        assertEquals(0.1, bean.price, 0.0);
+        assertTrue(Double.isNaN(bean.nan));
+    }
+
+    /**
+     * A bean with numeric fields
+     */
+    public static class DecimalBean {
+        public BigDecimal amount;
+        public double price;
+        public double nan;
+    }
+
+    /**
+     * Test if type properties are reported before all other properties
+     * and skipped at their original position
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void typePropertyNames() throws Exception {
+        BSONObject inner = new BasicBSONObject();
+        inner.put("c", 2);
+        inner.put("@type", "y");
+        BSONObject o = new BasicBSONObject();
+        o.put("a", new org.bson.types.Decimal128(1));
+        o.put("b", inner);
+        o.put("l", List.of("type", 1));
+        o.put("r", Pattern.compile("x"));
+        o.put("type", "x");
+        o.put("d", "type");
+        BSONEncoder enc = new BasicBSONEncoder();
+        byte[] b = enc.encode(o);
+
+        BsonFactory bsonFactory = new BsonFactory();
+        bsonFactory.setTypePropertyNames("type", "@type");
+        List<String> expected = List.of("{", "type", "x", "a", "*", "b", "{",
+                "@type", "y", "c", "2", "}", "l", "[", "type", "1", "]", "r", "*",
+                "d", "type", "}");
+
+        // read from a byte array and from a buffered stream
+        InputStream[] inputs = new InputStream[] {
+                null,
+                new BufferedInputStream(new ByteArrayInputStream(b))
+        };
+        for (InputStream in : inputs) {
+            BsonParser p = in == null ?
+                    (BsonParser)bsonFactory.createParser(ObjectReadContext.empty(), b) :
+                    (BsonParser)bsonFactory.createParser(ObjectReadContext.empty(), in);
+            List<String> actual = new ArrayList<>();
+            JsonToken t;
+            while ((t = p.nextToken()) != null) {
+                if (t == JsonToken.START_OBJECT) {
+                    actual.add("{");
+                } else if (t == JsonToken.END_OBJECT) {
+                    actual.add("}");
+                } else if (t == JsonToken.START_ARRAY) {
+                    actual.add("[");
+                } else if (t == JsonToken.END_ARRAY) {
+                    actual.add("]");
+                } else if (t == JsonToken.PROPERTY_NAME) {
+                    actual.add(p.currentName());
+                } else if (t == JsonToken.VALUE_STRING || t == JsonToken.VALUE_NUMBER_INT) {
+                    actual.add(p.getString());
+                } else {
+                    actual.add("*");
+                }
+            }
+            p.close();
+            assertEquals(expected, actual);
+        }
+    }
+
+    /**
+     * Test if documents can be read into maps without an object mapper
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void readDocumentAsMap() throws Exception {
+        BSONObject inner = new BasicBSONObject();
+        inner.put("x", 1L);
+        inner.put("y", List.of(1, "a", List.of(2.5, true)));
+        BSONObject o = new BasicBSONObject();
+        o.put("String", "Hello World");
+        o.put("Null", null);
+        o.put("Int32", 1234);
+        o.put("Inner", inner);
+        o.put("Binary", new byte[] { 1, 2, 3 });
+        o.put("Timestamp", new BSONTimestamp(0xAABB, 0xCCDD));
+        o.put("Code", new CodeWScope("code", new BasicBSONObject("a", 5)));
+        BSONEncoder enc = new BasicBSONEncoder();
+        byte[] b = enc.encode(o);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        baos.write(b);
+        baos.write(b);
+
+        Map<?, ?> expected = parseBsonObject(o);
+        BsonFactory fac = new BsonFactory();
+        try (BsonParser p = (BsonParser)fac.createParser(ObjectReadContext.empty(),
+                baos.toByteArray())) {
+            for (int i = 0; i < 2; ++i) {
+                Map<String, Object> actual = p.readDocumentAsMap();
+                assertEquals(expected.keySet(), actual.keySet());
+                assertEquals("Hello World", actual.get("String"));
+                assertNull(actual.get("Null"));
+                assertEquals(1234, actual.get("Int32"));
+                assertEquals(expected.get("Inner"), actual.get("Inner"));
+                assertArrayEquals(new byte[] { 1, 2, 3 }, (byte[])actual.get("Binary"));
+                assertEquals(new Timestamp(0xAABB, 0xCCDD), actual.get("Timestamp"));
+                JavaScript js = (JavaScript)actual.get("Code");
+                assertEquals("code", js.getCode());
+                assertEquals(Map.of("a", 5), js.getScope());
+            }
+            assertNull(p.readDocumentAsMap());
+        }
+
+        // read the remainder of a document
+        try (BsonParser p = (BsonParser)fac.createParser(ObjectReadContext.empty(), b)) {
+            assertEquals(JsonToken.START_OBJECT, p.nextToken());
+            assertEquals(expected.keySet(), p.readDocumentAsMap().keySet());
+        }
+    }
+
+    /**
+     * Test if documents can be read without decoding them
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void readRawDocument() throws Exception {
+        BSONObject o = new BasicBSONObject();
+        o.put("String", "Hello World");
+        o.put("Inner", new BasicBSONObject("x", List.of(1, 2)));
+        o.put("Int32", 1234);
+        BSONEncoder enc = new BasicBSONEncoder();
+        byte[] b = enc.encode(o);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        baos.write(b);
+        baos.write(b);
+
+        BsonFactory fac = new BsonFactory();
+        try (BsonParser p = (BsonParser)fac.createParser(ObjectReadContext.empty(),
+                new BufferedInputStream(new ByteArrayInputStream(baos.toByteArray())))) {
+            for (int i = 0; i < 2; ++i) {
+                assertArrayEquals(b, p.readRawDocument().toByteArray());
+                assertEquals(JsonToken.END_OBJECT, p.currentToken());
+            }
+            assertNull(p.readRawDocument());
+        }
+
+        // read an embedded document and continue parsing
+        try (BsonParser p = (BsonParser)fac.createParser(ObjectReadContext.empty(), b)) {
+            assertEquals(JsonToken.START_OBJECT, p.nextToken());
+            assertEquals(JsonToken.PROPERTY_NAME, p.nextToken());
+            assertEquals(JsonToken.VALUE_STRING, p.nextToken());
+            assertEquals(JsonToken.PROPERTY_NAME, p.nextToken());
+            assertEquals("Inner", p.currentName());
+            byte[] inner = enc.encode(new BasicBSONObject("x", List.of(1, 2)));
+            assertArrayEquals(inner, p.readRawDocument().toByteArray());
+            assertEquals(JsonToken.END_OBJECT, p.currentToken());
+            assertEquals(JsonToken.PROPERTY_NAME, p.nextToken());
+            assertEquals("Int32", p.currentName());
+            assertEquals(JsonToken.VALUE_NUMBER_INT, p.nextToken());
+            assertEquals(1234, p.getIntValue());
+            assertEquals(JsonToken.END_OBJECT, p.nextToken());
+        }
+    }
+
     /**
      * Test if a complex BSON object containing various values can be
      * deserialized
@@ -399,6 +596,38 @@ public class BsonParserTest {
         assertArrayEquals(b, data.barr);
     }
 
+    /**
+     * Test if the payload of binary vectors can be read as binary data and
+     * if vectors with an unknown data type are read as plain binary data
+     */
+    @Test
+    public void parseBinaryVectorPayload() {
+        byte[] vector = new byte[] { BsonConstants.VECTOR_DTYPE_INT8, 0, -128, 0, 127 };
+        byte[] unknown = new byte[] { 0x7F, 0, 1, 2 };
+        BSONObject o = new BasicBSONObject();
+        o.put("v", new Binary(BsonConstants.SUBTYPE_VECTOR, vector));
+        o.put("u", new Binary(BsonConstants.SUBTYPE_VECTOR, unknown));
+        byte[] b = new BasicBSONEncoder().encode(o);
+
+        try (BsonParser p = (BsonParser)new BsonFactory().createParser(
+                ObjectReadContext.empty(), b)) {
+            assertEquals(JsonToken.START_OBJECT, p.nextToken());
+            assertEquals(JsonToken.PROPERTY_NAME, p.nextToken());
+            assertEquals(JsonToken.VALUE_EMBEDDED_OBJECT, p.nextToken());
+            assertTrue(p.getEmbeddedObject() instanceof BinaryVector);
+            assertArrayEquals(vector, p.getBinaryValue());
+
+            assertEquals(JsonToken.PROPERTY_NAME, p.nextToken());
+            assertEquals(JsonToken.VALUE_EMBEDDED_OBJECT, p.nextToken());
+            assertEquals(BsonConstants.SUBTYPE_VECTOR, p.getCurrentBinarySubtype());
+            assertArrayEquals(unknown, (byte[])p.getEmbeddedObject());
+            assertArrayEquals(unknown, p.getBinaryValue());
+        }
+
+        Map<?, ?> data = parseBsonObject(o);
+        assertArrayEquals(unknown, (byte[])data.get("u"));
+    }
+
     /**
      * Test if {@link BsonParser#nextToken()} returns null if there
      * is no more input. Refers issue #10.
@@ -673,4 +902,37 @@ public class BsonParserTest {
             assertNull(dec.currentToken());
         }
     }
+
+    /**
+     * Test if a parser can be reset and re-used to read another document
+     */
+    @Test
+    public void resetParser() {
+        BSONEncoder enc = new BasicBSONEncoder();
+        BSONObject o1 = new BasicBSONObject();
+        o1.put("name", "first");
+        byte[] b1 = enc.encode(o1);
+        BSONObject o2 = new BasicBSONObject();
+        o2.put("name", "second");
+        o2.put("count", 2);
+        byte[] b2 = enc.encode(o2);
+
+        BsonFactory fac = new BsonFactory();
+        ObjectMapper mapper = new ObjectMapper(fac);
+        BsonParser p = (BsonParser)fac.createParser(ObjectReadContext.empty(),
+                new ByteArrayInputStream(b1));
+        Map<?, ?> data = mapper.readValue(p, Map.class);
+        assertEquals("first", data.get("name"));
+
+        p.reset(new ByteArrayInputStream(b2));
+        data = mapper.readValue(p, Map.class);
+        assertEquals("second", data.get("name"));
+        assertEquals(2, data.get("count"));
+
+        // switch to a stream that does not need buffering
+        p.reset(new de.undercouch.bson4jackson.io.UnsafeByteArrayInputStream(b1));
+        data = mapper.readValue(p, Map.class);
+        assertEquals("first", data.get("name"));
+        p.close();
+    }
 }
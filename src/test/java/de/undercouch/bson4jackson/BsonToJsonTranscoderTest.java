@@ -0,0 +1,155 @@
+package de.undercouch.bson4jackson;
+
+import org.bson.BSONObject;
+import org.bson.BasicBSONEncoder;
+import org.bson.BasicBSONObject;
+import org.bson.types.Binary;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+import tools.jackson.core.JsonGenerator;
+import tools.jackson.core.JsonToken;
+import tools.jackson.core.ObjectReadContext;
+import tools.jackson.core.ObjectWriteContext;
+import tools.jackson.core.json.JsonFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link BsonToJsonTranscoder}
+ */
+public class BsonToJsonTranscoderTest {
+    private static String transcode(byte[] b, BsonToJsonTranscoder transcoder,
+            BsonParser.Feature... parserFeatures) {
+        BsonFactory fac = new BsonFactory();
+        for (BsonParser.Feature f : parserFeatures) {
+            fac.enable(f);
+        }
+        StringWriter w = new StringWriter();
+        try (BsonParser p = (BsonParser)fac.createParser(ObjectReadContext.empty(), b);
+                JsonGenerator gen = new JsonFactory().createGenerator(
+                        ObjectWriteContext.empty(), w)) {
+            transcoder.transcodeAll(p, gen);
+        }
+        return w.toString();
+    }
+
+    /**
+     * Transcodes a document without Extended JSON
+     */
+    @Test
+    public void plain() {
+        String expected = "{\"_id\":{\"$timestamp\":16909060,\"$randomValue1\":329223," +
+                "\"$randomValue2\":2057,\"$counter\":658188},\"date\":1000," +
+                "\"dec\":1.5,\"bin\":\"AQID\",\"arr\":[1,2,3.5,\"x\",null,true]," +
+                "\"inner\":{\"a\":1}}";
+        BSONObject o = new BasicBSONObject();
+        o.put("_id", new ObjectId("0102030405060708090a0b0c"));
+        o.put("date", new Date(1000L));
+        o.put("dec", new Decimal128(new BigDecimal("1.5")));
+        o.put("bin", new Binary((byte)0x80, new byte[] { 1, 2, 3 }));
+        o.put("arr", Arrays.asList(1, 2L, 3.5, "x", null, true));
+        o.put("inner", new BasicBSONObject("a", 1));
+        byte[] b = new BasicBSONEncoder().encode(o);
+        assertEquals(expected, transcode(b, new BsonToJsonTranscoder()));
+        assertEquals(expected, transcode(b, new BsonToJsonTranscoder(),
+                BsonParser.Feature.READ_DECIMAL128_AS_BIGDECIMAL));
+    }
+
+    /**
+     * Transcodes a document to Extended JSON
+     */
+    @Test
+    public void extended() {
+        BsonToJsonTranscoder transcoder = new BsonToJsonTranscoder(
+                BsonToJsonTranscoder.Feature.EXTENDED_OBJECTID,
+                BsonToJsonTranscoder.Feature.EXTENDED_DATETIME,
+                BsonToJsonTranscoder.Feature.EXTENDED_DECIMAL128,
+                BsonToJsonTranscoder.Feature.EXTENDED_BINARY);
+        String expected = "{\"_id\":{\"$oid\":\"0102030405060708090a0b0c\"}," +
+                "\"date\":{\"$date\":\"1970-01-01T00:00:01.000Z\"}," +
+                "\"dec\":{\"$numberDecimal\":\"1.5\"}," +
+                "\"bin\":{\"$binary\":{\"base64\":\"AQID\",\"subType\":\"80\"}}," +
+                "\"arr\":[1,2,3.5,\"x\",null,true],\"inner\":{\"a\":1}}";
+        BSONObject o = new BasicBSONObject();
+        o.put("_id", new ObjectId("0102030405060708090a0b0c"));
+        o.put("date", new Date(1000L));
+        o.put("dec", new Decimal128(new BigDecimal("1.5")));
+        o.put("bin", new Binary((byte)0x80, new byte[] { 1, 2, 3 }));
+        o.put("arr", Arrays.asList(1, 2L, 3.5, "x", null, true));
+        o.put("inner", new BasicBSONObject("a", 1));
+        byte[] b = new BasicBSONEncoder().encode(o);
+        assertEquals(expected, transcode(b, transcoder));
+        assertEquals(expected, transcode(b, transcoder,
+                BsonParser.Feature.READ_DECIMAL128_AS_BIGDECIMAL));
+    }
+
+    /**
+     * Transcodes binary data and UUIDs with legacy (subtype 3) and
+     * standard (subtype 4) byte order. The Extended JSON representation
+     * must contain the original bytes.
+     */
+    @Test
+    public void uuids() {
+        byte[] bytes = new byte[16];
+        for (int i = 0; i < bytes.length; ++i) {
+            bytes[i] = (byte)i;
+        }
+        BSONObject o = new BasicBSONObject();
+        o.put("legacy", new Binary(BsonConstants.SUBTYPE_UUID, bytes));
+        o.put("standard", new Binary(BsonConstants.SUBTYPE_UUID_STANDARD, bytes));
+        o.put("bin", new Binary(BsonConstants.SUBTYPE_BINARY, new byte[] { 1, 2, 3 }));
+        byte[] b = new BasicBSONEncoder().encode(o);
+
+        assertEquals("{\"legacy\":\"07060504-0302-0100-0f0e-0d0c0b0a0908\"," +
+                "\"standard\":\"00010203-0405-0607-0809-0a0b0c0d0e0f\"," +
+                "\"bin\":\"AQID\"}", transcode(b, new BsonToJsonTranscoder()));
+
+        BsonToJsonTranscoder transcoder = new BsonToJsonTranscoder(
+                BsonToJsonTranscoder.Feature.EXTENDED_BINARY);
+        assertEquals("{\"legacy\":{\"$binary\":{\"base64\":\"AAECAwQFBgcICQoLDA0ODw==\"," +
+                "\"subType\":\"03\"}}," +
+                "\"standard\":{\"$binary\":{\"base64\":\"AAECAwQFBgcICQoLDA0ODw==\"," +
+                "\"subType\":\"04\"}}," +
+                "\"bin\":{\"$binary\":{\"base64\":\"AQID\",\"subType\":\"00\"}}}",
+                transcode(b, transcoder));
+    }
+
+    /**
+     * Transcodes multiple documents and parts of a document
+     */
+    @Test
+    public void partial() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        BasicBSONEncoder enc = new BasicBSONEncoder();
+        baos.write(enc.encode(new BasicBSONObject("a", Arrays.asList(1, 2))));
+        baos.write(enc.encode(new BasicBSONObject("b", "c")));
+
+        BsonToJsonTranscoder transcoder = new BsonToJsonTranscoder();
+        StringWriter w = new StringWriter();
+        try (BsonParser p = (BsonParser)new BsonFactory().createParser(
+                ObjectReadContext.empty(), baos.toByteArray());
+                JsonGenerator gen = new JsonFactory().createGenerator(
+                        ObjectWriteContext.empty(), w)) {
+            assertEquals(JsonToken.START_OBJECT, p.nextToken());
+            assertEquals(JsonToken.PROPERTY_NAME, p.nextToken());
+            gen.writeStartObject();
+            assertTrue(transcoder.transcode(p, gen));
+            assertEquals(JsonToken.END_ARRAY, p.currentToken());
+            gen.writeEndObject();
+            assertEquals(JsonToken.END_OBJECT, p.nextToken());
+
+            assertTrue(transcoder.transcode(p, gen));
+            assertFalse(transcoder.transcode(p, gen));
+        }
+        assertEquals("{\"a\":[1,2]} {\"b\":\"c\"}", w.toString());
+    }
+}
@@ -0,0 +1,158 @@
+package de.undercouch.bson4jackson;
+
+import org.bson.BSONObject;
+import org.bson.BasicBSONDecoder;
+import org.bson.BasicBSONEncoder;
+import org.bson.BasicBSONObject;
+import org.bson.types.Binary;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+import tools.jackson.core.JsonGenerator;
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.ObjectReadContext;
+import tools.jackson.core.ObjectWriteContext;
+import tools.jackson.core.exc.StreamReadException;
+import tools.jackson.core.json.JsonFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link JsonToBsonTranscoder}
+ */
+public class JsonToBsonTranscoderTest {
+    private static byte[] transcode(String json) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (JsonParser p = new JsonFactory().createParser(ObjectReadContext.empty(), json);
+                BsonGenerator gen = (BsonGenerator)new BsonFactory().createGenerator(
+                        ObjectWriteContext.empty(), baos)) {
+            new JsonToBsonTranscoder().transcodeAll(p, gen);
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Converts Extended JSON wrappers to BSON types
+     */
+    @Test
+    public void wrappers() {
+        String json = "{\"_id\":{\"$oid\":\"0102030405060708090a0b0c\"}," +
+                "\"date\":{\"$date\":\"1970-01-01T00:00:01.000Z\"}," +
+                "\"date2\":{\"$date\":{\"$numberLong\":\"-1000\"}}," +
+                "\"dec\":{\"$numberDecimal\":\"1.5\"}," +
+                "\"n\":{\"$numberLong\":\"5\"}," +
+                "\"bin\":{\"$binary\":{\"base64\":\"AQID\",\"subType\":\"80\"}}," +
+                "\"arr\":[1,10000000000,2.5,\"x\",null,true,{}]," +
+                "\"ref\":{\"$ref\":\"c\",\"$id\":1}}";
+        BSONObject obj = new BasicBSONDecoder().readObject(transcode(json));
+        assertEquals(new ObjectId("0102030405060708090a0b0c"), obj.get("_id"));
+        assertEquals(new Date(1000L), obj.get("date"));
+        assertEquals(new Date(-1000L), obj.get("date2"));
+        assertEquals(new Decimal128(new BigDecimal("1.5")), obj.get("dec"));
+        assertEquals(5L, obj.get("n"));
+        Binary bin = (Binary)obj.get("bin");
+        assertEquals((byte)0x80, bin.getType());
+        assertArrayEquals(new byte[] { 1, 2, 3 }, bin.getData());
+        assertEquals(Arrays.asList(1, 10000000000L, 2.5, "x", null, true,
+                new BasicBSONObject()), obj.get("arr"));
+        BSONObject ref = (BSONObject)obj.get("ref");
+        assertEquals("c", ref.get("$ref"));
+        assertEquals(1, ref.get("$id"));
+    }
+
+    /**
+     * Writes each document to the output stream as soon as it is complete
+     * without flushing the stream
+     */
+    @Test
+    public void multipleDocuments() throws Exception {
+        int[] flushes = new int[1];
+        ByteArrayOutputStream baos = new ByteArrayOutputStream() {
+            @Override
+            public void flush() {
+                ++flushes[0];
+            }
+        };
+        JsonToBsonTranscoder transcoder = new JsonToBsonTranscoder();
+        try (JsonParser p = new JsonFactory().createParser(ObjectReadContext.empty(),
+                    "{\"a\":1} {\"b\":[2]}");
+                BsonGenerator gen = (BsonGenerator)new BsonFactory().createGenerator(
+                        ObjectWriteContext.empty(), baos)) {
+            assertTrue(transcoder.transcode(p, gen));
+            byte[] first = baos.toByteArray();
+            assertEquals(new BasicBSONObject("a", 1),
+                    new BasicBSONDecoder().readObject(first));
+
+            assertEquals(1, transcoder.transcodeAll(p, gen));
+            ByteArrayInputStream in = new ByteArrayInputStream(baos.toByteArray(),
+                    first.length, baos.size() - first.length);
+            assertEquals(new BasicBSONObject("b", Arrays.asList(2)),
+                    new BasicBSONDecoder().readObject(in));
+            assertEquals(0, flushes[0]);
+        }
+    }
+
+    /**
+     * Transcodes decimals without converting them to doubles
+     */
+    @Test
+    public void bigDecimal() {
+        BSONObject o = new BasicBSONObject("dec",
+                new Decimal128(new BigDecimal("0.1000000000000000000001")));
+        byte[] b = new BasicBSONEncoder().encode(o);
+
+        BsonFactory factory = new BsonFactory();
+        factory.enable(BsonParser.Feature.READ_DECIMAL128_AS_BIGDECIMAL);
+        factory.enable(BsonGenerator.Feature.WRITE_BIGDECIMALS_AS_DECIMAL128);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (JsonParser p = factory.createParser(ObjectReadContext.empty(), b);
+                BsonGenerator gen = (BsonGenerator)factory.createGenerator(
+                        ObjectWriteContext.empty(), baos)) {
+            new JsonToBsonTranscoder().transcodeAll(p, gen);
+        }
+
+        assertEquals(o, new BasicBSONDecoder().readObject(baos.toByteArray()));
+    }
+
+    /**
+     * Makes sure invalid wrappers are rejected
+     */
+    @Test(expected = StreamReadException.class)
+    public void invalidWrapper() {
+        transcode("{\"x\":{\"$oid\":\"0102\"}}");
+    }
+
+    /**
+     * Converts BSON to Extended JSON and back
+     */
+    @Test
+    public void roundTrip() {
+        BSONObject o = new BasicBSONObject();
+        o.put("_id", new ObjectId("0102030405060708090a0b0c"));
+        o.put("date", new Date(1234567L));
+        o.put("dec", new Decimal128(new BigDecimal("-12.345")));
+        o.put("md5", new Binary((byte)5, new byte[] { 4, 5, 6 }));
+        o.put("inner", new BasicBSONObject("l", 10000000000L));
+        byte[] b = new BasicBSONEncoder().encode(o);
+
+        StringWriter w = new StringWriter();
+        try (BsonParser p = (BsonParser)new BsonFactory().createParser(
+                ObjectReadContext.empty(), b);
+                JsonGenerator gen = new JsonFactory().createGenerator(
+                        ObjectWriteContext.empty(), w)) {
+            new BsonToJsonTranscoder(BsonToJsonTranscoder.Feature.values())
+                    .transcodeAll(p, gen);
+        }
+
+        assertEquals(o, new BasicBSONDecoder().readObject(transcode(w.toString())));
+    }
+}
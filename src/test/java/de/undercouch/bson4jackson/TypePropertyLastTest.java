@@ -169,6 +169,25 @@ public class TypePropertyLastTest {
         ObjectMapper mapper = JsonMapper.builder(new BsonFactory())
             .addModule(new BsonModule())
             .build();
+        parse(mapper);
+    }
+
+    /**
+     * Serialize and deserialize an object of type {@link TypeAsPropertyA}
+     * with a parser that reports the type property first, so Jackson does
+     * not need to buffer the other properties
+     */
+    @Test
+    public void parseWithTypePropertyNames() {
+        BsonFactory factory = new BsonFactory();
+        factory.setTypePropertyNames("type");
+        ObjectMapper mapper = JsonMapper.builder(factory)
+            .addModule(new BsonModule())
+            .build();
+        parse(mapper);
+    }
+
+    private void parse(ObjectMapper mapper) {
         TypeAsPropertyA a = new TypeAsPropertyA();
         byte[] bytes = mapper.writeValueAsBytes(a);
         TypeAsProperty v = mapper.readValue(bytes,
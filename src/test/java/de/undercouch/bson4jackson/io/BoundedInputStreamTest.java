@@ -114,6 +114,24 @@ public class BoundedInputStreamTest {
         }
     }
 
+    @Test
+    public void testSetInputStream() throws Exception {
+        ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
+        try (BoundedInputStream is = new BoundedInputStream(bais, 1)) {
+            assertEquals(10, is.read());
+            assertEquals(-1, is.read());
+            is.setInputStream(bais, 2);
+            assertEquals(20, is.read());
+            assertEquals(30, is.read());
+            assertEquals(-1, is.read());
+            is.setInputStream(new ByteArrayInputStream(bytes), 5);
+            byte[] buf = new byte[10];
+            assertEquals(4, is.read(buf));
+            assertArrayEquals(bytes, buf, 0, 4);
+            assertEquals(-1, is.read());
+        }
+    }
+
     private static void assertArrayEquals(byte[] expected, byte[] actual, int off, int len) {
         for (int i = 0; i < len; i++) {
             assertEquals("element [" + i + "] not matching", expected[i + off], actual[i]);
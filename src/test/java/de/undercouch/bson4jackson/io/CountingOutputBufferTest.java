@@ -0,0 +1,70 @@
+package de.undercouch.bson4jackson.io;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests {@link CountingOutputBuffer}
+ */
+public class CountingOutputBufferTest {
+    /**
+     * Puts the same data into a counting and a regular buffer and
+     * checks if both report the same size
+     */
+    @Test
+    public void sameSizeAsDynamicOutputBuffer() {
+        DynamicOutputBuffer expected = new DynamicOutputBuffer(8);
+        CountingOutputBuffer actual = new CountingOutputBuffer();
+        for (DynamicOutputBuffer b : new DynamicOutputBuffer[] { expected, actual }) {
+            b.putInt(0);
+            b.putByte((byte)1);
+            b.putLong(2L);
+            b.putDouble(3.0);
+            b.putFloat(4.0f);
+            b.putString("ab");
+            assertEquals(10, b.putUTF8("aä€😀"));
+            b.putBytes(new byte[] { 1, 2, 3 }, 1, 2);
+            b.putInt(0, 5);
+        }
+        assertEquals(expected.size(), actual.size());
+    }
+
+    /**
+     * Checks if UTF-8 lengths are calculated correctly
+     */
+    @Test
+    public void utf8Length() {
+        String[] strs = { "", "Hello", "Wörld", "€", "😀 x" };
+        for (String s : strs) {
+            assertEquals(s.getBytes(StandardCharsets.UTF_8).length,
+                    CountingOutputBuffer.utf8Length(s));
+        }
+    }
+
+    /**
+     * Invalid surrogates must be rejected like in {@link DynamicOutputBuffer}
+     */
+    @Test(expected = IllegalStateException.class)
+    public void invalidSurrogate() {
+        CountingOutputBuffer.utf8Length("a\ud83d");
+    }
+
+    /**
+     * Writing a counting buffer must not produce any output
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void writeNothing() throws Exception {
+        CountingOutputBuffer b = new CountingOutputBuffer();
+        b.putBytes(new byte[100]);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        b.flushTo(baos);
+        b.writeTo(baos);
+        assertEquals(0, baos.size());
+        assertEquals(100, b.size());
+    }
+}
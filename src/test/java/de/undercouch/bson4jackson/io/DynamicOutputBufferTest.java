@@ -8,15 +8,69 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.CharBuffer;
 import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Tests {@link DynamicOutputBuffer}
  */
 public class DynamicOutputBufferTest {
+    /**
+     * A gathering channel that collects all bytes written and counts
+     * the number of write calls
+     */
+    private static class RecordingChannel implements GatheringByteChannel {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        int singleWrites = 0;
+        int gatheringWrites = 0;
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) {
+            ++gatheringWrites;
+            long r = 0;
+            for (int i = offset; i < offset + length; ++i) {
+                r += drain(srcs[i]);
+            }
+            return r;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs) {
+            return write(srcs, 0, srcs.length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            ++singleWrites;
+            return drain(src);
+        }
+
+        private int drain(ByteBuffer src) {
+            int r = src.remaining();
+            while (src.hasRemaining()) {
+                baos.write(src.get());
+            }
+            return r;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+            // nothing to do here
+        }
+    }
+
     @Test
     public void putByteBig() throws Exception {
         DynamicOutputBuffer db = new DynamicOutputBuffer(2);
@@ -523,4 +577,331 @@ public class DynamicOutputBufferTest {
         assertEquals(5, r[2]);
         assertEquals(4, r[3]);
     }
+
+    /**
+     * Test if several internal buffers are flushed with a single
+     * gathering write
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void gatheringFlush() throws Exception {
+        DynamicOutputBuffer db = new DynamicOutputBuffer(2);
+        db.putBytes((byte)1, (byte)2, (byte)3, (byte)4, (byte)5, (byte)6, (byte)7);
+
+        RecordingChannel channel = new RecordingChannel();
+        db.flushTo(channel);
+        assertEquals(1, channel.gatheringWrites);
+        assertEquals(0, channel.singleWrites);
+        assertArrayEquals(new byte[] { 1, 2, 3, 4, 5, 6 }, channel.baos.toByteArray());
+
+        db.putByte((byte)8);
+        db.writeTo(channel);
+        assertArrayEquals(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 }, channel.baos.toByteArray());
+    }
+
+    /**
+     * Test if the whole buffer is written with a single gathering write
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void gatheringWrite() throws Exception {
+        DynamicOutputBuffer db = new DynamicOutputBuffer(2);
+        db.putBytes((byte)1, (byte)2, (byte)3, (byte)4, (byte)5);
+
+        RecordingChannel channel = new RecordingChannel();
+        db.writeTo(channel);
+        assertEquals(1, channel.gatheringWrites);
+        assertEquals(0, channel.singleWrites);
+        assertArrayEquals(new byte[] { 1, 2, 3, 4, 5 }, channel.baos.toByteArray());
+    }
+
+    /**
+     * Test if read-only views of the internal buffers can be created
+     * without changing the buffer's state
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void readOnlyByteBuffers() throws Exception {
+        DynamicOutputBuffer db = new DynamicOutputBuffer(2);
+        db.putBytes((byte)1, (byte)2, (byte)3, (byte)4, (byte)5);
+
+        ByteBuffer[] views = db.toReadOnlyByteBuffers();
+        assertEquals(3, views.length);
+        assertEquals(2, views[0].remaining());
+        assertEquals(2, views[1].remaining());
+        assertEquals(1, views[2].remaining());
+        for (ByteBuffer v : views) {
+            assertTrue(v.isReadOnly());
+        }
+        assertEquals(5, views[2].get(0));
+
+        // the buffer must still be writable and complete
+        db.putByte((byte)6);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        db.writeTo(baos);
+        assertArrayEquals(new byte[] { 1, 2, 3, 4, 5, 6 }, baos.toByteArray());
+    }
+
+    /**
+     * Test if internal buffers grow geometrically up to the maximum size
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void geometricGrowth() throws Exception {
+        // make sure there is no re-usable buffer from another test
+        StaticBuffers.getInstance().releaseByteBuffer(DynamicOutputBuffer.BUFFER_KEY, null);
+
+        DynamicOutputBuffer db = new DynamicOutputBuffer(ByteOrder.LITTLE_ENDIAN, 2, 8);
+        byte[] data = new byte[40];
+        for (int i = 0; i < data.length; ++i) {
+            data[i] = (byte)i;
+        }
+        db.putBytes(data, 0, 20);
+        db.putInt(0x17161514);
+        db.putBytes(data, 24, 16);
+        assertEquals(40, db.size());
+
+        ByteBuffer[] views = db.toReadOnlyByteBuffers();
+        assertEquals(7, views.length);
+        assertEquals(2, views[0].remaining());
+        assertEquals(4, views[1].remaining());
+        assertEquals(8, views[2].remaining());
+        assertEquals(8, views[3].remaining());
+        assertEquals(8, views[4].remaining());
+        assertEquals(8, views[5].remaining());
+        assertEquals(2, views[6].remaining());
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        db.flushTo(baos);
+        assertEquals(38, baos.size());
+        db.writeTo(baos);
+        assertArrayEquals(data, baos.toByteArray());
+        db.clear();
+    }
+
+    /**
+     * Test if a geometrically growing buffer adopts the size of the
+     * largest internal buffer used by the previous buffer on this thread
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void adaptiveInitialSize() throws Exception {
+        StaticBuffers.getInstance().releaseByteBuffer(DynamicOutputBuffer.BUFFER_KEY, null);
+
+        DynamicOutputBuffer db = new DynamicOutputBuffer(ByteOrder.LITTLE_ENDIAN, 16, 1024);
+        db.putBytes(new byte[300], 0, 300);
+        assertEquals(16, db.toReadOnlyByteBuffers()[0].remaining());
+        db.clear();
+
+        DynamicOutputBuffer db2 = new DynamicOutputBuffer(ByteOrder.LITTLE_ENDIAN, 16, 1024);
+        db2.putByte((byte)1);
+        assertEquals(1, db2.toReadOnlyByteBuffers().length);
+        db2.putBytes(new byte[200], 0, 200);
+        assertEquals(1, db2.toReadOnlyByteBuffers().length);
+        assertEquals(201, db2.toReadOnlyByteBuffers()[0].remaining());
+        db2.clear();
+    }
+
+    /**
+     * Test if the buffer writes directly into a caller-supplied buffer
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void target() throws Exception {
+        ByteBuffer target = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+        target.position(2);
+        DynamicOutputBuffer db = new DynamicOutputBuffer(ByteOrder.LITTLE_ENDIAN, target);
+        db.putInt(0);
+        db.putUTF8("abc\u00e4");
+        db.putInt(0, 9);
+        assertEquals(9, db.size());
+        assertEquals(2, target.position());
+        assertEquals(9, target.getInt(2));
+        assertEquals('a', target.get(6));
+        assertEquals((byte)0xa4, target.get(10));
+    }
+
+    /**
+     * Test if strings are encoded directly into a caller-supplied buffer
+     * that is not backed by an array
+     */
+    @Test
+    public void putUTF8DirectTarget() {
+        String str = "Hello \u00e4\u00f6\u00fc \u20ac \ud83d\ude00!";
+        byte[] expected = str.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer target = ByteBuffer.allocateDirect(64);
+        DynamicOutputBuffer db = new DynamicOutputBuffer(ByteOrder.LITTLE_ENDIAN, target);
+        db.putByte((byte)1);
+        assertEquals(expected.length, db.putUTF8(str));
+        assertEquals(expected.length + 1, db.size());
+        byte[] actual = new byte[expected.length];
+        target.get(1, actual);
+        assertArrayEquals(expected, actual);
+
+        try {
+            db.putUTF8("a\ud83d");
+            fail("Unpaired surrogate must not be encoded");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Test if the buffer fails fast if the caller-supplied buffer
+     * is too small
+     */
+    @Test(expected = java.nio.BufferOverflowException.class)
+    public void targetOverflow() {
+        ByteBuffer target = ByteBuffer.allocateDirect(4);
+        DynamicOutputBuffer db = new DynamicOutputBuffer(ByteOrder.LITTLE_ENDIAN, target);
+        db.putInt(1);
+        db.putUTF8("x");
+    }
+
+    /**
+     * Test if the buffer can be flushed up to arbitrary positions
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void partialFlush() throws Exception {
+        DynamicOutputBuffer db = new DynamicOutputBuffer(8);
+        byte[] data = new byte[30];
+        for (int i = 0; i < data.length; ++i) {
+            data[i] = (byte)i;
+        }
+        db.putBytes(data, 0, 5);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        db.flushTo(baos, 3);
+        assertEquals(3, db.getFlushPosition());
+        assertEquals(3, baos.size());
+
+        // the rest of a partially flushed buffer must still be writable
+        db.putByte(4, (byte)4);
+        db.putBytes(data, 5, 20);
+        db.flushTo(baos, 19);
+        assertEquals(19, db.getFlushPosition());
+        assertEquals(19, baos.size());
+
+        // flushing whole buffers must continue at the flush position
+        db.flushTo(baos);
+        assertEquals(24, db.getFlushPosition());
+        assertEquals(1, db.toReadOnlyByteBuffers().length);
+        assertEquals(1, db.toReadOnlyByteBuffers()[0].remaining());
+
+        db.putBytes(data, 25, 5);
+        db.flushTo(baos, 27);
+        RecordingChannel channel = new RecordingChannel();
+        db.writeTo(channel);
+        baos.write(channel.baos.toByteArray());
+        assertArrayEquals(data, baos.toByteArray());
+    }
+
+    /**
+     * Test if characters from an array can be encoded as UTF-8 without
+     * creating a string first
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void putUTF8CharArray() throws Exception {
+        String str = "a\u00e4\u20ac\ud83d\ude00b";
+        char[] chars = ("__" + str + "_").toCharArray();
+        for (DynamicOutputBuffer db : new DynamicOutputBuffer[] {
+                new DynamicOutputBuffer(3),
+                new DynamicOutputBuffer(ByteOrder.LITTLE_ENDIAN, ByteBuffer.allocateDirect(32)) }) {
+            db.putByte((byte)1);
+            int l = db.putUTF8(chars, 2, str.length());
+            byte[] expected = str.getBytes(StandardCharsets.UTF_8);
+            assertEquals(expected.length, l);
+            assertEquals(expected.length + 1, db.size());
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            db.writeTo(baos);
+            byte[] actual = Arrays.copyOfRange(baos.toByteArray(), 1, baos.size());
+            assertArrayEquals(expected, actual);
+        }
+        assertEquals(9, CountingOutputBuffer.utf8Length(str, 1, 5));
+    }
+
+    /**
+     * Test if long runs of ASCII characters from an array are copied
+     * correctly across internal buffer boundaries
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void putUTF8CharArrayAsciiRuns() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20; ++i) {
+            sb.append("The quick brown fox jumps over the lazy dog ").append(i);
+            sb.append(i % 3 == 0 ? "\u00e4" : "");
+        }
+        String str = sb.toString();
+        char[] chars = ("xyz" + str + "xyz").toCharArray();
+        DynamicOutputBuffer db = new DynamicOutputBuffer(16);
+        int l = db.putUTF8(chars, 3, str.length());
+        byte[] expected = str.getBytes(StandardCharsets.UTF_8);
+        assertEquals(expected.length, l);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        db.writeTo(baos);
+        assertArrayEquals(expected, baos.toByteArray());
+    }
+
+    /**
+     * Test if runs of ASCII characters mixed with multibyte characters
+     * are encoded correctly across internal buffer boundaries
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void putUTF8AsciiRuns() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 50; ++i) {
+            sb.append("abcdefghijklmnopq".substring(0, i % 17));
+            sb.append(i % 3 == 0 ? "\u00e4" : i % 3 == 1 ? "\u20ac" : "\ud83d\ude00");
+        }
+        String str = sb.toString();
+        byte[] expected = str.getBytes(StandardCharsets.UTF_8);
+
+        for (int size : new int[] { 1, 3, 7, 16, 1024 }) {
+            DynamicOutputBuffer db = new DynamicOutputBuffer(size);
+            assertEquals(expected.length, db.putUTF8(str));
+            assertEquals(expected.length, db.putUTF8(str.toCharArray(), 0, str.length()));
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            db.writeTo(baos);
+            byte[] actual = baos.toByteArray();
+            assertArrayEquals(expected, Arrays.copyOfRange(actual, 0, expected.length));
+            assertArrayEquals(expected, Arrays.copyOfRange(actual, expected.length, actual.length));
+        }
+    }
+
+    /**
+     * Test if floats and byte buffers can be put in bulk across internal
+     * buffer boundaries
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void putFloatsAndByteBuffer() throws Exception {
+        float[] floats = new float[] { 1.0f, -2.5f, 3.25f, Float.MIN_VALUE, 5.0f, 6.5f };
+        ByteBuffer expected = ByteBuffer.allocate(1 + 5 * 4 + 7).order(ByteOrder.LITTLE_ENDIAN);
+        expected.put((byte)1);
+        for (int i = 1; i < floats.length; ++i) {
+            expected.putFloat(floats[i]);
+        }
+        expected.put(new byte[] { 2, 3, 4, 5, 6, 7, 8 });
+
+        for (int size : new int[] { 1, 3, 4, 7, 16, 1024 }) {
+            DynamicOutputBuffer db = new DynamicOutputBuffer(ByteOrder.LITTLE_ENDIAN, size);
+            db.putByte((byte)1);
+            db.putFloats(floats, 1, 5);
+            ByteBuffer src = ByteBuffer.wrap(new byte[] { 0, 2, 3, 4, 5, 6, 7, 8, 9 });
+            src.position(1).limit(8);
+            db.putBytes(src);
+            assertEquals(1, src.position());
+            assertEquals(expected.capacity(), db.size());
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            db.writeTo(baos);
+            assertArrayEquals(expected.array(), baos.toByteArray());
+        }
+    }
 }
@@ -10,6 +10,7 @@ import java.util.Arrays;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Tests {@link StaticBufferedInputStream}
@@ -162,4 +163,27 @@ public class StaticBufferedInputStreamTest {
         // will throw because we've read beyond the buffer size
         _in.reset();
     }
+
+    @Test
+    public void skipWithMark() throws IOException {
+        int n = makeLargeIn();
+        // consume half of the buffer, so skipping has to refill it
+        int start = _in.getMarkLimit() / 2;
+        for (int i = 0; i < start; ++i) {
+            assertEquals("abc".charAt(i % 3), _in.read());
+        }
+        _in.mark(_in.getMarkLimit());
+        int toSkip = _in.getMarkLimit() - 1;
+        while (toSkip > 0) {
+            long s = _in.skip(toSkip);
+            assertTrue(s > 0);
+            toSkip -= (int)s;
+        }
+        // the skipped bytes must still be available after reset
+        _in.reset();
+        for (int i = start; i < n * 3; ++i) {
+            assertEquals("abc".charAt(i % 3), _in.read());
+        }
+        assertEquals(-1, _in.read());
+    }
 }
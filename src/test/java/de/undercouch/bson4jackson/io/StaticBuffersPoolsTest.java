@@ -0,0 +1,75 @@
+package de.undercouch.bson4jackson.io;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests {@link StaticBuffersPools}
+ */
+public class StaticBuffersPoolsTest {
+    /**
+     * The thread-local pool should always return the thread's instance
+     */
+    @Test
+    public void threadLocalPool() {
+        StaticBuffersPool pool = StaticBuffersPools.threadLocalPool();
+        StaticBuffers sb = pool.acquire();
+        assertSame(StaticBuffers.getInstance(), sb);
+        pool.release(sb);
+        assertSame(sb, pool.acquire());
+    }
+
+    /**
+     * The non-recycling pool should always return new instances
+     */
+    @Test
+    public void nonRecyclingPool() {
+        StaticBuffersPool pool = StaticBuffersPools.nonRecyclingPool();
+        StaticBuffers sb = pool.acquire();
+        pool.release(sb);
+        assertNotSame(sb, pool.acquire());
+    }
+
+    /**
+     * The bounded pool should recycle released instances but not keep
+     * more than its capacity
+     */
+    @Test
+    public void boundedPool() {
+        StaticBuffersPool pool = StaticBuffersPools.newBoundedPool(1);
+        StaticBuffers sb1 = pool.acquire();
+        StaticBuffers sb2 = pool.acquire();
+        assertNotSame(sb1, sb2);
+
+        pool.release(sb1);
+        pool.release(sb2);
+        assertSame(sb1, pool.acquire());
+        assertNotSame(sb2, pool.acquire());
+    }
+
+    /**
+     * Buffers obtained from a pooled instance should be recycled
+     */
+    @Test
+    public void recycleBuffers() {
+        StaticBuffersPool pool = StaticBuffersPools.newBoundedPool(1);
+        StaticBuffers sb = pool.acquire();
+        DynamicOutputBuffer db = new DynamicOutputBuffer(DynamicOutputBuffer.DEFAULT_BYTE_ORDER,
+                16, 16, sb);
+        db.putByte((byte)1);
+        ByteBuffer first = db.getBuffer(0);
+        db.clear();
+        pool.release(sb);
+
+        StaticBuffers sb2 = pool.acquire();
+        assertSame(sb, sb2);
+        DynamicOutputBuffer db2 = new DynamicOutputBuffer(DynamicOutputBuffer.DEFAULT_BYTE_ORDER,
+                16, 16, sb2);
+        db2.putByte((byte)2);
+        assertSame(first, db2.getBuffer(0));
+    }
+}
@@ -0,0 +1,251 @@
+package de.undercouch.bson4jackson.raw;
+
+import de.undercouch.bson4jackson.BsonConstants;
+import de.undercouch.bson4jackson.types.ObjectId;
+import de.undercouch.bson4jackson.types.Timestamp;
+import org.bson.BSONObject;
+import org.bson.BasicBSONDecoder;
+import org.bson.BasicBSONEncoder;
+import org.bson.BasicBSONObject;
+import org.bson.types.BSONTimestamp;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link BsonRawEditor}
+ */
+public class BsonRawEditorTest {
+    private static BSONObject decode(BsonRawEditor editor) {
+        return new BasicBSONDecoder().readObject(editor.toByteArray());
+    }
+
+    /**
+     * Overwrites fixed-width values in place
+     */
+    @Test
+    public void overwrite() {
+        BSONObject stats = new BasicBSONObject();
+        stats.put("hits", 1);
+        stats.put("bytes", 2L);
+        stats.put("ratio", 0.5);
+        BSONObject o = new BasicBSONObject();
+        o.put("_id", new org.bson.types.ObjectId(0x12345678, 0x00ABCDEF));
+        o.put("stats", stats);
+        o.put("list", List.of("a", "b"));
+        o.put("enabled", false);
+        o.put("updated", new Date(1000L));
+        o.put("ts", new BSONTimestamp(10, 20));
+        byte[] b = new BasicBSONEncoder().encode(o);
+        int length = b.length;
+        BsonRawEditor editor = new BsonRawEditor(b);
+        assertEquals(1, editor.getInt32("stats.hits"));
+        assertTrue(editor.setInt32("stats.hits", 42));
+        assertTrue(editor.setInt64("stats.bytes", 1L << 40));
+        assertTrue(editor.setDouble("stats.ratio", 0.25));
+        assertTrue(editor.setBoolean("enabled", true));
+        assertTrue(editor.setDateTime("updated", new Date(2000L)));
+        assertTrue(editor.setTimestamp("ts", new Timestamp(30, 40)));
+        ObjectId oid = new ObjectId(0x01020304, 0x00C0FFEE, 0x00ABCDEF, (short)0x1234);
+        assertTrue(editor.setObjectId("_id", oid));
+        assertEquals(43, editor.incrementInt32("stats.hits", 1));
+        assertFalse(editor.setInt32("stats.missing", 1));
+        assertFalse(editor.setInt32("enabled.x", 1));
+        assertEquals(length, editor.length());
+
+        assertEquals(43, editor.getInt32("stats.hits"));
+        assertEquals(1L << 40, editor.getInt64("stats.bytes"));
+        assertEquals(0.25, editor.getDouble("stats.ratio"), 0.0001);
+        assertTrue(editor.getBoolean("enabled"));
+        assertEquals(new Date(2000L), editor.getDateTime("updated"));
+        assertEquals(new Timestamp(30, 40), editor.getTimestamp("ts"));
+        assertEquals(oid, editor.getObjectId("_id"));
+        assertEquals(BsonConstants.TYPE_STRING, editor.getType("list.1"));
+        assertEquals(BsonConstants.TYPE_END, editor.getType("list.2"));
+
+        // the byte array has been modified in place
+        BSONObject obj = new BasicBSONDecoder().readObject(b);
+        BSONObject statsObj = (BSONObject)obj.get("stats");
+        assertEquals(43, statsObj.get("hits"));
+        assertEquals(1L << 40, statsObj.get("bytes"));
+        assertEquals(0.25, statsObj.get("ratio"));
+        assertEquals(true, obj.get("enabled"));
+        assertEquals(new Date(2000L), obj.get("updated"));
+        assertEquals(new BSONTimestamp(30, 40), obj.get("ts"));
+        assertEquals(new org.bson.types.ObjectId("01020304abcdef1234c0ffee"), obj.get("_id"));
+    }
+
+    /**
+     * Makes sure values are not overwritten with values of another type
+     */
+    @Test(expected = IllegalStateException.class)
+    public void typeMismatch() {
+        byte[] b = new BasicBSONEncoder().encode(new BasicBSONObject("stats",
+                new BasicBSONObject("hits", 1)));
+        new BsonRawEditor(b).setInt64("stats.hits", 1L);
+    }
+
+    /**
+     * Makes sure reading a missing field fails
+     */
+    @Test(expected = NoSuchElementException.class)
+    public void missingField() {
+        byte[] b = new BasicBSONEncoder().encode(new BasicBSONObject("stats",
+                new BasicBSONObject("hits", 1)));
+        new BsonRawEditor(b).getInt32("stats.misses");
+    }
+
+    /**
+     * Appends fields to the top-level and to embedded documents
+     */
+    @Test
+    public void append() {
+        BSONObject stats = new BasicBSONObject();
+        stats.put("name", "stats");
+        stats.put("hits", 1);
+        BSONObject o = new BasicBSONObject();
+        o.put("stats", stats);
+        o.put("list", List.of("a", "b"));
+        o.put("enabled", false);
+        byte[] b = new BasicBSONEncoder().encode(o);
+        BsonRawEditor editor = new BsonRawEditor(b);
+        assertTrue(editor.appendInt32("stats", "misses", 7));
+        assertTrue(editor.appendString("list", "2", "c"));
+        assertTrue(editor.appendDateTime("", "created", new Date(3000L)));
+        assertFalse(editor.appendInt32("nothing", "x", 1));
+
+        // the document did not fit into the original array anymore
+        assertNotSame(b, editor.getBuffer().array());
+
+        BSONObject obj = decode(editor);
+        assertEquals(List.of("stats", "list", "enabled", "created"),
+                List.copyOf(obj.keySet()));
+        BSONObject statsObj = (BSONObject)obj.get("stats");
+        assertEquals(List.of("name", "hits", "misses"), List.copyOf(statsObj.keySet()));
+        assertEquals(7, statsObj.get("misses"));
+        assertEquals(List.of("a", "b", "c"), obj.get("list"));
+        assertEquals(new Date(3000L), obj.get("created"));
+        assertEquals(7, editor.getInt32("stats.misses"));
+    }
+
+    /**
+     * Appends a field using spare capacity behind the document
+     */
+    @Test
+    public void appendInPlace() {
+        byte[] doc = new BasicBSONEncoder().encode(new BasicBSONObject("stats",
+                new BasicBSONObject("hits", 1)));
+        byte[] b = new byte[doc.length + 64];
+        System.arraycopy(doc, 0, b, 0, doc.length);
+        BsonRawEditor editor = new BsonRawEditor(b);
+        assertTrue(editor.appendInt64("stats", "total", 100L));
+        assertSame(b, editor.getBuffer().array());
+        assertEquals(100L, ((BSONObject)decode(editor).get("stats")).get("total"));
+    }
+
+    /**
+     * Removes fields from the top-level and from embedded documents
+     */
+    @Test
+    public void remove() {
+        BSONObject stats = new BasicBSONObject();
+        stats.put("name", "stats");
+        stats.put("hits", 1);
+        stats.put("bytes", 2L);
+        BSONObject o = new BasicBSONObject();
+        o.put("bin", new byte[] { 1, 2, 3 });
+        o.put("stats", stats);
+        o.put("list", List.of("a", "b"));
+        o.put("enabled", false);
+        byte[] b = new BasicBSONEncoder().encode(o);
+
+        BsonRawEditor editor = new BsonRawEditor(ByteBuffer.wrap(b));
+        assertTrue(editor.remove("stats.name"));
+        assertTrue(editor.remove("bin"));
+        assertTrue(editor.remove("list.0"));
+        assertFalse(editor.remove("stats.name"));
+        assertEquals(2, editor.getInt64("stats.bytes"));
+
+        BSONObject obj = decode(editor);
+        assertEquals(List.of("stats", "list", "enabled"), List.copyOf(obj.keySet()));
+        BSONObject statsObj = (BSONObject)obj.get("stats");
+        assertEquals(List.of("hits", "bytes"), List.copyOf(statsObj.keySet()));
+        assertEquals(List.of("b"), obj.get("list"));
+        assertEquals(BsonConstants.TYPE_STRING, editor.getType("list.0"));
+        assertEquals(BsonConstants.TYPE_END, editor.getType("list.1"));
+    }
+
+    /**
+     * Removes array elements and checks if the following elements are
+     * renumbered, also when their keys get shorter
+     */
+    @Test
+    public void removeArrayElements() {
+        List<Integer> list = new ArrayList<>();
+        for (int i = 0; i < 12; ++i) {
+            list.add(i);
+        }
+        byte[] b = new BasicBSONEncoder().encode(new BasicBSONObject("list", list)
+                .append("after", "x"));
+        BsonRawEditor editor = new BsonRawEditor(b);
+        assertTrue(editor.remove("list.3"));
+        assertTrue(editor.remove("list.0"));
+        list.remove(3);
+        list.remove(0);
+
+        BSONObject obj = decode(editor);
+        assertEquals(list, obj.get("list"));
+        assertEquals("x", obj.get("after"));
+        assertEquals(11, editor.getInt32("list.9"));
+        assertEquals(BsonConstants.TYPE_END, editor.getType("list.10"));
+
+        // keys must be consecutive after removing the last element, too
+        assertTrue(editor.remove("list.9"));
+        assertTrue(editor.appendInt32("list", "9", 12));
+        assertEquals(12, editor.getInt32("list.9"));
+    }
+
+    /**
+     * Removes elements from nested arrays and checks if the elements of
+     * the inner and the outer array are renumbered
+     */
+    @Test
+    public void removeNestedArrayElements() {
+        BSONObject o = new BasicBSONObject();
+        o.put("matrix", List.of(List.of(1, 2, 3), List.of(4, 5)));
+        o.put("after", 9);
+        BsonRawEditor editor = new BsonRawEditor(new BasicBSONEncoder().encode(o));
+        assertTrue(editor.remove("matrix.0.1"));
+        assertEquals(3, editor.getInt32("matrix.0.1"));
+        assertEquals(BsonConstants.TYPE_END, editor.getType("matrix.0.2"));
+
+        assertTrue(editor.remove("matrix.0"));
+        assertEquals(5, editor.getInt32("matrix.0.1"));
+        assertEquals(BsonConstants.TYPE_END, editor.getType("matrix.1"));
+
+        assertTrue(editor.appendInt32("matrix.0", "2", 6));
+        BSONObject obj = decode(editor);
+        assertEquals(List.of(List.of(4, 5, 6)), obj.get("matrix"));
+        assertEquals(9, obj.get("after"));
+    }
+
+    /**
+     * Makes sure elements can only be appended to arrays with the next index
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void appendArrayElementWithWrongIndex() {
+        byte[] b = new BasicBSONEncoder().encode(new BasicBSONObject("list",
+                List.of("a", "b")));
+        new BsonRawEditor(b).appendString("list", "7", "c");
+    }
+}
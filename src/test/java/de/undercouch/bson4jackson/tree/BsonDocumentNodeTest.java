@@ -0,0 +1,227 @@
+package de.undercouch.bson4jackson.tree;
+
+import de.undercouch.bson4jackson.BsonConstants;
+import de.undercouch.bson4jackson.BsonFactory;
+import de.undercouch.bson4jackson.BsonModule;
+import de.undercouch.bson4jackson.raw.BsonBytes;
+import de.undercouch.bson4jackson.types.Decimal128;
+import de.undercouch.bson4jackson.types.ObjectId;
+import org.bson.BSONObject;
+import org.bson.BasicBSONDecoder;
+import org.bson.BasicBSONEncoder;
+import org.bson.BasicBSONObject;
+import org.bson.types.Binary;
+import org.junit.Test;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link BsonDocumentNode}
+ */
+public class BsonDocumentNodeTest {
+    /**
+     * A class with properties that hold single value nodes
+     */
+    public static class ValueHolder {
+        public BsonValueNode md5;
+        public BsonValueNode uuid;
+    }
+
+    /**
+     * Checks if values are decoded lazily and keep their BSON types
+     */
+    @Test
+    public void lazyAccess() {
+        BSONObject innerObject = new BasicBSONObject();
+        innerObject.put("arr", List.of(1, 2, 3));
+        innerObject.put("s", "inner");
+        BSONObject o = new BasicBSONObject();
+        o.put("oid", new org.bson.types.ObjectId(0x12345678, 0x00ABCDEF));
+        o.put("date", new Date(1234567890L));
+        o.put("dec", new org.bson.types.Decimal128(new BigDecimal("12.34")));
+        o.put("md5", new Binary(BsonConstants.SUBTYPE_MD5, new byte[] { 1, 2, 3 }));
+        o.put("inner", innerObject);
+        o.put("long", 5L);
+        byte[] b = new BasicBSONEncoder().encode(o);
+
+        BsonDocumentNode node = new BsonDocumentNode(new BsonBytes(b));
+        assertEquals(List.of("oid", "date", "dec", "md5", "inner", "long"), node.names());
+        assertEquals(6, node.size());
+
+        BsonValueNode oid = (BsonValueNode)node.get("oid");
+        assertEquals(BsonConstants.TYPE_OBJECTID, oid.getBsonType());
+        assertEquals(0x12345678, ((ObjectId)oid.getValue()).getTimestamp());
+        assertSame(oid, node.get("oid"));
+
+        BsonValueNode date = (BsonValueNode)node.get("date");
+        assertEquals(BsonConstants.TYPE_DATETIME, date.getBsonType());
+        assertEquals(new Date(1234567890L), date.getValue());
+
+        BsonValueNode dec = (BsonValueNode)node.get("dec");
+        assertEquals(BsonConstants.TYPE_DECIMAL128, dec.getBsonType());
+        assertEquals(new Decimal128(new BigDecimal("12.34")), dec.getValue());
+
+        BsonValueNode md5 = (BsonValueNode)node.get("md5");
+        assertEquals(BsonConstants.TYPE_BINARY, md5.getBsonType());
+        assertEquals(BsonConstants.SUBTYPE_MD5, md5.getBinarySubtype());
+        assertArrayEquals(new byte[] { 1, 2, 3 }, (byte[])md5.getValue());
+
+        BsonValueNode l = (BsonValueNode)node.get("long");
+        assertEquals(BsonConstants.TYPE_INT64, l.getBsonType());
+        assertEquals(5L, l.getValue());
+
+        BsonDocumentNode inner = (BsonDocumentNode)node.get("inner");
+        assertTrue(inner.isDocument());
+        assertNotNull(inner.getBytes());
+        BsonNode two = node.path("inner", "arr", "1");
+        assertEquals(new BsonValueNode(BsonConstants.TYPE_INT32, 2), two);
+        assertTrue(node.path("inner", "arr").isArray());
+        assertNull(node.path("inner", "missing"));
+        assertNull(node.path("long", "x"));
+        assertFalse(node.isModified());
+    }
+
+    /**
+     * Checks if unmodified documents are written back verbatim
+     */
+    @Test
+    public void writeUnmodified() {
+        BSONObject o = new BasicBSONObject();
+        o.put("oid", new org.bson.types.ObjectId(0x12345678, 0x00ABCDEF));
+        o.put("inner", new BasicBSONObject("arr", List.of(1, 2, 3)));
+        o.put("long", 5L);
+        byte[] b = new BasicBSONEncoder().encode(o);
+
+        ObjectMapper mapper = JsonMapper.builder(new BsonFactory())
+            .addModule(new BsonModule())
+            .build();
+        BsonDocumentNode node = mapper.readValue(b, BsonDocumentNode.class);
+        node.get("oid");
+        node.path("inner", "arr", "2");
+        assertArrayEquals(b, mapper.writeValueAsBytes(node));
+    }
+
+    /**
+     * Modifies an embedded document and checks if the types of all other
+     * values are preserved
+     */
+    @Test
+    public void modify() {
+        BSONObject innerObject = new BasicBSONObject();
+        innerObject.put("arr", List.of(1, 2, 3));
+        innerObject.put("s", "inner");
+        BSONObject o = new BasicBSONObject();
+        o.put("oid", new org.bson.types.ObjectId(0x12345678, 0x00ABCDEF));
+        o.put("dec", new org.bson.types.Decimal128(new BigDecimal("12.34")));
+        o.put("md5", new Binary(BsonConstants.SUBTYPE_MD5, new byte[] { 1, 2, 3 }));
+        o.put("inner", innerObject);
+        o.put("long", 5L);
+        byte[] b = new BasicBSONEncoder().encode(o);
+
+        ObjectMapper mapper = JsonMapper.builder(new BsonFactory())
+            .addModule(new BsonModule())
+            .build();
+        BsonDocumentNode node = mapper.readValue(b, BsonDocumentNode.class);
+        BsonDocumentNode arr = (BsonDocumentNode)node.path("inner", "arr");
+        arr.put("1", 42);
+        arr.add(BsonValueNode.valueOf("x"));
+        node.remove("long");
+        assertTrue(arr.isModified());
+        assertTrue(node.isModified());
+        assertNull(node.getBytes());
+
+        BSONObject obj = new BasicBSONDecoder().readObject(mapper.writeValueAsBytes(node));
+        assertEquals(List.of("oid", "dec", "md5", "inner"),
+                List.copyOf(obj.keySet()));
+        assertEquals(new org.bson.types.ObjectId(0x12345678, 0x00ABCDEF), obj.get("oid"));
+        assertEquals(new org.bson.types.Decimal128(new BigDecimal("12.34")), obj.get("dec"));
+        Binary md5 = (Binary)obj.get("md5");
+        assertEquals(BsonConstants.SUBTYPE_MD5, md5.getType());
+        assertArrayEquals(new byte[] { 1, 2, 3 }, md5.getData());
+        BSONObject inner = (BSONObject)obj.get("inner");
+        assertEquals(List.of(1, 42, 3, "x"), inner.get("arr"));
+        assertEquals("inner", inner.get("s"));
+    }
+
+    /**
+     * Builds a document in memory and serializes it
+     */
+    @Test
+    public void createInMemory() {
+        BsonDocumentNode arr = new BsonDocumentNode(true);
+        arr.add(BsonValueNode.valueOf(1));
+        arr.add(BsonValueNode.valueOf(2L));
+        BsonDocumentNode node = new BsonDocumentNode();
+        node.put("a", "b");
+        node.put("arr", arr);
+        node.put("n", null);
+        node.put("a", "c");
+        assertEquals(List.of("a", "arr", "n"), node.names());
+
+        ObjectMapper mapper = JsonMapper.builder(new BsonFactory())
+            .addModule(new BsonModule())
+            .build();
+        byte[] b = mapper.writeValueAsBytes(node);
+        BSONObject obj = new BasicBSONDecoder().readObject(b);
+        assertEquals("c", obj.get("a"));
+        assertEquals(List.of(1, 2L), obj.get("arr"));
+        assertTrue(obj.containsField("n"));
+        assertNull(obj.get("n"));
+
+        BsonDocumentNode read = mapper.readValue(b, BsonDocumentNode.class);
+        assertEquals(node, read);
+    }
+
+    /**
+     * Checks if single value nodes keep their binary subtypes
+     */
+    @Test
+    public void binarySubtypes() {
+        UUID uuid = UUID.fromString("00112233-4455-6677-8899-aabbccddeeff");
+        byte[] uuidBytes = new byte[] { 0x00, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77,
+                (byte)0x88, (byte)0x99, (byte)0xAA, (byte)0xBB, (byte)0xCC,
+                (byte)0xDD, (byte)0xEE, (byte)0xFF };
+        BSONObject o = new BasicBSONObject();
+        o.put("md5", new Binary(BsonConstants.SUBTYPE_MD5, new byte[] { 1, 2, 3 }));
+        o.put("uuid", new Binary(BsonConstants.SUBTYPE_UUID_STANDARD, uuidBytes));
+        byte[] b = new BasicBSONEncoder().encode(o);
+
+        ObjectMapper mapper = JsonMapper.builder(new BsonFactory())
+            .addModule(new BsonModule())
+            .build();
+        ValueHolder holder = mapper.readValue(b, ValueHolder.class);
+        assertEquals(BsonConstants.SUBTYPE_MD5, holder.md5.getBinarySubtype());
+        assertArrayEquals(new byte[] { 1, 2, 3 }, (byte[])holder.md5.getValue());
+        assertEquals(BsonConstants.SUBTYPE_UUID_STANDARD, holder.uuid.getBinarySubtype());
+        assertEquals(uuid, holder.uuid.getValue());
+
+        assertArrayEquals(b, mapper.writeValueAsBytes(holder));
+    }
+
+    /**
+     * Checks if binary vectors with an unknown data type are read as
+     * plain binary data
+     */
+    @Test
+    public void unknownVectorDType() {
+        byte[] unknown = new byte[] { 0x7F, 0, 1, 2 };
+        byte[] b = new BasicBSONEncoder().encode(new BasicBSONObject("v",
+                new Binary(BsonConstants.SUBTYPE_VECTOR, unknown)));
+        BsonValueNode v = (BsonValueNode)new BsonDocumentNode(new BsonBytes(b)).get("v");
+        assertEquals(BsonConstants.SUBTYPE_VECTOR, v.getBinarySubtype());
+        assertArrayEquals(unknown, (byte[])v.getValue());
+    }
+}